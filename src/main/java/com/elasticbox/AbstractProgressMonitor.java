@@ -15,7 +15,10 @@ package com.elasticbox;
 import net.sf.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.MessageFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public abstract class AbstractProgressMonitor implements IProgressMonitor {
     private final String resourceUrl;
@@ -50,19 +53,29 @@ public abstract class AbstractProgressMonitor implements IProgressMonitor {
 
         long startTime = System.currentTimeMillis();
         long remainingTime = timeout * 60000;
-        do {
-            if (isDone()) {
-                return;
+        Deadline deadline = timeout > 0 ? Deadline.after(timeout, TimeUnit.MINUTES) : null;
+        Deadline previousDeadline = Deadline.setCurrent(deadline);
+        try {
+            do {
+                if (isDone()) {
+                    return;
+                }
+
+                synchronized (this) {
+                    wait(1000);
+                }
+
+                long currentTime = System.currentTimeMillis();
+                remainingTime =  remainingTime - (currentTime - startTime);
+                startTime = currentTime;
+            } while (timeout <= 0 || remainingTime > 0);
+        } catch (InterruptedIOException ex) {
+            if (deadline == null || !deadline.isExpired()) {
+                throw ex;
             }
-
-            synchronized (this) {
-                wait(1000);
-            }
-
-            long currentTime = System.currentTimeMillis();
-            remainingTime =  remainingTime - (currentTime - startTime);
-            startTime = currentTime;
-        } while (timeout <= 0 || remainingTime > 0);
+        } finally {
+            Deadline.restore(previousDeadline);
+        }
 
         JSONObject resource = getResource();
         if (!isDone(resource)) {
@@ -73,4 +86,43 @@ public abstract class AbstractProgressMonitor implements IProgressMonitor {
         }
     }
 
+    /**
+     * Polls the resource from the I/O threads of the {@link AsyncClient}, backing off from one poll per second as the
+     * waiting goes on. The shared scheduler of the {@link InstancePoller} only times the delays between the polls.
+     */
+    public CompletableFuture<Void> whenDone(final int timeout) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        final long startTime = System.currentTimeMillis();
+        AsyncClient.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    JSONObject resource = getResource();
+                    long elapsed = System.currentTimeMillis() - startTime;
+                    if (isDone(resource)) {
+                        future.complete(null);
+                    } else if (timeout > 0 && elapsed >= TimeUnit.MINUTES.toMillis(timeout)) {
+                        future.completeExceptionally(new IProgressMonitor.TimeoutException(MessageFormat.format(
+                                "{0} is not in ready after waiting for {1} minutes. Current state: {2}",
+                                getResourceUrl(), timeout, getState(resource))));
+                    } else {
+                        final Runnable poll = this;
+                        InstancePoller.getScheduler().schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                AsyncClient.getExecutor().execute(poll);
+                            }
+                        }, PollingSchedule.getDelay(-1, elapsed), TimeUnit.MILLISECONDS);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    future.completeExceptionally(ex);
+                }
+            }
+        });
+        return future;
+    }
+
 }
@@ -21,6 +21,11 @@ public interface ApiClient {
 
     public JSONArray getInstances(String workspaceId, List<String> instanceIDs) throws IOException;
 
+    public InstanceSummary getInstanceSummary(String instanceId) throws IOException;
+
+    public List<InstanceSummary> getInstanceSummaries(String workspaceId, List<String> instanceIDs)
+            throws IOException;
+
     public <T extends JSON> T doPost(String url, JSONObject resource, boolean isArray) throws IOException;
 
 
@@ -0,0 +1,51 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link ApiClient}. The returned futures complete exceptionally with a
+ * {@link ClientException} when ElasticBox answers with an error status, and with an {@link java.io.IOException} when
+ * the request cannot be sent or its response read.
+ */
+public interface AsyncApiClient {
+
+    public CompletableFuture<JSONArray> getBoxVersions(String boxId);
+
+    public CompletableFuture<JSONArray> getAllBoxes(String workspaceId);
+
+    public CompletableFuture<JSONObject> getBox(String boxId);
+
+
+    public CompletableFuture<JSONObject> getInstance(String instanceId);
+
+    public CompletableFuture<JSONArray> getInstances(String workspaceId, List<String> instanceIDs);
+
+    public CompletableFuture<JSONArray> getWorkspaces();
+
+
+    public CompletableFuture<JSON> doGet(String url, boolean isArray);
+
+    public <T extends JSON> CompletableFuture<T> doPost(String url, JSONObject resource, boolean isArray);
+
+    public CompletableFuture<JSONObject> doUpdate(String url, JSONObject resource);
+
+    public CompletableFuture<Void> doDelete(String url);
+
+}
@@ -0,0 +1,184 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Non-blocking ElasticBox client. The requests are sent through the request pipeline of the client that created it,
+ * so they are retried, limited, measured and authenticated exactly like the blocking requests, by a pool of I/O
+ * threads shared by the clients instead of the calling thread. The deadline and the request priority of the calling
+ * thread apply to the requests it starts.
+ */
+class AsyncClient implements AsyncApiClient {
+    private static final int IO_THREADS = Integer.getInteger("elasticbox.AsyncClient.ioThreads", 8);
+
+    private static final ExecutorService ioExecutor = Executors.newFixedThreadPool(IO_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("ElasticBox-AsyncClient-%d").setDaemon(true).build());
+
+    private final Client client;
+
+    AsyncClient(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Returns the pool of I/O threads shared by the clients, for other blocking requests that must not tie up a
+     * scheduler.
+     */
+    static ExecutorService getExecutor() {
+        return ioExecutor;
+    }
+
+    @Override
+    public CompletableFuture<JSONArray> getBoxVersions(final String boxId) {
+        return submit(new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() throws Exception {
+                return client.getBoxVersions(boxId);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<JSONArray> getAllBoxes(final String workspaceId) {
+        return submit(new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() throws Exception {
+                return client.getAllBoxes(workspaceId);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> getBox(final String boxId) {
+        return submit(new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return client.getBox(boxId);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> getInstance(final String instanceId) {
+        return submit(new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return client.getInstance(instanceId);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<JSONArray> getInstances(final String workspaceId, final List<String> instanceIDs) {
+        return submit(new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() throws Exception {
+                return client.getInstances(workspaceId, instanceIDs);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<JSONArray> getWorkspaces() {
+        return submit(new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() throws Exception {
+                return client.getWorkspaces();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<JSON> doGet(final String url, final boolean isArray) {
+        return submit(new Callable<JSON>() {
+            @Override
+            public JSON call() throws Exception {
+                return client.doGet(url, isArray);
+            }
+        });
+    }
+
+    @Override
+    public <T extends JSON> CompletableFuture<T> doPost(final String url, final JSONObject resource,
+                                                        final boolean isArray) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return client.doPost(url, resource, isArray);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> doUpdate(final String url, final JSONObject resource) {
+        return submit(new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return client.doUpdate(url, resource);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> doDelete(final String url) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                client.doDelete(url);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs the request in the I/O threads with the deadline and the request priority of the calling thread. The
+     * request is not sent if the returned future is canceled before an I/O thread is available.
+     */
+    private <T> CompletableFuture<T> submit(final Callable<T> request) {
+        final Deadline deadline = Deadline.getCurrent();
+        final RequestLimiter.Priority priority = RequestLimiter.getCurrentPriority();
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (result.isDone()) {
+                    return;
+                }
+                Deadline previousDeadline = Deadline.setCurrent(deadline);
+                RequestLimiter.Priority previousPriority = RequestLimiter.setCurrentPriority(priority);
+                try {
+                    result.complete(request.call());
+                } catch (Exception ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    RequestLimiter.setCurrentPriority(previousPriority);
+                    Deadline.restore(previousDeadline);
+                }
+            }
+        });
+        return result;
+    }
+
+}
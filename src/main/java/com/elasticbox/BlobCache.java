@@ -0,0 +1,178 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the URLs of the blobs uploaded to an ElasticBox cloud, so that the same content is not uploaded again.
+ * Local files are identified by the SHA-256 hash of their content, remote files by their URL and the validators
+ * returned by the remote server. The key also includes the name and the content type of the blob because both are
+ * stored with it.
+ */
+public class BlobCache {
+    public static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("elasticbox.BlobCache.maxEntries", 1000);
+
+    public static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis(
+            Long.getLong("elasticbox.BlobCache.ttl", TimeUnit.DAYS.toSeconds(1)));
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final class CachedBlob {
+        private final String blobUrl;
+        private final long expirationTime;
+
+        private CachedBlob(String blobUrl, long expirationTime) {
+            this.blobUrl = blobUrl;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private final long ttl;
+    private final Map<String, CachedBlob> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public BlobCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    public BlobCache(final int maxEntries, long ttl) {
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, CachedBlob>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBlob> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the URL of the blob uploaded with the specified key, or null if there is none.
+     */
+    public String get(String key) {
+        synchronized (entries) {
+            CachedBlob entry = entries.get(key);
+            if (entry != null && entry.expirationTime > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.blobUrl;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, String blobUrl) {
+        synchronized (entries) {
+            entries.put(key, new CachedBlob(blobUrl, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Removes the entries of the specified blob, for instance after the blob is found to be missing.
+     */
+    public void removeBlob(String blobUrl) {
+        synchronized (entries) {
+            for (Iterator<CachedBlob> iter = entries.values().iterator(); iter.hasNext(); ) {
+                if (iter.next().blobUrl.equals(blobUrl)) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the key of a blob with the content hashed by the specified SHA-256 digest.
+     */
+    public static String getContentKey(MessageDigest digest, String name, String contentType) {
+        StringBuilder sha256 = new StringBuilder("sha256:");
+        for (byte b : digest.digest()) {
+            sha256.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return MessageFormat.format("{0}|{1}|{2}", sha256, name, contentType);
+    }
+
+    /**
+     * Returns the key of a blob with the content of the local file.
+     */
+    public static String getContentKey(File file, String contentType) throws IOException {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = new FileInputStream(file)) {
+            for (int count = input.read(buffer); count != -1; count = input.read(buffer)) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return getContentKey(digest, file.getName(), contentType);
+    }
+
+    /**
+     * Returns the key of a blob with the content of the remote file, or null if the remote server did not return
+     * any validator to tell whether the file changed.
+     */
+    public static String getSourceKey(URL url, URLConnection connection, String name, String contentType) {
+        String etag = connection.getHeaderField("ETag");
+        long lastModified = connection.getLastModified();
+        if (etag == null && lastModified == 0) {
+            return null;
+        }
+        return MessageFormat.format("url:{0}|{1}|{2}|{3}|{4}|{5}", url, etag, String.valueOf(lastModified),
+                String.valueOf(connection.getContentLengthLong()), name, contentType);
+    }
+
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+}
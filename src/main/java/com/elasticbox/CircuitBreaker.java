@@ -0,0 +1,176 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.google.common.base.Ticker;
+
+import org.apache.http.HttpStatus;
+
+import java.text.MessageFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops sending requests to an ElasticBox endpoint after consecutive failures, so that the threads that use the
+ * endpoint fail fast instead of waiting for connection and read timeouts while it is down. After the open interval a
+ * single trial request is let through, the circuit closes again if it succeeds.
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public static final int DEFAULT_FAILURE_THRESHOLD =
+            Integer.getInteger("elasticbox.CircuitBreaker.failureThreshold", 5);
+
+    public static final long DEFAULT_OPEN_INTERVAL = Long.getLong("elasticbox.CircuitBreaker.openInterval", 30 * 1000);
+
+    private static final ConcurrentHashMap<String, CircuitBreaker> circuitBreakers =
+            new ConcurrentHashMap<String, CircuitBreaker>();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String endpointUrl;
+    private final int failureThreshold;
+    private final long openInterval;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedTime;
+    private boolean trialInProgress;
+
+    public CircuitBreaker(String endpointUrl, int failureThreshold, long openInterval) {
+        this(endpointUrl, failureThreshold, openInterval, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a circuit breaker that measures the open interval with the specified ticker.
+     */
+    public CircuitBreaker(String endpointUrl, int failureThreshold, long openInterval, Ticker ticker) {
+        this.endpointUrl = endpointUrl;
+        this.failureThreshold = failureThreshold;
+        this.openInterval = openInterval;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Returns the circuit breaker shared by all the clients of the specified endpoint.
+     */
+    public static CircuitBreaker forEndpoint(String endpointUrl) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(endpointUrl);
+        if (circuitBreaker == null) {
+            circuitBreaker = new CircuitBreaker(endpointUrl, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_INTERVAL);
+            CircuitBreaker existing = circuitBreakers.putIfAbsent(endpointUrl, circuitBreaker);
+            if (existing != null) {
+                circuitBreaker = existing;
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Checks whether a request can be sent to the endpoint.
+     *
+     * @throws ClientException with status 503 if the circuit is open
+     */
+    public void acquirePermission() throws ClientException {
+        long remaining;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            remaining = openedTime + openInterval - currentTimeMillis();
+            if (remaining <= 0 && !trialInProgress) {
+                state = State.HALF_OPEN;
+                trialInProgress = true;
+                return;
+            }
+        }
+
+        throw new ClientException(MessageFormat.format(
+                "Requests to ElasticBox at {0} are suspended for {1} seconds after {2} consecutive failures",
+                endpointUrl, TimeUnit.MILLISECONDS.toSeconds(Math.max(remaining, 0)), failureThreshold),
+                HttpStatus.SC_SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Checks whether the circuit is open and requests to the endpoint would fail fast, without changing its state.
+     */
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED && (trialInProgress
+                || openedTime + openInterval > currentTimeMillis());
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Records that the endpoint answered a request.
+     */
+    public void recordSuccess() {
+        boolean closed;
+        synchronized (this) {
+            closed = state != State.CLOSED;
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInProgress = false;
+        }
+        if (closed) {
+            LOGGER.info(MessageFormat.format("ElasticBox at {0} is available again", endpointUrl));
+        }
+    }
+
+    /**
+     * Records that a request failed because the endpoint did not answer or answered with a server error.
+     */
+    public void recordFailure() {
+        boolean opened = false;
+        synchronized (this) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                opened = state == State.CLOSED;
+                state = State.OPEN;
+                openedTime = currentTimeMillis();
+                trialInProgress = false;
+            }
+        }
+        if (opened) {
+            LOGGER.warning(MessageFormat.format("ElasticBox at {0} failed {1} consecutive requests, "
+                    + "requests are suspended for {2} seconds", endpointUrl, failureThreshold,
+                    TimeUnit.MILLISECONDS.toSeconds(openInterval)));
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("Request to ElasticBox at {0} failed", endpointUrl));
+        }
+    }
+
+    private long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+    }
+
+    /**
+     * Releases the trial request of a half-open circuit without recording its outcome, for instance when the request
+     * was interrupted.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            trialInProgress = false;
+        }
+    }
+
+}
@@ -12,6 +12,7 @@
 
 package com.elasticbox;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.sf.json.JSON;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
@@ -22,36 +23,31 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
-
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.config.Registry;
-import org.apache.http.config.RegistryBuilder;
-import org.apache.http.conn.socket.ConnectionSocketFactory;
-import org.apache.http.conn.socket.PlainConnectionSocketFactory;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.ssl.SSLContextBuilder;
-import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.http.conn.EofSensorWatcher;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -59,22 +55,36 @@ import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
-import javax.net.ssl.SSLContext;
 
 public class Client implements ApiClient {
     private static final Logger LOGGER = Logger.getLogger(Client.class.getName());
@@ -98,16 +108,53 @@ public class Client implements ApiClient {
     private static final Set<String> PROVIDER_FINISH_STATES = new HashSet<String>(
             Arrays.asList(ProviderState.READY, ProviderState.UNAVAILABLE));
 
+    /**
+     * Max length of the URLs to get several resources by their IDs, longer URLs are rejected by some proxies.
+     */
+    static final int MAX_URL_LENGTH = Integer.getInteger("elasticbox.Client.maxUrlLength", 4000);
+
+    static final int MAX_BATCH_SIZE = 800;
+
+    private static final ExecutorService batchExecutor = new ThreadPoolExecutor(0,
+            Integer.getInteger("elasticbox.Client.batchThreads", 8), 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("ElasticBox-Client-batch-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final ScheduledExecutorService deadlineTimer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ElasticBox-Client-deadline-%d").setDaemon(true).build());
+
+    private static final String WORKSPACES_PATH = "/services/workspaces";
+
+    private static final Pattern CACHEABLE_PATH_PATTERN =
+            Pattern.compile("/services/(workspaces|workspaces/[^/]+/boxes|boxes/[^/]+(/versions|/stack)?)$");
+
     private static final Set<String> TASK_FINISH_STATES = new HashSet<String>(
             Arrays.asList(TaskState.DONE, TaskState.UNSUCCESSFUL));
 
-    private static HttpClient httpClient = null;
-    private static HttpProxy httpClientProxy = null;
+    private static ConnectionPool defaultConnectionPool = null;
 
+    private final ConnectionPool connectionPool;
+    private final HttpClient httpClient;
     private final String endpointUrl;
     private String username;
     private final String password;
-    private String token = null;
+    private volatile String token = null;
+    private volatile TokenManager tokenManager;
+    private final Object connectLock = new Object();
+    private volatile AsyncClient asyncClient;
+    private volatile ResponseCache responseCache = new ResponseCache();
+    private volatile BlobCache blobCache = new BlobCache();
+    private volatile ClientMetrics metrics = new ClientMetrics();
+    private volatile InstancePoller instancePoller = new InstancePoller(this);
+    private volatile OperationDurations operationDurations = new OperationDurations();
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+    private final CircuitBreaker circuitBreaker;
+    private volatile RequestLimiter requestLimiter;
+    private final ConcurrentHashMap<String, CompletableFuture<HttpEntity>> inFlightGets =
+            new ConcurrentHashMap<String, CompletableFuture<HttpEntity>>();
+    private final AtomicLong coalescedGets = new AtomicLong();
+    private final InstanceLocationIndex instanceLocations = new InstanceLocationIndex();
 
     public static interface InstanceState {
         String PROCESSING = "processing";
@@ -144,11 +191,19 @@ public class Client implements ApiClient {
     }
 
     protected Client(String endpointUrl, String username, String password, String token, HttpProxy httpProxy) {
-        getHttpClient(httpProxy);
+        this(endpointUrl, username, password, token, getDefaultConnectionPool(httpProxy));
+    }
+
+    protected Client(String endpointUrl, String username, String password, String token,
+                     ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+        this.httpClient = connectionPool.getHttpClient();
         this.endpointUrl = endpointUrl.endsWith("/") ? endpointUrl.substring(0, endpointUrl.length() - 1) : endpointUrl;
         this.username = username;
         this.password = password;
         this.token = token;
+        this.circuitBreaker = CircuitBreaker.forEndpoint(this.endpointUrl);
+        connectionPool.register(this);
     }
 
     public Client(String endpointUrl, String username, String password, HttpProxy httpProxy) {
@@ -159,6 +214,10 @@ public class Client implements ApiClient {
         this(endpointUrl, null, null, token, httpProxy);
     }
 
+    public Client(String endpointUrl, String token, ConnectionPool connectionPool) {
+        this(endpointUrl, null, null, token, connectionPool);
+    }
+
     public String getEndpointUrl() {
         return endpointUrl;
     }
@@ -172,11 +231,126 @@ public class Client implements ApiClient {
     }
 
     public HttpProxy getHttpClientProxy() {
-        return httpClientProxy;
+        return connectionPool.getHttpProxy();
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Returns the non-blocking variant of this client. Its requests are sent through the request pipeline of this
+     * client, sharing its token, retry policy, circuit breaker, request limiter and metrics.
+     */
+    public AsyncApiClient getAsyncClient() {
+        if (asyncClient == null) {
+            synchronized (this) {
+                if (asyncClient == null) {
+                    asyncClient = new AsyncClient(this);
+                }
+            }
+        }
+        return asyncClient;
+    }
+
+    /**
+     * Returns the cache of the responses of the workspaces and boxes, or null if the responses are not cached.
+     */
+    @CheckForNull
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Returns the cache of the URLs of the uploaded blobs, or null if every file is uploaded again.
+     */
+    @CheckForNull
+    public BlobCache getBlobCache() {
+        return blobCache;
+    }
+
+    public void setBlobCache(BlobCache blobCache) {
+        this.blobCache = blobCache;
+    }
+
+    /**
+     * Returns the metrics of the requests sent by this client.
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the poller that waits for the instance operations started by this client.
+     */
+    public InstancePoller getInstancePoller() {
+        return instancePoller;
+    }
+
+    public void setInstancePoller(InstancePoller instancePoller) {
+        this.instancePoller = instancePoller;
+    }
+
+    /**
+     * Returns the observed durations of the instance operations of the cloud of this client.
+     */
+    public OperationDurations getOperationDurations() {
+        return operationDurations;
+    }
+
+    public void setOperationDurations(OperationDurations operationDurations) {
+        this.operationDurations = operationDurations;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Returns the limiter of the requests of this client, or null if the requests are not limited.
+     */
+    @CheckForNull
+    public RequestLimiter getRequestLimiter() {
+        return requestLimiter;
+    }
+
+    public void setRequestLimiter(RequestLimiter requestLimiter) {
+        this.requestLimiter = requestLimiter;
+    }
+
+    /**
+     * Returns the circuit breaker of the endpoint of this client, it is shared by all the clients of the endpoint.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the manager that provides the token of this client, or null if the client uses its own token.
+     */
+    @CheckForNull
+    public TokenManager getTokenManager() {
+        return tokenManager;
+    }
+
+    public void setTokenManager(TokenManager tokenManager) {
+        this.tokenManager = tokenManager;
     }
 
     public void connect() throws IOException {
-        if (token != null && getUsername() == null) {
+        if ((token != null || tokenManager != null) && getUsername() == null) {
             try {
                 doGet("/services/workspaces", true);
             } catch (IOException excep) {
@@ -191,7 +365,7 @@ public class Client implements ApiClient {
         json.put("email", getUsername());
         json.put("password", getPassword());
         post.setEntity(new StringEntity(json.toString(), ContentType.APPLICATION_JSON));
-        HttpResponse response = httpClient.execute(post);
+        HttpResponse response = send(post);
         int status = response.getStatusLine().getStatusCode();
         if (status != HttpStatus.SC_OK) {
             throw new ClientException(MessageFormat.format("Error {0} connecting to ElasticBox at {1}: {2}", status,
@@ -216,18 +390,37 @@ public class Client implements ApiClient {
     }
 
     public JSONArray getAllBoxes(String workspaceId) throws IOException {
-        return (JSONArray) doGet(MessageFormat.format("{0}/services/workspaces/{1}/boxes", endpointUrl,
-                URLEncoder.encode(workspaceId, Constants.UTF_8)), true);
+        final JSONArray boxes = new JSONArray();
+        visitAllBoxes(workspaceId, new JsonArrayVisitor() {
+            @Override
+            public boolean visit(JSONObject box) {
+                boxes.element(box);
+                return true;
+            }
+        });
+        return boxes;
+    }
+
+    /**
+     * Reads the boxes of the workspace from the response stream and passes them one at a time to the visitor.
+     */
+    public void visitAllBoxes(String workspaceId, JsonArrayVisitor visitor) throws IOException {
+        doGet(MessageFormat.format("{0}/services/workspaces/{1}/boxes", endpointUrl,
+                URLEncoder.encode(workspaceId, Constants.UTF_8)), visitor);
     }
 
     public JSONArray getBoxes(String workspaceId) throws IOException {
-        JSONArray boxes = getAllBoxes(workspaceId);
-        // remove the profile boxes
-        for (Iterator iter = boxes.iterator(); iter.hasNext(); ) {
-            if (isPolicy((JSONObject) iter.next())) {
-                iter.remove();
+        final JSONArray boxes = new JSONArray();
+        visitAllBoxes(workspaceId, new JsonArrayVisitor() {
+            @Override
+            public boolean visit(JSONObject box) {
+                // skip the profile boxes
+                if (!isPolicy(box)) {
+                    boxes.element(box);
+                }
+                return true;
             }
-        }
+        });
 
         return boxes;
     }
@@ -248,15 +441,32 @@ public class Client implements ApiClient {
         return (JSONArray) doGet(MessageFormat.format("/services/workspaces/{0}/providers", workspaceId), true);
     }
 
-    private JSONObject uploadFile(URI fileUri, ContentType contentType) throws IOException {
+    /**
+     * Uploads the file and returns the URL of the blob. The upload is skipped if the same content was already
+     * uploaded with the same name and content type. Remote files are streamed to ElasticBox without being buffered.
+     */
+    private String uploadFile(URI fileUri, ContentType contentType) throws IOException {
+        final BlobCache cache = blobCache;
         MultipartEntityBuilder entityBuilder = MultipartEntityBuilder.create().setLaxMode();
+        String sourceKey = null;
+        MessageDigest digest = null;
+        String fileName;
         if (fileUri.getScheme().equalsIgnoreCase("file")) {
             File file = new File(fileUri);
             if (contentType == null) {
                 String mimeType = Files.probeContentType(FileSystems.getDefault().getPath(file.getPath()));
                 contentType = mimeType != null ? ContentType.create(mimeType) : ContentType.DEFAULT_BINARY;
             }
-            entityBuilder.addBinaryBody("blob", file, contentType, file.getName());
+            fileName = file.getName();
+            if (cache != null) {
+                String contentKey = BlobCache.getContentKey(file, contentType.toString());
+                String blobUrl = cache.get(contentKey);
+                if (blobUrl != null) {
+                    return blobUrl;
+                }
+                sourceKey = contentKey;
+            }
+            entityBuilder.addBinaryBody("blob", file, contentType, fileName);
         } else {
             URL fileUrl = fileUri.toURL();
             URLConnection connection = fileUrl.openConnection();
@@ -265,17 +475,40 @@ public class Client implements ApiClient {
                 contentType = mimeType != null ? ContentType.create(mimeType) : ContentType.DEFAULT_BINARY;
             }
             String[] segments = fileUrl.getPath().split("/");
-            entityBuilder.addBinaryBody(
-                    "blob", connection.getInputStream(), contentType, segments[segments.length - 1]);
+            fileName = segments[segments.length - 1];
+            InputStream input;
+            if (cache != null) {
+                sourceKey = BlobCache.getSourceKey(fileUrl, connection, fileName, contentType.toString());
+                String blobUrl = sourceKey != null ? cache.get(sourceKey) : null;
+                if (blobUrl != null) {
+                    if (connection instanceof HttpURLConnection) {
+                        ((HttpURLConnection) connection).disconnect();
+                    }
+                    return blobUrl;
+                }
+                digest = BlobCache.createDigest();
+                input = new DigestInputStream(connection.getInputStream(), digest);
+            } else {
+                input = connection.getInputStream();
+            }
+            entityBuilder.addBinaryBody("blob", input, contentType, fileName);
         }
         HttpPost post = new HttpPost(prepareUrl("/services/blobs/upload"));
         post.setEntity(entityBuilder.build());
+        String blobUrl;
         try {
             HttpResponse response = execute(post);
-            return JSONObject.fromObject(getResponseBodyAsString(response));
+            blobUrl = JSONObject.fromObject(getResponseBodyAsString(response)).getString("url");
         } finally {
             post.reset();
         }
+        if (sourceKey != null) {
+            cache.put(sourceKey, blobUrl);
+        }
+        if (digest != null) {
+            cache.put(BlobCache.getContentKey(digest, fileName, contentType.toString()), blobUrl);
+        }
+        return blobUrl;
     }
 
     public JSONObject createWorkspace(String name) throws IOException {
@@ -288,23 +521,37 @@ public class Client implements ApiClient {
     public JSONObject createBox(JSONObject box) throws IOException, URISyntaxException {
         // upload files
         if (box.containsKey("variables")) {
+            List<JSONObject> fileVariables = new ArrayList<JSONObject>();
             for (Object variable : box.getJSONArray("variables")) {
                 JSONObject variableJson = (JSONObject) variable;
                 if (variableJson.getString("type").equals("File")) {
-                    uploadFileVariable(variableJson);
+                    fileVariables.add(variableJson);
                 }
             }
+            uploadFileVariables(fileVariables);
         }
         if (box.containsKey("events")) {
             JSONObject events = box.getJSONObject("events");
+            List<String> eventNames = new ArrayList<String>();
+            List<Callable<String>> uploads = new ArrayList<Callable<String>>();
             for (Object entry : events.entrySet()) {
                 Map.Entry mapEntry = (Map.Entry) entry;
-                JSONObject blobInfo = uploadFile(new URI(mapEntry.getValue().toString()), ContentType.TEXT_PLAIN);
+                final URI eventUri = new URI(mapEntry.getValue().toString());
+                eventNames.add(mapEntry.getKey().toString());
+                uploads.add(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return uploadFile(eventUri, ContentType.TEXT_PLAIN);
+                    }
+                });
+            }
+            List<String> blobUrls = runInParallel(uploads);
+            for (int i = 0; i < eventNames.size(); i++) {
                 JSONObject event = new JSONObject();
-                event.put("url", blobInfo.getString("url"));
+                event.put("url", blobUrls.get(i));
                 event.put("destination_path", "scripts");
                 event.put("content_type", "text/x-shellscript");
-                events.put(mapEntry.getKey().toString(), event);
+                events.put(eventNames.get(i), event);
             }
         }
         return doPost("/services/boxes", box, false);
@@ -373,7 +620,34 @@ public class Client implements ApiClient {
         if (StringUtils.isBlank(instanceId)) {
             throw new IOException("instanceId cannot be blank");
         }
-        return (JSONObject) doGet(MessageFormat.format("{0}/services/instances/{1}", endpointUrl, instanceId), false);
+        try {
+            JSONObject instance = (JSONObject) doGet(
+                    MessageFormat.format("{0}/services/instances/{1}", endpointUrl, instanceId), false);
+            instanceLocations.put(instanceId, instance.optString("owner", null));
+            return instance;
+        } catch (ClientException ex) {
+            forgetInstanceLocation(instanceId, ex);
+            throw ex;
+        }
+    }
+
+    public InstanceSummary getInstanceSummary(String instanceId) throws IOException {
+        if (StringUtils.isBlank(instanceId)) {
+            throw new IOException("instanceId cannot be blank");
+        }
+        HttpEntity entity;
+        try {
+            entity = getEntity(prepareUrl(MessageFormat.format("/services/instances/{0}", instanceId)));
+        } catch (ClientException ex) {
+            forgetInstanceLocation(instanceId, ex);
+            throw ex;
+        }
+        if (entity == null) {
+            throw new IOException("Error while getting response data, the response is empty.");
+        }
+        InstanceSummary instance = InstanceSummary.parse(entity.getContent());
+        instanceLocations.put(instanceId, instance.getOwner());
+        return instance;
     }
 
     public JSONObject getService(String instanceId) throws IOException {
@@ -381,64 +655,400 @@ public class Client implements ApiClient {
     }
 
     public JSONArray getInstances(String workspaceId) throws IOException {
+        final JSONArray instances = new JSONArray();
+        visitInstances(workspaceId, new JsonArrayVisitor() {
+            @Override
+            public boolean visit(JSONObject instance) {
+                instances.element(instance);
+                return true;
+            }
+        });
 
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("Instances found for workspaceId[" + workspaceId + "]:" + instances);
+        }
+        return instances;
+    }
+
+    /**
+     * Reads the instances of the workspace from the response stream and passes them one at a time to the visitor,
+     * so only the instances kept by the visitor stay in memory.
+     */
+    public void visitInstances(final String workspaceId, final JsonArrayVisitor visitor) throws IOException {
         if (StringUtils.isBlank(workspaceId)) {
             throw new IOException("workspaceId cannot be blank");
         }
 
-        JSONArray instances = (JSONArray) doGet(
-                MessageFormat.format("/services/workspaces/{0}/instances", workspaceId), true);
+        doGet(MessageFormat.format("/services/workspaces/{0}/instances", workspaceId), new JsonArrayVisitor() {
+            @Override
+            public boolean visit(JSONObject instance) throws IOException {
+                instanceLocations.put(instance.optString("id", null), workspaceId);
+                return visitor.visit(instance);
+            }
+        });
+    }
 
-        if (LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.finest("Instances found for workspaceId[" + workspaceId + "]:" + instances);
+    /**
+     * Reads the summaries of the instances of the workspace from the response stream, skipping the rest of the
+     * instance documents.
+     */
+    public void visitInstanceSummaries(final String workspaceId, final InstanceSummary.Visitor visitor)
+            throws IOException {
+
+        if (StringUtils.isBlank(workspaceId)) {
+            throw new IOException("workspaceId cannot be blank");
         }
+
+        doGet(MessageFormat.format("/services/workspaces/{0}/instances", workspaceId),
+                new ResponseReader<Void>() {
+                    @Override
+                    public Void read(InputStream content) throws IOException {
+                        InstanceSummary.parseArray(content, new InstanceSummary.Visitor() {
+                            @Override
+                            public boolean visit(InstanceSummary instance) throws IOException {
+                                instanceLocations.put(instance.getId(), workspaceId);
+                                return visitor.visit(instance);
+                            }
+                        });
+                        return null;
+                    }
+                });
+    }
+
+    public List<InstanceSummary> getInstanceSummaries(String workspaceId) throws IOException {
+        final List<InstanceSummary> instances = new ArrayList<InstanceSummary>();
+        visitInstanceSummaries(workspaceId, new InstanceSummary.Visitor() {
+            @Override
+            public boolean visit(InstanceSummary instance) {
+                instances.add(instance);
+                return true;
+            }
+        });
         return instances;
     }
 
+    public List<InstanceSummary> getInstanceSummaries(String workspaceId, List<String> instanceIDs)
+            throws IOException {
+
+        return fetchInstanceSummaries(workspaceId, instanceIDs).getFound();
+    }
+
+    /**
+     * Gets the summaries of the specified instances of the workspace, see {@link #fetchInstances(String, Collection)}.
+     */
+    public MultiGetResult<InstanceSummary> fetchInstanceSummaries(String workspaceId, Collection<String> instanceIDs)
+            throws IOException {
+
+        return multiGet(workspaceId, instanceIDs, new BatchReader<InstanceSummary>() {
+            @Override
+            public List<InstanceSummary> read(String url) throws IOException {
+                final List<InstanceSummary> instances = new ArrayList<InstanceSummary>();
+                doGet(url, new ResponseReader<Void>() {
+                    @Override
+                    public Void read(InputStream content) throws IOException {
+                        InstanceSummary.parseArray(content, new InstanceSummary.Visitor() {
+                            @Override
+                            public boolean visit(InstanceSummary instance) {
+                                instances.add(instance);
+                                return true;
+                            }
+                        });
+                        return null;
+                    }
+                });
+                return instances;
+            }
+
+            @Override
+            public String getId(InstanceSummary instance) {
+                return instance.getId();
+            }
+        });
+    }
+
+    /**
+     * Gets the summaries of the specified instances from all the workspaces of the user.
+     */
+    public List<InstanceSummary> getInstanceSummaries(List<String> instanceIDs) throws IOException {
+        return multiGetFromAllWorkspaces(instanceIDs, new WorkspaceReader<InstanceSummary>() {
+            @Override
+            public MultiGetResult<InstanceSummary> read(String workspaceId, Collection<String> instanceIDs)
+                    throws IOException {
+
+                return fetchInstanceSummaries(workspaceId, instanceIDs);
+            }
+        });
+    }
+
     public JSONArray getInstances(String workspaceId, List<String> instanceIDs) throws IOException {
+        JSONArray instances = new JSONArray();
+        for (JSONObject instance : fetchInstances(workspaceId, instanceIDs).getFound()) {
+            instances.element(instance);
+        }
+        return instances;
+    }
+
+    /**
+     * Gets the specified instances of the workspace. The IDs are sent in batches that keep the URLs within
+     * {@link #MAX_URL_LENGTH} characters, and the batches are fetched in parallel.
+     *
+     * @return the instances found and the IDs of the instances that were not returned
+     */
+    public MultiGetResult<JSONObject> fetchInstances(String workspaceId, Collection<String> instanceIDs)
+            throws IOException {
+
+        return multiGet(workspaceId, instanceIDs, new BatchReader<JSONObject>() {
+            @Override
+            public List<JSONObject> read(String url) throws IOException {
+                final List<JSONObject> instances = new ArrayList<JSONObject>();
+                doGet(url, new JsonArrayVisitor() {
+                    @Override
+                    public boolean visit(JSONObject instance) {
+                        instances.add(instance);
+                        return true;
+                    }
+                });
+                return instances;
+            }
+
+            @Override
+            public String getId(JSONObject instance) {
+                return instance.getString("id");
+            }
+        });
+    }
+
+    private interface BatchReader<T> {
+        List<T> read(String url) throws IOException;
+
+        String getId(T item);
+    }
+
+    private <T> MultiGetResult<T> multiGet(String workspaceId, Collection<String> ids, final BatchReader<T> reader)
+            throws IOException {
+
         if (StringUtils.isBlank(workspaceId)) {
             throw new IOException("workspaceId cannot be blank");
         }
 
-        JSONArray instances = new JSONArray();
-        for (int start = 0; start < instanceIDs.size(); ) {
-            int end = Math.min(800, instanceIDs.size());
-            StringBuilder ids = new StringBuilder();
-            for (int i = start; i < end; i++) {
-                ids.append(instanceIDs.get(i)).append(',');
+        Set<String> requestedIds = new LinkedHashSet<String>(ids);
+        List<String> batchUrls = getBatchUrls(prepareUrl(MessageFormat.format(
+                "/services/workspaces/{0}/instances?ids=", URLEncoder.encode(workspaceId, Constants.UTF_8))),
+                requestedIds);
+
+        List<Callable<List<T>>> batchReads = new ArrayList<Callable<List<T>>>(batchUrls.size());
+        for (final String batchUrl : batchUrls) {
+            batchReads.add(new Callable<List<T>>() {
+                @Override
+                public List<T> call() throws IOException {
+                    return reader.read(batchUrl);
+                }
+            });
+        }
+        List<List<T>> batches = runInParallel(batchReads);
+
+        List<T> found = new ArrayList<T>(requestedIds.size());
+        Set<String> missingIds = new LinkedHashSet<String>(requestedIds);
+        for (List<T> batch : batches) {
+            for (T item : batch) {
+                String id = reader.getId(item);
+                if (missingIds.remove(id)) {
+                    found.add(item);
+                    instanceLocations.put(id, workspaceId);
+                }
+            }
+        }
+        for (String missingId : missingIds) {
+            instanceLocations.remove(missingId, workspaceId);
+        }
+        if (!missingIds.isEmpty() && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("Instances not found in workspace {0}: {1}", workspaceId, missingIds));
+        }
+        return new MultiGetResult<T>(found, missingIds);
+    }
+
+    /**
+     * Splits the IDs in batches so that the URL of each batch, the base URL followed by the comma separated IDs,
+     * has at most {@link #MAX_URL_LENGTH} characters and {@link #MAX_BATCH_SIZE} IDs.
+     */
+    static List<String> getBatchUrls(String baseUrl, Collection<String> ids) throws IOException {
+        List<String> batchUrls = new ArrayList<String>();
+        StringBuilder batchUrl = new StringBuilder(baseUrl);
+        int batchSize = 0;
+        for (String id : ids) {
+            String encodedId = URLEncoder.encode(id, Constants.UTF_8);
+            int length = batchUrl.length() + (batchSize > 0 ? 1 : 0) + encodedId.length();
+            if (batchSize > 0 && (length > MAX_URL_LENGTH || batchSize == MAX_BATCH_SIZE)) {
+                batchUrls.add(batchUrl.toString());
+                batchUrl.setLength(baseUrl.length());
+                batchSize = 0;
+            }
+            if (batchSize > 0) {
+                batchUrl.append(',');
             }
-            instances.addAll((JSONArray) doGet(
-                    MessageFormat.format("/services/workspaces/{0}/instances?ids={1}",
-                            workspaceId, ids.toString()), true));
-            start = end;
+            batchUrl.append(encodedId);
+            batchSize++;
         }
+        if (batchSize > 0) {
+            batchUrls.add(batchUrl.toString());
+        }
+        return batchUrls;
+    }
 
-        return instances;
+    /**
+     * Runs the tasks in parallel and returns their results in the same order. The first task runs in the calling
+     * thread and the others in the batch executor, keeping the request priority and deadline of the calling thread.
+     */
+    private static <T> List<T> runInParallel(List<? extends Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+
+        final RequestLimiter.Priority priority = RequestLimiter.getCurrentPriority();
+        final Deadline deadline = Deadline.getCurrent();
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size() - 1);
+        try {
+            for (final Callable<T> task : tasks.subList(1, tasks.size())) {
+                futures.add(batchExecutor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        RequestLimiter.Priority previousPriority = RequestLimiter.setCurrentPriority(priority);
+                        Deadline previousDeadline = Deadline.setCurrent(deadline);
+                        try {
+                            return task.call();
+                        } finally {
+                            Deadline.restore(previousDeadline);
+                            RequestLimiter.setCurrentPriority(previousPriority);
+                        }
+                    }
+                }));
+            }
+
+            results.add(tasks.get(0).call());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for parallel requests");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof ClientException) {
+                throw new ClientException(cause.getMessage(), ((ClientException) cause).getStatusCode());
+            }
+            throw new IOException("Error in parallel request: " + cause.getMessage(), cause);
+        } catch (IOException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Error in parallel request: " + ex.getMessage(), ex);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
     }
 
+    /**
+     * Returns an exception to rethrow in the current thread for the failure of a request sent by another thread.
+     */
+    private static IOException toIOException(String url, Throwable cause) {
+        if (cause instanceof ClientException) {
+            return new ClientException(cause.getMessage(), ((ClientException) cause).getStatusCode());
+        }
+        return new IOException(MessageFormat.format("Error while getting {0}: {1}", url, cause.getMessage()), cause);
+    }
+
+    /**
+     * Gets the specified instances from all the workspaces of the user.
+     */
     public JSONArray getInstances(List<String> instanceIDs) throws IOException {
         JSONArray instances = new JSONArray();
-        Set<String> fetchedInstanceIDs = new HashSet<String>();
-        JSONArray workspaces = getWorkspaces();
-        for (Object workspace : workspaces) {
-            JSONArray workspaceInstances = getInstances(((JSONObject) workspace).getString("id"), instanceIDs);
-            for (Object instance : workspaceInstances) {
-                String instanceId = ((JSONObject) instance).getString("id");
-                instanceIDs.remove(instanceId);
-                if (!fetchedInstanceIDs.contains(instanceId)) {
-                    instances.add(instance);
-                    fetchedInstanceIDs.add(instanceId);
-                }
+        for (JSONObject instance : multiGetFromAllWorkspaces(instanceIDs, new WorkspaceReader<JSONObject>() {
+            @Override
+            public MultiGetResult<JSONObject> read(String workspaceId, Collection<String> instanceIDs)
+                    throws IOException {
+
+                return fetchInstances(workspaceId, instanceIDs);
             }
+        })) {
+            instances.element(instance);
+        }
+        return instances;
+    }
 
-            if (instanceIDs.isEmpty()) {
-                break;
+    private interface WorkspaceReader<T> {
+        MultiGetResult<T> read(String workspaceId, Collection<String> instanceIDs) throws IOException;
+    }
+
+    /**
+     * Gets instances that can be in any workspace. The instances of known workspace are requested to their
+     * workspaces in parallel, the rest are looked for in all the workspaces of the user until all of them are found.
+     */
+    private <T> List<T> multiGetFromAllWorkspaces(Collection<String> instanceIDs, final WorkspaceReader<T> reader)
+            throws IOException {
+
+        List<T> instances = new ArrayList<T>();
+        Set<String> unknownInstanceIDs = new LinkedHashSet<String>();
+        Map<String, List<String>> instanceIDsByWorkspace =
+                instanceLocations.groupByWorkspace(new LinkedHashSet<String>(instanceIDs), unknownInstanceIDs);
+
+        List<Callable<MultiGetResult<T>>> workspaceReads = new ArrayList<Callable<MultiGetResult<T>>>();
+        for (final Map.Entry<String, List<String>> entry : instanceIDsByWorkspace.entrySet()) {
+            workspaceReads.add(new Callable<MultiGetResult<T>>() {
+                @Override
+                public MultiGetResult<T> call() throws IOException {
+                    try {
+                        return reader.read(entry.getKey(), entry.getValue());
+                    } catch (ClientException ex) {
+                        if (ex.getStatusCode() != HttpStatus.SC_NOT_FOUND
+                                && ex.getStatusCode() != HttpStatus.SC_FORBIDDEN) {
+                            throw ex;
+                        }
+                        instanceLocations.removeWorkspace(entry.getKey());
+                        return new MultiGetResult<T>(Collections.<T>emptyList(),
+                                new LinkedHashSet<String>(entry.getValue()));
+                    }
+                }
+            });
+        }
+        for (MultiGetResult<T> result : runInParallel(workspaceReads)) {
+            instances.addAll(result.getFound());
+            unknownInstanceIDs.addAll(result.getMissingIds());
+        }
+
+        if (!unknownInstanceIDs.isEmpty()) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(MessageFormat.format("Looking for instances {0} in all workspaces", unknownInstanceIDs));
+            }
+            for (Object workspace : getWorkspaces()) {
+                MultiGetResult<T> result = reader.read(((JSONObject) workspace).getString("id"), unknownInstanceIDs);
+                instances.addAll(result.getFound());
+                unknownInstanceIDs = new LinkedHashSet<String>(result.getMissingIds());
+                if (unknownInstanceIDs.isEmpty()) {
+                    break;
+                }
             }
         }
 
         return instances;
     }
 
+    /**
+     * Removes the instance from the location index if the request for it failed because it does not exist or the
+     * user cannot access it anymore.
+     */
+    private void forgetInstanceLocation(String instanceId, ClientException ex) {
+        if (ex.getStatusCode() == HttpStatus.SC_NOT_FOUND || ex.getStatusCode() == HttpStatus.SC_FORBIDDEN) {
+            instanceLocations.remove(instanceId);
+        }
+    }
+
+    public InstanceLocationIndex getInstanceLocations() {
+        return instanceLocations;
+    }
+
     public JSONArray getBoxStack(String boxId) throws IOException {
         return (JSONArray) doGet(MessageFormat.format("/services/boxes/{0}/stack", boxId), true);
     }
@@ -495,6 +1105,8 @@ public class Client implements ApiClient {
             }
             JSONArray instanceVariables = instance.getJSONArray("variables");
             List<JSONObject> newVariables = new ArrayList<JSONObject>();
+            List<JSONObject> fileVariables = new ArrayList<JSONObject>();
+            List<JSONObject> fileInstanceVariables = new ArrayList<JSONObject>();
             for (Object variable : variables) {
                 JSONObject variableJson = (JSONObject) variable;
                 JSONObject instanceVariable = findVariable(variableJson, instanceVariables);
@@ -510,8 +1122,12 @@ public class Client implements ApiClient {
                 }
                 if (instanceVariable != null) {
                     if ("File".equals(variableJson.getString("type"))) {
-                        uploadFileVariable(variableJson);
-                    } else if (Constants.BINDING_TYPE_VARIABLE.equals(
+                        // the value is set once the file is uploaded
+                        fileVariables.add(variableJson);
+                        fileInstanceVariables.add(instanceVariable);
+                        continue;
+                    }
+                    if (Constants.BINDING_TYPE_VARIABLE.equals(
                             variableJson.getString("type")) && variableJson.containsKey("tags")) {
 
                         instanceVariable.put("tags", variableJson.getJSONArray("tags"));
@@ -522,6 +1138,10 @@ public class Client implements ApiClient {
                     }
                 }
             }
+            uploadFileVariables(fileVariables);
+            for (int i = 0; i < fileVariables.size(); i++) {
+                fileInstanceVariables.get(i).put("value", fileVariables.get(i).getString("value"));
+            }
             instanceVariables.addAll(newVariables);
             instance.put("variables", instanceVariables);
         }
@@ -593,8 +1213,24 @@ public class Client implements ApiClient {
             throw new IOException(MessageFormat.format("Invalid file URI specified for variable {0}: {1}",
                     fileVariable.getString("name"), value), ex);
         }
-        JSONObject blobInfo = uploadFile(fileUri, null);
-        fileVariable.put("value", blobInfo.getString("url"));
+        fileVariable.put("value", uploadFile(fileUri, null));
+    }
+
+    /**
+     * Uploads the files of the variables in parallel and replaces their values with the URLs of the blobs.
+     */
+    private void uploadFileVariables(List<JSONObject> fileVariables) throws IOException {
+        List<Callable<Void>> uploads = new ArrayList<Callable<Void>>(fileVariables.size());
+        for (final JSONObject fileVariable : fileVariables) {
+            uploads.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    uploadFileVariable(fileVariable);
+                    return null;
+                }
+            });
+        }
+        runInParallel(uploads);
     }
 
     public JSONObject updateBox(String boxId, JSONArray variables) throws IOException {
@@ -612,6 +1248,8 @@ public class Client implements ApiClient {
             }
             JSONArray existingVariables = box.getJSONArray("variables");
             List<JSONObject> newVariables = new ArrayList<JSONObject>();
+            List<JSONObject> fileVariables = new ArrayList<JSONObject>();
+            List<JSONObject> fileBoxVariables = new ArrayList<JSONObject>();
             for (Object variable : variables) {
                 JSONObject variableJson = (JSONObject) variable;
                 JSONObject instanceVariable = findVariable(variableJson, existingVariables);
@@ -627,11 +1265,17 @@ public class Client implements ApiClient {
                 }
                 if (instanceVariable != null) {
                     if ("File".equals(variableJson.getString("type"))) {
-                        uploadFileVariable(variableJson);
+                        fileVariables.add(variableJson);
+                        fileBoxVariables.add(instanceVariable);
+                    } else {
+                        instanceVariable.put("value", variableJson.getString("value"));
                     }
-                    instanceVariable.put("value", variableJson.getString("value"));
                 }
             }
+            uploadFileVariables(fileVariables);
+            for (int i = 0; i < fileVariables.size(); i++) {
+                fileBoxVariables.get(i).put("value", fileVariables.get(i).getString("value"));
+            }
             existingVariables.addAll(newVariables);
             box.put("variables", existingVariables);
         }
@@ -671,6 +1315,18 @@ public class Client implements ApiClient {
             this.operations = operations;
         }
 
+        @Override
+        public void waitForDone(int timeout)
+                throws IProgressMonitor.IncompleteException, IOException, InterruptedException {
+
+            getInstancePoller().waitForDone(this, timeout);
+        }
+
+        @Override
+        public CompletableFuture<Void> whenDone(int timeout) {
+            return getInstancePoller().whenDone(this, timeout);
+        }
+
         public boolean isDone(JSONObject instance) throws IProgressMonitor.IncompleteException, IOException {
             String updated = instance.getString("updated");
             String state = instance.getString("state");
@@ -757,18 +1413,35 @@ public class Client implements ApiClient {
                                    String expirationOperation, JSONArray policyVariables, String automaticUpdates)
             throws IOException {
 
+        JSONObject instance = deployInstance(boxVersion, policyId, instanceName, workspaceId, tags, variables,
+                expirationTime, expirationOperation, policyVariables, automaticUpdates);
+        return getDeployProgressMonitor(instance);
+    }
+
+    /**
+     * Requests the deployment of an instance like {@link #deploy(String, String, String, String, List, JSONArray,
+     * String, String, JSONArray, String)} and returns the instance document of the response, so the caller can record
+     * the new instance before it is listed.
+     */
+    public JSONObject deployInstance(String boxVersion, String policyId, String instanceName, String workspaceId,
+                                     List<String> tags, JSONArray variables, String expirationTime,
+                                     String expirationOperation, JSONArray policyVariables, String automaticUpdates)
+            throws IOException {
+
         JSONObject box = new JSONObject();
         box.put("id", boxVersion);
 
+        List<JSONObject> fileVariables = new ArrayList<JSONObject>();
         for (Object json : variables) {
             JSONObject variable = (JSONObject) json;
             if (variable.containsKey("scope") && variable.getString("scope").isEmpty()) {
                 variable.remove("scope");
             }
             if ("File".equals(variable.getString("type"))) {
-                uploadFileVariable(variable);
+                fileVariables.add(variable);
             }
         }
+        uploadFileVariables(fileVariables);
 
         box.put("variables", variables);
         JSONObject policyBox = new JSONObject();
@@ -806,11 +1479,28 @@ public class Client implements ApiClient {
         deployRequest.put("instance_tags", instanceTags);
 
         JSONObject instance = doPost("/services/instances", deployRequest, false);
+        instanceLocations.put(instance.optString("id", null), instance.optString("owner", null));
+        return instance;
+    }
 
+    /**
+     * Returns a monitor of the deployment of an instance requested by {@link #deployInstance(String, String, String,
+     * String, List, JSONArray, String, String, JSONArray, String)}.
+     */
+    public IProgressMonitor getDeployProgressMonitor(JSONObject instance) {
         return new InstanceProgressMonitor(endpointUrl + instance.getString("uri"),
                 Collections.singleton(InstanceOperation.DEPLOY), instance.getString("updated"));
     }
 
+    /**
+     * Returns a monitor of the deployment of an instance that was requested before, for instance by a previous run of
+     * the plugin, the deployment is done when the instance reaches a finish state.
+     */
+    public IProgressMonitor getDeployProgressMonitor(String instanceUrl) {
+        return new InstanceProgressMonitor(instanceUrl, Collections.singleton(InstanceOperation.DEPLOY),
+                StringUtils.EMPTY);
+    }
+
     public IProgressMonitor reconfigure(String instanceId, JSONArray variables) throws IOException {
         JSONObject instance = doOperation(instanceId, InstanceOperation.RECONFIGURE, variables);
         return new InstanceProgressMonitor(getInstanceUrl(instanceId),
@@ -929,12 +1619,107 @@ public class Client implements ApiClient {
     }
 
     public JSON doGet(String url, boolean isArray) throws IOException {
+        HttpEntity entity = getEntity(prepareUrl(url));
+        try {
+            String body = entity != null ? EntityUtils.toString(entity) : null;
+            return isArray ? JSONArray.fromObject(body) : JSONObject.fromObject(body);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error while getting response data.", e);
+        }
+    }
+
+    /**
+     * Gets the buffered entity of the specified resource. Concurrent requests for the same resource share a single
+     * GET request, the threads that arrive while it is in flight wait for its response.
+     */
+    private HttpEntity getEntity(String url) throws IOException {
+        CompletableFuture<HttpEntity> entity = new CompletableFuture<HttpEntity>();
+        CompletableFuture<HttpEntity> inFlightEntity = inFlightGets.putIfAbsent(url, entity);
+        if (inFlightEntity != null) {
+            coalescedGets.incrementAndGet();
+            return awaitEntity(url, inFlightEntity);
+        }
+
+        HttpGet get = new HttpGet(url);
+        get.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+        try {
+            HttpEntity responseEntity = execute(get).getEntity();
+            HttpEntity bufferedEntity = responseEntity != null ? new BufferedHttpEntity(responseEntity) : null;
+            entity.complete(bufferedEntity);
+            return bufferedEntity;
+        } catch (IOException | RuntimeException e) {
+            entity.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightGets.remove(url, entity);
+            get.reset();
+        }
+    }
+
+    private static HttpEntity awaitEntity(String url, CompletableFuture<HttpEntity> inFlightEntity)
+            throws IOException {
+
+        // the request in flight was sent with the deadline of another thread, this thread waits only until its own
+        Deadline deadline = Deadline.getCurrent();
+        try {
+            if (deadline == null) {
+                return inFlightEntity.get();
+            }
+            deadline.check(MessageFormat.format("wait for {0}", url));
+            return inFlightEntity.get(deadline.getRemaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(MessageFormat.format("Interrupted while waiting for {0}", url));
+        } catch (TimeoutException ex) {
+            throw new InterruptedIOException(MessageFormat.format("Deadline exceeded while waiting for {0}", url));
+        } catch (ExecutionException ex) {
+            throw toIOException(url, ex.getCause());
+        }
+    }
+
+    /**
+     * Returns the number of GET requests that were not sent because an identical request was already in flight.
+     */
+    public long getCoalescedGets() {
+        return coalescedGets.get();
+    }
+
+    /**
+     * Gets a JSON array and passes its elements to the visitor while the response is read.
+     */
+    public void doGet(String url, final JsonArrayVisitor visitor) throws IOException {
+        String preparedUrl = prepareUrl(url);
+        if (URI.create(preparedUrl).getPath().endsWith(WORKSPACES_PATH)) {
+            // the workspace listing is small and often requested at the same time by several form fields, it is
+            // buffered to share it instead of being streamed, the box listings can be large and are streamed
+            HttpEntity entity = getEntity(preparedUrl);
+            if (entity == null) {
+                throw new IOException("Error while getting response data, the response is empty.");
+            }
+            JsonStreamParser.parseArray(entity.getContent(), visitor);
+            return;
+        }
+
+        doGet(url, new ResponseReader<Void>() {
+            @Override
+            public Void read(InputStream content) throws IOException {
+                JsonStreamParser.parseArray(content, visitor);
+                return null;
+            }
+        });
+    }
+
+    private <T> T doGet(String url, ResponseReader<T> reader) throws IOException {
         HttpGet get = new HttpGet(prepareUrl(url));
         get.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
         try {
-            HttpResponse response = execute(get);
-            return isArray ? JSONArray.fromObject(getResponseBodyAsString(response))
-                    : JSONObject.fromObject(getResponseBodyAsString(response));
+            HttpEntity entity = execute(get).getEntity();
+            if (entity == null) {
+                throw new IOException("Error while getting response data, the response is empty.");
+            }
+            return reader.read(entity.getContent());
         } catch (IOException e) {
             throw e;
         } catch (Exception e) {
@@ -944,6 +1729,10 @@ public class Client implements ApiClient {
         }
     }
 
+    private interface ResponseReader<T> {
+        T read(InputStream content) throws IOException;
+    }
+
     public <T extends JSON> T doPost(String url, JSONObject resource, boolean isArray) throws IOException {
         HttpPost post = new HttpPost(prepareUrl(url));
         post.setEntity(new StringEntity(resource.toString(), ContentType.APPLICATION_JSON));
@@ -1103,111 +1892,337 @@ public class Client implements ApiClient {
         return error != null && error.containsKey("message") ? error.getString("message") : errorResponseBody;
     }
 
-    private void setRequiredHeaders(HttpRequestBase request) {
-        request.setHeader("ElasticBox-Token", token);
+    /**
+     * Checks whether the response of the request can be served from the response cache. Only the resources that
+     * rarely change are cached: workspaces, boxes, box versions and box stacks.
+     */
+    protected boolean isCacheable(HttpRequestBase request) {
+        return responseCache != null && HttpGet.METHOD_NAME.equals(request.getMethod())
+                && request.getURI().getQuery() == null
+                && CACHEABLE_PATH_PATTERN.matcher(request.getURI().getPath()).find();
+    }
+
+    private void setRequiredHeaders(HttpRequestBase request, String requestToken) {
+        request.setHeader("ElasticBox-Token", requestToken);
         request.setHeader("ElasticBox-Release", Constants.ELASTICBOX_RELEASE);
     }
 
+    private String acquireToken() throws IOException {
+        if (tokenManager != null) {
+            token = tokenManager.getToken();
+            return token;
+        }
+
+        String requestToken = token;
+        if (requestToken == null) {
+            if (username != null) {
+                return renewToken(null);
+            }
+            connect();
+            requestToken = token;
+        }
+        return requestToken;
+    }
+
+    /**
+     * Gets a new token after the specified one has been rejected. Only the first of the requests rejected with the
+     * same token gets a new one, the others use it.
+     *
+     * @return the new token, or null if there is no other token to retry the request with
+     */
+    private String renewToken(String rejectedToken) throws IOException {
+        if (tokenManager != null) {
+            tokenManager.invalidate(rejectedToken);
+            String newToken = tokenManager.getToken();
+            token = newToken;
+            return newToken.equals(rejectedToken) ? null : newToken;
+        }
+
+        if (username == null) {
+            return null;
+        }
+        synchronized (connectLock) {
+            String currentToken = token;
+            if (currentToken != null && !currentToken.equals(rejectedToken)) {
+                return currentToken;
+            }
+            token = null;
+            connect();
+            return token;
+        }
+    }
+
     public static String getResponseBodyAsString(HttpResponse response) throws IOException {
         HttpEntity entity = response.getEntity();
         return entity != null ? EntityUtils.toString(entity) : null;
     }
 
+    /**
+     * Sends the request and returns the successful response. Failed requests are sent again as allowed by the retry
+     * policy of the client, and no request is sent while the circuit breaker of the endpoint is open.
+     *
+     * @throws ClientException if the response has an error status or the circuit breaker is open
+     */
     protected HttpResponse execute(HttpRequestBase request) throws IOException {
-        if (token == null) {
-            connect();
+        RetryPolicy policy = retryPolicy;
+        for (int attempt = 0; ; attempt++) {
+            HttpResponse response;
+            try {
+                response = executeOnce(request);
+            } catch (ClientException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                if (!policy.shouldRetry(request, attempt, ex)) {
+                    throw ex;
+                }
+                waitBeforeRetry(request, policy.getDelay(attempt, null), ex.toString());
+                continue;
+            }
+
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= 200 && status <= 299) {
+                return response;
+            }
+            if (policy.shouldRetry(request, attempt, status)) {
+                long delay = policy.getDelay(attempt, response);
+                EntityUtils.consumeQuietly(response.getEntity());
+                waitBeforeRetry(request, delay, response.getStatusLine().toString());
+                continue;
+            }
+            throw new ClientException(getErrorMessage(getResponseBodyAsString(response)), status);
         }
-        setRequiredHeaders(request);
-        HttpResponse response = httpClient.execute(request);
-        int status = response.getStatusLine().getStatusCode();
-        if (status == HttpStatus.SC_UNAUTHORIZED) {
-            if (username != null) {
-                token = null;
+    }
+
+    private HttpResponse executeOnce(HttpRequestBase request) throws IOException {
+        String requestToken = acquireToken();
+        ResponseCache cache = isCacheable(request) ? responseCache : null;
+        setRequiredHeaders(request, requestToken);
+        if (cache != null) {
+            cache.prepare(requestToken, request);
+        }
+        HttpResponse response = send(request);
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+            String newToken = renewToken(requestToken);
+            if (newToken != null) {
+                requestToken = newToken;
                 EntityUtils.consumeQuietly(response.getEntity());
                 request.reset();
-                connect();
-                setRequiredHeaders(request);
-                response = httpClient.execute(request);
+                setRequiredHeaders(request, requestToken);
+                if (cache != null) {
+                    cache.prepare(requestToken, request);
+                }
+                response = send(request);
             }
-            status = response.getStatusLine().getStatusCode();
         }
-        if (status < 200 || status > 299) {
-            if (username != null) {
-                token = null;
-            }
-            throw new ClientException(getErrorMessage(getResponseBodyAsString(response)), status);
+        if (cache != null) {
+            response = cache.process(requestToken, request, response);
         }
-
         return response;
     }
 
-    @CheckForNull
-    public static synchronized HttpClient getHttpClientInstance() {
-        if (httpClient == null) {
-            LOGGER.warning("An attempt to re-configure a httpClient after constructor was made" );
-            return getHttpClient(httpClientProxy);
+    private static void waitBeforeRetry(HttpRequestBase request, long delay, String cause)
+            throws InterruptedIOException {
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("Retrying {0} {1} in {2} ms after {3}", request.getMethod(),
+                    request.getURI(), delay, cause));
+        }
+        request.reset();
+        Deadline deadline = Deadline.getCurrent();
+        if (deadline != null && deadline.getRemaining(TimeUnit.MILLISECONDS) <= delay) {
+            throw new InterruptedIOException(MessageFormat.format("Deadline exceeded, cannot retry {0} {1} after {2}",
+                    request.getMethod(), request.getURI(), cause));
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(MessageFormat.format("Interrupted while waiting to retry {0} {1}",
+                    request.getMethod(), request.getURI()));
         }
-        return httpClient;
     }
 
-    private static synchronized HttpClient getHttpClient(HttpProxy httpProxy) {
-        if (httpClient == null) {
-
-            HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
+    /**
+     * Sends the request once through the circuit breaker of the endpoint, recording whether the endpoint answered.
+     * The timeouts of the request are shortened to the deadline of the current thread and the request is aborted if
+     * the deadline passes before the response is received.
+     */
+    private HttpResponse send(final HttpRequestBase request) throws IOException {
+        Deadline deadline = Deadline.getCurrent();
+        if (deadline != null) {
+            deadline.check(MessageFormat.format("send {0} {1}", request.getMethod(), request.getURI()));
+        }
+        circuitBreaker.acquirePermission();
+        RequestLimiter limiter = requestLimiter;
+        if (limiter != null) {
             try {
+                if (deadline != null) {
+                    limiter.acquire(getRequestPriority(), deadline.getRemaining(TimeUnit.MILLISECONDS));
+                } else {
+                    limiter.acquire(getRequestPriority());
+                }
+            } catch (IOException ex) {
+                circuitBreaker.releasePermission();
+                throw ex;
+            }
+        }
 
-                SSLContext sslContext = new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
-                    @Override
-                    public boolean isTrusted(X509Certificate[] x509Certificates, String authType)
-                            throws CertificateException {
+        ScheduledFuture<?> abortTask = null;
+        if (deadline != null) {
+            request.setConfig(getRequestConfig(request, deadline));
+            abortTask = deadlineTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    request.abort();
+                }
+            }, deadline.getRemaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+        ClientMetrics.OperationMetrics operationMetrics = metrics.getOperationMetrics(request);
+        operationMetrics.requestStarted();
+        long startTime = System.currentTimeMillis();
+        HttpResponse response;
+        try {
+            response = httpClient.execute(request);
+        } catch (IOException | RuntimeException ex) {
+            if (abortTask != null) {
+                abortTask.cancel(false);
+            }
+            operationMetrics.requestCompleted(System.currentTimeMillis() - startTime, -1);
+            boolean endpointFailed = !(ex instanceof InterruptedIOException)
+                    || ex instanceof SocketTimeoutException || ex instanceof ConnectTimeoutException;
+            if (ex instanceof ConnectionPoolTimeoutException || request.isAborted()) {
+                endpointFailed = false;
+            }
+            if (endpointFailed) {
+                circuitBreaker.recordFailure();
+                if (limiter != null) {
+                    limiter.release(System.currentTimeMillis() - startTime, -1);
+                }
+            } else {
+                circuitBreaker.releasePermission();
+                if (limiter != null) {
+                    limiter.cancel();
+                }
+            }
+            if (deadline != null && deadline.isExpired()) {
+                InterruptedIOException deadlineException = new InterruptedIOException(MessageFormat.format(
+                        "Deadline exceeded while waiting for the response of {0} {1}", request.getMethod(),
+                        request.getURI()));
+                deadlineException.initCause(ex);
+                throw deadlineException;
+            }
+            throw ex;
+        }
 
-                        return true;
-                    }
-                    }).build();
+        if (abortTask != null) {
+            if (response.getEntity() != null) {
+                // the request is aborted if the body is still being read when the deadline passes
+                response.setEntity(new DeadlineEntity(response.getEntity(), abortTask));
+            } else {
+                abortTask.cancel(false);
+            }
+        }
+        int status = response.getStatusLine().getStatusCode();
+        long latency = System.currentTimeMillis() - startTime;
+        operationMetrics.requestCompleted(latency, status);
+        if (limiter != null) {
+            limiter.release(latency, status);
+        }
+        if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordSuccess();
+        }
+        return response;
+    }
 
-                httpClientBuilder.setSSLContext(sslContext);
+    /**
+     * Returns the configuration of the request with timeouts that do not go beyond the deadline.
+     */
+    private RequestConfig getRequestConfig(HttpRequestBase request, Deadline deadline) {
+        RequestConfig config = request.getConfig();
+        if (config == null) {
+            config = connectionPool.getSettings().getRequestConfig();
+        }
+        int remaining = (int) Math.min(Integer.MAX_VALUE, Math.max(1, deadline.getRemaining(TimeUnit.MILLISECONDS)));
+        return RequestConfig.copy(config)
+                .setConnectTimeout(shortenTimeout(config.getConnectTimeout(), remaining))
+                .setSocketTimeout(shortenTimeout(config.getSocketTimeout(), remaining))
+                .setConnectionRequestTimeout(shortenTimeout(config.getConnectionRequestTimeout(), remaining))
+                .build();
+    }
 
-                SSLConnectionSocketFactory sslConnectionSocketFactory =
-                        new SSLConnectionSocketFactory(sslContext, new NoopHostnameVerifier());
+    private static int shortenTimeout(int timeout, int remaining) {
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
+    }
 
-                Registry<ConnectionSocketFactory> socketFactoryRegistry =
-                        RegistryBuilder.<ConnectionSocketFactory>create()
-                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                        .register("https", sslConnectionSocketFactory).build();
+    /**
+     * Response entity that cancels the deadline abort of its request once its content is read or closed.
+     */
+    private static final class DeadlineEntity extends HttpEntityWrapper {
+        private final ScheduledFuture<?> abortTask;
 
-                PoolingHttpClientConnectionManager connectionManager =
-                        new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        private DeadlineEntity(HttpEntity entity, ScheduledFuture<?> abortTask) {
+            super(entity);
+            this.abortTask = abortTask;
+        }
 
-                httpClientBuilder.setConnectionManager(connectionManager);
+        @Override
+        public InputStream getContent() throws IOException {
+            return new EofSensorInputStream(super.getContent(), new EofSensorWatcher() {
+                @Override
+                public boolean eofDetected(InputStream wrapped) {
+                    abortTask.cancel(false);
+                    return true;
+                }
 
-                if (httpProxy != null) {
-                    if ( (!StringUtils.isBlank(httpProxy.host)) && (httpProxy.port != 0) ) {
-                        httpClientProxy = httpProxy;
-                        LOGGER.info("Proxy configured for connection through " + httpProxy.host + ":" + httpProxy.port);
-                        HttpHost proxyHostObject = new HttpHost(httpProxy.host, httpProxy.port);
-                        httpClientBuilder.setProxy(proxyHostObject);
+                @Override
+                public boolean streamClosed(InputStream wrapped) {
+                    abortTask.cancel(false);
+                    return true;
+                }
 
-                        if (!StringUtils.isBlank(httpProxy.getUser()) && !StringUtils.isBlank(httpProxy.getPwrd())) {
-                            LOGGER.info("Proxy configured with credentials for " + httpProxy.getUser());
-                            CredentialsProvider credsProvider = new BasicCredentialsProvider();
-                            credsProvider.setCredentials(new AuthScope(httpProxy.host, httpProxy.port),
-                                    new UsernamePasswordCredentials(httpProxy.getUser(), httpProxy.getPwrd()));
-                            httpClientBuilder.setDefaultCredentialsProvider(credsProvider);
-                        }
-                    } else {
-                        LOGGER.warning("Misconfigured Jenkins proxy data. No proxy assumed." );
-                    }
+                @Override
+                public boolean streamAbort(InputStream wrapped) {
+                    abortTask.cancel(false);
+                    return true;
                 }
+            });
+        }
 
-                httpClient = httpClientBuilder.build();
-            } catch (Exception ex) {
-                LOGGER.log(Level.WARNING, "Error while configuring httpClientBuilder.", ex);
-                httpClient = httpClientBuilder.build();
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            try {
+                super.writeTo(output);
+            } finally {
+                abortTask.cancel(false);
             }
+        }
+    }
+
+    /**
+     * Returns the priority of the requests sent by the current thread, see {@link RequestLimiter}.
+     */
+    protected RequestLimiter.Priority getRequestPriority() {
+        RequestLimiter.Priority priority = RequestLimiter.getCurrentPriority();
+        return priority != null ? priority : RequestLimiter.Priority.NORMAL;
+    }
+
+    @CheckForNull
+    public static synchronized HttpClient getHttpClientInstance() {
+        if (defaultConnectionPool == null) {
+            LOGGER.warning("An attempt to re-configure a httpClient after constructor was made" );
+            return getDefaultConnectionPool(null).getHttpClient();
+        }
+        return defaultConnectionPool.getHttpClient();
+    }
 
+    private static synchronized ConnectionPool getDefaultConnectionPool(HttpProxy httpProxy) {
+        if (defaultConnectionPool == null) {
+            defaultConnectionPool = new ConnectionPool(new ConnectionPool.Settings(), httpProxy);
         }
 
-        return httpClient;
+        return defaultConnectionPool;
     }
 
     public static class HttpProxy {
@@ -1235,6 +2250,24 @@ public class Client implements ApiClient {
             this.pwrd = pwrd;
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof HttpProxy)) {
+                return false;
+            }
+            HttpProxy other = (HttpProxy) obj;
+            return port == other.port && StringUtils.equals(host, other.host) && StringUtils.equals(user, other.user)
+                    && StringUtils.equals(pwrd, other.pwrd);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (host != null ? host.hashCode() : 0) + port;
+        }
+
     }
 
 }
@@ -0,0 +1,329 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Latency, throughput, status code and in-flight metrics of the requests sent to one ElasticBox cloud. The metrics
+ * are kept per HTTP method and logical operation, the operation is derived from the path of the request.
+ */
+public class ClientMetrics {
+
+    /**
+     * Upper bounds in milliseconds of the buckets of the latency histograms, the last bucket has no upper bound.
+     */
+    static final long[] LATENCY_BUCKETS = {
+        10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000
+    };
+
+    private static final String[][] OPERATIONS = {
+        {"GET", "/services/workspaces", "getWorkspaces"},
+        {"POST", "/services/workspaces", "createWorkspace"},
+        {"GET", "/services/workspaces/[^/]+/boxes", "getBoxes"},
+        {"GET", "/services/workspaces/[^/]+/instances", "getInstances"},
+        {"GET", "/services/workspaces/[^/]+/providers", "getProviders"},
+        {"POST", "/services/boxes", "createBox"},
+        {"GET", "/services/boxes/[^/]+", "getBox"},
+        {"PUT", "/services/boxes/[^/]+", "updateBox"},
+        {"DELETE", "/services/boxes/[^/]+", "deleteBox"},
+        {"GET", "/services/boxes/[^/]+/stack", "getBoxStack"},
+        {"GET", "/services/boxes/[^/]+/versions", "getBoxVersions"},
+        {"POST", "/services/instances", "deploy"},
+        {"GET", "/services/instances/[^/]+", "getInstance"},
+        {"PUT", "/services/instances/[^/]+", "updateInstance"},
+        {"DELETE", "/services/instances/[^/]+", "terminate"},
+        {"GET", "/services/instances/[^/]+/service", "getService"},
+        {"PUT", "/services/instances/[^/]+/([a-z_]+)", "$1"},
+        {"POST", "/services/providers", "createProvider"},
+        {"GET", "/services/providers/[^/]+", "getProvider"},
+        {"PUT", "/services/providers/[^/]+/sync", "syncProvider"},
+        {"POST", "/services/blobs/upload", "uploadBlob"},
+        {"POST", "/services/tokens", "createToken"}
+    };
+
+    private static final List<OperationPattern> OPERATION_PATTERNS = new ArrayList<OperationPattern>();
+
+    static {
+        for (String[] operation : OPERATIONS) {
+            OPERATION_PATTERNS.add(new OperationPattern(operation[0], operation[1], operation[2]));
+        }
+    }
+
+    private static final class OperationPattern {
+        private final String method;
+        private final Pattern pathPattern;
+        private final String operation;
+
+        private OperationPattern(String method, String pathPattern, String operation) {
+            this.method = method;
+            this.pathPattern = Pattern.compile(pathPattern);
+            this.operation = operation;
+        }
+    }
+
+    private final ConcurrentHashMap<String, OperationMetrics> operations =
+            new ConcurrentHashMap<String, OperationMetrics>();
+
+    /**
+     * Returns the logical operation of the request, or the path of the request if it is not a known operation.
+     */
+    static String getOperation(String method, String path) {
+        for (OperationPattern operationPattern : OPERATION_PATTERNS) {
+            if (operationPattern.method.equals(method)) {
+                Matcher matcher = operationPattern.pathPattern.matcher(path);
+                if (matcher.matches()) {
+                    return matcher.groupCount() > 0
+                            ? matcher.replaceFirst(operationPattern.operation) : operationPattern.operation;
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Returns the metrics of the operation of the request.
+     */
+    public OperationMetrics getOperationMetrics(HttpRequestBase request) {
+        String method = request.getMethod();
+        String operation = getOperation(method, request.getURI().getPath());
+        String key = method + ' ' + operation;
+        OperationMetrics metrics = operations.get(key);
+        if (metrics == null) {
+            metrics = new OperationMetrics(method, operation);
+            OperationMetrics existing = operations.putIfAbsent(key, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    public List<OperationMetrics> getOperationMetrics() {
+        List<OperationMetrics> metrics = new ArrayList<OperationMetrics>(operations.values());
+        Collections.sort(metrics, new Comparator<OperationMetrics>() {
+            @Override
+            public int compare(OperationMetrics metrics1, OperationMetrics metrics2) {
+                int result = metrics1.getOperation().compareTo(metrics2.getOperation());
+                return result != 0 ? result : metrics1.getMethod().compareTo(metrics2.getMethod());
+            }
+        });
+        return metrics;
+    }
+
+    public long getRequests() {
+        long requests = 0;
+        for (OperationMetrics metrics : operations.values()) {
+            requests += metrics.getRequests();
+        }
+        return requests;
+    }
+
+    public long getErrors() {
+        long errors = 0;
+        for (OperationMetrics metrics : operations.values()) {
+            errors += metrics.getErrors();
+        }
+        return errors;
+    }
+
+    public int getInFlight() {
+        int inFlight = 0;
+        for (OperationMetrics metrics : operations.values()) {
+            inFlight += metrics.getInFlight();
+        }
+        return inFlight;
+    }
+
+    public void clear() {
+        operations.clear();
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("requests", getRequests());
+        json.put("errors", getErrors());
+        json.put("inFlight", getInFlight());
+        JSONArray operationsJson = new JSONArray();
+        for (OperationMetrics metrics : getOperationMetrics()) {
+            operationsJson.add(metrics.toJson());
+        }
+        json.put("operations", operationsJson);
+        return json;
+    }
+
+    /**
+     * Metrics of the requests of one HTTP method and logical operation.
+     */
+    public static class OperationMetrics {
+        private final String method;
+        private final String operation;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+        private final ConcurrentHashMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+        OperationMetrics(String method, String operation) {
+            this.method = method;
+            this.operation = operation;
+        }
+
+        public void requestStarted() {
+            inFlight.incrementAndGet();
+        }
+
+        /**
+         * Records a request that is done.
+         *
+         * @param latency milliseconds elapsed since the request was started
+         * @param status status code of the response, or -1 if no response was received
+         */
+        public void requestCompleted(long latency, int status) {
+            inFlight.decrementAndGet();
+            requests.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            for (long max = maxLatency.get(); latency > max && !maxLatency.compareAndSet(max, latency); ) {
+                max = maxLatency.get();
+            }
+            int bucket = Arrays.binarySearch(LATENCY_BUCKETS, latency);
+            latencyBuckets.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+
+            if (status < 0) {
+                errors.incrementAndGet();
+                return;
+            }
+            AtomicLong count = statusCodes.get(status);
+            if (count == null) {
+                count = new AtomicLong();
+                AtomicLong existing = statusCodes.putIfAbsent(status, count);
+                if (existing != null) {
+                    count = existing;
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * Returns the number of requests that did not receive a response.
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getAverageLatency() {
+            long count = requests.get();
+            return count > 0 ? totalLatency.get() / count : 0;
+        }
+
+        public long getMaxLatency() {
+            return maxLatency.get();
+        }
+
+        /**
+         * Returns the upper bound in milliseconds of the latency of the specified fraction of the requests, as
+         * given by the latency histogram.
+         */
+        public long getLatencyPercentile(double fraction) {
+            long[] counts = new long[latencyBuckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = latencyBuckets.get(i);
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long count = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                count += counts[i];
+                if (count >= rank && count > 0) {
+                    return Math.min(LATENCY_BUCKETS[i], getMaxLatency());
+                }
+            }
+            return getMaxLatency();
+        }
+
+        public Map<Integer, Long> getStatusCodes() {
+            Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+            for (Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().get());
+            }
+            return counts;
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("method", method);
+            json.put("operation", operation);
+            json.put("requests", getRequests());
+            json.put("errors", getErrors());
+            json.put("inFlight", getInFlight());
+
+            JSONObject latency = new JSONObject();
+            latency.put("mean", getAverageLatency());
+            latency.put("max", getMaxLatency());
+            latency.put("p50", getLatencyPercentile(0.5));
+            latency.put("p90", getLatencyPercentile(0.9));
+            latency.put("p99", getLatencyPercentile(0.99));
+            JSONObject buckets = new JSONObject();
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                buckets.put(String.valueOf(LATENCY_BUCKETS[i]), latencyBuckets.get(i));
+            }
+            buckets.put("+Inf", latencyBuckets.get(LATENCY_BUCKETS.length));
+            latency.put("buckets", buckets);
+            json.put("latency", latency);
+
+            JSONObject statusCodesJson = new JSONObject();
+            for (Map.Entry<Integer, Long> entry : getStatusCodes().entrySet()) {
+                statusCodesJson.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            json.put("statusCodes", statusCodesJson);
+            return json;
+        }
+    }
+
+}
@@ -0,0 +1,417 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContextBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+
+/**
+ * HTTP connection pool used by the clients of one ElasticBox cloud.
+ */
+public class ConnectionPool implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    private static final long EVICTION_PERIOD =
+            Long.getLong("elasticbox.ConnectionPool.evictionPeriod", 5 * 1000);
+
+    private static final long RETIREMENT_DELAY =
+            Long.getLong("elasticbox.ConnectionPool.retirementDelay", 60 * 1000);
+
+    private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ElasticBox-ConnectionPool-evictor-%d").setDaemon(true).build());
+
+    private final Client.HttpProxy httpProxy;
+    private volatile Settings settings;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledFuture<?> evictionTask;
+    // the clients built on this pool, a retired pool is closed once none of them is in use anymore
+    private final Map<Client, Boolean> clients = new WeakHashMap<Client, Boolean>();
+    private volatile boolean closed;
+
+    public ConnectionPool(Settings settings, Client.HttpProxy httpProxy) {
+        this.settings = settings;
+        this.httpProxy = httpProxy;
+
+        // requests are retried by the client according to its retry policy
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create().disableAutomaticRetries();
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = null;
+        SSLContext sslContext = createSslContext();
+        if (sslContext != null) {
+            httpClientBuilder.setSSLContext(sslContext);
+
+            SSLConnectionSocketFactory sslConnectionSocketFactory =
+                    new SSLConnectionSocketFactory(sslContext, new NoopHostnameVerifier());
+
+            socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", sslConnectionSocketFactory).build();
+        }
+
+        connectionManager = socketFactoryRegistry != null
+                ? new PoolingHttpClientConnectionManager(socketFactoryRegistry, null, null, null,
+                        settings.getConnectionTtl(), TimeUnit.SECONDS)
+                : new PoolingHttpClientConnectionManager(settings.getConnectionTtl(), TimeUnit.SECONDS);
+        applyLimits(settings);
+        httpClientBuilder.setConnectionManager(connectionManager);
+        httpClientBuilder.setDefaultRequestConfig(settings.getRequestConfig());
+
+        if (isProxyConfigured()) {
+            LOGGER.info("Proxy configured for connection through " + httpProxy.host + ":" + httpProxy.port);
+            httpClientBuilder.setProxy(new HttpHost(httpProxy.host, httpProxy.port));
+            CredentialsProvider credsProvider = getProxyCredentialsProvider();
+            if (credsProvider != null) {
+                LOGGER.info("Proxy configured with credentials for " + httpProxy.getUser());
+                httpClientBuilder.setDefaultCredentialsProvider(credsProvider);
+            }
+        } else if (httpProxy != null) {
+            LOGGER.warning("Misconfigured Jenkins proxy data. No proxy assumed." );
+        }
+
+        httpClient = httpClientBuilder.build();
+
+        evictionTask = evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictConnections();
+            }
+        }, EVICTION_PERIOD, EVICTION_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    private static SSLContext createSslContext() {
+        try {
+            return new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
+                @Override
+                public boolean isTrusted(X509Certificate[] x509Certificates, String authType)
+                        throws CertificateException {
+
+                    return true;
+                }
+            }).build();
+        } catch (Exception ex) {
+            LOGGER.log(Level.WARNING, "Error while configuring the SSL context of the connection pool.", ex);
+            return null;
+        }
+    }
+
+    private boolean isProxyConfigured() {
+        return httpProxy != null && !StringUtils.isBlank(httpProxy.host) && httpProxy.port != 0;
+    }
+
+    private CredentialsProvider getProxyCredentialsProvider() {
+        if (StringUtils.isBlank(httpProxy.getUser()) || StringUtils.isBlank(httpProxy.getPwrd())) {
+            return null;
+        }
+        CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        credsProvider.setCredentials(new AuthScope(httpProxy.host, httpProxy.port),
+                new UsernamePasswordCredentials(httpProxy.getUser(), httpProxy.getPwrd()));
+        return credsProvider;
+    }
+
+    private void applyLimits(Settings limits) {
+        connectionManager.setMaxTotal(limits.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(limits.getMaxConnectionsPerRoute());
+    }
+
+    private void evictConnections() {
+        try {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(settings.getIdleConnectionTimeout(), TimeUnit.SECONDS);
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Error evicting idle connections", ex);
+        }
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public Client.HttpProxy getHttpProxy() {
+        return httpProxy;
+    }
+
+    /**
+     * Checks whether this pool can be used with the specified settings without being rebuilt. Only the connection
+     * limits can be changed in a live pool, the connection TTL is fixed when the connections are created and the
+     * timeouts when the clients are built.
+     */
+    public boolean isCompatibleWith(Settings newSettings) {
+        return settings.getConnectionTtl() == newSettings.getConnectionTtl()
+                && settings.getConnectTimeout() == newSettings.getConnectTimeout()
+                && settings.getReadTimeout() == newSettings.getReadTimeout()
+                && settings.getLeaseTimeout() == newSettings.getLeaseTimeout();
+    }
+
+    /**
+     * Checks whether this pool can be used with the specified settings and HTTP proxy without being rebuilt, the
+     * proxy is fixed when the clients are built.
+     */
+    public boolean isCompatibleWith(Settings newSettings, Client.HttpProxy newHttpProxy) {
+        boolean sameProxy = httpProxy == null ? newHttpProxy == null : httpProxy.equals(newHttpProxy);
+        return sameProxy && isCompatibleWith(newSettings);
+    }
+
+    /**
+     * Applies the connection limits of the specified settings to this pool. The leased connections are kept, the
+     * new limits apply to the next lease requests.
+     */
+    public void updateLimits(Settings newSettings) {
+        if (!settings.equals(newSettings)) {
+            LOGGER.info(MessageFormat.format("Updating connection pool settings from [{0}] to [{1}]", settings,
+                    newSettings));
+            settings = newSettings;
+            applyLimits(newSettings);
+        }
+    }
+
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        evictionTask.cancel(false);
+        httpClient.close();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Registers a client that sends its requests through this pool, the pool is kept open while the client is
+     * reachable.
+     */
+    void register(Client client) {
+        synchronized (clients) {
+            clients.put(client, Boolean.TRUE);
+        }
+    }
+
+    private boolean isInUse() {
+        synchronized (clients) {
+            if (!clients.isEmpty()) {
+                return true;
+            }
+        }
+        PoolStats stats = getStats();
+        return stats.getLeased() > 0 || stats.getPending() > 0;
+    }
+
+    /**
+     * Closes this pool once the clients built on it are no longer reachable and none of its connections is leased.
+     * The pool is checked after the retirement delay and then again after each delay until it is no longer in use.
+     */
+    public void retire() {
+        retire(RETIREMENT_DELAY);
+    }
+
+    void retire(final long delay) {
+        evictor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (isInUse()) {
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine(MessageFormat.format("Retired connection pool still in use [{0}]",
+                                ConnectionPool.this));
+                    }
+                    retire(delay);
+                    return;
+                }
+                try {
+                    close();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Error closing retired connection pool", ex);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        PoolStats stats = getStats();
+        return MessageFormat.format("leased: {0}, pending: {1}, available: {2}, max: {3}",
+                stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax());
+    }
+
+    public static class Settings {
+        public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE =
+                Integer.getInteger("elasticbox.ConnectionPool.maxConnectionsPerRoute", 20);
+        public static final int DEFAULT_MAX_CONNECTIONS =
+                Integer.getInteger("elasticbox.ConnectionPool.maxConnections", 100);
+        public static final int DEFAULT_CONNECTION_TTL =
+                Integer.getInteger("elasticbox.ConnectionPool.connectionTtl", 300);
+        public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT =
+                Integer.getInteger("elasticbox.ConnectionPool.idleConnectionTimeout", 30);
+        public static final int DEFAULT_CONNECT_TIMEOUT =
+                Integer.getInteger("elasticbox.ConnectionPool.connectTimeout", 30);
+        public static final int DEFAULT_READ_TIMEOUT =
+                Integer.getInteger("elasticbox.ConnectionPool.readTimeout", 120);
+        public static final int DEFAULT_LEASE_TIMEOUT =
+                Integer.getInteger("elasticbox.ConnectionPool.leaseTimeout", 60);
+
+        private final int maxConnectionsPerRoute;
+        private final int maxConnections;
+        private final int connectionTtl;
+        private final int idleConnectionTimeout;
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final int leaseTimeout;
+
+        public Settings() {
+            this(0, 0, 0, 0);
+        }
+
+        public Settings(int maxConnectionsPerRoute, int maxConnections, int connectionTtl, int idleConnectionTimeout) {
+            this(maxConnectionsPerRoute, maxConnections, connectionTtl, idleConnectionTimeout, 0, 0, 0);
+        }
+
+        /**
+         * Creates the pool settings, any value that is not positive is replaced by its default.
+         *
+         * @param maxConnectionsPerRoute max number of connections to the same endpoint
+         * @param maxConnections max number of connections of the pool
+         * @param connectionTtl time to live of the pooled connections in seconds
+         * @param idleConnectionTimeout seconds after which idle connections are closed
+         * @param connectTimeout seconds to wait for a connection to be established
+         * @param readTimeout seconds to wait for data from a connection
+         * @param leaseTimeout seconds to wait for a connection of the pool when all of them are leased
+         */
+        public Settings(int maxConnectionsPerRoute, int maxConnections, int connectionTtl, int idleConnectionTimeout,
+                        int connectTimeout, int readTimeout, int leaseTimeout) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute > 0
+                    ? maxConnectionsPerRoute : DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+            this.maxConnections = Math.max(maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS,
+                    this.maxConnectionsPerRoute);
+            this.connectionTtl = connectionTtl > 0 ? connectionTtl : DEFAULT_CONNECTION_TTL;
+            this.idleConnectionTimeout = idleConnectionTimeout > 0
+                    ? idleConnectionTimeout : DEFAULT_IDLE_CONNECTION_TIMEOUT;
+            this.connectTimeout = connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+            this.readTimeout = readTimeout > 0 ? readTimeout : DEFAULT_READ_TIMEOUT;
+            this.leaseTimeout = leaseTimeout > 0 ? leaseTimeout : DEFAULT_LEASE_TIMEOUT;
+        }
+
+        public int getMaxConnectionsPerRoute() {
+            return maxConnectionsPerRoute;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public int getConnectionTtl() {
+            return connectionTtl;
+        }
+
+        public int getIdleConnectionTimeout() {
+            return idleConnectionTimeout;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public int getLeaseTimeout() {
+            return leaseTimeout;
+        }
+
+        /**
+         * Returns the configuration of the requests sent with the timeouts of these settings.
+         */
+        public RequestConfig getRequestConfig() {
+            return RequestConfig.custom()
+                    .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(connectTimeout))
+                    .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(readTimeout))
+                    .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(leaseTimeout)).build();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) obj;
+            return maxConnectionsPerRoute == other.maxConnectionsPerRoute && maxConnections == other.maxConnections
+                    && connectionTtl == other.connectionTtl && idleConnectionTimeout == other.idleConnectionTimeout
+                    && connectTimeout == other.connectTimeout && readTimeout == other.readTimeout
+                    && leaseTimeout == other.leaseTimeout;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = maxConnectionsPerRoute;
+            result = 31 * result + maxConnections;
+            result = 31 * result + connectionTtl;
+            result = 31 * result + idleConnectionTimeout;
+            result = 31 * result + connectTimeout;
+            result = 31 * result + readTimeout;
+            return 31 * result + leaseTimeout;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format("maxConnectionsPerRoute: {0}, maxConnections: {1}, connectionTtl: {2}, "
+                    + "idleConnectionTimeout: {3}, connectTimeout: {4}, readTimeout: {5}, leaseTimeout: {6}",
+                    maxConnectionsPerRoute, maxConnections, connectionTtl, idleConnectionTimeout, connectTimeout,
+                    readTimeout, leaseTimeout);
+        }
+    }
+
+}
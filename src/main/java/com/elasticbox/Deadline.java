@@ -0,0 +1,99 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which an operation must be done. The deadline of the current thread is honoured by every request
+ * sent by the clients in that thread: the timeouts of the request are shortened to the remaining time, the request
+ * is aborted when the deadline passes and it is not retried after the deadline.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> currentDeadline = new ThreadLocal<Deadline>();
+
+    private final long expirationTime;
+
+    private Deadline(long expirationTime) {
+        this.expirationTime = expirationTime;
+    }
+
+    /**
+     * Returns a deadline that expires after the specified time from now.
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Returns the deadline of the current thread, or null if the operation of the thread has no deadline.
+     */
+    public static Deadline getCurrent() {
+        return currentDeadline.get();
+    }
+
+    /**
+     * Sets the deadline of the current thread. The deadline is not extended if the thread already has an earlier
+     * deadline, an operation cannot take longer than the operation that invoked it, and it is kept if the specified
+     * deadline is null.
+     *
+     * @return the previous deadline of the thread, to be restored with {@link #restore(Deadline)}
+     */
+    public static Deadline setCurrent(Deadline deadline) {
+        Deadline previousDeadline = currentDeadline.get();
+        if (deadline != null
+                && (previousDeadline == null || deadline.expirationTime - previousDeadline.expirationTime < 0)) {
+            currentDeadline.set(deadline);
+        }
+        return previousDeadline;
+    }
+
+    /**
+     * Restores the deadline returned by {@link #setCurrent(Deadline)}.
+     */
+    public static void restore(Deadline previousDeadline) {
+        if (previousDeadline != null) {
+            currentDeadline.set(previousDeadline);
+        } else {
+            currentDeadline.remove();
+        }
+    }
+
+    public long getRemaining(TimeUnit unit) {
+        return unit.convert(expirationTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return expirationTime - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Throws an exception if the deadline has passed.
+     *
+     * @param operation description of the operation that cannot be performed
+     */
+    public void check(String operation) throws InterruptedIOException {
+        if (isExpired()) {
+            throw new InterruptedIOException(MessageFormat.format("Deadline exceeded, cannot {0}", operation));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format("Deadline in {0} ms", getRemaining(TimeUnit.MILLISECONDS));
+    }
+
+}
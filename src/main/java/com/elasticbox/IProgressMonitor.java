@@ -15,6 +15,7 @@ package com.elasticbox;
 import net.sf.json.JSONObject;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 public interface IProgressMonitor {
     String getResourceUrl();
@@ -34,6 +35,13 @@ public interface IProgressMonitor {
      */
     void waitForDone(int timeout) throws IncompleteException, IOException, InterruptedException;
 
+    /**
+     * Returns a future that completes when the task finishes successfully, without blocking the calling thread.
+     * The future completes exceptionally with the same errors that {@link #waitForDone(int)} throws.
+     * @param timeout in minutes
+     */
+    CompletableFuture<Void> whenDone(int timeout);
+
     public static final IProgressMonitor DONE_MONITOR = new DoneMonitor(null);
 
     public static class DoneMonitor implements IProgressMonitor {
@@ -61,6 +69,10 @@ public interface IProgressMonitor {
 
         public void waitForDone(int timeout) throws IProgressMonitor.IncompleteException, IOException {
         }
+
+        public CompletableFuture<Void> whenDone(int timeout) {
+            return CompletableFuture.completedFuture(null);
+        }
     }
 
     public static class IncompleteException extends IOException {
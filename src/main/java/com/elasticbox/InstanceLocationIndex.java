@@ -0,0 +1,131 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the workspaces where the instances are, learned from the responses of ElasticBox. It allows getting
+ * instances of several workspaces directly from their workspaces instead of probing all the workspaces of the user.
+ * An entry is removed as soon as the instance is not found in its workspace.
+ */
+public class InstanceLocationIndex {
+    public static final int DEFAULT_MAX_SIZE = Integer.getInteger("elasticbox.InstanceLocationIndex.maxSize", 10000);
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String, String> instanceWorkspaces = new ConcurrentHashMap<String, String>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public InstanceLocationIndex() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public InstanceLocationIndex(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the workspace of the instance, or null if it is unknown.
+     */
+    public String getWorkspace(String instanceId) {
+        return instanceWorkspaces.get(instanceId);
+    }
+
+    public void put(String instanceId, String workspaceId) {
+        if (instanceId == null || workspaceId == null) {
+            return;
+        }
+        if (instanceWorkspaces.size() >= maxSize && !instanceWorkspaces.containsKey(instanceId)) {
+            // the index is rebuilt from the following responses
+            instanceWorkspaces.clear();
+        }
+        instanceWorkspaces.put(instanceId, workspaceId);
+    }
+
+    public void remove(String instanceId) {
+        instanceWorkspaces.remove(instanceId);
+    }
+
+    /**
+     * Removes the instance from the index if it is located in the specified workspace.
+     */
+    public void remove(String instanceId, String workspaceId) {
+        instanceWorkspaces.remove(instanceId, workspaceId);
+    }
+
+    /**
+     * Removes all the instances of the workspace, for instance when the workspace is not accessible anymore.
+     */
+    public void removeWorkspace(String workspaceId) {
+        for (Iterator<String> iter = instanceWorkspaces.values().iterator(); iter.hasNext(); ) {
+            if (iter.next().equals(workspaceId)) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Groups the instances by their workspace.
+     *
+     * @param instanceIds the IDs of the instances
+     * @param unknownInstanceIds the list where the IDs of the instances of unknown workspace are added
+     * @return the IDs of the instances of known workspace, by workspace
+     */
+    public Map<String, List<String>> groupByWorkspace(Collection<String> instanceIds,
+                                                      Collection<String> unknownInstanceIds) {
+
+        Map<String, List<String>> instancesByWorkspace = new LinkedHashMap<String, List<String>>();
+        for (String instanceId : instanceIds) {
+            String workspaceId = instanceWorkspaces.get(instanceId);
+            if (workspaceId == null) {
+                misses.incrementAndGet();
+                unknownInstanceIds.add(instanceId);
+                continue;
+            }
+            hits.incrementAndGet();
+            List<String> workspaceInstanceIds = instancesByWorkspace.get(workspaceId);
+            if (workspaceInstanceIds == null) {
+                workspaceInstanceIds = new ArrayList<String>();
+                instancesByWorkspace.put(workspaceId, workspaceInstanceIds);
+            }
+            workspaceInstanceIds.add(instanceId);
+        }
+        return instancesByWorkspace;
+    }
+
+    public int size() {
+        return instanceWorkspaces.size();
+    }
+
+    public void clear() {
+        instanceWorkspaces.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+}
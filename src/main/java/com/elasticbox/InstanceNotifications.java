@@ -0,0 +1,138 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import net.sf.json.JSONSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Notifications of instance state changes sent by ElasticBox. The payload of a notification is an instance, or an
+ * array of instances, as returned by the instances API. The time it was sent, in seconds since the epoch, is in the
+ * header {@link #TIMESTAMP_HEADER}. The timestamp and the payload, separated by a dot, are signed with HMAC-SHA256
+ * keyed by the secret shared with ElasticBox, in the header {@link #SIGNATURE_HEADER} with the format
+ * <code>sha256=&lt;hex digest&gt;</code>. A notification older than {@link #MAX_AGE} is not accepted, so that a
+ * captured notification cannot be replayed later.
+ */
+public final class InstanceNotifications {
+    public static final String SIGNATURE_HEADER = "X-ElasticBox-Signature";
+    public static final String TIMESTAMP_HEADER = "X-ElasticBox-Timestamp";
+
+    public static final long MAX_AGE = Long.getLong("elasticbox.InstanceNotifications.maxAge",
+            TimeUnit.MINUTES.toMillis(5));
+
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private InstanceNotifications() {
+    }
+
+    /**
+     * Returns the signature of the timestamp and the payload with the secret.
+     */
+    public static String sign(String secret, String timestamp, byte[] payload) {
+        Mac mac;
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+        mac.update((timestamp + '.').getBytes(StandardCharsets.UTF_8));
+        StringBuilder signature = new StringBuilder(SIGNATURE_PREFIX);
+        for (byte b : mac.doFinal(payload)) {
+            signature.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Returns whether the signature of the timestamp and the payload was computed with the secret. The signatures are
+     * compared in constant time.
+     */
+    public static boolean isValid(String secret, String timestamp, byte[] payload, String signature) {
+        if (secret == null || secret.isEmpty() || timestamp == null || signature == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(secret, timestamp, payload).getBytes(StandardCharsets.UTF_8),
+                signature.trim().toLowerCase().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns whether the timestamp of a notification is within {@link #MAX_AGE} of the current time.
+     *
+     * @param currentTime the current time in milliseconds since the epoch
+     */
+    public static boolean isRecent(String timestamp, long currentTime) {
+        if (timestamp == null) {
+            return false;
+        }
+        long sentTime;
+        try {
+            sentTime = TimeUnit.SECONDS.toMillis(Long.parseLong(timestamp.trim()));
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        return Math.abs(currentTime - sentTime) <= MAX_AGE;
+    }
+
+    /**
+     * Returns the instances of the payload. Only complete instance documents are included, with the ID, state, update
+     * time and operation event that the progress monitors and the slave requests read.
+     */
+    public static List<JSONObject> parse(byte[] payload) throws IOException {
+        Object json;
+        try {
+            json = JSONSerializer.toJSON(new String(payload, StandardCharsets.UTF_8));
+        } catch (JSONException ex) {
+            throw new IOException("Invalid instance notification", ex);
+        }
+        JSONArray array = json instanceof JSONArray ? (JSONArray) json : new JSONArray();
+        if (json instanceof JSONObject) {
+            array.add(json);
+        }
+        List<JSONObject> instances = new ArrayList<JSONObject>();
+        for (Object instance : array) {
+            if (instance instanceof JSONObject) {
+                JSONObject instanceJson = (JSONObject) instance;
+                if (isComplete(instanceJson)) {
+                    instances.add(instanceJson);
+                }
+            }
+        }
+        return instances;
+    }
+
+    private static boolean isComplete(JSONObject instance) {
+        if (!(instance.opt("id") instanceof String) || !(instance.opt("state") instanceof String)
+                || !(instance.opt("updated") instanceof String)) {
+            return false;
+        }
+        Object operation = instance.opt("operation");
+        return operation instanceof JSONObject && ((JSONObject) operation).opt("event") instanceof String;
+    }
+
+}
@@ -0,0 +1,348 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Polls the state of the instances that are waited for with a single batched request per workspace, instead of one
+ * request per waiter. Each waiter registers the progress monitor of its instance, the poller fetches the watched
+ * instances that are due, passes each instance to the monitors that wait for it and completes the futures of the
+ * monitors that are done. Each instance is due according to the {@link PollingSchedule} of the expected duration of
+ * its operation, as recorded in the {@link OperationDurations} of the client.
+ */
+public class InstancePoller {
+    private static final Logger LOGGER = Logger.getLogger(InstancePoller.class.getName());
+
+    public static final long DEFAULT_POLLING_PERIOD = Long.getLong("elasticbox.InstancePoller.period",
+            PollingSchedule.MIN_DELAY);
+
+    private static final int POLLING_THREADS = Integer.getInteger("elasticbox.InstancePoller.threads", 2);
+
+    // time after which the idle fetching thread of a poller ends
+    private static final long FETCHER_KEEP_ALIVE = 60 * 1000;
+
+    // delay between the polls of an instance while ElasticBox notifies the state changes of the instances
+    private static final long SAFETY_NET_DELAY = Long.getLong("elasticbox.InstancePoller.safetyNetDelay", 60 * 1000);
+
+    // time since the last notification of an instance after which it is polled as if there were no notifications
+    private static final long NOTIFICATION_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    // times that an instance must be missing before its waiters fail, a new instance may not be listed right away
+    private static final int MAX_MISSING_COUNT = 2;
+
+    // only times the polls and the timeouts, the instances are fetched by the executor of each poller
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(POLLING_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("ElasticBox-InstancePoller-%d").setDaemon(true).build());
+
+    private static final ThreadFactory fetcherThreadFactory =
+            new ThreadFactoryBuilder().setNameFormat("ElasticBox-InstancePoller-fetcher-%d").setDaemon(true).build();
+
+    private final Client client;
+    private final long pollingPeriod;
+    private final ConcurrentHashMap<String, List<Waiter>> waiters = new ConcurrentHashMap<String, List<Waiter>>();
+    private ScheduledFuture<?> pollingTask;
+    private final ThreadPoolExecutor fetcher;
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    private static final class Waiter {
+        private final IProgressMonitor monitor;
+        private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        private volatile JSONObject instance;
+        private final AtomicInteger missingCount = new AtomicInteger();
+        private volatile long nextPollTime;
+        private volatile long lastNotificationTime;
+
+        private Waiter(IProgressMonitor monitor) {
+            this.monitor = monitor;
+        }
+    }
+
+    public InstancePoller(Client client) {
+        this(client, DEFAULT_POLLING_PERIOD);
+    }
+
+    public InstancePoller(Client client, long pollingPeriod) {
+        this.client = client;
+        this.pollingPeriod = pollingPeriod;
+        fetcher = new ThreadPoolExecutor(1, 1, FETCHER_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), fetcherThreadFactory);
+        fetcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the client used to fetch the instances.
+     */
+    protected Client getClient() throws IOException {
+        return client;
+    }
+
+    /**
+     * Returns the scheduler shared by the pollers, which also times the polls of the monitors that poll on their own.
+     * The tasks run by the scheduler must not block.
+     */
+    static ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Waits until the monitor is done with the instance of its resource URL.
+     *
+     * @param timeout in minutes, the waiting does not time out if it is not positive
+     * @throws IProgressMonitor.IncompleteException if the instance cannot be found or the operation is not complete
+     * @throws IProgressMonitor.TimeoutException if the monitor is not done within the timeout
+     */
+    public void waitForDone(IProgressMonitor monitor, int timeout)
+            throws IProgressMonitor.IncompleteException, IOException, InterruptedException {
+
+        CompletableFutures.await(whenDone(monitor, timeout));
+    }
+
+    /**
+     * Returns a future that completes when the monitor is done with the instance of its resource URL. The future
+     * completes exceptionally with the errors that {@link #waitForDone(IProgressMonitor, int)} throws. The instance
+     * stops being watched for the monitor when the future is completed or canceled.
+     *
+     * @param timeout in minutes, the waiting does not time out if it is not positive
+     */
+    public CompletableFuture<Void> whenDone(final IProgressMonitor monitor, final int timeout) {
+        final String instanceId = Client.getResourceId(monitor.getResourceUrl());
+        final Waiter waiter = new Waiter(monitor);
+        final ScheduledFuture<?> timeoutTask = timeout <= 0 ? null : scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject instance = waiter.instance;
+                String state = instance != null ? instance.optString("state", null) : null;
+                waiter.future.completeExceptionally(new IProgressMonitor.TimeoutException(
+                        MessageFormat.format("{0} is not in ready after waiting for {1} minutes. Current state: {2}",
+                                monitor.getResourceUrl(), timeout, state)));
+            }
+        }, timeout, TimeUnit.MINUTES);
+        waiter.future.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable error) {
+                if (timeoutTask != null) {
+                    timeoutTask.cancel(false);
+                }
+                unregister(instanceId, waiter);
+            }
+        });
+        register(instanceId, waiter);
+        return waiter.future;
+    }
+
+    /**
+     * Returns the number of instances that are watched.
+     */
+    public int getWatchedInstances() {
+        return waiters.size();
+    }
+
+    private synchronized void register(String instanceId, Waiter waiter) {
+        List<Waiter> instanceWaiters = waiters.get(instanceId);
+        if (instanceWaiters == null) {
+            instanceWaiters = new CopyOnWriteArrayList<Waiter>();
+            waiters.put(instanceId, instanceWaiters);
+        }
+        instanceWaiters.add(waiter);
+        if (pollingTask == null) {
+            pollingTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    schedulePoll();
+                }
+            }, 0, pollingPeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void unregister(String instanceId, Waiter waiter) {
+        List<Waiter> instanceWaiters = waiters.get(instanceId);
+        if (instanceWaiters != null) {
+            instanceWaiters.remove(waiter);
+            if (instanceWaiters.isEmpty()) {
+                waiters.remove(instanceId);
+            }
+        }
+        if (waiters.isEmpty() && pollingTask != null) {
+            pollingTask.cancel(false);
+            pollingTask = null;
+        }
+    }
+
+    /**
+     * Runs the next poll in the executor of this poller, unless the previous poll is still fetching the instances.
+     */
+    private void schedulePoll() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        fetcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } finally {
+                    polling.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches the watched instances and notifies their waiters.
+     */
+    void poll() {
+        long now = System.currentTimeMillis();
+        List<String> instanceIDs = new ArrayList<String>();
+        for (Map.Entry<String, List<Waiter>> entry : waiters.entrySet()) {
+            for (Waiter waiter : entry.getValue()) {
+                if (waiter.nextPollTime <= now) {
+                    instanceIDs.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        if (instanceIDs.isEmpty()) {
+            return;
+        }
+
+        Client pollingClient;
+        List<JSONObject> instances = new ArrayList<JSONObject>();
+        try {
+            pollingClient = getClient();
+            for (Object instance : pollingClient.getInstances(instanceIDs)) {
+                instances.add((JSONObject) instance);
+            }
+        } catch (IOException | RuntimeException ex) {
+            // the waiters keep waiting, the instances are fetched again in the next period
+            LOGGER.log(Level.WARNING, MessageFormat.format("Error polling the state of {0} instances",
+                    instanceIDs.size()), ex);
+            return;
+        }
+
+        OperationDurations durations = pollingClient.getOperationDurations();
+        Set<String> missingIDs = new HashSet<String>(instanceIDs);
+        for (JSONObject instance : instances) {
+            missingIDs.remove(instance.getString("id"));
+            update(instance, durations);
+        }
+        for (String instanceId : missingIDs) {
+            List<Waiter> instanceWaiters = waiters.get(instanceId);
+            if (instanceWaiters != null) {
+                for (Waiter waiter : instanceWaiters) {
+                    if (waiter.missingCount.incrementAndGet() >= MAX_MISSING_COUNT) {
+                        waiter.future.completeExceptionally(new IProgressMonitor.IncompleteException(
+                                MessageFormat.format("{0} cannot be found", waiter.monitor.getResourceUrl())));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the instance of a notification of ElasticBox to the monitors that wait for it, without waiting for the
+     * next poll. While notifications of an instance are received it is polled only every
+     * <code>elasticbox.InstancePoller.safetyNetDelay</code> milliseconds, in case a notification is lost.
+     *
+     * @return true if any monitor waits for the instance
+     */
+    public boolean instanceChanged(JSONObject instance) {
+        List<Waiter> instanceWaiters = waiters.get(instance.getString("id"));
+        if (instanceWaiters == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        for (Waiter waiter : instanceWaiters) {
+            waiter.lastNotificationTime = now;
+        }
+        OperationDurations durations;
+        try {
+            durations = getClient().getOperationDurations();
+        } catch (IOException ex) {
+            durations = new OperationDurations();
+        }
+        update(instance, durations);
+        return true;
+    }
+
+    /**
+     * Passes the instance to the monitors that wait for it, records the duration of its operation if it is done and
+     * schedules the next poll of the instance for the monitors that are not done.
+     */
+    private void update(JSONObject instance, OperationDurations durations) {
+        List<Waiter> instanceWaiters = waiters.get(instance.getString("id"));
+        if (instanceWaiters == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String durationKey = OperationDurations.getKey(instance);
+        long expectedDuration = durations.getExpectedDuration(durationKey);
+        boolean recorded = false;
+        for (Waiter waiter : instanceWaiters) {
+            long elapsed = now - waiter.monitor.getCreationTime();
+            if (update(waiter, instance) && !recorded) {
+                durations.record(durationKey, elapsed);
+                recorded = true;
+            }
+            long delay = PollingSchedule.getDelay(expectedDuration, elapsed);
+            boolean notified = now - waiter.lastNotificationTime < NOTIFICATION_TIMEOUT;
+            waiter.nextPollTime = now + (notified ? Math.max(delay, SAFETY_NET_DELAY) : delay);
+        }
+    }
+
+    /**
+     * Passes the instance to the monitor of the waiter and returns whether the monitor is done.
+     */
+    private static boolean update(Waiter waiter, JSONObject instance) {
+        waiter.instance = instance;
+        waiter.missingCount.set(0);
+        try {
+            if (waiter.monitor.isDone(instance)) {
+                waiter.future.complete(null);
+                return true;
+            }
+        } catch (IOException ex) {
+            waiter.future.completeExceptionally(ex);
+        } catch (RuntimeException ex) {
+            waiter.future.completeExceptionally(new IOException(ex.getMessage(), ex));
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox;
+
+import net.sf.json.JSONObject;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory snapshot of the instances of the workspaces used by an ElasticBox cloud. The snapshot is refreshed in
+ * the background and read without any request, each refresh lists the instances of the workspaces and merges them
+ * into the snapshot, keeping the summaries that did not change. The instances polled or notified between refreshes
+ * are merged as well. The version of the snapshot changes only when the instances change.
+ */
+public class InstanceSnapshot {
+    private static final Logger LOGGER = Logger.getLogger(InstanceSnapshot.class.getName());
+
+    private final Object lock = new Object();
+
+    // workspace ID to the instances of the workspace, replaced as a whole on each change
+    private volatile Map<String, Map<String, InstanceSummary>> workspaces = Collections.emptyMap();
+    private volatile Map<String, InstanceSummary> instances = Collections.emptyMap();
+    private volatile long refreshTime;
+    private volatile long version;
+
+    /**
+     * Returns the instances of the snapshot, which cannot be modified.
+     */
+    public Collection<InstanceSummary> getInstances() {
+        return instances.values();
+    }
+
+    public InstanceSummary getInstance(String instanceId) {
+        return instances.get(instanceId);
+    }
+
+    /**
+     * Returns the IDs of the workspaces whose instances are listed in the snapshot.
+     */
+    public Set<String> getWorkspaceIDs() {
+        return workspaces.keySet();
+    }
+
+    /**
+     * Returns the version of the snapshot, which is incremented each time its instances change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the time in milliseconds of the last refresh, or 0 if the snapshot has never been refreshed.
+     */
+    public long getRefreshTime() {
+        return refreshTime;
+    }
+
+    /**
+     * Checks whether the snapshot has been refreshed with the instances of all the specified workspaces within the
+     * specified time.
+     *
+     * @param maxAge max time in milliseconds since the last refresh
+     * @param workspaceIDs the workspaces whose instances are needed
+     */
+    public boolean isFresh(long maxAge, Collection<String> workspaceIDs) {
+        return refreshTime > 0 && System.currentTimeMillis() - refreshTime <= maxAge
+                && workspaces.keySet().containsAll(workspaceIDs);
+    }
+
+    /**
+     * Lists the instances of the specified workspaces and merges them into the snapshot. The workspaces that are not
+     * specified are dropped from the snapshot. If the instances of a workspace cannot be listed, its instances are
+     * kept as they are and the error is thrown after the other workspaces are merged.
+     *
+     * @return the number of instances that were added, changed or removed
+     */
+    public int refresh(Client client, Collection<String> workspaceIDs) throws IOException {
+        Map<String, Map<String, InstanceSummary>> listedWorkspaces =
+                new HashMap<String, Map<String, InstanceSummary>>();
+        IOException error = null;
+        for (String workspaceId : new HashSet<String>(workspaceIDs)) {
+            final Map<String, InstanceSummary> workspaceInstances = new HashMap<String, InstanceSummary>();
+            try {
+                client.visitInstanceSummaries(workspaceId, new InstanceSummary.Visitor() {
+                    @Override
+                    public boolean visit(InstanceSummary instance) {
+                        workspaceInstances.put(instance.getId(), instance);
+                        return true;
+                    }
+                });
+                listedWorkspaces.put(workspaceId, workspaceInstances);
+            } catch (IOException ex) {
+                if (error == null) {
+                    error = ex;
+                } else {
+                    LOGGER.log(Level.WARNING, MessageFormat.format(
+                            "Error listing the instances of workspace {0}", workspaceId), ex);
+                }
+            }
+        }
+
+        int changeCount;
+        synchronized (lock) {
+            Map<String, Map<String, InstanceSummary>> newWorkspaces =
+                    new HashMap<String, Map<String, InstanceSummary>>();
+            changeCount = 0;
+            for (String workspaceId : workspaceIDs) {
+                Map<String, InstanceSummary> currentInstances = workspaces.get(workspaceId);
+                Map<String, InstanceSummary> listedInstances = listedWorkspaces.get(workspaceId);
+                if (listedInstances == null) {
+                    if (currentInstances != null) {
+                        newWorkspaces.put(workspaceId, currentInstances);
+                    }
+                    continue;
+                }
+                if (currentInstances == null) {
+                    currentInstances = Collections.emptyMap();
+                }
+                Map<String, InstanceSummary> mergedInstances = new HashMap<String, InstanceSummary>();
+                for (InstanceSummary instance : listedInstances.values()) {
+                    InstanceSummary current = currentInstances.get(instance.getId());
+                    if (current != null && !isNewer(instance, current)) {
+                        mergedInstances.put(current.getId(), current);
+                    } else {
+                        mergedInstances.put(instance.getId(), instance);
+                        changeCount++;
+                    }
+                }
+                for (String instanceId : currentInstances.keySet()) {
+                    if (!mergedInstances.containsKey(instanceId)) {
+                        changeCount++;
+                    }
+                }
+                newWorkspaces.put(workspaceId, Collections.unmodifiableMap(mergedInstances));
+            }
+            for (String workspaceId : workspaces.keySet()) {
+                if (!newWorkspaces.containsKey(workspaceId)) {
+                    changeCount += workspaces.get(workspaceId).size();
+                }
+            }
+
+            if (changeCount > 0 || !newWorkspaces.keySet().equals(workspaces.keySet())) {
+                publish(newWorkspaces);
+            }
+            if (error == null) {
+                refreshTime = System.currentTimeMillis();
+            }
+        }
+
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(MessageFormat.format("Instance snapshot refreshed, {0} instances changed - {1}", changeCount,
+                    this));
+        }
+
+        if (error != null) {
+            throw error;
+        }
+        return changeCount;
+    }
+
+    /**
+     * Merges an instance that has been polled or notified between refreshes. The instance is ignored if it does not
+     * belong to a workspace of the snapshot or it is older than the instance of the snapshot.
+     *
+     * @param workspaceId the workspace of the instance, or null if it is not known
+     * @return true if the snapshot changed
+     */
+    public boolean update(String workspaceId, InstanceSummary instance) {
+        synchronized (lock) {
+            if (workspaceId == null) {
+                workspaceId = getWorkspaceId(instance.getId());
+            }
+            Map<String, InstanceSummary> workspaceInstances = workspaceId != null ? workspaces.get(workspaceId) : null;
+            if (workspaceInstances == null) {
+                return false;
+            }
+            InstanceSummary current = workspaceInstances.get(instance.getId());
+            if (current != null && !isNewer(instance, current)) {
+                return false;
+            }
+            Map<String, InstanceSummary> newInstances = new HashMap<String, InstanceSummary>(workspaceInstances);
+            newInstances.put(instance.getId(), instance);
+            Map<String, Map<String, InstanceSummary>> newWorkspaces =
+                    new HashMap<String, Map<String, InstanceSummary>>(workspaces);
+            newWorkspaces.put(workspaceId, Collections.unmodifiableMap(newInstances));
+            publish(newWorkspaces);
+            return true;
+        }
+    }
+
+    /**
+     * Merges an instance document that has been fetched or notified between refreshes. The fields missing in the
+     * document are kept from the instance of the snapshot, a new instance is added to the workspace of its owner.
+     *
+     * @return true if the snapshot changed
+     */
+    public boolean update(JSONObject instance) {
+        InstanceSummary summary = InstanceSummary.fromJson(instance);
+        synchronized (lock) {
+            InstanceSummary current = instances.get(summary.getId());
+            if (current == null) {
+                return update(summary.getOwner(), summary);
+            }
+            summary = new InstanceSummary(current.getId(),
+                    instance.containsKey("name") ? summary.getName() : current.getName(),
+                    instance.containsKey("state") ? summary.getState() : current.getState(),
+                    instance.containsKey("operation") ? summary.getOperation() : current.getOperation(),
+                    instance.containsKey("tags") ? summary.getTags() : current.getTags(),
+                    instance.containsKey("updated") ? summary.getUpdated() : current.getUpdated(),
+                    instance.containsKey("owner") ? summary.getOwner() : current.getOwner(),
+                    instance.containsKey("box") ? summary.getBox() : current.getBox(),
+                    instance.containsKey("policy_box") ? summary.getPolicyBox() : current.getPolicyBox());
+            return update(null, summary);
+        }
+    }
+
+    /**
+     * Removes an instance that has been deleted between refreshes.
+     *
+     * @return true if the snapshot changed
+     */
+    public boolean remove(String instanceId) {
+        synchronized (lock) {
+            String workspaceId = getWorkspaceId(instanceId);
+            if (workspaceId == null) {
+                return false;
+            }
+            Map<String, InstanceSummary> newInstances = new HashMap<String, InstanceSummary>(
+                    workspaces.get(workspaceId));
+            newInstances.remove(instanceId);
+            Map<String, Map<String, InstanceSummary>> newWorkspaces =
+                    new HashMap<String, Map<String, InstanceSummary>>(workspaces);
+            newWorkspaces.put(workspaceId, Collections.unmodifiableMap(newInstances));
+            publish(newWorkspaces);
+            return true;
+        }
+    }
+
+    private String getWorkspaceId(String instanceId) {
+        for (Map.Entry<String, Map<String, InstanceSummary>> entry : workspaces.entrySet()) {
+            if (entry.getValue().containsKey(instanceId)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void publish(Map<String, Map<String, InstanceSummary>> newWorkspaces) {
+        Map<String, InstanceSummary> newInstances = new HashMap<String, InstanceSummary>();
+        for (Map<String, InstanceSummary> workspaceInstances : newWorkspaces.values()) {
+            newInstances.putAll(workspaceInstances);
+        }
+        workspaces = Collections.unmodifiableMap(newWorkspaces);
+        instances = Collections.unmodifiableMap(newInstances);
+        version++;
+    }
+
+    /**
+     * Checks whether the instance differs from the current one and is not older than it. The update times are in
+     * ISO 8601 format in UTC, so they are compared as strings.
+     */
+    private static boolean isNewer(InstanceSummary instance, InstanceSummary current) {
+        if (instance.getUpdated() != null && current.getUpdated() != null) {
+            int comparison = instance.getUpdated().compareTo(current.getUpdated());
+            if (comparison != 0) {
+                return comparison > 0;
+            }
+        }
+        return !StringUtils.equals(instance.getState(), current.getState())
+                || !StringUtils.equals(instance.getOperation(), current.getOperation())
+                || !instance.getTags().equals(current.getTags());
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format("workspaces: {0}, instances: {1}, version: {2}", workspaces.size(),
+                instances.size(), version);
+    }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable projection of an ElasticBox instance with the few fields needed to follow its state. It is read
+ * directly from the response stream, skipping the boxes, variables and the rest of the instance document.
+ */
+public final class InstanceSummary {
+
+    private final String id;
+    private final String name;
+    private final String state;
+    private final String operation;
+    private final List<String> tags;
+    private final String updated;
+    private final String owner;
+    private final String box;
+    private final String policyBox;
+
+    public InstanceSummary(String id, String name, String state, String operation, List<String> tags,
+                           String updated, String owner) {
+        this(id, name, state, operation, tags, updated, owner, null, null);
+    }
+
+    public InstanceSummary(String id, String name, String state, String operation, List<String> tags,
+                           String updated, String owner, String box, String policyBox) {
+        this.id = id;
+        this.name = name;
+        this.state = state;
+        this.operation = operation;
+        this.tags = tags != null ? Collections.unmodifiableList(new ArrayList<String>(tags))
+                : Collections.<String>emptyList();
+        this.updated = updated;
+        this.owner = owner;
+        this.box = box;
+        this.policyBox = policyBox;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Returns the event of the last operation performed on the instance.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String getUpdated() {
+        return updated;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Returns the ID of the box version deployed by the instance.
+     */
+    public String getBox() {
+        return box;
+    }
+
+    /**
+     * Returns the ID of the deployment policy box of the instance.
+     */
+    public String getPolicyBox() {
+        return policyBox;
+    }
+
+    public String getUri() {
+        return MessageFormat.format("/services/instances/{0}", id);
+    }
+
+    /**
+     * Converts this summary to a JSON object with the same layout of the instance fields it contains, so it can be
+     * passed to {@link IProgressMonitor#isDone(JSONObject)}.
+     */
+    public JSONObject toJson() {
+        JSONObject instance = new JSONObject();
+        instance.put("id", id);
+        instance.put("uri", getUri());
+        instance.put("name", StringUtils.defaultString(name));
+        instance.put("state", state);
+        JSONObject operationJson = new JSONObject();
+        operationJson.put("event", operation);
+        instance.put("operation", operationJson);
+        instance.put("tags", JSONArray.fromObject(tags));
+        // a null value would remove the field, the monitors get it with getString
+        instance.put("updated", StringUtils.defaultString(updated));
+        instance.put("owner", owner);
+        if (box != null) {
+            instance.put("box", box);
+        }
+        if (policyBox != null) {
+            JSONObject policyBoxJson = new JSONObject();
+            policyBoxJson.put("id", policyBox);
+            instance.put("policy_box", policyBoxJson);
+        }
+        return instance;
+    }
+
+    public static InstanceSummary fromJson(JSONObject instance) {
+        Object operation = instance.opt("operation");
+        if (operation instanceof JSONObject) {
+            operation = ((JSONObject) operation).optString("event", null);
+        }
+        Object box = instance.opt("box");
+        if (box instanceof JSONObject) {
+            box = ((JSONObject) box).optString("id", null);
+        }
+        Object policyBox = instance.opt("policy_box");
+        if (policyBox instanceof JSONObject) {
+            policyBox = ((JSONObject) policyBox).optString("id", null);
+        }
+        List<String> tags = new ArrayList<String>();
+        JSONArray tagsJson = instance.optJSONArray("tags");
+        if (tagsJson != null) {
+            for (Object tag : tagsJson) {
+                tags.add(String.valueOf(tag));
+            }
+        }
+        return new InstanceSummary(instance.getString("id"), instance.optString("name", null),
+                instance.optString("state", null), operation != null ? operation.toString() : null, tags,
+                StringUtils.defaultIfEmpty(instance.optString("updated", null), null),
+                instance.optString("owner", null),
+                box instanceof String ? (String) box : null, policyBox instanceof String ? (String) policyBox : null);
+    }
+
+    /**
+     * Reads an instance summary from a response that contains a single instance.
+     */
+    public static InstanceSummary parse(InputStream input) throws IOException {
+        JsonParser parser = JsonStreamParser.createParser(input);
+        try {
+            JsonStreamParser.expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            return read(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads the instance summaries from a response that contains an array of instances, the visitor receives each
+     * summary as soon as it is read.
+     */
+    public static void parseArray(InputStream input, Visitor visitor) throws IOException {
+        JsonParser parser = JsonStreamParser.createParser(input);
+        try {
+            JsonStreamParser.expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                JsonStreamParser.expect(parser, token, JsonToken.START_OBJECT);
+                if (!visitor.visit(read(parser))) {
+                    break;
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static InstanceSummary read(JsonParser parser) throws IOException {
+        String id = null;
+        String name = null;
+        String state = null;
+        String operation = null;
+        List<String> tags = null;
+        String updated = null;
+        String owner = null;
+        String box = null;
+        String policyBox = null;
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String field = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = readString(parser, valueToken);
+                    break;
+                case "name":
+                    name = readString(parser, valueToken);
+                    break;
+                case "state":
+                    state = readString(parser, valueToken);
+                    break;
+                case "updated":
+                    updated = readString(parser, valueToken);
+                    break;
+                case "owner":
+                    owner = readString(parser, valueToken);
+                    break;
+                case "operation":
+                    // This is for backward compatibility, old instances have the event as operation
+                    operation = valueToken == JsonToken.START_OBJECT
+                            ? readField(parser, "event") : readString(parser, valueToken);
+                    break;
+                case "box":
+                    box = valueToken == JsonToken.START_OBJECT
+                            ? readField(parser, "id") : readString(parser, valueToken);
+                    break;
+                case "policy_box":
+                    policyBox = valueToken == JsonToken.START_OBJECT
+                            ? readField(parser, "id") : readString(parser, valueToken);
+                    break;
+                case "tags":
+                    tags = readTags(parser, valueToken);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (id == null) {
+            throw new IOException("Instance without id found in the response");
+        }
+        return new InstanceSummary(id, name, state, operation, tags, updated, owner, box, policyBox);
+    }
+
+    /**
+     * Reads the value of a field of the object at the current position, skipping the other fields.
+     */
+    private static String readField(JsonParser parser, String name) throws IOException {
+        String value = null;
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String field = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (name.equals(field)) {
+                value = readString(parser, valueToken);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private static String readString(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    private static List<String> readTags(JsonParser parser, JsonToken token) throws IOException {
+        List<String> tags = new ArrayList<String>();
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return tags;
+        }
+        for (JsonToken tagToken = parser.nextToken(); tagToken != JsonToken.END_ARRAY; tagToken = parser.nextToken()) {
+            String tag = readString(parser, tagToken);
+            if (tag != null) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof InstanceSummary)) {
+            return false;
+        }
+        InstanceSummary other = (InstanceSummary) obj;
+        return id.equals(other.id) && StringUtils.equals(name, other.name) && StringUtils.equals(state, other.state)
+                && StringUtils.equals(operation, other.operation) && tags.equals(other.tags)
+                && StringUtils.equals(updated, other.updated) && StringUtils.equals(owner, other.owner)
+                && StringUtils.equals(box, other.box) && StringUtils.equals(policyBox, other.policyBox);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id.hashCode();
+        result = 31 * result + (state != null ? state.hashCode() : 0);
+        return 31 * result + (updated != null ? updated.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format("'{'id: {0}, state: {1}, operation: {2}, tags: {3}, updated: {4}'}'",
+                id, state, operation, tags, updated);
+    }
+
+    /**
+     * Receives the instance summaries one at a time while an array of instances is read from the response stream.
+     */
+    public interface Visitor {
+
+        /**
+         * Visits the next instance summary.
+         *
+         * @param instance the summary of the instance read from the stream
+         * @return false to stop reading the array
+         */
+        boolean visit(InstanceSummary instance) throws IOException;
+
+    }
+
+}
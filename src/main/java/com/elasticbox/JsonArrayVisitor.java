@@ -0,0 +1,33 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Receives the elements of a JSON array one at a time while the array is read from the response stream.
+ */
+public interface JsonArrayVisitor {
+
+    /**
+     * Visits the next element of the array.
+     *
+     * @param element the element read from the stream
+     * @return false to stop reading the array
+     */
+    public boolean visit(JSONObject element) throws IOException;
+
+}
@@ -0,0 +1,135 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+
+/**
+ * Reads ElasticBox API responses incrementally from the response stream, so the response is never held as a
+ * string and the elements of a large array can be visited and discarded one at a time.
+ */
+public final class JsonStreamParser {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JsonStreamParser() {
+    }
+
+    public static JsonParser createParser(InputStream input) throws IOException {
+        return JSON_FACTORY.createParser(input);
+    }
+
+    /**
+     * Reads an array of JSON objects from the stream, the visitor receives each object as soon as it is read.
+     */
+    public static void parseArray(InputStream input, JsonArrayVisitor visitor) throws IOException {
+        JsonParser parser = createParser(input);
+        try {
+            expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                JSONObject element = new JSONObject();
+                readObject(parser, element);
+                if (!visitor.visit(element)) {
+                    break;
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    static void expect(JsonParser parser, JsonToken token, JsonToken expectedToken) throws IOException {
+        if (token != expectedToken) {
+            throw new IOException(MessageFormat.format("Unexpected JSON token {0} at {1}, expected {2}", token,
+                    parser.getCurrentLocation(), expectedToken));
+        }
+    }
+
+    /**
+     * Reads the fields of the current object into the specified JSON object. Nested objects and arrays are added
+     * empty to their parent and then filled, because json-lib copies the JSON values added to an object.
+     */
+    static void readObject(JsonParser parser, JSONObject object) throws IOException {
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (valueToken == JsonToken.START_OBJECT) {
+                object.element(name, new JSONObject());
+                readObject(parser, object.getJSONObject(name));
+            } else if (valueToken == JsonToken.START_ARRAY) {
+                object.element(name, new JSONArray());
+                readArray(parser, object.getJSONArray(name));
+            } else {
+                object.element(name, readValue(parser, valueToken));
+            }
+        }
+    }
+
+    static void readArray(JsonParser parser, JSONArray array) throws IOException {
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token == JsonToken.START_OBJECT) {
+                JSONObject object = new JSONObject();
+                readObject(parser, object);
+                array.element(object);
+            } else if (token == JsonToken.START_ARRAY) {
+                JSONArray nestedArray = new JSONArray();
+                readArray(parser, nestedArray);
+                array.element(nestedArray);
+            } else {
+                array.element(readValue(parser, token));
+            }
+        }
+    }
+
+    static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null) {
+            throw new IOException("Unexpected end of JSON content");
+        }
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return parser.getIntValue();
+                    case LONG:
+                        return parser.getLongValue();
+                    default:
+                        return parser.getBigIntegerValue();
+                }
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return JSONNull.getInstance();
+            default:
+                throw new IOException(MessageFormat.format("Unexpected JSON token {0} at {1}", token,
+                        parser.getCurrentLocation()));
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of getting several resources by their IDs: the resources that were found and the IDs of the ones that were
+ * not returned, because they do not exist or the user cannot access them.
+ *
+ * @param <T> the type of the resources
+ */
+public class MultiGetResult<T> {
+    private final List<T> found;
+    private final Set<String> missingIds;
+
+    public MultiGetResult(List<T> found, Set<String> missingIds) {
+        this.found = Collections.unmodifiableList(found);
+        this.missingIds = Collections.unmodifiableSet(missingIds);
+    }
+
+    public List<T> getFound() {
+        return found;
+    }
+
+    public Set<String> getMissingIds() {
+        return missingIds;
+    }
+
+    public boolean isComplete() {
+        return missingIds.isEmpty();
+    }
+
+}
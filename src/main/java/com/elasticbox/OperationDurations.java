@@ -0,0 +1,352 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Observed durations of the instance operations of one ElasticBox cloud. The durations are kept per operation event,
+ * box version, deployment policy and slave configuration, and also per operation event alone to estimate the
+ * operations of boxes that have not been seen yet. Only the latest durations of each key are kept, their percentiles
+ * are computed when a duration is recorded so reading them does not depend on the number of samples.
+ */
+public class OperationDurations {
+    public static final int DEFAULT_MAX_SAMPLES = Integer.getInteger("elasticbox.OperationDurations.maxSamples", 20);
+
+    public static final int DEFAULT_MAX_KEYS = Integer.getInteger("elasticbox.OperationDurations.maxKeys", 1000);
+
+    /**
+     * Event of the time between the end of the deployment of a slave instance and the slave being online.
+     */
+    public static final String ONLINE_EVENT = "online";
+
+    private static final char SEPARATOR = '|';
+    private static final int FORMAT_VERSION = 1;
+
+    private final int maxSamples;
+    private final Map<String, Samples> samples;
+    private volatile boolean modified;
+
+    private static final class Samples {
+        private final long[] latest;
+        private int count;
+        private long[] sorted = new long[0];
+
+        private Samples(int maxSamples) {
+            latest = new long[maxSamples];
+        }
+
+        private void add(long duration) {
+            latest[count % latest.length] = duration;
+            count++;
+            long[] newSorted = Arrays.copyOf(latest, Math.min(count, latest.length));
+            Arrays.sort(newSorted);
+            sorted = newSorted;
+        }
+
+        private JSONArray toJson() {
+            JSONArray json = new JSONArray();
+            int size = Math.min(count, latest.length);
+            for (int i = count - size; i < count; i++) {
+                json.add(latest[i % latest.length]);
+            }
+            return json;
+        }
+    }
+
+    /**
+     * Percentiles of the latest durations of an operation.
+     */
+    public static final class Statistics {
+        private final String key;
+        private final long[] sorted;
+
+        private Statistics(String key, long[] sorted) {
+            this.key = key;
+            this.sorted = sorted;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getEvent() {
+            return getKeyPart(key, 0);
+        }
+
+        public String getBox() {
+            return getKeyPart(key, 1);
+        }
+
+        public String getPolicy() {
+            return getKeyPart(key, 2);
+        }
+
+        public String getSlaveConfiguration() {
+            return getKeyPart(key, 3);
+        }
+
+        public int getCount() {
+            return sorted.length;
+        }
+
+        public long getP50() {
+            return getPercentile(sorted, 0.5);
+        }
+
+        public long getP90() {
+            return getPercentile(sorted, 0.9);
+        }
+
+        public long getP99() {
+            return getPercentile(sorted, 0.99);
+        }
+    }
+
+    public OperationDurations() {
+        this(DEFAULT_MAX_SAMPLES, DEFAULT_MAX_KEYS);
+    }
+
+    public OperationDurations(int maxSamples, final int maxKeys) {
+        this.maxSamples = maxSamples;
+        this.samples = new LinkedHashMap<String, Samples>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Samples> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    /**
+     * Returns the key of the durations of an operation.
+     *
+     * @param event the operation event, for instance deploy or reinstall
+     * @param box the ID of the deployed box version, or null if it is not known
+     * @param policy the ID of the deployment policy, or null if it is not known
+     */
+    public static String getKey(String event, String box, String policy) {
+        return event + SEPARATOR + (box != null ? box : "") + SEPARATOR + (policy != null ? policy : "");
+    }
+
+    /**
+     * Returns the key of the durations of an operation on the instance of a slave.
+     *
+     * @param slaveConfiguration the ID of the slave configuration, or null if it is not known
+     */
+    public static String getKey(String event, String box, String policy, String slaveConfiguration) {
+        String key = getKey(event, box, policy);
+        return slaveConfiguration != null ? key + SEPARATOR + slaveConfiguration : key;
+    }
+
+    /**
+     * Returns the key of the durations of the current operation of the instance.
+     */
+    public static String getKey(JSONObject instance) {
+        JSONObject operation = instance.optJSONObject("operation");
+        JSONObject policyBox = instance.optJSONObject("policy_box");
+        return getKey(operation != null ? operation.optString("event", null) : null,
+                instance.optString("box", null), policyBox != null ? policyBox.optString("id", null) : null);
+    }
+
+    private static String getKeyPart(String key, int index) {
+        String[] parts = key.split("\\|", -1);
+        return index < parts.length && !parts[index].isEmpty() ? parts[index] : null;
+    }
+
+    /**
+     * Returns the keys whose durations estimate the operation of the key, from the most to the least specific.
+     */
+    private static List<String> getKeys(String key) {
+        List<String> keys = new ArrayList<String>(3);
+        keys.add(key);
+        String event = key.substring(0, key.indexOf(SEPARATOR));
+        String operationKey = getKey(event, getKeyPart(key, 1), getKeyPart(key, 2));
+        if (!keys.contains(operationKey)) {
+            keys.add(operationKey);
+        }
+        String eventKey = getKey(event, null, null);
+        if (!keys.contains(eventKey)) {
+            keys.add(eventKey);
+        }
+        return keys;
+    }
+
+    /**
+     * Records the duration of a completed operation.
+     *
+     * @param duration in milliseconds
+     */
+    public void record(String key, long duration) {
+        synchronized (samples) {
+            for (String sampleKey : getKeys(key)) {
+                Samples keySamples = samples.get(sampleKey);
+                if (keySamples == null) {
+                    keySamples = new Samples(maxSamples);
+                    samples.put(sampleKey, keySamples);
+                }
+                keySamples.add(duration);
+            }
+        }
+        modified = true;
+    }
+
+    private static long getPercentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Returns the specified percentile of the recorded durations of the key, or of the closest key with durations
+     * with the same operation event, or -1 if there is none.
+     *
+     * @param fraction the percentile as a fraction, for instance 0.5 for the median
+     */
+    public long getPercentile(String key, double fraction) {
+        for (String sampleKey : getKeys(key)) {
+            long[] sorted = getSortedSamples(sampleKey);
+            if (sorted.length > 0) {
+                return getPercentile(sorted, fraction);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the expected duration of an operation, or -1 if it cannot be estimated.
+     */
+    public long getExpectedDuration(String key) {
+        return getPercentile(key, 0.5);
+    }
+
+    private long[] getSortedSamples(String key) {
+        synchronized (samples) {
+            Samples keySamples = samples.get(key);
+            return keySamples != null ? keySamples.sorted : new long[0];
+        }
+    }
+
+    /**
+     * Returns the percentiles of the durations of all the keys, sorted by key.
+     */
+    public List<Statistics> getStatistics() {
+        Map<String, long[]> sortedSamples = new TreeMap<String, long[]>();
+        synchronized (samples) {
+            for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+                sortedSamples.put(entry.getKey(), entry.getValue().sorted);
+            }
+        }
+        List<Statistics> statistics = new ArrayList<Statistics>(sortedSamples.size());
+        for (Map.Entry<String, long[]> entry : sortedSamples.entrySet()) {
+            statistics.add(new Statistics(entry.getKey(), entry.getValue()));
+        }
+        return statistics;
+    }
+
+    public int getKeyCount() {
+        synchronized (samples) {
+            return samples.size();
+        }
+    }
+
+    /**
+     * Returns whether durations have been recorded since the durations were created, loaded or saved.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Saves the latest durations of each key to the file, replacing it atomically.
+     */
+    public void save(File file) throws IOException {
+        modified = false;
+        JSONObject durations = new JSONObject();
+        synchronized (samples) {
+            for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+                durations.put(entry.getKey(), entry.getValue().toJson());
+            }
+        }
+        JSONObject json = new JSONObject();
+        json.put("version", FORMAT_VERSION);
+        json.put("durations", durations);
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            Files.write(tempFile.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            modified = true;
+            Files.deleteIfExists(tempFile.toPath());
+            throw ex;
+        }
+    }
+
+    /**
+     * Loads the durations saved to the file, the durations of each key are added to the ones already recorded.
+     * Nothing is loaded if the file does not exist.
+     */
+    public void load(File file) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        JSONObject durations;
+        try {
+            JSONObject json = JSONObject.fromObject(new String(Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8));
+            durations = json.getJSONObject("durations");
+        } catch (JSONException ex) {
+            throw new IOException("Invalid operation durations in " + file, ex);
+        }
+        synchronized (samples) {
+            for (Object key : durations.keySet()) {
+                JSONArray keyDurations = durations.optJSONArray((String) key);
+                if (keyDurations == null || keyDurations.isEmpty()) {
+                    continue;
+                }
+                Samples keySamples = samples.get(key);
+                if (keySamples == null) {
+                    keySamples = new Samples(maxSamples);
+                    samples.put((String) key, keySamples);
+                }
+                for (Object duration : keyDurations) {
+                    if (duration instanceof Number) {
+                        keySamples.add(((Number) duration).longValue());
+                    }
+                }
+            }
+        }
+    }
+
+}
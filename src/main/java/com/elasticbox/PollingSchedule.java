@@ -0,0 +1,62 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+/**
+ * Schedule of the polls of an operation whose expected duration may be known. The polls are sparse while the
+ * operation is far from its expected completion, dense around it and then back off exponentially. When the duration
+ * is not known the polls back off exponentially from the start.
+ */
+public final class PollingSchedule {
+    public static final long MIN_DELAY = Long.getLong("elasticbox.PollingSchedule.minDelay", 1000);
+
+    public static final long MAX_DELAY = Long.getLong("elasticbox.PollingSchedule.maxDelay", 30 * 1000);
+
+    // fraction of the expected duration before and after the expected completion time that is polled densely
+    private static final double DENSE_WINDOW = 0.1;
+
+    // fraction of the expected duration between the polls of the dense window
+    private static final double DENSE_DELAY = 0.01;
+
+    private PollingSchedule() {
+    }
+
+    /**
+     * Returns the delay in milliseconds before the next poll.
+     *
+     * @param expectedDuration expected duration of the operation in milliseconds, or a negative value if not known
+     * @param elapsed milliseconds elapsed since the operation started
+     */
+    public static long getDelay(long expectedDuration, long elapsed) {
+        long delay;
+        if (expectedDuration < 0) {
+            // each poll is 10% later than the previous one
+            delay = elapsed / 10;
+        } else {
+            long denseStart = (long) (expectedDuration * (1 - DENSE_WINDOW));
+            long denseEnd = (long) (expectedDuration * (1 + DENSE_WINDOW));
+            if (elapsed < denseStart) {
+                // halve the remaining time to the dense window on each poll
+                delay = (denseStart - elapsed) / 2;
+            } else if (elapsed <= denseEnd) {
+                delay = (long) (expectedDuration * DENSE_DELAY);
+            } else {
+                // each poll is 50% later than the previous one after the dense window
+                delay = (elapsed - denseEnd) / 2;
+            }
+        }
+        return Math.max(MIN_DELAY, Math.min(MAX_DELAY, delay));
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the entries of named queues. Each change of a queue is appended to the file as one JSON line,
+ * so that the queues can be rebuilt by replaying the file after a restart. The file is compacted to the live entries
+ * when it is opened, which also drops a record left incomplete by a crash, and when the appended records outnumber the
+ * live entries.
+ */
+public class QueueJournal {
+    private static final Logger LOGGER = Logger.getLogger(QueueJournal.class.getName());
+
+    public static final int DEFAULT_COMPACTION_THRESHOLD =
+            Integer.getInteger("elasticbox.QueueJournal.compactionThreshold", 1000);
+
+    private final File file;
+    private final int compactionThreshold;
+    private final Map<String, Map<String, JSONObject>> queues = new HashMap<String, Map<String, JSONObject>>();
+    private Writer writer;
+    private int recordCount;
+
+    public QueueJournal(File file) {
+        this(file, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public QueueJournal(File file, int compactionThreshold) {
+        this.file = file;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Replays the records of the file and opens it to append new records. Malformed records are skipped.
+     */
+    public synchronized void open() throws IOException {
+        close();
+        queues.clear();
+        if (file.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                int lineNumber = 0;
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lineNumber++;
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        apply(JSONObject.fromObject(line));
+                    } catch (JSONException ex) {
+                        LOGGER.warning(MessageFormat.format("Skipping malformed record {0} of journal {1}",
+                                lineNumber, file));
+                    }
+                }
+            }
+        }
+        compact();
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            try {
+                writer.close();
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the entries of the queue by key, in the order they were added.
+     */
+    public synchronized Map<String, JSONObject> getEntries(String queue) {
+        Map<String, JSONObject> entries = queues.get(queue);
+        return entries != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<String, JSONObject>(entries))
+                : Collections.<String, JSONObject>emptyMap();
+    }
+
+    /**
+     * Records the entry of the queue, nothing is appended if the queue already has the same entry.
+     *
+     * @return true if a record has been appended
+     */
+    public synchronized boolean add(String queue, String key, JSONObject data) throws IOException {
+        Map<String, JSONObject> entries = queues.get(queue);
+        if (entries != null && data.equals(entries.get(key))) {
+            return false;
+        }
+        JSONObject record = new JSONObject();
+        record.put("queue", queue);
+        record.put("key", key);
+        record.put("data", data);
+        append(record);
+        apply(record);
+        return true;
+    }
+
+    /**
+     * Records the removal of the entry of the queue, nothing is appended if the queue has no such entry.
+     *
+     * @return true if a record has been appended
+     */
+    public synchronized boolean remove(String queue, String key) throws IOException {
+        Map<String, JSONObject> entries = queues.get(queue);
+        if (entries == null || !entries.containsKey(key)) {
+            return false;
+        }
+        JSONObject record = new JSONObject();
+        record.put("queue", queue);
+        record.put("key", key);
+        append(record);
+        apply(record);
+        return true;
+    }
+
+    /**
+     * Records the changes needed for the queue to have exactly the specified entries.
+     */
+    public synchronized void sync(String queue, Map<String, JSONObject> entries) throws IOException {
+        Map<String, JSONObject> current = queues.get(queue);
+        if (current != null) {
+            for (String key : new ArrayList<String>(current.keySet())) {
+                if (!entries.containsKey(key)) {
+                    remove(queue, key);
+                }
+            }
+        }
+        for (Map.Entry<String, JSONObject> entry : entries.entrySet()) {
+            add(queue, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Compacts the file if the number of records exceeds the compaction threshold and doubles the number of entries.
+     *
+     * @return true if the file has been compacted
+     */
+    public synchronized boolean compactIfNeeded() throws IOException {
+        if (recordCount > compactionThreshold && recordCount > 2 * size()) {
+            compact();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the file atomically with one record per entry.
+     */
+    public synchronized void compact() throws IOException {
+        close();
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Map<String, JSONObject>> queue : queues.entrySet()) {
+            for (Map.Entry<String, JSONObject> entry : queue.getValue().entrySet()) {
+                JSONObject record = new JSONObject();
+                record.put("queue", queue.getKey());
+                record.put("key", entry.getKey());
+                record.put("data", entry.getValue());
+                lines.add(record.toString());
+            }
+        }
+        File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            Files.write(tempFile.toPath(), lines, StandardCharsets.UTF_8);
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw ex;
+        }
+        recordCount = lines.size();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the number of records in the file.
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of entries of all the queues.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Map<String, JSONObject> entries : queues.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    private void append(JSONObject record) throws IOException {
+        if (writer == null) {
+            throw new IOException(MessageFormat.format("Journal {0} is not open", file));
+        }
+        writer.write(record.toString());
+        writer.write('\n');
+        writer.flush();
+        recordCount++;
+    }
+
+    private void apply(JSONObject record) {
+        String queue = record.getString("queue");
+        String key = record.getString("key");
+        Map<String, JSONObject> entries = queues.get(queue);
+        if (record.has("data")) {
+            if (entries == null) {
+                entries = new LinkedHashMap<String, JSONObject>();
+                queues.put(queue, entries);
+            }
+            entries.put(key, record.getJSONObject("data"));
+        } else if (entries != null) {
+            entries.remove(key);
+            if (entries.isEmpty()) {
+                queues.remove(queue);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.apache.http.HttpStatus;
+
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits the requests per second and the requests in flight that the clients of one ElasticBox cloud send. Both
+ * limits start at the configured maximum, they are cut down when ElasticBox throttles or fails requests or its
+ * latency grows well above the usual, and they recover slowly while requests succeed.
+ *
+ * <p>Requests of higher priority may use the whole limit, while requests of lower priority may only use a share of
+ * it, so that the deployment of slaves is not delayed by requests to fill the fields of configuration forms.</p>
+ */
+public class RequestLimiter {
+    private static final Logger LOGGER = Logger.getLogger(RequestLimiter.class.getName());
+
+    private static final long MAX_WAIT = Long.getLong("elasticbox.RequestLimiter.maxWait", 60 * 1000);
+
+    private static final double LATENCY_TOLERANCE = 3.0;
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final long DECREASE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private static final ThreadLocal<Priority> currentPriority = new ThreadLocal<Priority>();
+
+    /**
+     * Priority of the requests, each priority may use a share of the current limits.
+     */
+    public enum Priority {
+        LOW(0.5), NORMAL(0.8), HIGH(1.0);
+
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    /**
+     * Returns the priority of the requests sent by the current thread, or null if it is not set.
+     */
+    public static Priority getCurrentPriority() {
+        return currentPriority.get();
+    }
+
+    /**
+     * Sets the priority of the requests sent by the current thread.
+     *
+     * @param priority the new priority, or null to clear it
+     * @return the previous priority, to be restored when the thread is done
+     */
+    public static Priority setCurrentPriority(Priority priority) {
+        Priority previousPriority = currentPriority.get();
+        if (priority != null) {
+            currentPriority.set(priority);
+        } else {
+            currentPriority.remove();
+        }
+        return previousPriority;
+    }
+
+    private volatile Settings settings;
+
+    private double concurrencyLimit;
+    private double rateLimit;
+    private double availablePermits;
+    private long lastRefillTime;
+    private long lastDecreaseTime;
+    private double averageLatency;
+    private int inFlight;
+    private final int[] waiting = new int[Priority.values().length];
+    private long delayedRequests;
+    private long congestionEvents;
+
+    public RequestLimiter(Settings settings) {
+        this.settings = settings;
+        this.concurrencyLimit = settings.getMaxConcurrentRequests();
+        this.rateLimit = settings.getMaxRequestsPerSecond();
+        this.availablePermits = Math.max(1, rateLimit);
+        this.lastRefillTime = System.nanoTime();
+        this.lastDecreaseTime = lastRefillTime - DECREASE_INTERVAL;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Replaces the maximum limits, the current limits are lowered if they are above the new maximum.
+     */
+    public synchronized void updateSettings(Settings settings) {
+        this.settings = settings;
+        concurrencyLimit = Math.min(concurrencyLimit, settings.getMaxConcurrentRequests());
+        rateLimit = Math.min(rateLimit, settings.getMaxRequestsPerSecond());
+        notifyAll();
+    }
+
+    /**
+     * Waits until a request of the specified priority can be sent, up to the default maximum wait time.
+     *
+     * @throws ClientException with status 429 if the request cannot be sent within the maximum wait time
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(Priority priority) throws ClientException, InterruptedIOException {
+        acquire(priority, MAX_WAIT);
+    }
+
+    /**
+     * Waits until a request of the specified priority can be sent.
+     *
+     * @param maxWait maximum time to wait in milliseconds
+     * @throws ClientException with status 429 if the request cannot be sent within the maximum wait time
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public synchronized void acquire(Priority priority, long maxWait) throws ClientException, InterruptedIOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+        boolean delayed = false;
+        waiting[priority.ordinal()]++;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                int allowedInFlight = Math.max(1, (int) (concurrencyLimit * priority.share));
+                long waitTime;
+                if (inFlight >= allowedInFlight || hasWaitersAbove(priority)) {
+                    waitTime = deadline - now;
+                } else if (availablePermits < 1) {
+                    waitTime = Math.min(deadline - now, (long) ((1 - availablePermits) * 1e9 / rateLimit) + 1);
+                } else {
+                    availablePermits--;
+                    inFlight++;
+                    return;
+                }
+
+                if (now >= deadline) {
+                    throw new ClientException(MessageFormat.format(
+                            "Unable to send request to ElasticBox within {0} seconds, {1} requests are in flight",
+                            TimeUnit.MILLISECONDS.toSeconds(maxWait), inFlight), 429);
+                }
+                if (!delayed) {
+                    delayed = true;
+                    delayedRequests++;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitTime, 1));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send request to ElasticBox");
+        } finally {
+            // lower priority requests may be waiting for this one to go first
+            waiting[priority.ordinal()]--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Releases a request acquired with {@link #acquire(Priority)} and adapts the limits to its outcome.
+     *
+     * @param latency the time in milliseconds the request took
+     * @param status the status of the response, or -1 if the request failed without response
+     */
+    public synchronized void release(long latency, int status) {
+        inFlight--;
+        if (status == -1 || status == 429 || status == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            decrease();
+        } else if (averageLatency > 0 && latency > averageLatency * LATENCY_TOLERANCE) {
+            averageLatency += (latency - averageLatency) * 0.05;
+            decrease();
+        } else {
+            averageLatency = averageLatency > 0 ? averageLatency + (latency - averageLatency) * 0.05 : latency;
+            Settings currentSettings = settings;
+            concurrencyLimit = Math.min(currentSettings.getMaxConcurrentRequests(),
+                    concurrencyLimit + 1 / concurrencyLimit);
+            rateLimit = Math.min(currentSettings.getMaxRequestsPerSecond(), rateLimit + 1 / rateLimit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Releases a request acquired with {@link #acquire(Priority)} that was abandoned before it had an outcome.
+     */
+    public synchronized void cancel() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        if (now - lastDecreaseTime < DECREASE_INTERVAL) {
+            return;
+        }
+        lastDecreaseTime = now;
+        congestionEvents++;
+        concurrencyLimit = Math.max(1, concurrencyLimit * DECREASE_FACTOR);
+        rateLimit = Math.max(1, rateLimit * DECREASE_FACTOR);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("ElasticBox is congested, limits lowered to {0} requests in flight and "
+                    + "{1} requests per second", getConcurrencyLimit(), getRateLimit()));
+        }
+    }
+
+    private void refill(long now) {
+        availablePermits = Math.min(Math.max(1, rateLimit),
+                availablePermits + (now - lastRefillTime) * rateLimit / 1e9);
+        lastRefillTime = now;
+    }
+
+    private boolean hasWaitersAbove(Priority priority) {
+        for (int i = priority.ordinal() + 1; i < waiting.length; i++) {
+            if (waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    public synchronized int getRateLimit() {
+        return (int) rateLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getAverageLatency() {
+        return (long) averageLatency;
+    }
+
+    public synchronized long getDelayedRequests() {
+        return delayedRequests;
+    }
+
+    public synchronized long getCongestionEvents() {
+        return congestionEvents;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MessageFormat.format("concurrencyLimit: {0}, rateLimit: {1}, inFlight: {2}, averageLatency: {3}",
+                getConcurrencyLimit(), getRateLimit(), inFlight, getAverageLatency());
+    }
+
+    /**
+     * Maximum limits of the requests to an ElasticBox cloud.
+     */
+    public static class Settings {
+        public static final int DEFAULT_MAX_REQUESTS_PER_SECOND =
+                Integer.getInteger("elasticbox.RequestLimiter.maxRequestsPerSecond", 50);
+        public static final int DEFAULT_MAX_CONCURRENT_REQUESTS =
+                Integer.getInteger("elasticbox.RequestLimiter.maxConcurrentRequests", 20);
+
+        private final int maxRequestsPerSecond;
+        private final int maxConcurrentRequests;
+
+        public Settings() {
+            this(0, 0);
+        }
+
+        /**
+         * Creates the limiter settings, any value that is not positive is replaced by its default.
+         *
+         * @param maxRequestsPerSecond max number of requests sent per second
+         * @param maxConcurrentRequests max number of requests in flight
+         */
+        public Settings(int maxRequestsPerSecond, int maxConcurrentRequests) {
+            this.maxRequestsPerSecond = maxRequestsPerSecond > 0
+                    ? maxRequestsPerSecond : DEFAULT_MAX_REQUESTS_PER_SECOND;
+            this.maxConcurrentRequests = maxConcurrentRequests > 0
+                    ? maxConcurrentRequests : DEFAULT_MAX_CONCURRENT_REQUESTS;
+        }
+
+        public int getMaxRequestsPerSecond() {
+            return maxRequestsPerSecond;
+        }
+
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) obj;
+            return maxRequestsPerSecond == other.maxRequestsPerSecond
+                    && maxConcurrentRequests == other.maxConcurrentRequests;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * maxRequestsPerSecond + maxConcurrentRequests;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format("maxRequestsPerSecond: {0}, maxConcurrentRequests: {1}",
+                    maxRequestsPerSecond, maxConcurrentRequests);
+        }
+    }
+
+}
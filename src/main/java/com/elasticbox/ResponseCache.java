@@ -0,0 +1,217 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of GET responses that carry an ETag or a Last-Modified validator. Cached responses are
+ * revalidated with a conditional request and a 304 response is answered with the cached body. The cache is bounded
+ * by the total size of the cached bodies, the least recently used responses are evicted first.
+ */
+public class ResponseCache {
+    public static final long DEFAULT_MAX_SIZE =
+            Long.getLong("elasticbox.ResponseCache.maxSize", 16 * 1024 * 1024);
+
+    private final long maxSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResponseCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ResponseCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private static String getKey(String scope, HttpRequestBase request) {
+        return scope + ' ' + request.getURI();
+    }
+
+    /**
+     * Adds the validators of the cached response, if any, to the request.
+     *
+     * @param scope the scope of the cached responses, usually the token the request is sent with
+     * @param request the request to send
+     */
+    public void prepare(String scope, HttpRequestBase request) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(getKey(scope, request));
+        }
+        request.removeHeaders(HttpHeaders.IF_NONE_MATCH);
+        request.removeHeaders(HttpHeaders.IF_MODIFIED_SINCE);
+        if (entry != null) {
+            if (entry.etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, entry.etag);
+            }
+            if (entry.lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+            }
+        }
+    }
+
+    /**
+     * Processes the response received for the request. A 304 response is replaced with the cached one, and a
+     * successful response with validators is stored and returned with a repeatable entity.
+     *
+     * @return the response to use
+     */
+    public HttpResponse process(String scope, HttpRequestBase request, HttpResponse response) throws IOException {
+        String key = getKey(scope, request);
+        int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_NOT_MODIFIED) {
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.get(key);
+            }
+            if (entry != null) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                hits.incrementAndGet();
+                BasicHttpResponse cachedResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+                ByteArrayEntity entity = new ByteArrayEntity(entry.body);
+                entity.setContentType(entry.contentType);
+                cachedResponse.setEntity(entity);
+                return cachedResponse;
+            }
+            return response;
+        }
+
+        misses.incrementAndGet();
+        if (status != HttpStatus.SC_OK || response.getEntity() == null) {
+            return response;
+        }
+
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        if (etag == null && lastModified == null) {
+            remove(key);
+            return response;
+        }
+
+        HttpEntity entity = response.getEntity();
+        byte[] body = EntityUtils.toByteArray(entity);
+        ContentType contentType = ContentType.get(entity);
+        Entry entry = new Entry(etag != null ? etag.getValue() : null,
+                lastModified != null ? lastModified.getValue() : null,
+                contentType != null ? contentType.toString() : ContentType.APPLICATION_JSON.toString(), body);
+        put(key, entry);
+
+        ByteArrayEntity bufferedEntity = new ByteArrayEntity(body);
+        bufferedEntity.setContentType(entry.contentType);
+        response.setEntity(bufferedEntity);
+        return response;
+    }
+
+    private void put(String key, Entry entry) {
+        if (entry.body.length > maxSize / 4) {
+            remove(key);
+            return;
+        }
+        synchronized (entries) {
+            Entry previousEntry = entries.put(key, entry);
+            if (previousEntry != null) {
+                size -= previousEntry.body.length;
+            }
+            size += entry.body.length;
+            for (Iterator<Entry> iter = entries.values().iterator(); size > maxSize && iter.hasNext(); ) {
+                size -= iter.next().body.length;
+                iter.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                size -= entry.body.length;
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format("hits: {0}, misses: {1}, entries: {2}, size: {3} KB, evictions: {4}",
+                getHits(), getMisses(), getEntryCount(), getSize() / 1024, getEvictions());
+    }
+
+    private static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final byte[] body;
+
+        Entry(String etag, String lastModified, String contentType, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+}
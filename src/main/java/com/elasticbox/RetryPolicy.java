@@ -0,0 +1,166 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLException;
+
+/**
+ * Decides whether a failed request is sent again and how long to wait before sending it. Requests with idempotent
+ * methods are retried after connection errors and transient server errors, any request is retried after a 429
+ * response because the server did not process it. The delay grows exponentially with full jitter, unless the server
+ * tells how long to wait with a Retry-After header.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = Integer.getInteger("elasticbox.RetryPolicy.maxRetries", 3);
+
+    public static final long DEFAULT_INITIAL_BACKOFF =
+            Long.getLong("elasticbox.RetryPolicy.initialBackoff", 500);
+
+    public static final long DEFAULT_MAX_BACKOFF = Long.getLong("elasticbox.RetryPolicy.maxBackoff", 30 * 1000);
+
+    public static final RetryPolicy NO_RETRIES = new RetryPolicy(0, 0, 0);
+
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE")));
+
+    private static final Set<Integer> TRANSIENT_STATUSES = Collections.unmodifiableSet(new HashSet<Integer>(
+            Arrays.asList(HttpStatus.SC_INTERNAL_SERVER_ERROR, HttpStatus.SC_BAD_GATEWAY,
+                    HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_GATEWAY_TIMEOUT)));
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param maxRetries the maximum number of times a request is sent again
+     * @param initialBackoff the maximum delay in milliseconds before the first retry
+     * @param maxBackoff the maximum delay in milliseconds before any retry
+     */
+    public RetryPolicy(int maxRetries, long initialBackoff, long maxBackoff) {
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Checks whether the request can be sent again after it failed with the specified exception.
+     *
+     * @param attempt the number of retries already made for the request
+     */
+    public boolean shouldRetry(HttpRequestBase request, int attempt, Exception error) {
+        if (attempt >= maxRetries || error instanceof InterruptedIOException && !isTimeout(error)
+                || error instanceof UnknownHostException || error instanceof SSLException) {
+            return false;
+        }
+        return IDEMPOTENT_METHODS.contains(request.getMethod()) && isRepeatable(request);
+    }
+
+    /**
+     * Checks whether the request can be sent again after it failed with the specified response status.
+     *
+     * @param attempt the number of retries already made for the request
+     */
+    public boolean shouldRetry(HttpRequestBase request, int attempt, int status) {
+        if (attempt >= maxRetries || !isRepeatable(request)) {
+            return false;
+        }
+        if (status == SC_TOO_MANY_REQUESTS) {
+            return true;
+        }
+        return TRANSIENT_STATUSES.contains(status) && IDEMPOTENT_METHODS.contains(request.getMethod());
+    }
+
+    /**
+     * Returns the delay in milliseconds before the next retry.
+     *
+     * @param attempt the number of retries already made for the request
+     * @param response the failed response, or null if the request failed without response
+     */
+    public long getDelay(int attempt, HttpResponse response) {
+        long retryAfter = response != null ? getRetryAfter(response) : -1;
+        if (retryAfter >= 0) {
+            return Math.min(retryAfter, maxBackoff);
+        }
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(attempt, 30));
+        return backoff > 0 ? ThreadLocalRandom.current().nextLong(backoff + 1) : 0;
+    }
+
+    /**
+     * Returns the delay in milliseconds requested by the Retry-After header of the response, or -1 if the response
+     * does not have a valid one.
+     */
+    static long getRetryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null) {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ex) {
+            Date date = DateUtils.parseDate(value);
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+    private static boolean isRepeatable(HttpRequestBase request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the exception is a connect or read timeout of the endpoint. Waiting for a pooled connection or
+     * for the deadline of the operation is not a timeout of the endpoint.
+     */
+    private static boolean isTimeout(Exception error) {
+        return (error instanceof SocketTimeoutException || error instanceof ConnectTimeoutException)
+                && !(error instanceof ConnectionPoolTimeoutException);
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves terminated items through the termination states until they are removed. Each item has at most one action in
+ * flight, the actions run in a fixed number of worker threads and a failed action is retried with an exponential
+ * backoff, so that repeated calls of {@link #process()} never pile up duplicate actions for the same item.
+ *
+ * @param <T> the type of the terminated items
+ */
+public abstract class TerminationPipeline<T> {
+    private static final Logger LOGGER = Logger.getLogger(TerminationPipeline.class.getName());
+
+    public static final int DEFAULT_WORKERS = Integer.getInteger("elasticbox.TerminationPipeline.workers", 4);
+
+    public static final long DEFAULT_MIN_RETRY_DELAY =
+            Long.getLong("elasticbox.TerminationPipeline.minRetryDelay", 10 * 1000);
+
+    public static final long DEFAULT_MAX_RETRY_DELAY =
+            Long.getLong("elasticbox.TerminationPipeline.maxRetryDelay", 10 * 60 * 1000);
+
+    public enum State {
+        TERMINATE_REQUESTED, TERMINATING, TERMINATED, DELETED, REMOVED
+    }
+
+    private final class Termination {
+        private final String key;
+        private final T item;
+        private volatile State state = State.TERMINATE_REQUESTED;
+        private boolean inFlight;
+        private int failures;
+        private long nextAttemptTime;
+
+        private Termination(String key, T item) {
+            this.key = key;
+            this.item = item;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Termination> terminations = new ConcurrentHashMap<String, Termination>();
+    private final AtomicLong removedCount = new AtomicLong();
+    private final ExecutorService workers;
+    private final long minRetryDelay;
+    private final long maxRetryDelay;
+
+    public TerminationPipeline(String name) {
+        this(name, DEFAULT_WORKERS, DEFAULT_MIN_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY);
+    }
+
+    public TerminationPipeline(String name, int workers, long minRetryDelay, long maxRetryDelay) {
+        this.workers = Executors.newFixedThreadPool(Math.max(workers, 1),
+                new ThreadFactoryBuilder().setNameFormat("ElasticBox-" + name + "-%d").setDaemon(true).build());
+        this.minRetryDelay = minRetryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * Returns the key that identifies the item, an item is added only once while its termination is in progress.
+     */
+    protected abstract String getKey(T item);
+
+    /**
+     * Performs the next action of the termination of the item.
+     *
+     * @param state the current state of the termination
+     * @return the state reached, the same state if the item must wait or {@link State#REMOVED} when the termination
+     *         is complete
+     * @throws IOException if the action failed, it is retried after the backoff delay
+     */
+    protected abstract State advance(T item, State state) throws IOException;
+
+    /**
+     * Adds the item to the pipeline.
+     *
+     * @return false if the termination of the item is already in progress
+     */
+    public boolean add(T item) {
+        String key = getKey(item);
+        return terminations.putIfAbsent(key, new Termination(key, item)) == null;
+    }
+
+    public boolean contains(T item) {
+        return terminations.containsKey(getKey(item));
+    }
+
+    /**
+     * Returns the termination state of the item, or null if it is not in the pipeline.
+     */
+    public State getState(T item) {
+        Termination termination = terminations.get(getKey(item));
+        return termination != null ? termination.state : null;
+    }
+
+    public boolean isEmpty() {
+        return terminations.isEmpty();
+    }
+
+    public List<T> getItems() {
+        List<T> items = new ArrayList<T>(terminations.size());
+        for (Termination termination : terminations.values()) {
+            items.add(termination.item);
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Returns the number of items whose termination is complete since the pipeline was created.
+     */
+    public long getRemovedCount() {
+        return removedCount.get();
+    }
+
+    /**
+     * Returns the number of items in each state of the termination that match the filter. Completed terminations
+     * are not kept, the count of {@link State#REMOVED} is always zero, see {@link #getRemovedCount()}.
+     */
+    public Map<State, Integer> getStateCounts(Predicate<T> filter) {
+        Map<State, Integer> counts = new EnumMap<State, Integer>(State.class);
+        for (State state : State.values()) {
+            counts.put(state, 0);
+        }
+        for (Termination termination : terminations.values()) {
+            if (filter == null || filter.test(termination.item)) {
+                State state = termination.state;
+                counts.put(state, counts.get(state) + 1);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Submits the next action of each item that has no action in flight and is not waiting for a retry.
+     *
+     * @return the number of actions submitted
+     */
+    public int process() {
+        long now = System.currentTimeMillis();
+        int submitted = 0;
+        for (final Termination termination : terminations.values()) {
+            synchronized (termination) {
+                if (termination.inFlight || termination.nextAttemptTime > now) {
+                    continue;
+                }
+                termination.inFlight = true;
+            }
+            workers.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    step(termination);
+                }
+
+            });
+            submitted++;
+        }
+        return submitted;
+    }
+
+    /**
+     * Returns the delay before the next attempt after the specified number of consecutive failures.
+     */
+    long getRetryDelay(int failures) {
+        long delay = minRetryDelay << Math.min(Math.max(failures - 1, 0), 20);
+        return Math.min(delay, maxRetryDelay);
+    }
+
+    private void step(Termination termination) {
+        State state = termination.state;
+        try {
+            State newState = advance(termination.item, state);
+            if (LOGGER.isLoggable(Level.FINER) && newState != state) {
+                LOGGER.finer(MessageFormat.format("Termination of {0} moved from {1} to {2}", termination.key,
+                        state, newState));
+            }
+            synchronized (termination) {
+                termination.failures = 0;
+                termination.nextAttemptTime = 0;
+            }
+            if (newState == State.REMOVED) {
+                if (terminations.remove(termination.key, termination)) {
+                    removedCount.incrementAndGet();
+                }
+            } else {
+                termination.state = newState;
+            }
+        } catch (IOException | RuntimeException ex) {
+            long delay;
+            synchronized (termination) {
+                termination.failures++;
+                delay = getRetryDelay(termination.failures);
+                termination.nextAttemptTime = System.currentTimeMillis() + delay;
+            }
+            LOGGER.log(Level.WARNING, MessageFormat.format(
+                    "Termination of {0} failed in state {1}, it will be retried in {2} seconds", termination.key,
+                    state, delay / 1000), ex);
+        } finally {
+            synchronized (termination) {
+                termination.inFlight = false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the token of an ElasticBox cloud so that the credentials are not looked up, and the user is not logged in,
+ * for every request. The token is kept until it expires or it is rejected, whichever happens first. Concurrent
+ * requests for a new token share a single lookup, and the token is renewed in the background shortly before it
+ * expires so that requests do not wait for it.
+ */
+public class TokenManager {
+    private static final Logger LOGGER = Logger.getLogger(TokenManager.class.getName());
+
+    public static final long DEFAULT_TOKEN_TTL = TimeUnit.SECONDS.toMillis(
+            Long.getLong("elasticbox.TokenManager.tokenTtl", 900));
+
+    public static final long DEFAULT_REFRESH_MARGIN = TimeUnit.SECONDS.toMillis(
+            Long.getLong("elasticbox.TokenManager.refreshMargin", 60));
+
+    private static final ExecutorService refresher = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("ElasticBox-TokenManager-refresh-%d").setDaemon(true).build());
+
+    /**
+     * Source of the tokens, usually the credentials of a cloud.
+     */
+    public interface TokenSource {
+
+        /**
+         * Returns a valid token, or throws an exception if the token cannot be obtained.
+         */
+        String fetchToken() throws IOException;
+    }
+
+    private static final class Token {
+        private final String value;
+        private final long refreshTime;
+        private final long expirationTime;
+
+        private Token(String value, long refreshTime, long expirationTime) {
+            this.value = value;
+            this.refreshTime = refreshTime;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private final TokenSource source;
+    private final long tokenTtl;
+    private final long refreshMargin;
+
+    private volatile Token currentToken;
+    private CompletableFuture<Token> pendingRefresh;
+
+    public TokenManager(TokenSource source) {
+        this(source, DEFAULT_TOKEN_TTL, DEFAULT_REFRESH_MARGIN);
+    }
+
+    /**
+     * @param source the source of the tokens
+     * @param tokenTtl the time in milliseconds a token is kept if the token itself does not tell when it expires
+     * @param refreshMargin the time in milliseconds before the expiration of the token to renew it in the background
+     */
+    public TokenManager(TokenSource source, long tokenTtl, long refreshMargin) {
+        this.source = source;
+        this.tokenTtl = tokenTtl;
+        this.refreshMargin = Math.min(refreshMargin, tokenTtl / 2);
+    }
+
+    /**
+     * Returns the current token, the calling thread waits for a new token only if there is no valid one.
+     */
+    public String getToken() throws IOException {
+        Token token = currentToken;
+        long now = System.currentTimeMillis();
+        if (token != null && now < token.expirationTime) {
+            if (now >= token.refreshTime) {
+                refreshInBackground(token);
+            }
+            return token.value;
+        }
+
+        return awaitRefresh(token).value;
+    }
+
+    /**
+     * Returns the current token without fetching a new one, or null if there is no valid token.
+     */
+    public String peekToken() {
+        Token token = currentToken;
+        return token != null && System.currentTimeMillis() < token.expirationTime ? token.value : null;
+    }
+
+    /**
+     * Discards the specified token after it has been rejected. The current token is kept if it is not the rejected
+     * one, so that only the first of the requests rejected with the same token causes a new lookup.
+     */
+    public void invalidate(String rejectedToken) {
+        synchronized (this) {
+            Token token = currentToken;
+            if (token != null && token.value.equals(rejectedToken)) {
+                currentToken = null;
+            }
+        }
+    }
+
+    /**
+     * Discards the current token, the next request will fetch a new one.
+     */
+    public void reset() {
+        synchronized (this) {
+            currentToken = null;
+        }
+    }
+
+    private Token awaitRefresh(Token staleToken) throws IOException {
+        CompletableFuture<Token> refresh;
+        boolean fetch = false;
+        synchronized (this) {
+            Token token = currentToken;
+            if (token != null && token != staleToken && System.currentTimeMillis() < token.expirationTime) {
+                return token;
+            }
+            refresh = pendingRefresh;
+            if (refresh == null) {
+                refresh = new CompletableFuture<Token>();
+                pendingRefresh = refresh;
+                fetch = true;
+            }
+        }
+
+        if (fetch) {
+            fetch(refresh);
+        }
+        try {
+            return refresh.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a new ElasticBox token");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to obtain a new ElasticBox token", cause);
+        }
+    }
+
+    private void refreshInBackground(Token staleToken) {
+        final CompletableFuture<Token> refresh;
+        synchronized (this) {
+            if (pendingRefresh != null || currentToken != staleToken) {
+                return;
+            }
+            refresh = new CompletableFuture<Token>();
+            pendingRefresh = refresh;
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Renewing ElasticBox token before it expires");
+        }
+        refresher.execute(new Runnable() {
+            @Override
+            public void run() {
+                fetch(refresh);
+            }
+        });
+    }
+
+    private void fetch(CompletableFuture<Token> refresh) {
+        try {
+            String value = source.fetchToken();
+            if (value == null) {
+                throw new IOException("Unable to obtain a token from the configured credentials");
+            }
+            long now = System.currentTimeMillis();
+            long expirationTime = now + tokenTtl;
+            long tokenExpirationTime = getExpirationTime(value);
+            if (tokenExpirationTime > 0 && tokenExpirationTime < expirationTime) {
+                expirationTime = tokenExpirationTime;
+            }
+            long refreshTime = Math.max(now, expirationTime - refreshMargin);
+            Token token = new Token(value, refreshTime, expirationTime);
+            synchronized (this) {
+                currentToken = token;
+                pendingRefresh = null;
+            }
+            refresh.complete(token);
+        } catch (IOException | RuntimeException ex) {
+            synchronized (this) {
+                pendingRefresh = null;
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, MessageFormat.format("Unable to obtain ElasticBox token: {0}", ex.getMessage()),
+                        ex);
+            }
+            refresh.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Returns the expiration time in milliseconds of the token if it is a JSON web token with an expiration claim,
+     * otherwise 0.
+     */
+    static long getExpirationTime(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return 0;
+        }
+        try {
+            String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            JSONObject claims = JSONObject.fromObject(payload);
+            return claims.has("exp") ? TimeUnit.SECONDS.toMillis(claims.getLong("exp")) : 0;
+        } catch (JSONException | IllegalArgumentException ex) {
+            return 0;
+        }
+    }
+
+}
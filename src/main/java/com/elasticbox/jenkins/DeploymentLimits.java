@@ -0,0 +1,113 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accounting of the instance deployments of the slave handler. Each cloud has a budget, the number of instances that
+ * can still be deployed in it, which is set on each execution of the handler and spent as the deployments start. A
+ * deployment that completes frees its concurrency slot but not its budget, its instance is counted when the budget
+ * is set again. This class is not thread safe, the handler guards it with its deployment lock.
+ */
+class DeploymentLimits {
+
+    enum Admission {
+        // the deployment can start now
+        STARTED,
+        // the deployment must wait until a running deployment completes or the budget of its cloud is set
+        DEFERRED,
+        // the max number of instances of the cloud has been reached
+        DISCARDED
+    }
+
+    private final int maxDeployments;
+    private final int maxCloudDeployments;
+    private final Map<String, Integer> budgets = new HashMap<String, Integer>();
+    private final Map<String, Integer> cloudDeployments = new HashMap<String, Integer>();
+    private int deployments;
+
+    DeploymentLimits(int maxDeployments, int maxCloudDeployments) {
+        this.maxDeployments = maxDeployments;
+        this.maxCloudDeployments = maxCloudDeployments;
+    }
+
+    /**
+     * Removes the budgets of all the clouds, the deployments are deferred until the budget of their cloud is set.
+     */
+    void clearBudgets() {
+        budgets.clear();
+    }
+
+    /**
+     * Sets the budget of the cloud to its max number of instances minus the instances that exist or have been
+     * submitted, and minus the deployments of the cloud that are running.
+     *
+     * @param instanceCount the instances of the cloud that are listed or submitted, each instance counted once
+     */
+    void setBudget(String cloudName, int maxInstances, int instanceCount) {
+        budgets.put(cloudName, maxInstances - instanceCount - getDeployments(cloudName));
+    }
+
+    Integer getBudget(String cloudName) {
+        return budgets.get(cloudName);
+    }
+
+    int getDeployments() {
+        return deployments;
+    }
+
+    int getDeployments(String cloudName) {
+        Integer count = cloudDeployments.get(cloudName);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Decides whether a deployment in the cloud can start. If it starts, it is counted as running and its instance
+     * is taken from the budget of the cloud.
+     */
+    Admission admit(String cloudName) {
+        Integer budget = budgets.get(cloudName);
+        if (budget == null) {
+            return Admission.DEFERRED;
+        }
+        if (budget <= 0) {
+            return Admission.DISCARDED;
+        }
+        int cloudDeploymentCount = getDeployments(cloudName);
+        if (deployments >= maxDeployments || cloudDeploymentCount >= maxCloudDeployments) {
+            return Admission.DEFERRED;
+        }
+        budgets.put(cloudName, budget - 1);
+        cloudDeployments.put(cloudName, cloudDeploymentCount + 1);
+        deployments++;
+        return Admission.STARTED;
+    }
+
+    /**
+     * Records that a deployment in the cloud that was started has completed, successfully or not.
+     */
+    void completed(String cloudName) {
+        int cloudDeploymentCount = getDeployments(cloudName);
+        if (cloudDeploymentCount <= 1) {
+            cloudDeployments.remove(cloudName);
+        } else {
+            cloudDeployments.put(cloudName, cloudDeploymentCount - 1);
+        }
+        if (cloudDeploymentCount > 0) {
+            deployments--;
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import com.elasticbox.BoxStack;
 import com.elasticbox.Client;
 import com.elasticbox.ClientException;
 import com.elasticbox.Constants;
+import com.elasticbox.JsonArrayVisitor;
 import com.elasticbox.jenkins.model.services.deployment.DeploymentType;
 import com.elasticbox.jenkins.util.ClientCache;
 import com.elasticbox.jenkins.util.CompositeObjectFilter;
@@ -432,30 +433,38 @@ public class DescriptorHelper {
                         new InstanceFilterByBox((boxVersion))));
     }
 
-    public static JSONArray getInstances(Client client, String workspace, ObjectFilter filter) {
-        JSONArray instances = new JSONArray();
+    public static JSONArray getInstances(Client client, String workspace, final ObjectFilter filter) {
+        final JSONArray instances = new JSONArray();
         if (client == null || StringUtils.isBlank(workspace)) {
             return instances;
         }
 
         try {
-
-            JSONArray instanceArray = client.getInstances(workspace);
-
-            if (!instanceArray.isEmpty()
-                    && !instanceArray.getJSONObject(0).getJSONArray("boxes").getJSONObject(0).containsKey("id")) {
-
-                List<String> instanceIDs = new ArrayList<String>();
-                for (int i = 0; i < instanceArray.size(); i++) {
-                    instanceIDs.add(instanceArray.getJSONObject(i).getString("id"));
+            final List<String> instanceIDs = new ArrayList<String>();
+            client.visitInstances(workspace, new JsonArrayVisitor() {
+                private Boolean boxesHaveId;
+
+                @Override
+                public boolean visit(JSONObject instance) {
+                    if (boxesHaveId == null) {
+                        boxesHaveId = instance.getJSONArray("boxes").getJSONObject(0).containsKey("id");
+                    }
+                    if (!boxesHaveId) {
+                        instanceIDs.add(instance.getString("id"));
+                    } else if (filter.accept(instance)) {
+                        instances.element(instance);
+                    }
+                    return true;
                 }
-                instanceArray = client.getInstances(workspace, instanceIDs);
-            }
-
-            for (Object instance : instanceArray) {
-                JSONObject json = (JSONObject) instance;
-                if (filter.accept(json)) {
-                    instances.add(json);
+            });
+
+            if (!instanceIDs.isEmpty()) {
+                // the listing doesn't include the box details, get the full instances by ID
+                for (Object instance : client.getInstances(workspace, instanceIDs)) {
+                    JSONObject json = (JSONObject) instance;
+                    if (filter.accept(json)) {
+                        instances.add(json);
+                    }
                 }
             }
 
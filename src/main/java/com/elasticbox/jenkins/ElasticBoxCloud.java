@@ -14,8 +14,17 @@ package com.elasticbox.jenkins;
 
 import antlr.ANTLRException;
 
+import com.elasticbox.BlobCache;
 import com.elasticbox.Client;
+import com.elasticbox.ClientMetrics;
+import com.elasticbox.ConnectionPool;
 import com.elasticbox.IProgressMonitor;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.OperationDurations;
+import com.elasticbox.RequestLimiter;
+import com.elasticbox.ResponseCache;
+import com.elasticbox.TerminationPipeline;
+import com.elasticbox.TokenManager;
 import com.elasticbox.jenkins.auth.Authentication;
 import com.elasticbox.jenkins.auth.TokenAuthentication;
 import com.elasticbox.jenkins.auth.UserAndPasswordAuthentication;
@@ -39,6 +48,7 @@ import hudson.slaves.NodeProvisioner;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import hudson.util.Scrambler;
+import hudson.util.Secret;
 import hudson.util.XStream2;
 
 import jenkins.model.Jenkins;
@@ -49,7 +59,9 @@ import net.sf.json.JSONObject;
 
 import org.apache.commons.lang.StringUtils;
 
+import org.apache.http.pool.PoolStats;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.interceptor.RequirePOST;
@@ -72,12 +84,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
@@ -100,6 +116,17 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
     private final List<? extends SlaveConfiguration> slaveConfigurations;
     private int maxInstances;
     private String description;
+    private int maxConnectionsPerRoute;
+    private int maxConnections;
+    private int connectionTtl;
+    private int idleConnectionTimeout;
+    private int connectTimeout;
+    private int readTimeout;
+    private int leaseTimeout;
+    private int maxRequestsPerSecond;
+    private int maxConcurrentRequests;
+    private Secret notificationSecret;
+    private transient volatile TokenManager tokenManager;
 
     @DataBoundConstructor
     public ElasticBoxCloud(String name, String description, String endpointUrl, int maxInstances, String credentialsId,
@@ -144,7 +171,39 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
     }
 
     public String getToken() {
-        return getTokenFromCredentials(endpointUrl, credentialsId);
+        try {
+            return getTokenManager().getToken();
+        } catch (IOException ex) {
+            LOGGER.warning(MessageFormat.format("Unable to obtain token for ElasticBox cloud {0}: {1}",
+                    getDisplayName(), ex.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Returns the manager of the token of this cloud, it caches the token obtained from the credentials of the cloud
+     * and renews it when it is rejected or about to expire.
+     */
+    public TokenManager getTokenManager() {
+        if (tokenManager == null) {
+            synchronized (this) {
+                if (tokenManager == null) {
+                    tokenManager = new TokenManager(new TokenManager.TokenSource() {
+                        @Override
+                        public String fetchToken() throws IOException {
+                            String token = getTokenFromCredentials(endpointUrl, credentialsId);
+                            if (token == null) {
+                                throw new IOException(MessageFormat.format(
+                                        "Unable to obtain token from credentials {0} for ElasticBox at {1}",
+                                        credentialsId, endpointUrl));
+                            }
+                            return token;
+                        }
+                    });
+                }
+            }
+        }
+        return tokenManager;
     }
 
     public String getCredentialsId() {
@@ -181,7 +240,7 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
         return ElasticBoxCloud.retrieveTokenFromCredentials(testEndPointUrl, testCredentialsId);
     }
 
-    private List<ElasticBoxSlave> getPendingSlaves(Label label, List<JSONObject> activeInstances) {
+    private List<ElasticBoxSlave> getPendingSlaves(Label label, List<InstanceSummary> activeInstances) {
         List<ElasticBoxSlave> pendingSlaves = new ArrayList<ElasticBoxSlave>();
         List<ElasticBoxSlave> offlineSlaves = new ArrayList<ElasticBoxSlave>();
         for (Node node : Jenkins.get().getNodes()) {
@@ -206,20 +265,17 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
         }
 
         if (!offlineSlaves.isEmpty() && !activeInstances.isEmpty()) {
-            Map<String, JSONObject> idToInstanceMap = new HashMap<String, JSONObject>(activeInstances.size());
-            for (JSONObject instance : activeInstances) {
-                idToInstanceMap.put(instance.getString("id"), instance);
+            Map<String, InstanceSummary> idToInstanceMap =
+                    new HashMap<String, InstanceSummary>(activeInstances.size());
+            for (InstanceSummary instance : activeInstances) {
+                idToInstanceMap.put(instance.getId(), instance);
             }
 
             for (ElasticBoxSlave slave : offlineSlaves) {
-                JSONObject instance = idToInstanceMap.get(slave.getInstanceId());
+                InstanceSummary instance = idToInstanceMap.get(slave.getInstanceId());
                 if (instance != null) {
-                    String state = instance.getString("state");
-                    // This is for backward compatibility.
-                    String operation = instance.optString("operation");
-                    if (operation == null) {
-                        operation = instance.getJSONObject("operation").getString("event");
-                    }
+                    String state = instance.getState();
+                    String operation = instance.getOperation();
 
                     if (Client.ON_OPERATIONS.contains(operation) && (Client.InstanceState.PROCESSING.equals(state)
                             || Client.InstanceState.DONE.equals(state))) {
@@ -234,12 +290,15 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
     }
 
     @Override
-    public synchronized Collection<NodeProvisioner.PlannedNode> provision(Label label, int excessWorkload) {
+    public Collection<NodeProvisioner.PlannedNode> provision(Label label, int excessWorkload) {
+        RequestLimiter.Priority previousPriority = RequestLimiter.setCurrentPriority(RequestLimiter.Priority.HIGH);
         try {
             return doProvision(label, excessWorkload);
         } catch (RuntimeException ex) {
             LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
             return Collections.EMPTY_LIST;
+        } finally {
+            RequestLimiter.setCurrentPriority(previousPriority);
         }
     }
 
@@ -247,7 +306,7 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
         if (LOGGER.isLoggable(Level.FINER)) {
             LOGGER.entering(LOGGER.getName(), "doProvision(" + label + "," + excessWorkload + ")");
         }
-        List<JSONObject> activeInstances;
+        List<InstanceSummary> activeInstances;
         try {
             activeInstances = ElasticBoxSlaveHandler.getActiveInstances(this);
         } catch (IOException ex) {
@@ -349,30 +408,42 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
                     LOGGER.fine("doProvision(): provisioning a EB Slave node - " + slave);
                 }
 
+                // no thread is held while the slave is launched, the planned node completes when the slave is online
+                CompletableFuture<Node> node = CompletableFuture.supplyAsync(new Supplier<IProgressMonitor>() {
+                    public IProgressMonitor get() {
+                        try {
+                            Jenkins.get().addNode(slave);
+                        } catch (IOException ex) {
+                            throw new CompletionException(ex);
+                        }
+                        return ElasticBoxSlaveHandler.submit(slave);
+                    }
+                }, Computer.threadPoolForRemoting).thenCompose(new Function<IProgressMonitor, CompletionStage<Void>>() {
+                    public CompletionStage<Void> apply(IProgressMonitor monitor) {
+                        return monitor.whenDone(slave.getLaunchTimeout());
+                    }
+                }).thenApply(new Function<Void, Node>() {
+                    public Node apply(Void ignored) {
+                        if (slave.getComputer() != null && slave.getComputer().isOnline()) {
+                            return slave;
+                        } else {
+                            LOGGER.log(
+                                    Level.WARNING,
+                                    MessageFormat.format("The slave {0} did not come online after {1} minutes."
+                                            + " It will be terminated and removed.",
+                                            slave.getDisplayName(),
+                                            slave.getLaunchTimeout()));
+
+                            slave.markForTermination();
+                            throw new CompletionException(new Exception(
+                                    MessageFormat.format(
+                                            "Cannot deploy slave {0}. See the system log for more details.",
+                                            slave.getDisplayName())));
+                        }
+                    }
+                });
                 plannedNodes.add(new NodeProvisioner.PlannedNode(slave.getDisplayName(),
-                        new FutureWrapper<Node>(Computer.threadPoolForRemoting.submit(new Callable<Node>() {
-                            public Node call() throws Exception {
-                                Jenkins.get().addNode(slave);
-                                IProgressMonitor monitor = ElasticBoxSlaveHandler.submit(slave);
-                                monitor.waitForDone(slave.getLaunchTimeout());
-                                if (slave.getComputer() != null && slave.getComputer().isOnline()) {
-                                    return slave;
-                                } else {
-                                    LOGGER.log(
-                                            Level.WARNING,
-                                            MessageFormat.format("The slave {0} did not come online after {1} minutes."
-                                                    + " It will be terminated and removed.",
-                                                    slave.getDisplayName(),
-                                                    slave.getLaunchTimeout()));
-
-                                    slave.markForTermination();
-                                    throw new Exception(
-                                            MessageFormat.format(
-                                                    "Cannot deploy slave {0}. See the system log for more details.",
-                                                    slave.getDisplayName()));
-                                }
-                            }
-                        })), 1));
+                        new FutureWrapper<Node>(node), 1));
 
                 excessWorkload -= slave.getNumExecutors();
             } catch (Descriptor.FormException ex) {
@@ -418,6 +489,158 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
         return slaveConfigurations != null ? Collections.unmodifiableList(slaveConfigurations) : Collections.EMPTY_LIST;
     }
 
+    public int getMaxConnectionsPerRoute() {
+        return getConnectionPoolSettings().getMaxConnectionsPerRoute();
+    }
+
+    @DataBoundSetter
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getMaxConnections() {
+        return getConnectionPoolSettings().getMaxConnections();
+    }
+
+    @DataBoundSetter
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectionTtl() {
+        return getConnectionPoolSettings().getConnectionTtl();
+    }
+
+    @DataBoundSetter
+    public void setConnectionTtl(int connectionTtl) {
+        this.connectionTtl = connectionTtl;
+    }
+
+    public int getIdleConnectionTimeout() {
+        return getConnectionPoolSettings().getIdleConnectionTimeout();
+    }
+
+    @DataBoundSetter
+    public void setIdleConnectionTimeout(int idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return getConnectionPoolSettings().getConnectTimeout();
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return getConnectionPoolSettings().getReadTimeout();
+    }
+
+    @DataBoundSetter
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getLeaseTimeout() {
+        return getConnectionPoolSettings().getLeaseTimeout();
+    }
+
+    @DataBoundSetter
+    public void setLeaseTimeout(int leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    /**
+     * Returns the secret shared with ElasticBox to sign the notifications of instance state changes, or null if the
+     * notifications are not enabled for this cloud.
+     */
+    public Secret getNotificationSecret() {
+        return notificationSecret;
+    }
+
+    @DataBoundSetter
+    public void setNotificationSecret(Secret notificationSecret) {
+        this.notificationSecret = notificationSecret;
+    }
+
+    public int getMaxRequestsPerSecond() {
+        return getRequestLimiterSettings().getMaxRequestsPerSecond();
+    }
+
+    @DataBoundSetter
+    public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return getRequestLimiterSettings().getMaxConcurrentRequests();
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public RequestLimiter.Settings getRequestLimiterSettings() {
+        return new RequestLimiter.Settings(maxRequestsPerSecond, maxConcurrentRequests);
+    }
+
+    public ConnectionPool.Settings getConnectionPoolSettings() {
+        return new ConnectionPool.Settings(maxConnectionsPerRoute, maxConnections, connectionTtl,
+                idleConnectionTimeout, connectTimeout, readTimeout, leaseTimeout);
+    }
+
+    /**
+     * Returns the current usage of the connection pool of this cloud, or null if no client has been created yet.
+     */
+    public PoolStats getConnectionPoolStats() {
+        return ClientCache.getConnectionPoolStats(name);
+    }
+
+    /**
+     * Returns the cache of the box and workspace responses of this cloud, or null if no client has been created yet.
+     */
+    public ResponseCache getResponseCache() {
+        return ClientCache.getResponseCache(name);
+    }
+
+    /**
+     * Returns the cache of the blobs uploaded to this cloud, or null if no client has been created yet.
+     */
+    public BlobCache getBlobCache() {
+        return ClientCache.getBlobCache(name);
+    }
+
+    /**
+     * Returns the metrics of the requests sent to this cloud, or null if no client has been created yet.
+     */
+    public ClientMetrics getClientMetrics() {
+        return ClientCache.getClientMetrics(name);
+    }
+
+    /**
+     * Returns the observed durations of the instance operations of this cloud.
+     */
+    public OperationDurations getOperationDurations() {
+        return ClientCache.getOperationDurations(name);
+    }
+
+    /**
+     * Returns the limiter of the requests to this cloud, or null if no client has been created yet.
+     */
+    public RequestLimiter getRequestLimiter() {
+        return ClientCache.getRequestLimiter(name);
+    }
+
+    /**
+     * Returns the number of terminated slaves of this cloud in each state of their termination.
+     */
+    public Map<TerminationPipeline.State, Integer> getTerminationCounts() {
+        return ElasticBoxSlaveHandler.getTerminationCounts(name);
+    }
+
     public Client getClient() throws IOException {
         return ClientCache.findOrCreateClient(name);
     }
@@ -451,7 +674,7 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
                 .REUSE_PREFIX);
     }
 
-    private SlaveConfiguration findSlaveConfiguration(Label label, List<JSONObject> activeInstances) {
+    private SlaveConfiguration findSlaveConfiguration(Label label, List<InstanceSummary> activeInstances) {
         SlaveInstance.InstanceCounter instanceCounter = new SlaveInstance.InstanceCounter(activeInstances);
 
         for (SlaveConfiguration slaveConfig : getSlaveConfigurations()) {
@@ -595,9 +818,20 @@ public class ElasticBoxCloud extends AbstractCloudImpl {
             }
 
             if (StringUtils.isBlank(newCloud.name)) {
-                newCloud = new ElasticBoxCloud(NAME_PREFIX + UUID.randomUUID().toString(), newCloud.getDescription(),
-                        newCloud.getEndpointUrl(), newCloud.getMaxInstances(),
-                        newCloud.getCredentialsId(), newCloud.getSlaveConfigurations());
+                ElasticBoxCloud unnamedCloud = newCloud;
+                newCloud = new ElasticBoxCloud(NAME_PREFIX + UUID.randomUUID().toString(),
+                        unnamedCloud.getDescription(), unnamedCloud.getEndpointUrl(), unnamedCloud.getMaxInstances(),
+                        unnamedCloud.getCredentialsId(), unnamedCloud.getSlaveConfigurations());
+                newCloud.maxConnectionsPerRoute = unnamedCloud.maxConnectionsPerRoute;
+                newCloud.maxConnections = unnamedCloud.maxConnections;
+                newCloud.connectionTtl = unnamedCloud.connectionTtl;
+                newCloud.idleConnectionTimeout = unnamedCloud.idleConnectionTimeout;
+                newCloud.connectTimeout = unnamedCloud.connectTimeout;
+                newCloud.readTimeout = unnamedCloud.readTimeout;
+                newCloud.leaseTimeout = unnamedCloud.leaseTimeout;
+                newCloud.maxRequestsPerSecond = unnamedCloud.maxRequestsPerSecond;
+                newCloud.maxConcurrentRequests = unnamedCloud.maxConcurrentRequests;
+                newCloud.notificationSecret = unnamedCloud.notificationSecret;
             }
 
             List<ElasticBoxCloud> cloudsToRemoveCachedClient = validateClouds(clouds);
@@ -15,6 +15,7 @@ package com.elasticbox.jenkins;
 import hudson.Extension;
 import hudson.ExtensionPoint;
 import hudson.model.AsyncPeriodicWork;
+import hudson.model.PeriodicWork;
 import hudson.model.TaskListener;
 import hudson.util.DaemonThreadFactory;
 import hudson.util.ExceptionCatchingThreadFactory;
@@ -43,6 +44,21 @@ public class ElasticBoxExecutor extends AsyncPeriodicWork {
         super(ElasticBoxExecutor.class.getName());
     }
 
+    /**
+     * Schedules the execution of the workloads now instead of at the next period, unless they are being executed
+     * already. The workloads are executed in the thread pool, not in the calling thread.
+     */
+    public static void executeNow() {
+        final ElasticBoxExecutor executor = PeriodicWork.all().get(ElasticBoxExecutor.class);
+        if (executor != null) {
+            threadPool.submit(new Runnable() {
+                public void run() {
+                    executor.run();
+                }
+            });
+        }
+    }
+
     private void executeAsync(final Workload workload, final TaskListener listener) {
         threadPool.submit(new Runnable() {
             public void run() {
@@ -15,7 +15,7 @@ package com.elasticbox.jenkins;
 import com.elasticbox.jenkins.migration.RetentionTimeConverter;
 import com.elasticbox.Client;
 import com.elasticbox.ClientException;
-import com.elasticbox.Constants;
+import com.elasticbox.InstanceSummary;
 import com.elasticbox.jenkins.util.JsonUtil;
 
 import hudson.Extension;
@@ -61,7 +61,6 @@ public class ElasticBoxSlave extends Slave {
     private static final String PER_PROJECT_TYPE = "Per project configured";
     private static final String GLOBAL_TYPE = "Glocally configured";
 
-    private static final int ID_PREFIX_LENGTH = 21;
     private static final String ID_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789";
     public static final int MAX_DELETE_ATTEMPTS = 10;
 
@@ -86,19 +85,7 @@ public class ElasticBoxSlave extends Slave {
         return sb.toString();
     }
 
-    private static synchronized String generateName(ElasticBoxCloud cloud, String boxVersion) throws IOException {
-        JSONObject boxJson = cloud.getClient().getBox(boxVersion);
-        String prefix = boxJson.getString("name").replaceAll("[^a-zA-Z0-9-]", "-").toLowerCase();
-        if (prefix.length() > ID_PREFIX_LENGTH) {
-            prefix = prefix.substring(0, ID_PREFIX_LENGTH);
-        } else if (prefix.length() < ID_PREFIX_LENGTH) {
-            StringBuilder padding = new StringBuilder();
-            for (int i = prefix.length(); i < ID_PREFIX_LENGTH; i++) {
-                padding.append('-');
-            }
-            prefix += padding.toString();
-        }
-
+    private static String generateName(String prefix) {
         Random random = new Random();
         String name;
         do {
@@ -123,13 +110,14 @@ public class ElasticBoxSlave extends Slave {
     public ElasticBoxSlave(AbstractSlaveConfiguration config, ElasticBoxCloud cloud,
             RetentionStrategy retentionStrategy, boolean singleUse) throws Descriptor.FormException, IOException {
 
-        super(generateName(cloud, config.resolveBoxVersion(cloud.getClient() )),
-                StringUtils.isBlank(config.getRemoteFs() )
-                        ? getRemoteFs(config.resolveDeploymentPolicy(cloud.getClient()), cloud)
-                        : config.getRemoteFs(),
-                new JNLPLauncher(true)
+        this(config, cloud, retentionStrategy, singleUse, LaunchTemplate.get(config, cloud));
+    }
+
+    private ElasticBoxSlave(AbstractSlaveConfiguration config, ElasticBoxCloud cloud,
+            RetentionStrategy retentionStrategy, boolean singleUse, LaunchTemplate template)
+            throws Descriptor.FormException, IOException {
 
-        );
+        super(generateName(template.getNamePrefix()), template.getRemoteFs(), new JNLPLauncher(true));
 
         setNodeDescription(config.getDescription());
         setNumExecutors(config.getExecutors());
@@ -138,8 +126,8 @@ public class ElasticBoxSlave extends Slave {
         setRetentionStrategy(retentionStrategy);
         setNodeProperties(Collections.EMPTY_LIST);
 
-        this.boxVersion = config.getResolvedBoxVersion();
-        this.profileId = config.getResolvedDeploymentPolicy();
+        this.boxVersion = template.getBoxVersion();
+        this.profileId = template.getDeploymentPolicy();
         this.singleUse = singleUse;
         this.cloudName = cloud.name;
         this.retentionTime = config.getRetentionTime();
@@ -316,9 +304,9 @@ public class ElasticBoxSlave extends Slave {
     }
 
     public boolean isTerminated() throws IOException {
-        JSONObject instance = getInstance();
-        String state = instance.getString("state");
-        String operation = instance.getJSONObject("operation").getString("event");
+        InstanceSummary instance = getInstanceSummary();
+        String state = instance.getState();
+        String operation = instance.getOperation();
 
         return Client.InstanceState.DONE.equals(state)
                 && Client.TERMINATE_OPERATIONS.contains(operation);
@@ -329,6 +317,11 @@ public class ElasticBoxSlave extends Slave {
         return getCloud().getClient().getInstance(getInstanceId());
     }
 
+    public InstanceSummary getInstanceSummary() throws IOException {
+        checkInstanceReachable();
+        return getCloud().getClient().getInstanceSummary(getInstanceId());
+    }
+
     public JSONObject getProfile() throws IOException {
         checkInstanceReachable();
         return getCloud().getClient().getBox(getProfileId());
@@ -352,8 +345,7 @@ public class ElasticBoxSlave extends Slave {
     }
 
     public String getInstanceState() throws IOException {
-        JSONObject instance = getInstance();
-        return instance.getString("state");
+        return getInstanceSummary().getState();
     }
 
     void markForTermination() {
@@ -427,23 +419,6 @@ public class ElasticBoxSlave extends Slave {
         }
     }
 
-    private static String getRemoteFs(String profileId, ElasticBoxCloud cloud) throws IOException {
-        Client client = cloud.getClient();
-        JSONObject profile = client.getBox(profileId);
-        JSONArray claims = profile.getJSONArray("claims");
-        if (claims.contains(Constants.LINUX_CLAIM)) {
-            return "/var/jenkins";
-        } else if (claims.contains(Constants.WINDOWS_CLAIM)) {
-            return "C:\\Jenkins";
-        } else {
-            throw new IOException(
-                    MessageFormat.format(
-                            "Cannot create slave since the selected deployment policy ''{0}'' supports"
-                                    + " neither Linux nor Windows.",
-                            profile.getString("name")));
-        }
-    }
-
     public boolean isRemovableFromCloud() {
         return removableFromCloud;
     }
@@ -577,7 +552,7 @@ public class ElasticBoxSlave extends Slave {
         @Override
         public boolean shouldTerminate(ElasticBoxComputer computer) {
             if (getMinInstances() > 0 && getSlaveConfiguration() != null) {
-                List<JSONObject> activeInstances;
+                List<InstanceSummary> activeInstances;
                 try {
                     activeInstances = ElasticBoxSlaveHandler.getActiveInstances(computer.getSlave().getCloud());
                 } catch (IOException ex) {
@@ -610,8 +585,8 @@ public class ElasticBoxSlave extends Slave {
                 }
 
                 int instanceCount = 0;
-                for (JSONObject instance : activeInstances) {
-                    if (configActiveInstanceIDs.contains(instance.getString("id"))) {
+                for (InstanceSummary instance : activeInstances) {
+                    if (configActiveInstanceIDs.contains(instance.getId())) {
                         instanceCount++;
                     }
                 }
@@ -14,10 +14,17 @@ package com.elasticbox.jenkins;
 
 import static com.elasticbox.jenkins.ElasticBoxExecutor.threadPool;
 
+import com.elasticbox.CircuitBreaker;
 import com.elasticbox.Client;
-import com.elasticbox.ClientException;
 import com.elasticbox.Constants;
+import com.elasticbox.Deadline;
 import com.elasticbox.IProgressMonitor;
+import com.elasticbox.InstanceSnapshot;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.OperationDurations;
+import com.elasticbox.RequestLimiter;
+import com.elasticbox.TerminationPipeline;
+import com.elasticbox.jenkins.util.ClientCache;
 import com.elasticbox.jenkins.util.SlaveInstance;
 import com.elasticbox.jenkins.util.VariableResolver;
 
@@ -30,9 +37,9 @@ import hudson.slaves.Cloud;
 import jenkins.model.Jenkins;
 
 import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 
-import org.apache.http.HttpStatus;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
@@ -42,12 +49,17 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,13 +69,43 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
 
     public static final int TIMEOUT_MINUTES = Integer.getInteger("elasticbox.jenkins.deploymentTimeout", 60);
 
+    // the requests of one execution must be done within this time so a slow response cannot block the handler
+    private static final long EXECUTION_TIMEOUT =
+            Long.getLong("elasticbox.jenkins.ElasticBoxSlaveHandler.executionTimeout", 300);
+
     private static final Queue<InstanceCreationRequest> incomingQueue =
             new ConcurrentLinkedQueue<InstanceCreationRequest>();
 
     private static final Queue<InstanceCreationRequest> submittedQueue =
             new ConcurrentLinkedQueue<InstanceCreationRequest>();
 
-    private static final Queue<ElasticBoxSlave> terminatedSlaves = new ConcurrentLinkedQueue<ElasticBoxSlave>();
+    private static final SlaveTerminationPipeline terminatedSlaves = new SlaveTerminationPipeline();
+
+    // requests whose instance is being deployed, with the name of their cloud
+    private static final ConcurrentHashMap<InstanceCreationRequest, String> deployingRequests =
+            new ConcurrentHashMap<InstanceCreationRequest, String>();
+
+    private static final int MAX_CONCURRENT_DEPLOYMENTS =
+            Integer.getInteger("elasticbox.jenkins.ElasticBoxSlaveHandler.maxConcurrentDeployments", 10);
+
+    private static final int MAX_CONCURRENT_CLOUD_DEPLOYMENTS =
+            Integer.getInteger("elasticbox.jenkins.ElasticBoxSlaveHandler.maxConcurrentCloudDeployments", 4);
+
+    private static final Object deploymentLock = new Object();
+
+    // running deployments and number of instances that can still be deployed per cloud, guarded by the lock
+    private static final DeploymentLimits deploymentLimits =
+            new DeploymentLimits(MAX_CONCURRENT_DEPLOYMENTS, MAX_CONCURRENT_CLOUD_DEPLOYMENTS);
+
+    // whether a deployment changed a slave since the configuration was saved
+    private static volatile boolean configChanged;
+
+    // whether the queues have been restored from the provisioning journal since the startup
+    private static volatile boolean journalReplayed;
+
+    // instances of the submitted requests notified by ElasticBox, they are not fetched again in the next execution
+    private static final ConcurrentHashMap<String, JSONObject> notifiedInstances =
+            new ConcurrentHashMap<String, JSONObject>();
 
     static class InstanceCreationRequest {
         private ElasticBoxSlave slave;
@@ -71,6 +113,9 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
 
         public static final short MAX_ATTEMPTS = 3;
         private short attempts = 0;
+        private long doneTime;
+        // journal data of the deployment request while it is being sent
+        private volatile JSONObject deployIntent;
 
         private InstanceCreationRequest(ElasticBoxSlave slave) {
             this.slave = slave;
@@ -94,11 +139,13 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
             LOGGER.fine("Adding new slave to Incoming queue - " + slave);
         }
         incomingQueue.add(newRequest);
+        ProvisioningJournal.add(ProvisioningJournal.INCOMING, slave.getNodeName(), getJournalData(newRequest));
         return newRequest.monitor;
     }
 
     protected void resubmitRequest(InstanceCreationRequest request) {
         request.attempts++;
+        request.doneTime = 0;
         request.monitor.setLaunched();
         ElasticBoxSlave oldSlave = request.slave;
         try {
@@ -114,6 +161,8 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
             removeSlave(oldSlave);
             LOGGER.info("Adding new slave attempt to Incoming queue - " + request.slave);
             incomingQueue.add(request);
+            ProvisioningJournal.add(ProvisioningJournal.INCOMING, request.slave.getNodeName(),
+                    getJournalData(request));
 
         } catch (IOException | Descriptor.FormException e) {
             LOGGER.severe("Error creating new slave - " + e.getMessage() );
@@ -126,15 +175,20 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
                 return true;
             }
         }
+        for (InstanceCreationRequest request : deployingRequests.keySet()) {
+            if (request.slave == slave) {
+                return true;
+            }
+        }
         return false;
     }
 
     public static final boolean addToTerminatedQueue(ElasticBoxSlave slave) {
-        if (!terminatedSlaves.contains(slave)) {
+        if (terminatedSlaves.add(slave)) {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.fine("Adding slave to Terminated queue. - " + slave);
             }
-            terminatedSlaves.add(slave);
+            ProvisioningJournal.add(ProvisioningJournal.TERMINATED, slave.getNodeName(), getJournalData(slave));
 
             for (Iterator<InstanceCreationRequest> iter = submittedQueue.iterator(); iter.hasNext();) {
                 InstanceCreationRequest request = iter.next();
@@ -147,8 +201,35 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
         return false;
     }
 
-    public static List<JSONObject> getActiveInstances(ElasticBoxCloud cloud) throws IOException {
-        return new SlaveInstanceManager().getInstances(cloud);
+    /**
+     * Returns the number of terminated slaves of the cloud in each state of their termination.
+     */
+    public static Map<TerminationPipeline.State, Integer> getTerminationCounts(final String cloudName) {
+        return terminatedSlaves.getStateCounts(new Predicate<ElasticBoxSlave>() {
+
+            @Override
+            public boolean test(ElasticBoxSlave slave) {
+                return cloudName.equals(getCloudName(slave));
+            }
+
+        });
+    }
+
+    /**
+     * Returns the instances of the slaves of the cloud from the snapshot of its instances, see
+     * {@link InstanceSnapshotWorkload#getActiveInstances(ElasticBoxCloud)}.
+     */
+    public static List<InstanceSummary> getActiveInstances(ElasticBoxCloud cloud) throws IOException {
+        return InstanceSnapshotWorkload.getActiveInstances(cloud);
+    }
+
+    /**
+     * Tags the slave instance with the slave name, the full instance is fetched only if the tag is missing.
+     */
+    public void tagSlaveInstance(InstanceSummary instance, ElasticBoxSlave slave) throws IOException {
+        if (!instance.getTags().contains(slave.getNodeName())) {
+            tagSlaveInstance(slave.getCloud().getClient().getInstance(instance.getId()), slave);
+        }
     }
 
     public void tagSlaveInstance(JSONObject instance, ElasticBoxSlave slave) throws IOException {
@@ -177,7 +258,7 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
                 StringBuilder trace = new StringBuilder(200);
                 trace.append("Pending tasks:");
                 if ( !terminatedSlaves.isEmpty() ) {
-                    trace.append("\n terminatedSlaves - ").append(terminatedSlaves.toString() );
+                    trace.append("\n terminatedSlaves - ").append(terminatedSlaves.getItems().toString() );
                 }
                 if ( !incomingQueue.isEmpty() ) {
                     trace.append("\n incomingQueue - ").append(incomingQueue.toString() );
@@ -189,14 +270,32 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
             }
         }
 
-        checkNumberOfSlaves();
+        if (!journalReplayed) {
+            replayJournal();
+            journalReplayed = true;
+        }
+
+        boolean saveConfig;
+        RequestLimiter.Priority previousPriority = RequestLimiter.setCurrentPriority(RequestLimiter.Priority.HIGH);
+        Deadline previousDeadline = Deadline.setCurrent(Deadline.after(EXECUTION_TIMEOUT, TimeUnit.SECONDS));
+        try {
+            checkNumberOfSlaves();
 
-        SlaveInstanceManager slaveInstanceManager = new SlaveInstanceManager();
-        purgeSlaves(slaveInstanceManager, listener);
+            SlaveInstanceManager slaveInstanceManager = new SlaveInstanceManager();
+            purgeSlaves(slaveInstanceManager, listener);
 
-        boolean saveConfig = processSubmittedQueue(listener);
+            saveConfig = processSubmittedQueue(listener, slaveInstanceManager);
 
-        saveConfig |= processIncomingQueue(listener, slaveInstanceManager);
+            saveConfig |= processIncomingQueue(listener, slaveInstanceManager);
+            if (configChanged) {
+                configChanged = false;
+                saveConfig = true;
+            }
+        } finally {
+            Deadline.restore(previousDeadline);
+            RequestLimiter.setCurrentPriority(previousPriority);
+            syncJournal();
+        }
 
         if (saveConfig) {
             try {
@@ -207,6 +306,162 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
         }
     }
 
+    private static JSONObject getJournalData(InstanceCreationRequest request) {
+        JSONObject data = getJournalData(request.slave);
+        data.put("attempts", request.attempts);
+        if (request.monitor.getLaunchTime() > 0) {
+            data.put("launchTime", request.monitor.getLaunchTime());
+        }
+        return data;
+    }
+
+    private static JSONObject getDeployIntent(InstanceCreationRequest request, String workspace,
+                                              AbstractSlaveConfiguration slaveConfig) {
+        JSONObject data = getJournalData(request);
+        data.put("workspace", workspace);
+        data.put("slaveConfiguration", slaveConfig.getId());
+        data.put("boxVersion", request.slave.getBoxVersion());
+        return data;
+    }
+
+    private static JSONObject getJournalData(ElasticBoxSlave slave) {
+        JSONObject data = new JSONObject();
+        if (slave.getInstanceUrl() != null) {
+            data.put("instanceUrl", slave.getInstanceUrl());
+        }
+        return data;
+    }
+
+    /**
+     * Records the current requests and terminated slaves in the provisioning journal.
+     */
+    private static void syncJournal() {
+        Map<String, JSONObject> incoming = new LinkedHashMap<String, JSONObject>();
+        for (InstanceCreationRequest request : incomingQueue) {
+            incoming.put(request.slave.getNodeName(), getJournalData(request));
+        }
+        Map<String, JSONObject> submitted = new LinkedHashMap<String, JSONObject>();
+        for (InstanceCreationRequest request : deployingRequests.keySet()) {
+            JSONObject deployIntent = request.deployIntent;
+            if (deployIntent != null) {
+                submitted.put(request.slave.getNodeName(), deployIntent);
+            } else {
+                incoming.put(request.slave.getNodeName(), getJournalData(request));
+            }
+        }
+        ProvisioningJournal.sync(ProvisioningJournal.INCOMING, incoming);
+
+        for (InstanceCreationRequest request : submittedQueue) {
+            submitted.put(request.slave.getNodeName(), getJournalData(request));
+        }
+        ProvisioningJournal.sync(ProvisioningJournal.SUBMITTED, submitted);
+
+        Map<String, JSONObject> terminated = new LinkedHashMap<String, JSONObject>();
+        for (ElasticBoxSlave slave : terminatedSlaves.getItems()) {
+            terminated.put(slave.getNodeName(), getJournalData(slave));
+        }
+        ProvisioningJournal.sync(ProvisioningJournal.TERMINATED, terminated);
+    }
+
+    /**
+     * Restores the requests and terminated slaves recorded in the provisioning journal before a restart. Only the
+     * entries of the slaves that still exist are restored, the requests whose instance was already requested go to
+     * the submitted queue and wait for their instance instead of being deployed again. A request that was being sent
+     * when Jenkins stopped is matched with the instance tagged with the name of its slave, if there is one.
+     */
+    private static void replayJournal() {
+        Map<String, ElasticBoxSlave> slaves = new HashMap<String, ElasticBoxSlave>();
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof ElasticBoxSlave) {
+                slaves.put(node.getNodeName(), (ElasticBoxSlave) node);
+            }
+        }
+
+        int restored = 0;
+        for (Map.Entry<String, JSONObject> entry
+                : ProvisioningJournal.getEntries(ProvisioningJournal.TERMINATED).entrySet()) {
+            ElasticBoxSlave slave = slaves.get(entry.getKey());
+            if (slave != null) {
+                restoreInstanceUrl(slave, entry.getValue());
+                if (terminatedSlaves.add(slave)) {
+                    restored++;
+                }
+            }
+        }
+
+        List<Map.Entry<String, JSONObject>> requests = new ArrayList<Map.Entry<String, JSONObject>>();
+        requests.addAll(ProvisioningJournal.getEntries(ProvisioningJournal.SUBMITTED).entrySet());
+        requests.addAll(ProvisioningJournal.getEntries(ProvisioningJournal.INCOMING).entrySet());
+        for (Map.Entry<String, JSONObject> entry : requests) {
+            ElasticBoxSlave slave = slaves.get(entry.getKey());
+            if (slave == null || terminatedSlaves.contains(slave) || isSubmitted(slave)
+                    || getSubmittedRequest(slave) != null) {
+                continue;
+            }
+            JSONObject data = entry.getValue();
+            restoreInstanceUrl(slave, data);
+            if (slave.getInstanceUrl() == null && data.has("workspace")) {
+                restoreDeployedInstance(slave, data.getString("workspace"));
+            }
+            InstanceCreationRequest request = new InstanceCreationRequest(slave);
+            request.attempts = (short) data.optInt("attempts", 1);
+            if (slave.getInstanceUrl() != null) {
+                try {
+                    request.monitor.setMonitor(
+                            slave.getCloud().getClient().getDeployProgressMonitor(slave.getInstanceUrl()));
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Cannot restore the submitted request of slave " + slave, ex);
+                    continue;
+                }
+                request.monitor.setLaunched(data.optLong("launchTime", System.currentTimeMillis()));
+                submittedQueue.add(request);
+            } else {
+                incomingQueue.add(request);
+            }
+            restored++;
+        }
+
+        if (restored > 0) {
+            LOGGER.info(MessageFormat.format("Restored {0} slave requests and terminations from the journal",
+                    restored));
+        }
+    }
+
+    /**
+     * Looks for the instance of a slave whose deployment request was being sent when Jenkins stopped, the deployment
+     * request tags the instance with the name of the slave.
+     */
+    private static void restoreDeployedInstance(ElasticBoxSlave slave, String workspace) {
+        try {
+            Client client = slave.getCloud().getClient();
+            for (InstanceSummary instance : client.getInstanceSummaries(workspace)) {
+                if (instance.getTags().contains(slave.getNodeName())) {
+                    slave.setInstanceUrl(client.getInstanceUrl(instance.getId()));
+                    return;
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, MessageFormat.format(
+                    "Cannot look for the instance of slave {0} deployed before the restart", slave), ex);
+        }
+    }
+
+    private static void restoreInstanceUrl(ElasticBoxSlave slave, JSONObject data) {
+        String instanceUrl = data.optString("instanceUrl", null);
+        if (slave.getInstanceUrl() == null && instanceUrl != null) {
+            slave.setInstanceUrl(instanceUrl);
+        }
+    }
+
+    private static InstanceCreationRequest getSubmittedRequest(ElasticBoxSlave slave) {
+        for (InstanceCreationRequest request : submittedQueue) {
+            if (request.slave == slave) {
+                return request;
+            }
+        }
+        return null;
+    }
+
     private boolean removeSlaveIfLaunchTimedOut(InstanceCreationRequest request, TaskListener listener) {
         if (request.monitor.getLaunchTime() > 0) {
             long launchDuration = System.currentTimeMillis() - request.monitor.getLaunchTime();
@@ -220,14 +475,109 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
         return false;
     }
 
-    private boolean processSubmittedQueue(TaskListener listener) {
+    /**
+     * Passes the instance of a notification of ElasticBox to the submitted request of the instance, if any.
+     *
+     * @return true if the instance belongs to a submitted request, which is processed in the next execution
+     */
+    public static boolean instanceChanged(JSONObject instance) {
+        String instanceId = instance.getString("id");
+        for (InstanceCreationRequest request : submittedQueue) {
+            String resourceUrl = request.monitor.getResourceUrl();
+            if (resourceUrl != null && instanceId.equals(Client.getResourceId(resourceUrl))) {
+                notifiedInstances.put(instanceId, instance);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the instances of the submitted requests keyed by instance ID. The instances notified by ElasticBox since
+     * the last execution or listed by the instance manager of this execution are not fetched, the rest are fetched
+     * with one batched request per cloud.
+     */
+    private static Map<String, JSONObject> getSubmittedInstances(SlaveInstanceManager instanceManager) {
+        Map<String, JSONObject> instances = new HashMap<String, JSONObject>();
+        Map<String, ElasticBoxCloud> clouds = new HashMap<String, ElasticBoxCloud>();
+        Map<String, List<String>> cloudInstanceIDs = new HashMap<String, List<String>>();
+        for (InstanceCreationRequest request : submittedQueue) {
+            String resourceUrl = request.monitor.getResourceUrl();
+            if (resourceUrl == null) {
+                continue;
+            }
+            JSONObject notifiedInstance = notifiedInstances.remove(Client.getResourceId(resourceUrl));
+            if (notifiedInstance != null) {
+                instances.put(notifiedInstance.getString("id"), notifiedInstance);
+                continue;
+            }
+            InstanceSummary listedInstance = getListedInstance(instanceManager, request.slave);
+            if (listedInstance != null && listedInstance.getId().equals(Client.getResourceId(resourceUrl))) {
+                instances.put(listedInstance.getId(), listedInstance.toJson());
+                continue;
+            }
+            ElasticBoxCloud cloud;
+            try {
+                cloud = request.slave.getCloud();
+            } catch (IOException ex) {
+                // the monitor of the request gets its instance
+                continue;
+            }
+            List<String> instanceIDs = cloudInstanceIDs.get(cloud.name);
+            if (instanceIDs == null) {
+                instanceIDs = new ArrayList<String>();
+                cloudInstanceIDs.put(cloud.name, instanceIDs);
+                clouds.put(cloud.name, cloud);
+            }
+            instanceIDs.add(Client.getResourceId(resourceUrl));
+        }
+
+        for (Map.Entry<String, List<String>> entry : cloudInstanceIDs.entrySet()) {
+            try {
+                InstanceSnapshot snapshot = ClientCache.getInstanceSnapshot(entry.getKey());
+                for (Object instance : clouds.get(entry.getKey()).getClient().getInstances(entry.getValue())) {
+                    JSONObject instanceJson = (JSONObject) instance;
+                    instances.put(instanceJson.getString("id"), instanceJson);
+                    snapshot.update(instanceJson);
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, MessageFormat.format("Error getting the instances of cloud {0}",
+                        entry.getKey()), ex);
+            }
+        }
+        return instances;
+    }
+
+    private static InstanceSummary getListedInstance(SlaveInstanceManager instanceManager, ElasticBoxSlave slave) {
+        try {
+            InstanceSummary instance = instanceManager.isListed(slave) ? instanceManager.getInstance(slave) : null;
+            // the progress monitors compare the update time of the instance
+            return instance != null && instance.getUpdated() != null ? instance : null;
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Error listing the instance of slave " + slave.getDisplayName(), ex);
+            return null;
+        }
+    }
+
+    private boolean processSubmittedQueue(TaskListener listener, SlaveInstanceManager instanceManager) {
         boolean saveNeeded = false;
+        Map<String, JSONObject> instances = getSubmittedInstances(instanceManager);
         for (Iterator<InstanceCreationRequest> iter = submittedQueue.iterator(); iter.hasNext();) {
             InstanceCreationRequest request = iter.next();
             final ElasticBoxSlave slave = request.slave;
             try {
-                if (!slave.isDeletable() && request.monitor.isDone() ) {
+                String resourceUrl = request.monitor.getResourceUrl();
+                JSONObject instance = resourceUrl != null ? instances.get(Client.getResourceId(resourceUrl)) : null;
+                boolean done = instance != null ? request.monitor.isDone(instance) : request.monitor.isDone();
+                if (!slave.isDeletable() && done) {
+                    if (request.doneTime == 0) {
+                        request.doneTime = System.currentTimeMillis();
+                        recordDuration(slave, Client.InstanceOperation.DEPLOY,
+                                request.doneTime - request.monitor.getLaunchTime());
+                    }
                     if (slave.getComputer() != null && slave.getComputer().isOnline() ) {
+                        recordDuration(slave, OperationDurations.ONLINE_EVENT,
+                                System.currentTimeMillis() - request.doneTime);
                         slave.setInstanceStatusMessage(MessageFormat.format(
                                 "Successfully deployed at <a href=\"{0}\">{0}</a>",
                                 slave.getInstancePageUrl()));
@@ -241,7 +591,7 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
                             iter.remove();
                         }
                     }
-                } else if ( !request.monitor.isDone() && removeSlaveIfLaunchTimedOut(request, listener) ) {
+                } else if (!done && removeSlaveIfLaunchTimedOut(request, listener)) {
                     LOGGER.info("Request timed out. Removing slave from Submitted queue - " + slave);
                     iter.remove();
                 }
@@ -278,12 +628,29 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
 
             } catch (IOException ex) {
                 log(Level.SEVERE, ex.getMessage(), ex, listener);
+            } catch (JSONException ex) {
+                // an incomplete instance document must not abort the processing of the other requests
+                log(Level.SEVERE, "Invalid instance of the submitted slave - " + slave, ex, listener);
             }
         }
         return saveNeeded;
     }
 
-    private static void removeSlave(ElasticBoxSlave slave) {
+    /**
+     * Records the duration of a phase of the launch of the slave in the operation durations of its cloud.
+     */
+    private static void recordDuration(ElasticBoxSlave slave, String event, long duration) {
+        AbstractSlaveConfiguration config = slave.getSlaveConfiguration();
+        try {
+            slave.getCloud().getOperationDurations().record(OperationDurations.getKey(event, slave.getBoxVersion(),
+                    slave.getProfileId(), config != null ? config.getId() : null), duration);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, MessageFormat.format("Cannot record the {0} duration of slave {1}", event,
+                    slave.getDisplayName()), ex);
+        }
+    }
+
+    static void removeSlave(ElasticBoxSlave slave) {
         try {
             Jenkins.get().removeNode(slave);
         } catch (IOException ex) {
@@ -296,13 +663,13 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
             throws IOException {
 
         List<ElasticBoxSlave> slavesToRemove = new ArrayList<>();
-        for (JSONObject instance : slaveInstanceManager.getInstances()) {
-            String state = instance.getString("state");
-            String instanceId = instance.getString("id");
+        for (InstanceSummary instance : slaveInstanceManager.getInstances()) {
+            String state = instance.getState();
+            String instanceId = instance.getId();
             ElasticBoxSlave slave = slaveInstanceManager.getSlave(instanceId);
 
             if (Client.InstanceState.DONE.equals(state)
-                    && Client.TERMINATE_OPERATIONS.contains(instance.getJSONObject("operation").getString("event"))
+                    && Client.TERMINATE_OPERATIONS.contains(instance.getOperation())
                     && slave.isRemovableFromCloud() ) {
 
                 if (LOGGER.isLoggable(Level.FINER)) {
@@ -320,99 +687,6 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
         return slavesToRemove;
     }
 
-    private boolean purgeSlave(ElasticBoxSlave slave, TaskListener listener) {
-        if (LOGGER.isLoggable(Level.FINER)) {
-            LOGGER.finer("Purging slave - " + slave);
-        }
-        JSONObject instance;
-        String state;
-        try {
-            instance = slave.getInstance();
-            state = slave.getInstanceState();
-        } catch (ClientException ex) {
-            if ( (ex.getStatusCode() == HttpStatus.SC_FORBIDDEN) || (ex.getStatusCode() == HttpStatus.SC_NOT_FOUND) ) {
-                return true;
-            }
-            log(Level.SEVERE,
-                    "Error fetching the instance data of ElasticBox slave - " + slave.getDisplayName(), ex, listener);
-            return false;
-        } catch (IOException ex) {
-            log(Level.SEVERE,
-                    "Error fetching the instance data of ElasticBox slave - " + slave.getDisplayName(), ex, listener);
-
-            return false;
-        }
-
-        switch (state) {
-            case Client.InstanceState.PROCESSING:
-                if (LOGGER.isLoggable(Level.FINEST)) {
-                    LOGGER.finest("Slave still processing, cannot be purged - " + slave);
-                }
-                return false;
-
-            case Client.InstanceState.UNAVAILABLE:
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.fine("Slave is unavailable - " + slave);
-                }
-                try {
-                    slave.getCloud().getClient().forceTerminate(instance.getString("id"));
-                } catch (IOException ex) {
-                    log(Level.SEVERE,
-                            "Error force-terminating the instance of ElasticBox slave - " + slave.getDisplayName(),
-                            ex, listener);
-                }
-                return false;
-
-            default:
-                String event = instance.getJSONObject("operation").getString("event");
-                if (Client.TERMINATE_OPERATIONS.contains(event) ) {
-                    if (slave.isRemovableFromCloud() ) {
-                        LOGGER.info("Deleting slave - " + slave);
-                        deleteInstance(slave, listener);
-                    } else if (!slave.isDeletable() ) {
-                        if (LOGGER.isLoggable(Level.FINE)) {
-                            LOGGER.fine("Unavailable Slave has been terminated manually - " + slave);
-                        }
-                    }
-                    return true;
-                } else {
-                    if (slave.maxDeleteAttemptsReached() ) {
-                        return true;
-                    }
-                    try {
-                        if (LOGGER.isLoggable(Level.FINE)) {
-                            LOGGER.fine("Terminating not required slave - " + slave);
-                        }
-                        slave.terminate();
-
-                    } catch (IOException e) {
-                        log(Level.SEVERE,
-                                "Error terminating the instance of ElasticBox slave - " + slave, e, listener);
-                    }
-                }
-                return false;
-        }
-    }
-
-    private boolean deleteInstance(ElasticBoxSlave slave, TaskListener listener) {
-        try  {
-            try {
-                slave.delete();
-            } catch (ClientException ex) {
-                if (ex.getStatusCode() == HttpStatus.SC_CONFLICT) {
-                    return false;
-                } else if ( (ex.getStatusCode() != HttpStatus.SC_FORBIDDEN)
-                        && (ex.getStatusCode() != HttpStatus.SC_NOT_FOUND) ) {
-                    throw ex;
-                }
-            }
-            return true;
-        } catch (IOException ex) {
-            log(Level.SEVERE, "Error deleting ElasticBox slave - " + slave.getDisplayName(), ex, listener);
-            return false;
-        }
-    }
-
     private void purgeSlaves(SlaveInstanceManager slaveInstanceManager, final TaskListener listener)
             throws IOException {
 
@@ -426,22 +700,10 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
             }
         }
 
-        // remove terminated slaves
-        for (final ElasticBoxSlave slave: terminatedSlaves) {
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine("Terminated slave instance found. - " + slave);
-            }
-            threadPool.submit(new Runnable() {
-
-                @Override
-                public void run() {
-                    if (purgeSlave(slave, listener)) {
-                        terminatedSlaves.remove(slave);
-                        removeSlave(slave);
-                    }
-                }
-
-            });
+        // advance the termination of the terminated slaves, at most one action is in flight per slave
+        int submitted = terminatedSlaves.process();
+        if (submitted > 0 && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("Submitted {0} termination actions of terminated slaves", submitted));
         }
 
         // remove bad slaves
@@ -484,8 +746,24 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
             tags.addAll(Arrays.asList(userTagList) );
         }
 
-        IProgressMonitor monitor = ebClient.deploy(slave.getBoxVersion(), slave.getProfileId(), slave.getDisplayName(),
-                workspace, tags, variables, null, null, slave.getPolicyVariables(), Constants.AUTOMATIC_UPDATES_OFF);
+        // the intent is journaled before the request is sent, a restart while it is in flight then looks for the
+        // instance tagged with the slave name instead of deploying another one
+        request.deployIntent = getDeployIntent(request, workspace, slaveConfig);
+        ProvisioningJournal.add(ProvisioningJournal.SUBMITTED, slave.getNodeName(), request.deployIntent);
+        ProvisioningJournal.remove(ProvisioningJournal.INCOMING, slave.getNodeName());
+        JSONObject instance;
+        try {
+            instance = ebClient.deployInstance(slave.getBoxVersion(), slave.getProfileId(),
+                    slave.getDisplayName(), workspace, tags, variables, null, null, slave.getPolicyVariables(),
+                    Constants.AUTOMATIC_UPDATES_OFF);
+        } catch (IOException | RuntimeException ex) {
+            request.deployIntent = null;
+            ProvisioningJournal.remove(ProvisioningJournal.SUBMITTED, slave.getNodeName());
+            throw ex;
+        }
+        // the new instance counts towards the limits of the cloud before it is listed by the next refresh
+        ClientCache.getInstanceSnapshot(cloud.name).update(instance);
+        IProgressMonitor monitor = ebClient.getDeployProgressMonitor(instance);
 
         slave.setInstanceUrl(monitor.getResourceUrl());
         slave.setInstanceStatusMessage(
@@ -498,12 +776,16 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
             LOGGER.fine("Adding slave to Submitted queue - " + slave);
         }
         submittedQueue.add(request);
+        request.deployIntent = null;
+        ProvisioningJournal.add(ProvisioningJournal.SUBMITTED, slave.getNodeName(), getJournalData(request));
     }
 
     private JSONArray getJenkinsVariables(ElasticBoxSlave slave) throws IOException {
-        Client ebClient = slave.getCloud().getClient();
         AbstractSlaveConfiguration slaveConfig = slave.getSlaveConfiguration();
-        JSONArray variables = SlaveInstance.createJenkinsVariables(ebClient, slave);
+        LaunchTemplate template = LaunchTemplate.find(slave);
+        JSONArray variables = template != null
+                ? SlaveInstance.createJenkinsVariables(slave, template.getVariablesScope())
+                : SlaveInstance.createJenkinsVariables(slave.getCloud().getClient(), slave);
         JSONObject jenkinsVariable = variables.getJSONObject(0);
 
         String scope = jenkinsVariable.containsKey("scope") ? jenkinsVariable.getString("scope") : StringUtils.EMPTY;
@@ -606,38 +888,160 @@ public class ElasticBoxSlaveHandler extends ElasticBoxExecutor.Workload {
         }
     }
 
-    private boolean processIncomingQueue(TaskListener listener, SlaveInstanceManager instanceManager )
+    /**
+     * Computes how many instances can still be deployed in each cloud and starts the deployment of the incoming
+     * requests. The deployments run in the thread pool of the executor, this execution does not wait for them.
+     */
+    private boolean processIncomingQueue(TaskListener listener, SlaveInstanceManager instanceManager)
             throws IOException {
 
+        if (incomingQueue.isEmpty()) {
+            return false;
+        }
+
+        Map<String, List<InstanceSummary>> cloudInstances = new HashMap<String, List<InstanceSummary>>();
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof ElasticBoxCloud) {
+                cloudInstances.put(cloud.name, instanceManager.getInstances((ElasticBoxCloud) cloud));
+            }
+        }
+
+        synchronized (deploymentLock) {
+            // the instances of the requests submitted or being deployed may not be listed yet, a submitted instance
+            // that is also listed is counted once and a deployment that completes meanwhile is counted at least once
+            Map<String, Set<String>> cloudInstanceIDs = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, List<InstanceSummary>> entry : cloudInstances.entrySet()) {
+                Set<String> instanceIDs = new HashSet<String>();
+                for (InstanceSummary instance : entry.getValue()) {
+                    instanceIDs.add(instance.getId());
+                }
+                cloudInstanceIDs.put(entry.getKey(), instanceIDs);
+            }
+            for (InstanceCreationRequest request : submittedQueue) {
+                Set<String> instanceIDs = cloudInstanceIDs.get(getCloudName(request.slave));
+                if (instanceIDs != null && request.slave.getInstanceUrl() != null) {
+                    instanceIDs.add(request.slave.getInstanceId());
+                }
+            }
+
+            deploymentLimits.clearBudgets();
+            for (Map.Entry<String, Set<String>> entry : cloudInstanceIDs.entrySet()) {
+                ElasticBoxCloud cloud = (ElasticBoxCloud) Jenkins.get().getCloud(entry.getKey());
+                deploymentLimits.setBudget(entry.getKey(), cloud.getMaxInstances(), entry.getValue().size());
+            }
+        }
 
-        if (!incomingQueue.isEmpty() ) {
-            Map<ElasticBoxCloud, Integer> cloudToMaxNewInstancesMap = instanceManager.getMaxInstancesPerCloud();
+        startDeployments(listener);
+        return true;
+    }
 
+    /**
+     * Starts the deployment of the incoming requests within the limits of concurrent deployments. The requests that
+     * exceed the limits stay in the incoming queue and are started as the running deployments complete, the requests
+     * that exceed the max number of instances of their cloud are discarded.
+     */
+    private void startDeployments(TaskListener listener) {
+        List<InstanceCreationRequest> deferredRequests = new ArrayList<InstanceCreationRequest>();
+        List<InstanceCreationRequest> discardedRequests = new ArrayList<InstanceCreationRequest>();
+        List<InstanceCreationRequest> orphanRequests = new ArrayList<InstanceCreationRequest>();
+        List<InstanceCreationRequest> startedRequests = new ArrayList<InstanceCreationRequest>();
+        int unavailableCount = 0;
+        synchronized (deploymentLock) {
             for (InstanceCreationRequest req = incomingQueue.poll(); req != null; req = incomingQueue.poll()) {
-                ElasticBoxCloud cloud = req.slave.getCloud();
-                int maxNewInstances = cloudToMaxNewInstancesMap.get(cloud);
-                if (maxNewInstances > 0) {
-                    try {
-                        deployInstance(req);
-                        cloudToMaxNewInstancesMap.put(cloud, maxNewInstances--);
-                        log("Deploying a new instance for slave - " + req.slave.getDisplayName(), listener);
-                    } catch (IOException ex) {
-                        log(Level.SEVERE, MessageFormat.format("Error deploying a new instance for slave {0}",
-                                req.slave.getDisplayName()), ex, listener);
-                        req.monitor.setMonitor(IProgressMonitor.DONE_MONITOR);
-                        removeSlave(req.slave);
-                    }
-                } else {
-                    log(Level.WARNING, "Max number of ElasticBox instances has been reached for: "
-                            + cloud.getDisplayName(), null, listener);
+                String cloudName = getCloudName(req.slave);
+                if (cloudName == null) {
+                    orphanRequests.add(req);
+                    continue;
+                }
+                ElasticBoxCloud cloud = (ElasticBoxCloud) Jenkins.get().getCloud(cloudName);
+                if (deploymentLimits.getBudget(cloudName) == null || cloud == null) {
+                    // the instances of the cloud are counted in the next execution
+                    deferredRequests.add(req);
+                    continue;
+                }
+                if (CircuitBreaker.forEndpoint(cloud.getEndpointUrl()).isOpen()) {
+                    // ElasticBox is not answering, keep the request for the next run instead of failing it
+                    deferredRequests.add(req);
+                    unavailableCount++;
+                    continue;
+                }
+                switch (deploymentLimits.admit(cloudName)) {
+                    case STARTED:
+                        deployingRequests.put(req, cloudName);
+                        startedRequests.add(req);
+                        break;
+                    case DISCARDED:
+                        discardedRequests.add(req);
+                        break;
+                    default:
+                        deferredRequests.add(req);
+                        break;
+                }
+            }
+            incomingQueue.addAll(deferredRequests);
+        }
+
+        for (InstanceCreationRequest req : startedRequests) {
+            deploy(req);
+            log("Deploying a new instance for slave - " + req.slave.getDisplayName(), listener);
+        }
+        for (InstanceCreationRequest req : discardedRequests) {
+            log(Level.WARNING, "Max number of ElasticBox instances has been reached for: "
+                    + getCloudName(req.slave), null, listener);
+
+            req.monitor.setMonitor(IProgressMonitor.DONE_MONITOR);
+            removeSlave(req.slave);
+        }
+        for (InstanceCreationRequest req : orphanRequests) {
+            log(Level.SEVERE, "Cannot find the ElasticBox cloud of slave - " + req.slave.getDisplayName(), null,
+                    listener);
+
+            req.monitor.setMonitor(IProgressMonitor.DONE_MONITOR);
+            removeSlave(req.slave);
+        }
+        if (unavailableCount > 0) {
+            log(Level.WARNING, MessageFormat.format(
+                    "ElasticBox is unavailable, deferring the deployment of {0} slaves", unavailableCount),
+                    null, listener);
+        }
+    }
+
+    private void deploy(final InstanceCreationRequest request) {
+        threadPool.submit(new Runnable() {
 
-                    req.monitor.setMonitor(IProgressMonitor.DONE_MONITOR);
-                    removeSlave(req.slave);
+            @Override
+            public void run() {
+                RequestLimiter.Priority previousPriority =
+                        RequestLimiter.setCurrentPriority(RequestLimiter.Priority.HIGH);
+                Deadline previousDeadline = Deadline.setCurrent(Deadline.after(EXECUTION_TIMEOUT, TimeUnit.SECONDS));
+                try {
+                    deployInstance(request);
+                    configChanged = true;
+                } catch (IOException | RuntimeException ex) {
+                    log(Level.SEVERE, MessageFormat.format("Error deploying a new instance for slave {0}",
+                            request.slave.getDisplayName()), ex);
+                    request.monitor.setMonitor(IProgressMonitor.DONE_MONITOR);
+                    removeSlave(request.slave);
+                } finally {
+                    Deadline.restore(previousDeadline);
+                    RequestLimiter.setCurrentPriority(previousPriority);
+                    synchronized (deploymentLock) {
+                        deploymentLimits.completed(deployingRequests.remove(request));
+                    }
                 }
+                startDeployments(TaskListener.NULL);
             }
-            return true;
+
+        });
+    }
+
+    private static String getCloudName(ElasticBoxSlave slave) {
+        try {
+            ElasticBoxCloud cloud = slave.getCloud();
+            return cloud != null ? cloud.name : null;
+        } catch (IOException ex) {
+            return null;
         }
-        return false;
     }
 
     public static void launchSingleUseSlave(AbstractSlaveConfiguration slaveCfg, String label)
@@ -0,0 +1,175 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.InstanceSnapshot;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.jenkins.util.ClientCache;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Refreshes in the background the snapshots of the instances of the ElasticBox clouds, so the provisioning decisions
+ * are made with the instances in memory instead of listing the instances of the workspaces each time.
+ */
+@Extension
+public class InstanceSnapshotWorkload extends ElasticBoxExecutor.Workload {
+    private static final Logger LOGGER = Logger.getLogger(InstanceSnapshotWorkload.class.getName());
+
+    // max age of a snapshot after which a reader triggers a refresh instead of waiting for the next execution
+    private static final long MAX_AGE = Long.getLong("elasticbox.jenkins.InstanceSnapshotWorkload.maxAge", 120 * 1000);
+
+    // time since the last refresh of a snapshot within which it is not refreshed again
+    private static final long MIN_REFRESH_INTERVAL =
+            Long.getLong("elasticbox.jenkins.InstanceSnapshotWorkload.minRefreshInterval", 15 * 1000);
+
+    // names of the clouds whose snapshot is being refreshed on behalf of a reader
+    private static final Set<String> refreshingClouds =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @Override
+    protected ElasticBoxExecutor.ExecutionType getExecutionType() {
+        return ElasticBoxExecutor.ExecutionType.ASYNC;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException {
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof ElasticBoxCloud) {
+                Set<String> workspaceIDs = getWorkspaceIDs((ElasticBoxCloud) cloud);
+                if (ClientCache.getInstanceSnapshot(cloud.name).isFresh(MIN_REFRESH_INTERVAL, workspaceIDs)) {
+                    // already refreshed by the instance manager of the slave handler
+                    continue;
+                }
+                try {
+                    refresh((ElasticBoxCloud) cloud, workspaceIDs);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, MessageFormat.format(
+                            "Error refreshing the instances of ElasticBox cloud {0}", cloud.name), ex);
+                }
+            }
+        }
+    }
+
+    private static InstanceSnapshot refresh(ElasticBoxCloud cloud, Set<String> workspaceIDs) throws IOException {
+        InstanceSnapshot snapshot = ClientCache.getInstanceSnapshot(cloud.name);
+        int changeCount = snapshot.refresh(cloud.getClient(), workspaceIDs);
+        if (changeCount > 0 && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("{0} instances changed in ElasticBox cloud {1} - {2}", changeCount,
+                    cloud.name, snapshot));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Refreshes the snapshot of the cloud in the thread pool of the executor, unless it is being refreshed already.
+     */
+    private static void refreshAsync(final ElasticBoxCloud cloud, final Set<String> workspaceIDs) {
+        if (!refreshingClouds.add(cloud.name)) {
+            return;
+        }
+        ElasticBoxExecutor.threadPool.submit(new Runnable() {
+            public void run() {
+                try {
+                    refresh(cloud, workspaceIDs);
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.log(Level.WARNING, MessageFormat.format(
+                            "Error refreshing the instances of ElasticBox cloud {0}", cloud.name), ex);
+                } finally {
+                    refreshingClouds.remove(cloud.name);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the instances of the slaves of the cloud. They are read from the current snapshot of the cloud without
+     * waiting for ElasticBox, a refresh is triggered in the background if the snapshot is too old or it lacks the
+     * workspace of a slave. The instances deployed by the slave handler are merged in the snapshot as they are
+     * submitted, and the handler enforces the max number of instances of the cloud with its own count.
+     */
+    public static List<InstanceSummary> getActiveInstances(ElasticBoxCloud cloud) throws IOException {
+        Set<String> workspaceIDs = new HashSet<String>();
+        List<String> instanceIDs = new ArrayList<String>();
+        for (ElasticBoxSlave slave : getSlaves(cloud)) {
+            AbstractSlaveConfiguration config = slave.getSlaveConfiguration();
+            if (config != null) {
+                workspaceIDs.add(config.getWorkspace());
+            }
+            if (slave.getInstanceUrl() != null) {
+                instanceIDs.add(slave.getInstanceId());
+            }
+        }
+
+        InstanceSnapshot snapshot = ClientCache.getInstanceSnapshot(cloud.name);
+        if (!snapshot.isFresh(MAX_AGE, workspaceIDs)) {
+            refreshAsync(cloud, workspaceIDs);
+        }
+
+        List<InstanceSummary> instances = new ArrayList<InstanceSummary>();
+        for (String instanceId : instanceIDs) {
+            InstanceSummary instance = snapshot.getInstance(instanceId);
+            if (instance != null) {
+                instances.add(instance);
+            }
+        }
+        return instances;
+    }
+
+    private static Set<String> getWorkspaceIDs(ElasticBoxCloud cloud) {
+        Set<String> workspaceIDs = new HashSet<String>();
+        for (ElasticBoxSlave slave : getSlaves(cloud)) {
+            AbstractSlaveConfiguration config = slave.getSlaveConfiguration();
+            if (config != null) {
+                workspaceIDs.add(config.getWorkspace());
+            }
+        }
+        return workspaceIDs;
+    }
+
+    private static List<ElasticBoxSlave> getSlaves(ElasticBoxCloud cloud) {
+        List<ElasticBoxSlave> slaves = new ArrayList<ElasticBoxSlave>();
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof ElasticBoxSlave) {
+                ElasticBoxSlave slave = (ElasticBoxSlave) node;
+                ElasticBoxCloud slaveCloud;
+                try {
+                    slaveCloud = slave.getCloud();
+                } catch (IOException ex) {
+                    continue;
+                }
+                if (slaveCloud != null && slaveCloud.name.equals(cloud.name)) {
+                    slaves.add(slave);
+                }
+            }
+        }
+        return slaves;
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.InstanceNotifications;
+import com.elasticbox.InstancePoller;
+import com.elasticbox.InstanceSnapshot;
+import com.elasticbox.jenkins.util.ClientCache;
+
+import hudson.Extension;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbExclusion;
+import hudson.slaves.Cloud;
+import hudson.util.Secret;
+
+import jenkins.model.Jenkins;
+
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Receives the notifications of instance state changes sent by ElasticBox, see {@link InstanceNotifications}. The
+ * notification is accepted if it is recent, signed with the notification secret of an ElasticBox cloud and not received
+ * before, its instances are passed to the progress monitors and the slave requests of that cloud that wait for them.
+ * Payloads larger than {@link #MAX_PAYLOAD_SIZE} are rejected without being read.
+ */
+@Extension
+public class InstanceStateWebHook implements UnprotectedRootAction {
+    private static final Logger LOGGER = Logger.getLogger(InstanceStateWebHook.class.getName());
+
+    static final String URL_NAME = "elasticbox-instances";
+
+    static final int MAX_PAYLOAD_SIZE =
+            Integer.getInteger("elasticbox.jenkins.InstanceStateWebHook.maxPayloadSize", 512 * 1024);
+
+    // signatures of the notifications accepted within the maximum age, mapped to the time they expire
+    private final ConcurrentMap<String, Long> acceptedSignatures = new ConcurrentHashMap<String, Long>();
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    @RequirePOST
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (req.getContentLength() > MAX_PAYLOAD_SIZE) {
+            rejectTooLarge(req, rsp);
+            return;
+        }
+        byte[] payload = IOUtils.toByteArray(new BoundedInputStream(req.getInputStream(), MAX_PAYLOAD_SIZE + 1));
+        if (payload.length > MAX_PAYLOAD_SIZE) {
+            rejectTooLarge(req, rsp);
+            return;
+        }
+
+        // the timestamp is checked before the signature, a stale notification does not cost an HMAC per cloud
+        long currentTime = System.currentTimeMillis();
+        String timestamp = req.getHeader(InstanceNotifications.TIMESTAMP_HEADER);
+        if (!InstanceNotifications.isRecent(timestamp, currentTime)) {
+            LOGGER.warning(MessageFormat.format("Rejected instance notification from {0} with stale timestamp {1}",
+                    req.getRemoteAddr(), timestamp));
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        String signature = req.getHeader(InstanceNotifications.SIGNATURE_HEADER);
+        ElasticBoxCloud cloud = getSigningCloud(payload, timestamp, signature);
+        if (cloud == null) {
+            LOGGER.warning(MessageFormat.format("Rejected instance notification from {0} with invalid signature",
+                    req.getRemoteAddr()));
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        if (!accept(signature, currentTime)) {
+            LOGGER.warning(MessageFormat.format("Rejected instance notification from {0} received before",
+                    req.getRemoteAddr()));
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        List<JSONObject> instances;
+        try {
+            instances = InstanceNotifications.parse(payload);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, MessageFormat.format("Invalid instance notification for ElasticBox cloud {0}",
+                    cloud.getDisplayName()), ex);
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("Received notification of {0} instances for ElasticBox cloud {1}",
+                    instances.size(), cloud.getDisplayName()));
+        }
+
+        InstancePoller poller = ClientCache.getInstancePoller(cloud.name);
+        InstanceSnapshot snapshot = ClientCache.getInstanceSnapshot(cloud.name);
+        boolean slaveRequestChanged = false;
+        for (JSONObject instance : instances) {
+            if (poller != null) {
+                poller.instanceChanged(instance);
+            }
+            snapshot.update(instance);
+            slaveRequestChanged |= ElasticBoxSlaveHandler.instanceChanged(instance);
+        }
+        if (slaveRequestChanged) {
+            ElasticBoxExecutor.executeNow();
+        }
+        rsp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    private static void rejectTooLarge(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        LOGGER.warning(MessageFormat.format("Rejected instance notification from {0} larger than {1} bytes",
+                req.getRemoteAddr(), MAX_PAYLOAD_SIZE));
+        rsp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    /**
+     * Records the signature of a notification, returns false if it was accepted before within the maximum age.
+     */
+    private boolean accept(String signature, long currentTime) {
+        for (Iterator<Long> iter = acceptedSignatures.values().iterator(); iter.hasNext(); ) {
+            if (iter.next() < currentTime) {
+                iter.remove();
+            }
+        }
+        // a notification is recent up to the maximum age before and after the current time
+        return acceptedSignatures.putIfAbsent(signature.trim().toLowerCase(),
+                currentTime + 2 * InstanceNotifications.MAX_AGE) == null;
+    }
+
+    /**
+     * Returns the cloud whose notification secret signed the timestamp and the payload, or null if the signature is not
+     * valid.
+     */
+    ElasticBoxCloud getSigningCloud(byte[] payload, String timestamp, String signature) {
+        if (signature == null) {
+            return null;
+        }
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof ElasticBoxCloud) {
+                ElasticBoxCloud ebCloud = (ElasticBoxCloud) cloud;
+                Secret secret = ebCloud.getNotificationSecret();
+                if (secret != null
+                        && InstanceNotifications.isValid(Secret.toString(secret), timestamp, payload, signature)) {
+                    return ebCloud;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ElasticBox cannot send a crumb with the notifications, they are authenticated by their signature instead.
+     */
+    @Extension
+    public static class CrumbExclusionImpl extends CrumbExclusion {
+
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
+                throws IOException, ServletException {
+
+            String pathInfo = req.getPathInfo();
+            if (pathInfo != null && (pathInfo.equals('/' + URL_NAME) || pathInfo.startsWith('/' + URL_NAME + '/'))) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
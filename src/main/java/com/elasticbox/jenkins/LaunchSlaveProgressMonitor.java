@@ -12,28 +12,31 @@
 
 package com.elasticbox.jenkins;
 
+import com.elasticbox.CompletableFutures;
 import com.elasticbox.IProgressMonitor;
+import com.elasticbox.PollingSchedule;
 
 import hudson.slaves.SlaveComputer;
 
-import net.sf.json.JSONObject;
+import jenkins.util.Timer;
 
-import org.apache.commons.lang.time.StopWatch;
+import net.sf.json.JSONObject;
 
 import java.io.IOException;
 
-import java.util.concurrent.Callable;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 class LaunchSlaveProgressMonitor implements IProgressMonitor {
 
-    private static final Logger LOGGER = Logger.getLogger(LaunchSlaveProgressMonitor.class.getName());
-
-    private final Object waitLock = new Object();
+    private final CompletableFuture<IProgressMonitor> submitted = new CompletableFuture<IProgressMonitor>();
     private final long creationTime;
     private final ElasticBoxSlave slave;
-    private IProgressMonitor monitor;
+    private volatile IProgressMonitor monitor;
     private long launchTime;
 
     public LaunchSlaveProgressMonitor(ElasticBoxSlave slave) {
@@ -63,73 +66,88 @@ class LaunchSlaveProgressMonitor implements IProgressMonitor {
 
     void setMonitor(IProgressMonitor monitor) {
         this.monitor = monitor;
-        synchronized (waitLock) {
-            waitLock.notifyAll();
-        }
+        submitted.complete(monitor);
     }
 
-    private void wait(Callable<Boolean> condition, long timeout) throws Exception {
-        long startTime = System.currentTimeMillis();
-        long remainingTime = timeout;
-        while ((timeout <= 0 || remainingTime > 0) && condition.call()) {
-            synchronized (waitLock) {
-                try {
-                    waitLock.wait(remainingTime);
-                } catch (InterruptedException ex) {
-                    LOGGER.log(
-                        Level.SEVERE,
-                        "Thread interrupted waiting for condition",
-                        ex
-                    );
+    @Override
+    public void waitForDone(int timeout) throws IncompleteException, IOException, InterruptedException {
+        CompletableFutures.await(whenDone(timeout));
+    }
+
+    /**
+     * Returns a future that completes when the instance of the slave is deployed and the slave is online, or when the
+     * timeout elapses. The caller must check whether the slave is online once the future is completed.
+     */
+    @Override
+    public CompletableFuture<Void> whenDone(final int timeout) {
+        final long endTime = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeout);
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        final ScheduledFuture<?> timeoutTask = timeout <= 0 ? null : Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                result.complete(null);
+            }
+        }, timeout, TimeUnit.MINUTES);
+
+        submitted.thenCompose(new Function<IProgressMonitor, CompletionStage<Void>>() {
+            @Override
+            public CompletionStage<Void> apply(IProgressMonitor instanceMonitor) {
+                if (instanceMonitor == IProgressMonitor.DONE_MONITOR || result.isDone()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                long remainingTime = endTime - System.currentTimeMillis();
+                int remainingMinutes = timeout <= 0 ? timeout
+                        : (int) Math.max(1, TimeUnit.MILLISECONDS.toMinutes(remainingTime + 59999));
+                return instanceMonitor.whenDone(remainingMinutes).thenCompose(
+                        new Function<Void, CompletionStage<Void>>() {
+                            @Override
+                            public CompletionStage<Void> apply(Void ignored) {
+                                return whenOnline(result);
+                            }
+                        });
+            }
+        }).whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void ignored, Throwable error) {
+                if (timeoutTask != null) {
+                    timeoutTask.cancel(false);
+                }
+                if (error != null) {
+                    result.completeExceptionally(CompletableFutures.unwrap(error));
+                } else {
+                    result.complete(null);
                 }
             }
-            long currentTime = System.currentTimeMillis();
-            remainingTime = remainingTime - (currentTime - startTime);
-            startTime = currentTime;
-        }
+        });
+        return result;
     }
 
-    @Override
-    public void waitForDone(int timeout) throws IncompleteException, IOException, InterruptedException {
-        StopWatch stopWatch = new StopWatch();
-        stopWatch.start();
-        long timeoutMiliseconds = timeout * 60000;
-        long remainingTime = timeoutMiliseconds;
-        try {
-            wait(new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws Exception {
-                    return monitor == null;
+    /**
+     * Returns a future that completes when the slave is no longer offline, checking it periodically until the
+     * waiting is over.
+     */
+    private CompletableFuture<Void> whenOnline(final CompletableFuture<Void> waiting) {
+        final CompletableFuture<Void> online = new CompletableFuture<Void>();
+        Timer.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                SlaveComputer computer = slave.getComputer();
+                if (waiting.isDone() || computer == null || !computer.isOffline()) {
+                    online.complete(null);
+                } else {
+                    Timer.get().schedule(this, PollingSchedule.MIN_DELAY, TimeUnit.MILLISECONDS);
                 }
-            }, timeoutMiliseconds);
-        } catch (Exception ex) {
-            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
-        }
-        if (monitor == IProgressMonitor.DONE_MONITOR) {
-            return;
-        }
-        remainingTime = remainingTime - stopWatch.getTime();
-        if (monitor != null && remainingTime > 0) {
-            monitor.waitForDone((int) Math.ceil(remainingTime / 60000));
-        }
-        remainingTime = remainingTime - stopWatch.getTime();
-        if (remainingTime > 0) {
-            try {
-                wait(new Callable<Boolean>() {
-                    @Override
-                    public Boolean call() throws Exception {
-                        SlaveComputer computer = slave.getComputer();
-                        return computer != null && computer.isOffline();
-                    }
-                }, remainingTime);
-            } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
             }
-        }
+        });
+        return online;
     }
 
     void setLaunched() {
-        launchTime = System.currentTimeMillis();
+        setLaunched(System.currentTimeMillis());
+    }
+
+    void setLaunched(long launchTime) {
+        this.launchTime = launchTime;
     }
 
     public long getLaunchTime() {
@@ -0,0 +1,216 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.Client;
+import com.elasticbox.Constants;
+import com.elasticbox.jenkins.util.SlaveInstance;
+
+import hudson.slaves.Cloud;
+
+import jenkins.model.Jenkins;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What is needed to create the slaves of a slave configuration in a cloud, resolved with the API once instead of
+ * for each slave: the box version, the deployment policy, the prefix of the slave names, the remote FS and the scope
+ * of the required variables in the box stack. The templates are cached per cloud and slave configuration and they
+ * are refreshed in the background by {@link LaunchTemplateWorkload}. A template belongs to the configuration object
+ * it was created for, so it is replaced when the configuration is saved.
+ */
+public final class LaunchTemplate {
+    private static final Logger LOGGER = Logger.getLogger(LaunchTemplate.class.getName());
+
+    private static final int NAME_PREFIX_LENGTH = 21;
+
+    // time after which the box version of a template is resolved again, the latest version may have changed
+    private static final long REFRESH_INTERVAL = Long.getLong("elasticbox.jenkins.LaunchTemplate.refreshInterval",
+            TimeUnit.MINUTES.toMillis(5));
+
+    // time after which a template that has not been used is dropped instead of refreshed
+    private static final long EXPIRATION_TIME = TimeUnit.HOURS.toMillis(1);
+
+    private static final ConcurrentHashMap<String, LaunchTemplate> templates =
+            new ConcurrentHashMap<String, LaunchTemplate>();
+
+    private final AbstractSlaveConfiguration slaveConfiguration;
+    private final String cloudName;
+    private final String boxVersion;
+    private final String deploymentPolicy;
+    private final String namePrefix;
+    private final String remoteFs;
+    private final String variablesScope;
+    private final long creationTime;
+    private volatile long lastUsedTime;
+
+    private LaunchTemplate(AbstractSlaveConfiguration slaveConfiguration, String cloudName, String boxVersion,
+                           String deploymentPolicy, String namePrefix, String remoteFs, String variablesScope) {
+        this.slaveConfiguration = slaveConfiguration;
+        this.cloudName = cloudName;
+        this.boxVersion = boxVersion;
+        this.deploymentPolicy = deploymentPolicy;
+        this.namePrefix = namePrefix;
+        this.remoteFs = remoteFs;
+        this.variablesScope = variablesScope;
+        this.creationTime = System.currentTimeMillis();
+        this.lastUsedTime = creationTime;
+    }
+
+    private static String getKey(String cloudName, String slaveConfigurationId) {
+        return cloudName + '/' + slaveConfigurationId;
+    }
+
+    /**
+     * Returns the template of the slave configuration in the cloud, it is created if it is not cached or it was
+     * created for a previous version of the configuration.
+     */
+    public static LaunchTemplate get(AbstractSlaveConfiguration slaveConfiguration, ElasticBoxCloud cloud)
+            throws IOException {
+
+        String key = getKey(cloud.name, slaveConfiguration.getId());
+        LaunchTemplate template = templates.get(key);
+        if (template == null || template.slaveConfiguration != slaveConfiguration) {
+            template = create(slaveConfiguration, cloud);
+            templates.put(key, template);
+        }
+        template.lastUsedTime = System.currentTimeMillis();
+        return template;
+    }
+
+    /**
+     * Returns the cached template the slave was created with, or null if it is not cached anymore or it has a
+     * different box version.
+     */
+    public static LaunchTemplate find(ElasticBoxSlave slave) throws IOException {
+        AbstractSlaveConfiguration slaveConfiguration = slave.getSlaveConfiguration();
+        ElasticBoxCloud cloud = slave.getCloud();
+        if (slaveConfiguration == null || cloud == null) {
+            return null;
+        }
+        LaunchTemplate template = templates.get(getKey(cloud.name, slaveConfiguration.getId()));
+        return template != null && template.boxVersion.equals(slave.getBoxVersion()) ? template : null;
+    }
+
+    private static LaunchTemplate create(AbstractSlaveConfiguration slaveConfiguration, ElasticBoxCloud cloud)
+            throws IOException {
+
+        Client client = cloud.getClient();
+        String boxVersion = slaveConfiguration.resolveBoxVersion(client);
+        String deploymentPolicy = slaveConfiguration.resolveDeploymentPolicy(client);
+        String remoteFs = StringUtils.isBlank(slaveConfiguration.getRemoteFs())
+                ? getRemoteFs(client, deploymentPolicy) : slaveConfiguration.getRemoteFs();
+        return new LaunchTemplate(slaveConfiguration, cloud.name, boxVersion, deploymentPolicy,
+                getNamePrefix(client.getBox(boxVersion)), remoteFs,
+                SlaveInstance.getRequiredVariablesScope(client, boxVersion));
+    }
+
+    /**
+     * Creates again the templates that are older than the refresh interval and drops the ones that have not been
+     * used for a while or whose cloud has been removed.
+     */
+    static void refresh() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, LaunchTemplate> entry : templates.entrySet()) {
+            LaunchTemplate template = entry.getValue();
+            Cloud cloud = Jenkins.get().getCloud(template.cloudName);
+            if (!(cloud instanceof ElasticBoxCloud) || now - template.lastUsedTime > EXPIRATION_TIME) {
+                templates.remove(entry.getKey(), template);
+                continue;
+            }
+            if (now - template.creationTime < REFRESH_INTERVAL) {
+                continue;
+            }
+            try {
+                LaunchTemplate newTemplate = create(template.slaveConfiguration, (ElasticBoxCloud) cloud);
+                newTemplate.lastUsedTime = template.lastUsedTime;
+                if (templates.replace(entry.getKey(), template, newTemplate)
+                        && !newTemplate.boxVersion.equals(template.boxVersion)) {
+                    LOGGER.info(MessageFormat.format("Box version of slave configuration {0} changed from {1} to {2}",
+                            template.slaveConfiguration.getDescription(), template.boxVersion,
+                            newTemplate.boxVersion));
+                }
+            } catch (IOException ex) {
+                // the current template is kept until it can be created again
+                LOGGER.log(Level.WARNING, MessageFormat.format("Error refreshing the launch template of slave "
+                        + "configuration {0}", template.slaveConfiguration.getDescription()), ex);
+            }
+        }
+    }
+
+    private static String getNamePrefix(JSONObject boxJson) {
+        String prefix = boxJson.getString("name").replaceAll("[^a-zA-Z0-9-]", "-").toLowerCase();
+        if (prefix.length() > NAME_PREFIX_LENGTH) {
+            prefix = prefix.substring(0, NAME_PREFIX_LENGTH);
+        } else if (prefix.length() < NAME_PREFIX_LENGTH) {
+            StringBuilder padding = new StringBuilder();
+            for (int i = prefix.length(); i < NAME_PREFIX_LENGTH; i++) {
+                padding.append('-');
+            }
+            prefix += padding.toString();
+        }
+        return prefix;
+    }
+
+    private static String getRemoteFs(Client client, String profileId) throws IOException {
+        JSONObject profile = client.getBox(profileId);
+        JSONArray claims = profile.getJSONArray("claims");
+        if (claims.contains(Constants.LINUX_CLAIM)) {
+            return "/var/jenkins";
+        } else if (claims.contains(Constants.WINDOWS_CLAIM)) {
+            return "C:\\Jenkins";
+        } else {
+            throw new IOException(
+                    MessageFormat.format(
+                            "Cannot create slave since the selected deployment policy ''{0}'' supports"
+                                    + " neither Linux nor Windows.",
+                            profile.getString("name")));
+        }
+    }
+
+    public String getBoxVersion() {
+        return boxVersion;
+    }
+
+    public String getDeploymentPolicy() {
+        return deploymentPolicy;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public String getRemoteFs() {
+        return remoteFs;
+    }
+
+    /**
+     * Returns the scope of the required variables of the slaves, or null if they are not in the scope of a child
+     * box.
+     */
+    public String getVariablesScope() {
+        return variablesScope;
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import hudson.Extension;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+
+/**
+ * Refreshes the launch templates of the slave configurations, so the slaves are created with the latest box version
+ * without resolving it for each slave.
+ */
+@Extension
+public class LaunchTemplateWorkload extends ElasticBoxExecutor.Workload {
+
+    @Override
+    protected ElasticBoxExecutor.ExecutionType getExecutionType() {
+        return ElasticBoxExecutor.ExecutionType.ASYNC;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException {
+        LaunchTemplate.refresh();
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.jenkins.util.ClientCache;
+
+import hudson.Extension;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+
+/**
+ * Saves the operation durations of the ElasticBox clouds to JENKINS_HOME when new durations have been recorded.
+ */
+@Extension
+public class OperationDurationsWorkload extends ElasticBoxExecutor.Workload {
+
+    @Override
+    protected ElasticBoxExecutor.ExecutionType getExecutionType() {
+        return ElasticBoxExecutor.ExecutionType.ASYNC;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException {
+        ClientCache.saveOperationDurations();
+    }
+
+}
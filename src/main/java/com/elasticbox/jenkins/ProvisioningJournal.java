@@ -0,0 +1,105 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.QueueJournal;
+
+import jenkins.model.Jenkins;
+
+import net.sf.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Journal of the provisioning queues under JENKINS_HOME, see {@link QueueJournal}. The entries added to a queue are
+ * recorded right away and the queues are synchronized with the journal at the end of each execution of their
+ * workload, so after a restart the workloads resume the deployments and terminations that were in progress instead
+ * of waiting for a full reconciliation of the workspaces. A journal that cannot be written only logs a warning, the
+ * provisioning goes on without it.
+ */
+public final class ProvisioningJournal {
+    private static final Logger LOGGER = Logger.getLogger(ProvisioningJournal.class.getName());
+
+    public static final String INCOMING = "incoming";
+    public static final String SUBMITTED = "submitted";
+    public static final String TERMINATED = "terminated";
+    public static final String DELETING = "deleting";
+
+    private static QueueJournal journal;
+
+    private ProvisioningJournal() {
+    }
+
+    private static synchronized QueueJournal getJournal() {
+        if (journal == null) {
+            journal = new QueueJournal(new File(Jenkins.get().getRootDir(), "elasticbox/provisioning-journal.log"));
+            try {
+                journal.open();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error opening the provisioning journal, the queues cannot be recovered", ex);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Returns the entries of the queue recorded in the journal, which are the ones replayed at startup until the
+     * queue is synchronized for the first time.
+     */
+    public static Map<String, JSONObject> getEntries(String queue) {
+        return getJournal().getEntries(queue);
+    }
+
+    public static void add(String queue, String key, JSONObject data) {
+        try {
+            getJournal().add(queue, key, data);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, MessageFormat.format("Error journaling entry {0} of queue {1}", key, queue), ex);
+        }
+    }
+
+    public static void add(String queue, String key) {
+        add(queue, key, new JSONObject());
+    }
+
+    public static void remove(String queue, String key) {
+        try {
+            getJournal().remove(queue, key);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, MessageFormat.format("Error journaling removal {0} of queue {1}", key, queue),
+                    ex);
+        }
+    }
+
+    /**
+     * Records the current entries of the queue and compacts the journal if it has grown too much.
+     */
+    public static void sync(String queue, Map<String, JSONObject> entries) {
+        QueueJournal queueJournal = getJournal();
+        try {
+            queueJournal.sync(queue, entries);
+            if (queueJournal.compactIfNeeded() && LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(MessageFormat.format("Provisioning journal compacted to {0} entries",
+                        queueJournal.size()));
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, MessageFormat.format("Error journaling queue {0}", queue), ex);
+        }
+    }
+
+}
@@ -13,22 +13,20 @@
 package com.elasticbox.jenkins;
 
 import com.elasticbox.Client;
+import com.elasticbox.InstanceSnapshot;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.jenkins.util.ClientCache;
 
 import hudson.model.Node;
 
-import hudson.slaves.Cloud;
 import jenkins.model.Jenkins;
 
-import net.sf.json.JSONArray;
-import net.sf.json.JSONObject;
-
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,15 +37,16 @@ public class SlaveInstanceManager {
     private static final Logger LOGGER = Logger.getLogger(SlaveInstanceManager.class.getName());
 
     private final Map<String, ElasticBoxSlave> instanceIdToSlaveMap;
-    private Map<ElasticBoxSlave, JSONObject> slaveToInstanceMap;
-    private final Map<ElasticBoxCloud, List<JSONObject>> cloudToInstancesMap;
+    private Map<ElasticBoxSlave, InstanceSummary> slaveToInstanceMap;
+    private final Map<ElasticBoxCloud, List<InstanceSummary>> cloudToInstancesMap;
     private List<ElasticBoxSlave> slavesWithoutInstance;
     private final Map<ElasticBoxCloud, Set<String>> cloudToWorkspaceIDsMap;
     private boolean allFetched = false;
+    private final Set<ElasticBoxCloud> refreshedClouds = new HashSet<ElasticBoxCloud>();
 
     public SlaveInstanceManager() throws IOException {
         instanceIdToSlaveMap = new HashMap<String, ElasticBoxSlave>();
-        cloudToInstancesMap = new HashMap<ElasticBoxCloud, List<JSONObject>>();
+        cloudToInstancesMap = new HashMap<ElasticBoxCloud, List<InstanceSummary>>();
         cloudToWorkspaceIDsMap = new HashMap<ElasticBoxCloud, Set<String>>();
         for (Node node : Jenkins.get().getNodes()) {
             if (node instanceof ElasticBoxSlave) {
@@ -79,43 +78,7 @@ public class SlaveInstanceManager {
         }
 
         if (slavesWithoutInstance != null) {
-
-            ElasticBoxCloud cloud = null;
-            String wks = null;
-            JSONArray instances = null;
-            AbstractSlaveConfiguration config;
-
-            Iterator<ElasticBoxSlave> iterator = slavesWithoutInstance.iterator();
-            while (iterator.hasNext() ) {
-
-                ElasticBoxSlave slave = iterator.next();
-                config = slave.getSlaveConfiguration();
-
-                if ( slave.getCloud() != null && config != null) {
-                    if (!slave.getCloud().equals(cloud) && !config.getWorkspace().equals(wks)) {
-                        cloud = slave.getCloud();
-                        wks = slave.getSlaveConfiguration().getWorkspace();
-                        instances = cloud.getClient().getInstances(wks);
-                    }
-                    for (Object instance : instances) {
-                        JSONObject instanceJson = (JSONObject) instance;
-                        JSONArray tags = instanceJson.getJSONArray("tags");
-
-                        // If the instance corresponds to a Jenkins slave, first tag will match the slave name:
-                        if (tags.size() > 0 && slave.getNodeName().equals(tags.getString(0) )) {
-                            String instanceId = instanceJson.getString("id");
-                            if (slave.getInstanceUrl() == null) {
-                                final String url = cloud.getClient().getInstanceUrl(instanceId);
-                                slave.setInstanceUrl(url);
-                                LOGGER.info("Linked instance [" + url + "] with orphan slave - " + slave);
-                            }
-                            iterator.remove();
-                            instanceIdToSlaveMap.put(instanceId, slave);
-                            break;
-                        }
-                    }
-                }
-            }
+            linkSlavesWithoutInstance();
         }
 
         if (LOGGER.isLoggable(Level.FINEST)) {
@@ -128,6 +91,55 @@ public class SlaveInstanceManager {
         }
     }
 
+    /**
+     * Links the slaves without instance URL to the instances whose first tag is the slave name. The instances are
+     * read from the snapshot of the cloud of each slave, which is refreshed once for all the slaves of that cloud.
+     */
+    private void linkSlavesWithoutInstance() throws IOException {
+        Map<ElasticBoxCloud, Map<String, ElasticBoxSlave>> cloudToUnlinkedSlavesMap = new HashMap<>();
+        for (ElasticBoxSlave slave : slavesWithoutInstance) {
+            ElasticBoxCloud cloud = slave.getCloud();
+            if (cloud != null && slave.getSlaveConfiguration() != null) {
+                Map<String, ElasticBoxSlave> nameToSlaveMap = cloudToUnlinkedSlavesMap.get(cloud);
+                if (nameToSlaveMap == null) {
+                    nameToSlaveMap = new HashMap<>();
+                    cloudToUnlinkedSlavesMap.put(cloud, nameToSlaveMap);
+                }
+                nameToSlaveMap.put(slave.getNodeName(), slave);
+            }
+        }
+
+        for (Map.Entry<ElasticBoxCloud, Map<String, ElasticBoxSlave>> entry : cloudToUnlinkedSlavesMap.entrySet()) {
+            Client client = entry.getKey().getClient();
+            Map<String, ElasticBoxSlave> nameToSlaveMap = entry.getValue();
+            for (InstanceSummary instance : getSnapshot(entry.getKey()).getInstances()) {
+                List<String> tags = instance.getTags();
+                // If the instance corresponds to a Jenkins slave, first tag will match the slave name:
+                ElasticBoxSlave slave = tags.isEmpty() ? null : nameToSlaveMap.remove(tags.get(0));
+                if (slave != null) {
+                    String instanceId = instance.getId();
+                    final String url = client.getInstanceUrl(instanceId);
+                    slave.setInstanceUrl(url);
+                    LOGGER.info("Linked instance [" + url + "] with orphan slave - " + slave);
+                    slavesWithoutInstance.remove(slave);
+                    instanceIdToSlaveMap.put(instanceId, slave);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot of the instances of the cloud, it is refreshed with one listing per workspace of the
+     * slaves the first time it is requested.
+     */
+    private InstanceSnapshot getSnapshot(ElasticBoxCloud cloud) throws IOException {
+        InstanceSnapshot snapshot = ClientCache.getInstanceSnapshot(cloud.name);
+        if (refreshedClouds.add(cloud)) {
+            snapshot.refresh(cloud.getClient(), cloudToWorkspaceIDsMap.get(cloud));
+        }
+        return snapshot;
+    }
+
     public ElasticBoxSlave getSlave(String instanceId) {
         return instanceIdToSlaveMap.get(instanceId);
     }
@@ -141,9 +153,9 @@ public class SlaveInstanceManager {
         if (slavesWithoutInstance == null) {
             ensureAllFetched();
             Set<String> validInstanceIDs = new HashSet<>();
-            for (List<JSONObject> instances : cloudToInstancesMap.values()) {
-                for (JSONObject instance : instances) {
-                    validInstanceIDs.add(instance.getString("id"));
+            for (List<InstanceSummary> instances : cloudToInstancesMap.values()) {
+                for (InstanceSummary instance : instances) {
+                    validInstanceIDs.add(instance.getId());
                 }
             }
             Map<String, ElasticBoxSlave> invalidInstanceIdToSlaveMap = new HashMap<>(instanceIdToSlaveMap);
@@ -154,20 +166,15 @@ public class SlaveInstanceManager {
         return slavesWithoutInstance;
     }
 
-    public List<JSONObject> getInstances(ElasticBoxCloud cloud) throws IOException {
+    public List<InstanceSummary> getInstances(ElasticBoxCloud cloud) throws IOException {
         if (cloudToWorkspaceIDsMap.containsKey(cloud)) {
-            List<JSONObject> instances = cloudToInstancesMap.get(cloud);
+            List<InstanceSummary> instances = cloudToInstancesMap.get(cloud);
             if (instances == null) {
                 // the instances of the cloud are not fetched yet
-                instances = new ArrayList<JSONObject>();
-                Client client = cloud.getClient();
-                for (String workspaceId : cloudToWorkspaceIDsMap.get(cloud)) {
-                    for (Object instance : client.getInstances(workspaceId)) {
-                        JSONObject instanceJson = (JSONObject) instance;
-                        String instanceId = instanceJson.getString("id");
-                        if (instanceIdToSlaveMap.containsKey(instanceId)) {
-                            instances.add(instanceJson);
-                        }
+                instances = new ArrayList<InstanceSummary>();
+                for (InstanceSummary instance : getSnapshot(cloud).getInstances()) {
+                    if (instanceIdToSlaveMap.containsKey(instance.getId())) {
+                        instances.add(instance);
                     }
                 }
                 cloudToInstancesMap.put(cloud, instances);
@@ -178,21 +185,30 @@ public class SlaveInstanceManager {
         }
     }
 
-    public Collection<JSONObject> getInstances() throws IOException {
+    /**
+     * Checks whether the instance of the slave is listed by this manager, in that case
+     * {@link #getInstance(ElasticBoxSlave)} returns null only if the instance does not exist anymore.
+     */
+    public boolean isListed(ElasticBoxSlave slave) throws IOException {
+        return slave.getInstanceUrl() != null && instanceIdToSlaveMap.get(slave.getInstanceId()) == slave
+                && slave.getCloud() != null && slave.getSlaveConfiguration() != null;
+    }
+
+    public Collection<InstanceSummary> getInstances() throws IOException {
         return getSlaveToInstanceMap().values();
     }
 
-    public JSONObject getInstance(ElasticBoxSlave slave) throws IOException {
+    public InstanceSummary getInstance(ElasticBoxSlave slave) throws IOException {
         return getSlaveToInstanceMap().get(slave);
     }
 
-    private Map<ElasticBoxSlave, JSONObject> getSlaveToInstanceMap() throws IOException {
+    private Map<ElasticBoxSlave, InstanceSummary> getSlaveToInstanceMap() throws IOException {
         if (slaveToInstanceMap == null) {
             ensureAllFetched();
-            slaveToInstanceMap = new HashMap<ElasticBoxSlave, JSONObject>();
-            for (List<JSONObject> cloudInstances : cloudToInstancesMap.values()) {
-                for (JSONObject instance : cloudInstances) {
-                    slaveToInstanceMap.put(getSlave(instance.getString("id")), instance);
+            slaveToInstanceMap = new HashMap<ElasticBoxSlave, InstanceSummary>();
+            for (List<InstanceSummary> cloudInstances : cloudToInstancesMap.values()) {
+                for (InstanceSummary instance : cloudInstances) {
+                    slaveToInstanceMap.put(getSlave(instance.getId()), instance);
                 }
             }
         }
@@ -211,15 +227,4 @@ public class SlaveInstanceManager {
         }
         this.allFetched = true;
     }
-
-    public Map<ElasticBoxCloud, Integer> getMaxInstancesPerCloud() throws IOException {
-        Map<ElasticBoxCloud, Integer> cloudToMaxNewInstancesMap = new HashMap<>();
-        for (Cloud cloud : Jenkins.get().clouds) {
-            if (cloud instanceof ElasticBoxCloud) {
-                ElasticBoxCloud ebCloud = (ElasticBoxCloud) cloud;
-                cloudToMaxNewInstancesMap.put(ebCloud, ebCloud.getMaxInstances() - getInstances(ebCloud).size());
-            }
-        }
-        return cloudToMaxNewInstancesMap;
-    }
 }
@@ -0,0 +1,161 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.Client;
+import com.elasticbox.ClientException;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.TerminationPipeline;
+import com.elasticbox.jenkins.util.ClientCache;
+
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Terminates and deletes the instances of the terminated slaves and removes the slaves from Jenkins. The state of the
+ * instance is read from the instance snapshot of the cloud, it is fetched only if the instance is not listed there
+ * or before terminating it because the listing may predate the termination request.
+ */
+class SlaveTerminationPipeline extends TerminationPipeline<ElasticBoxSlave> {
+    private static final Logger LOGGER = Logger.getLogger(SlaveTerminationPipeline.class.getName());
+
+    SlaveTerminationPipeline() {
+        super("SlaveTerminationPipeline");
+    }
+
+    @Override
+    protected String getKey(ElasticBoxSlave slave) {
+        return slave.getNodeName();
+    }
+
+    @Override
+    protected State advance(ElasticBoxSlave slave, State state) throws IOException {
+        if (state == State.TERMINATED || state == State.DELETED) {
+            removeSlave(slave);
+            return State.REMOVED;
+        }
+
+        ElasticBoxCloud cloud = getCloud(slave);
+        if (cloud == null) {
+            LOGGER.warning("The cloud of the slave no longer exists, the slave is removed - " + slave);
+            removeSlave(slave);
+            return State.REMOVED;
+        }
+
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Purging slave - " + slave);
+        }
+        InstanceSummary instance = slave.getInstanceUrl() != null
+                ? ClientCache.getInstanceSnapshot(cloud.name).getInstance(slave.getInstanceId()) : null;
+        if (instance == null || isActive(instance)) {
+            instance = fetchInstance(slave);
+            if (instance == null) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Slave instance no longer exists - " + slave);
+                }
+                return State.DELETED;
+            }
+        }
+
+        switch (instance.getState()) {
+            case Client.InstanceState.PROCESSING:
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.finest("Slave still processing, cannot be purged - " + slave);
+                }
+                return Client.TERMINATE_OPERATIONS.contains(instance.getOperation()) ? State.TERMINATING : state;
+
+            case Client.InstanceState.UNAVAILABLE:
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Slave is unavailable - " + slave);
+                }
+                cloud.getClient().forceTerminate(instance.getId());
+                return State.TERMINATING;
+
+            default:
+                if (Client.TERMINATE_OPERATIONS.contains(instance.getOperation()) ) {
+                    if (slave.isRemovableFromCloud() ) {
+                        LOGGER.info("Deleting slave - " + slave);
+                        return deleteInstance(slave) ? State.DELETED : State.TERMINATED;
+                    }
+                    if (!slave.isDeletable() && LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("Unavailable Slave has been terminated manually - " + slave);
+                    }
+                    return State.TERMINATED;
+                }
+                if (slave.maxDeleteAttemptsReached() ) {
+                    return State.TERMINATED;
+                }
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Terminating not required slave - " + slave);
+                }
+                slave.terminate();
+                return State.TERMINATING;
+        }
+    }
+
+    private static boolean isActive(InstanceSummary instance) {
+        return !Client.InstanceState.PROCESSING.equals(instance.getState())
+                && !Client.InstanceState.UNAVAILABLE.equals(instance.getState())
+                && !Client.TERMINATE_OPERATIONS.contains(instance.getOperation());
+    }
+
+    void removeSlave(ElasticBoxSlave slave) {
+        ElasticBoxSlaveHandler.removeSlave(slave);
+    }
+
+    /**
+     * Returns the cloud of the slave, or null if the cloud has been removed.
+     */
+    private static ElasticBoxCloud getCloud(ElasticBoxSlave slave) {
+        try {
+            return slave.getCloud();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the instance of the slave, returns null if it does not exist anymore.
+     */
+    private static InstanceSummary fetchInstance(ElasticBoxSlave slave) throws IOException {
+        try {
+            return slave.getInstanceSummary();
+        } catch (ClientException ex) {
+            if ( (ex.getStatusCode() == HttpStatus.SC_FORBIDDEN) || (ex.getStatusCode() == HttpStatus.SC_NOT_FOUND) ) {
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Deletes the instance of the slave, returns false if the instance cannot be deleted in its current state.
+     */
+    private static boolean deleteInstance(ElasticBoxSlave slave) throws IOException {
+        try {
+            slave.delete();
+        } catch (ClientException ex) {
+            if (ex.getStatusCode() == HttpStatus.SC_CONFLICT) {
+                return false;
+            } else if ( (ex.getStatusCode() != HttpStatus.SC_FORBIDDEN)
+                    && (ex.getStatusCode() != HttpStatus.SC_NOT_FOUND) ) {
+                throw ex;
+            }
+        }
+        return true;
+    }
+
+}
@@ -17,6 +17,7 @@ import static com.elasticbox.jenkins.DescriptorHelper.anyOfThemIsBlank;
 
 import com.elasticbox.Client;
 import com.elasticbox.ClientException;
+import com.elasticbox.CompletableFutures;
 import com.elasticbox.Constants;
 import com.elasticbox.IProgressMonitor;
 import com.elasticbox.jenkins.ElasticBoxCloud;
@@ -81,10 +82,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -182,20 +185,26 @@ public class DeployBox extends Builder implements IInstanceProvider, Serializabl
                     waitForCompletionTimeout, client, logger);
 
         } else if (alternateAction.equals(ACTION_DELETE_AND_DEPLOY)) {
+            // the existing instances are terminated at the same time and deleted as their terminations complete
+            Map<String, CompletableFuture<Void>> terminations = new LinkedHashMap<String, CompletableFuture<Void>>();
             for (Object existingInstance : existingInstances) {
                 if (Thread.interrupted()) {
                     throw new InterruptedException();
                 }
                 JSONObject instanceJson = (JSONObject) existingInstance;
-                // Don't fail if the instance is not found
                 try {
-                    TerminateOperation.terminate(instanceJson, client, logger);
-                    client.delete(instanceJson.getString("id"));
+                    terminations.put(instanceJson.getString("id"),
+                            TerminateOperation.terminateAsync(instanceJson, client, logger));
                 } catch (ClientException ex) {
-                    if ((ex.getStatusCode() != HttpStatus.SC_FORBIDDEN)
-                            && (ex.getStatusCode() != HttpStatus.SC_NOT_FOUND)) {
-                        throw ex;
-                    }
+                    ignoreIfNotFound(ex);
+                }
+            }
+            for (Map.Entry<String, CompletableFuture<Void>> termination : terminations.entrySet()) {
+                try {
+                    CompletableFutures.await(termination.getValue());
+                    client.delete(termination.getKey());
+                } catch (ClientException ex) {
+                    ignoreIfNotFound(ex);
                 }
             }
             String instanceId = deploy(ebCloud, client, resolver, logger, build);
@@ -208,6 +217,13 @@ public class DeployBox extends Builder implements IInstanceProvider, Serializabl
         return new Result(instance, existing);
     }
 
+    // Don't fail if the instance is not found
+    private static void ignoreIfNotFound(ClientException ex) throws ClientException {
+        if ((ex.getStatusCode() != HttpStatus.SC_FORBIDDEN) && (ex.getStatusCode() != HttpStatus.SC_NOT_FOUND)) {
+            throw ex;
+        }
+    }
+
     private String deploy(ElasticBoxCloud ebCloud, Client client, VariableResolver resolver, TaskLogger logger,
                           AbstractBuild<?, ?> build)
             throws IOException, InterruptedException {
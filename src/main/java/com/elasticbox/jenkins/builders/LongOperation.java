@@ -13,17 +13,21 @@
 package com.elasticbox.jenkins.builders;
 
 import com.elasticbox.Client;
+import com.elasticbox.Deadline;
 import com.elasticbox.IProgressMonitor;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.OperationDurations;
+import com.elasticbox.PollingSchedule;
 import com.elasticbox.jenkins.util.TaskLogger;
 
 import hudson.AbortException;
 
-import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
 import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 import java.text.MessageFormat;
 
@@ -67,39 +71,59 @@ public abstract class LongOperation extends Operation {
         }
         Object waitLock = new Object();
         long startWaitTime = System.currentTimeMillis();
+        OperationDurations durations = client.getOperationDurations();
+        long nextDelay = PollingSchedule.MIN_DELAY;
 
-        while (!instanceIdToMonitorMap.isEmpty()
-            && TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - startWaitTime) < timeoutMinutes) {
+        Deadline deadline = timeoutMinutes > 0 ? Deadline.after(timeoutMinutes, TimeUnit.MINUTES) : null;
+        Deadline previousDeadline = Deadline.setCurrent(deadline);
+        try {
+            while (!instanceIdToMonitorMap.isEmpty()
+                && TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - startWaitTime) < timeoutMinutes) {
 
-            synchronized (waitLock) {
-                waitLock.wait(3000);
-            }
-            List<String> instanceIDs = new ArrayList<String>(instanceIdToMonitorMap.keySet());
-            JSONArray instances = client.getInstances(instanceIDs);
-            for (Object instance : instances) {
-                JSONObject instanceJson = (JSONObject) instance;
-                String instanceId = instanceJson.getString("id");
-                instanceIDs.remove(instanceId);
-                IProgressMonitor monitor = instanceIdToMonitorMap.get(instanceId);
-                String instancePageUrl = Client.getPageUrl(client.getEndpointUrl(), instanceJson);
-                boolean done;
-                try {
-                    done = monitor.isDone(instanceJson);
-                } catch (IProgressMonitor.IncompleteException ex) {
-                    logger.error("Failed to perform operation {0} for instance {1}: {1}", operationDisplayName,
-                            instancePageUrl, ex.getMessage());
-                    throw new AbortException(ex.getMessage());
+                synchronized (waitLock) {
+                    waitLock.wait(nextDelay);
+                }
+                List<String> instanceIDs = new ArrayList<String>(instanceIdToMonitorMap.keySet());
+                List<InstanceSummary> instances = client.getInstanceSummaries(instanceIDs);
+                long now = System.currentTimeMillis();
+                nextDelay = PollingSchedule.MAX_DELAY;
+                for (InstanceSummary instance : instances) {
+                    JSONObject instanceJson = instance.toJson();
+                    String durationKey = OperationDurations.getKey(instanceJson);
+                    String instanceId = instance.getId();
+                    instanceIDs.remove(instanceId);
+                    IProgressMonitor monitor = instanceIdToMonitorMap.get(instanceId);
+                    String instancePageUrl = Client.getPageUrl(client.getEndpointUrl(), instanceJson);
+                    boolean done;
+                    try {
+                        done = monitor.isDone(instanceJson);
+                    } catch (IProgressMonitor.IncompleteException ex) {
+                        logger.error("Failed to perform operation {0} for instance {1}: {1}", operationDisplayName,
+                                instancePageUrl, ex.getMessage());
+                        throw new AbortException(ex.getMessage());
+                    }
+                    if (done) {
+                        logger.info(MessageFormat.format("Operation {0} is successful for instance {1}",
+                                operationDisplayName, instancePageUrl));
+                        instanceIdToMonitorMap.remove(instanceId);
+                        durations.record(durationKey, now - monitor.getCreationTime());
+                    } else {
+                        nextDelay = Math.min(nextDelay, PollingSchedule.getDelay(
+                                durations.getExpectedDuration(durationKey), now - monitor.getCreationTime()));
+                    }
                 }
-                if (done) {
-                    logger.info(MessageFormat.format("Operation {0} is successful for instance {1}",
-                            operationDisplayName, instancePageUrl));
-                    instanceIdToMonitorMap.remove(instanceId);
+                if (!instanceIDs.isEmpty()) {
+                    throw new AbortException(MessageFormat.format(
+                            "Cannot find the instances with the following IDs: {0}",
+                            StringUtils.join(instanceIDs, ", ")));
                 }
             }
-            if (!instanceIDs.isEmpty()) {
-                throw new AbortException(MessageFormat.format("Cannot find the instances with the following IDs: {0}",
-                        StringUtils.join(instanceIDs, ", ")));
+        } catch (InterruptedIOException ex) {
+            if (deadline == null || !deadline.isExpired()) {
+                throw ex;
             }
+        } finally {
+            Deadline.restore(previousDeadline);
         }
         
         if (!instanceIdToMonitorMap.isEmpty()) {
@@ -13,6 +13,7 @@
 package com.elasticbox.jenkins.builders;
 
 import com.elasticbox.Client;
+import com.elasticbox.CompletableFutures;
 import com.elasticbox.IProgressMonitor;
 import com.elasticbox.jenkins.DescriptorHelper;
 import com.elasticbox.jenkins.ElasticBoxCloud;
@@ -39,6 +40,11 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -153,43 +159,68 @@ public class TerminateOperation extends LongOperation implements IOperation.Inst
         return instanceIDs;
     }
 
-    public static void terminate(JSONObject instance, Client client, TaskLogger logger)
-            throws IOException, InterruptedException {
-        String instanceId = instance.getString("id");
+    /**
+     * Terminates the instance and returns a future that completes when it is terminated. The instance is
+     * force-terminated if the termination does not complete.
+     */
+    public static CompletableFuture<Void> terminateAsync(JSONObject instance, final Client client,
+            final TaskLogger logger) throws IOException {
+        final String instanceId = instance.getString("id");
         IProgressMonitor monitor = client.terminate(instanceId);
-        String instancePageUrl = Client.getPageUrl(client.getEndpointUrl(), instance);
+        final String instancePageUrl = Client.getPageUrl(client.getEndpointUrl(), instance);
         logger.info(MessageFormat.format("Terminating box instance {0}", instancePageUrl));
-        try {
-            logger.info(MessageFormat.format("Waiting for the box instance {0} to be terminated", instancePageUrl));
-            monitor.waitForDone(ElasticBoxSlaveHandler.TIMEOUT_MINUTES);
-            logger.info(MessageFormat.format("The box instance {0} has been terminated successfully ",
-                    instancePageUrl));
-        } catch (IProgressMonitor.IncompleteException ex) {
-
-            logger.info(ex.getMessage());
+        logger.info(MessageFormat.format("Waiting for the box instance {0} to be terminated", instancePageUrl));
+        return monitor.whenDone(ElasticBoxSlaveHandler.TIMEOUT_MINUTES).handle(
+                new BiFunction<Void, Throwable, CompletionStage<Void>>() {
+                    @Override
+                    public CompletionStage<Void> apply(Void ignored, Throwable error) {
+                        error = CompletableFutures.unwrap(error);
+                        if (error == null) {
+                            logger.info(MessageFormat.format("The box instance {0} has been terminated successfully ",
+                                    instancePageUrl));
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        if (!(error instanceof IProgressMonitor.IncompleteException)) {
+                            return CompletableFutures.failedFuture(error);
+                        }
+                        return forceTerminateAsync(instanceId, instancePageUrl, error.getMessage(), client, logger);
+                    }
+                }).thenCompose(new Function<CompletionStage<Void>, CompletionStage<Void>>() {
+                    @Override
+                    public CompletionStage<Void> apply(CompletionStage<Void> termination) {
+                        return termination;
+                    }
+                });
+    }
 
+    private static CompletableFuture<Void> forceTerminateAsync(String instanceId, final String instancePageUrl,
+            final String terminateError, Client client, final TaskLogger logger) {
+        logger.info(terminateError);
+        IProgressMonitor monitor;
+        try {
             monitor = client.forceTerminate(instanceId);
-
-            logger.info(MessageFormat.format("Force-terminating instance {0}", instancePageUrl));
-
-            try {
-                logger.info(
-                    MessageFormat.format(
-                        "Waiting for the box instance {0} to be force-terminated", instancePageUrl));
-
-                monitor.waitForDone(ElasticBoxSlaveHandler.TIMEOUT_MINUTES);
-
-                logger.info(
-                    MessageFormat.format(
-                        "The box instance {0} has been force-terminated successfully ",
-                        instancePageUrl));
-
-            } catch (IProgressMonitor.IncompleteException e) {
-                Logger.getLogger(DeployBox.class.getName()).log(Level.SEVERE, null, e);
-                logger.error("Failed to terminate box instance {0}: {1}", instancePageUrl, ex.getMessage());
-                throw new AbortException(ex.getMessage());
-            }
+        } catch (IOException ex) {
+            return CompletableFutures.failedFuture(ex);
         }
+        logger.info(MessageFormat.format("Force-terminating instance {0}", instancePageUrl));
+        logger.info(MessageFormat.format("Waiting for the box instance {0} to be force-terminated", instancePageUrl));
+        return monitor.whenDone(ElasticBoxSlaveHandler.TIMEOUT_MINUTES).handle(new BiFunction<Void, Throwable, Void>() {
+            @Override
+            public Void apply(Void ignored, Throwable error) {
+                error = CompletableFutures.unwrap(error);
+                if (error == null) {
+                    logger.info(MessageFormat.format("The box instance {0} has been force-terminated successfully ",
+                            instancePageUrl));
+                    return null;
+                }
+                if (error instanceof IProgressMonitor.IncompleteException) {
+                    Logger.getLogger(DeployBox.class.getName()).log(Level.SEVERE, null, error);
+                    logger.error("Failed to terminate box instance {0}: {1}", instancePageUrl, terminateError);
+                    throw new CompletionException(new AbortException(terminateError));
+                }
+                throw new CompletionException(error);
+            }
+        });
     }
 
     @Override
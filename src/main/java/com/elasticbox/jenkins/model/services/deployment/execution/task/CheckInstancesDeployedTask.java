@@ -14,6 +14,8 @@
 
 package com.elasticbox.jenkins.model.services.deployment.execution.task;
 
+import com.elasticbox.OperationDurations;
+import com.elasticbox.PollingSchedule;
 import com.elasticbox.jenkins.model.instance.Instance;
 import com.elasticbox.jenkins.model.repository.error.RepositoryException;
 import com.elasticbox.jenkins.model.services.deployment.execution.context.AbstractBoxDeploymentContext;
@@ -155,6 +157,28 @@ public class CheckInstancesDeployedTask extends ScheduledPoolingTask<List<Instan
         }
     }
 
+    /**
+     * Polls more often around the time the deployments of the box have taken so far, once any instance of the cloud
+     * has been deployed. It checks again right away when all the instances are done to confirm it.
+     */
+    @Override
+    protected long getNextDelay() {
+        OperationDurations durations = deploymentContext.getCloud().getOperationDurations();
+        if (durations == null) {
+            return super.getNextDelay();
+        }
+        if (okCounter > 0) {
+            return PollingSchedule.MIN_DELAY;
+        }
+        long expectedDuration = durations.getExpectedDuration(getDurationKey());
+        return expectedDuration < 0 ? super.getNextDelay()
+                : PollingSchedule.getDelay(expectedDuration, getElapsedTime());
+    }
+
+    private String getDurationKey() {
+        return OperationDurations.getKey("deploy", deploymentContext.getBoxToDeployId(), null);
+    }
+
     @Override
     public boolean isDone() {
         final List<Instance> instances = getResult();
@@ -164,8 +188,12 @@ public class CheckInstancesDeployedTask extends ScheduledPoolingTask<List<Instan
                     return false;
                 }
             }
-            if (okCounter == ALL_INSTANCES_DONE_REQUIRED_TIMES) {
+            if (okCounter == ALL_INSTANCES_DONE_REQUIRED_TIMES && !done) {
                 done = true;
+                OperationDurations durations = deploymentContext.getCloud().getOperationDurations();
+                if (durations != null) {
+                    durations.record(getDurationKey(), getElapsedTime());
+                }
             }
         }
         return done;
@@ -19,6 +19,7 @@ public abstract class ScheduledPoolingTask<R> extends AbstractTask<R> {
     private long delay;
     private long initialDelay;
     private long timeout;
+    private long startTime;
 
     private ScheduledExecutorService scheduledExecutorService = null;
     private ScheduledFuture<?> scheduledFuture = null;
@@ -42,8 +43,10 @@ public abstract class ScheduledPoolingTask<R> extends AbstractTask<R> {
     public void execute() throws TaskException {
 
         final CountDownLatch countDownLatch = new CountDownLatch(1);
+        startTime = System.currentTimeMillis();
 
-        scheduledFuture = scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+        // each execution schedules the next one, so the delay between executions can change as the task progresses
+        scheduledFuture = scheduledExecutorService.schedule(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -52,19 +55,21 @@ public abstract class ScheduledPoolingTask<R> extends AbstractTask<R> {
                     counter++;
 
                     if (isDone()) {
-                        scheduledFuture.cancel(true);
                         countDownLatch.countDown();
                     } else {
                         result = null;
+                        if (!scheduledExecutorService.isShutdown()) {
+                            scheduledFuture = scheduledExecutorService.schedule(this, getNextDelay(),
+                                    TimeUnit.MILLISECONDS);
+                        }
                     }
 
                 } catch (TaskException e) {
                     logger.log(Level.SEVERE, "Error executing task: " + this.getClass().getSimpleName(),e);
-                    scheduledFuture.cancel(true);
                     countDownLatch.countDown();
                 }
             }
-        }, initialDelay, delay, TimeUnit.SECONDS);
+        }, initialDelay, TimeUnit.SECONDS);
 
         try {
             final boolean await = countDownLatch.await(timeout, TimeUnit.SECONDS);
@@ -106,6 +111,21 @@ public abstract class ScheduledPoolingTask<R> extends AbstractTask<R> {
 
     }
 
+    /**
+     * Returns the delay in milliseconds before the next execution of the task. By default it is the fixed delay the
+     * task was created with.
+     */
+    protected long getNextDelay() {
+        return TimeUnit.SECONDS.toMillis(delay);
+    }
+
+    /**
+     * Returns the time in milliseconds since the task started executing.
+     */
+    protected long getElapsedTime() {
+        return System.currentTimeMillis() - startTime;
+    }
+
     public int getCounter() {
         return counter;
     }
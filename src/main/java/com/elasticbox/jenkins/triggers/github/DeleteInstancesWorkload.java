@@ -14,7 +14,9 @@ package com.elasticbox.jenkins.triggers.github;
 
 import com.elasticbox.Client;
 import com.elasticbox.ClientException;
+import com.elasticbox.InstanceSummary;
 import com.elasticbox.jenkins.ElasticBoxExecutor;
+import com.elasticbox.jenkins.ProvisioningJournal;
 import com.elasticbox.jenkins.util.ClientCache;
 
 import hudson.Extension;
@@ -27,6 +29,8 @@ import org.apache.http.HttpStatus;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
@@ -35,9 +39,13 @@ import java.util.logging.Level;
 public class DeleteInstancesWorkload extends ElasticBoxExecutor.Workload {
     private final Queue<PullRequestInstance> terminatingInstances = new ConcurrentLinkedQueue<PullRequestInstance>();
 
+    private volatile boolean journalReplayed;
+
     public void add(PullRequestInstance terminatingInstance) {
         if (!terminatingInstances.contains(terminatingInstance)) {
             terminatingInstances.add(terminatingInstance);
+            ProvisioningJournal.add(ProvisioningJournal.DELETING, getJournalKey(terminatingInstance),
+                    getJournalData(terminatingInstance));
         }
     }
 
@@ -48,19 +56,52 @@ public class DeleteInstancesWorkload extends ElasticBoxExecutor.Workload {
 
     @Override
     protected void execute(TaskListener listener) throws IOException {
-        for (Iterator<PullRequestInstance> iter = terminatingInstances.iterator(); iter.hasNext();) {
-            if (deleteInstance(iter.next(), listener)) {
-                iter.remove();
+        if (!journalReplayed) {
+            for (JSONObject data : ProvisioningJournal.getEntries(ProvisioningJournal.DELETING).values()) {
+                String id = data.optString("id", null);
+                String cloud = data.optString("cloud", null);
+                if (id != null && cloud != null) {
+                    PullRequestInstance instance = new PullRequestInstance(id, cloud);
+                    if (!terminatingInstances.contains(instance)) {
+                        terminatingInstances.add(instance);
+                    }
+                }
+            }
+            journalReplayed = true;
+        }
+
+        try {
+            for (Iterator<PullRequestInstance> iter = terminatingInstances.iterator(); iter.hasNext();) {
+                if (deleteInstance(iter.next(), listener)) {
+                    iter.remove();
+                }
+            }
+        } finally {
+            Map<String, JSONObject> entries = new LinkedHashMap<String, JSONObject>();
+            for (PullRequestInstance instance : terminatingInstances) {
+                entries.put(getJournalKey(instance), getJournalData(instance));
             }
+            ProvisioningJournal.sync(ProvisioningJournal.DELETING, entries);
         }
     }
 
+    private static String getJournalKey(PullRequestInstance instance) {
+        return instance.cloud + '/' + instance.id;
+    }
+
+    private static JSONObject getJournalData(PullRequestInstance instance) {
+        JSONObject data = new JSONObject();
+        data.put("id", instance.id);
+        data.put("cloud", instance.cloud);
+        return data;
+    }
+
     private boolean deleteInstance(PullRequestInstance instance, TaskListener listener) {
         Client client = ClientCache.getClient(instance.cloud);
 
-        JSONObject instanceJson;
+        InstanceSummary instanceSummary;
         try {
-            instanceJson = client.getInstance(instance.id);
+            instanceSummary = client.getInstanceSummary(instance.id);
         } catch (ClientException ex) {
             int exStatusCode = ex.getStatusCode() ;
             // SC_NOT_FOUND admitted for compatibility with previous versions to CAM 5.0.22033
@@ -78,7 +119,7 @@ public class DeleteInstancesWorkload extends ElasticBoxExecutor.Workload {
             return false;
         }
 
-        String state = instanceJson.getString("state");
+        String state = instanceSummary.getState();
         if (Client.InstanceState.UNAVAILABLE.equals(state)) {
             try {
                 client.forceTerminate(instance.id);
@@ -12,9 +12,13 @@
 
 package com.elasticbox.jenkins.triggers.github;
 
+import com.elasticbox.jenkins.util.ClientCache;
+
 import hudson.Extension;
 import hudson.model.UnprotectedRootAction;
 
+import jenkins.model.Jenkins;
+
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.interceptor.RequirePOST;
@@ -61,4 +65,13 @@ public class WebHook implements UnprotectedRootAction {
         }
     }
 
+    /**
+     * Returns the metrics of the requests sent to the ElasticBox clouds as JSON.
+     */
+    public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().write(ClientCache.getClientMetricsJson().toString());
+    }
+
 }
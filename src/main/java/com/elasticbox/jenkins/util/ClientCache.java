@@ -12,25 +12,40 @@
 
 package com.elasticbox.jenkins.util;
 
+import com.elasticbox.BlobCache;
 import com.elasticbox.Client;
 import com.elasticbox.Client.HttpProxy;
 import com.elasticbox.ClientException;
+import com.elasticbox.ClientMetrics;
+import com.elasticbox.ConnectionPool;
+import com.elasticbox.InstancePoller;
+import com.elasticbox.InstanceSnapshot;
+import com.elasticbox.OperationDurations;
+import com.elasticbox.RequestLimiter;
+import com.elasticbox.ResponseCache;
 import com.elasticbox.jenkins.ElasticBoxCloud;
 
 import hudson.ProxyConfiguration;
+import hudson.Util;
 import jenkins.model.Jenkins;
 import hudson.slaves.Cloud;
+import net.sf.json.JSONObject;
 import org.apache.http.HttpStatus;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.pool.PoolStats;
+import org.kohsuke.stapler.Stapler;
 
 import javax.annotation.CheckForNull;
+import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -41,16 +56,43 @@ public class ClientCache {
 
     private static final ConcurrentHashMap<String, Client> clientCache = new ConcurrentHashMap<>();
 
+    private static final ConcurrentHashMap<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, ResponseCache> responseCaches = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, RequestLimiter> requestLimiters = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, BlobCache> blobCaches = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, ClientMetrics> clientMetrics = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, OperationDurations> operationDurations = new ConcurrentHashMap<>();
+
+    // the pollers are kept when the client of a cloud is removed, they get the current client of the cloud
+    private static final ConcurrentHashMap<String, InstancePoller> instancePollers = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, InstanceSnapshot> instanceSnapshots = new ConcurrentHashMap<>();
+
     public static final Client findOrCreateClient(String cloudName) throws IOException {
         Client client = clientCache.get(cloudName);
         if (client != null) {
-            return client;
+            ConnectionPool connectionPool = client.getConnectionPool();
+            Cloud cloud = Jenkins.get().getCloud(cloudName);
+            if (!(cloud instanceof ElasticBoxCloud)) {
+                return client;
+            }
+            findOrCreateRequestLimiter((ElasticBoxCloud) cloud);
+            ConnectionPool.Settings settings = ((ElasticBoxCloud) cloud).getConnectionPoolSettings();
+            if (connectionPool.isCompatibleWith(settings, getJenkinsHttpProxyCfg())) {
+                connectionPool.updateLimits(settings);
+                return client;
+            }
         }
 
         synchronized (clientCache) {
             // remove clients of deleted clouds
             List<String> keysToRemove = new ArrayList<>();
-            for (Enumeration<String> keys = clientCache.keys(); keys.hasMoreElements(); ) {
+            for (Enumeration<String> keys = connectionPools.keys(); keys.hasMoreElements(); ) {
                 String name = keys.nextElement();
                 if (Jenkins.get().getCloud(name) == null) {
                     keysToRemove.add(name);
@@ -58,11 +100,21 @@ public class ClientCache {
             }
             for (String keyToRemove: keysToRemove) {
                 clientCache.remove(keyToRemove);
+                retireConnectionPool(keyToRemove);
+                instancePollers.remove(keyToRemove);
+                instanceSnapshots.remove(keyToRemove);
+                operationDurations.remove(keyToRemove);
+                deleteOperationDurations(keyToRemove);
             }
 
             Cloud cloud = Jenkins.get().getCloud(cloudName);
             if (cloud instanceof ElasticBoxCloud) {
-                client = new CachedClient((ElasticBoxCloud) cloud, getJenkinsHttpProxyCfg());
+                ConnectionPool connectionPool = findOrCreateConnectionPool((ElasticBoxCloud) cloud);
+                client = clientCache.get(cloudName);
+                if (client != null && client.getConnectionPool() == connectionPool) {
+                    return client;
+                }
+                client = new CachedClient((ElasticBoxCloud) cloud, connectionPool);
                 client.connect();
                 clientCache.put(cloudName, client);
             } else if (StringUtils.isNotBlank(cloudName)) {
@@ -73,6 +125,241 @@ public class ClientCache {
         return client;
     }
 
+    /**
+     * Returns the connection pool of the specified cloud, a new pool replaces the existing one if the cloud settings
+     * or the Jenkins proxy configuration changed in a way that the existing pool cannot be updated.
+     */
+    private static ConnectionPool findOrCreateConnectionPool(ElasticBoxCloud cloud) {
+        ConnectionPool.Settings settings = cloud.getConnectionPoolSettings();
+        HttpProxy httpProxy = getJenkinsHttpProxyCfg();
+        ConnectionPool connectionPool = connectionPools.get(cloud.name);
+        if (connectionPool != null) {
+            if (connectionPool.isCompatibleWith(settings, httpProxy)) {
+                connectionPool.updateLimits(settings);
+                return connectionPool;
+            }
+            retireConnectionPool(cloud.name);
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(MessageFormat.format("Creating connection pool for ElasticBox cloud {0} with settings [{1}]",
+                    cloud.name, settings));
+        }
+        connectionPool = new ConnectionPool(settings, httpProxy);
+        connectionPools.put(cloud.name, connectionPool);
+        return connectionPool;
+    }
+
+    private static void retireConnectionPool(String cloudName) {
+        ConnectionPool connectionPool = connectionPools.remove(cloudName);
+        if (connectionPool != null) {
+            connectionPool.retire();
+        }
+    }
+
+    /**
+     * Returns the statistics of the connection pool of the specified cloud, or null if the cloud has no pool yet.
+     */
+    @CheckForNull
+    public static PoolStats getConnectionPoolStats(String cloudName) {
+        ConnectionPool connectionPool = connectionPools.get(cloudName);
+        return connectionPool != null ? connectionPool.getStats() : null;
+    }
+
+    /**
+     * Returns the response cache of the specified cloud, or null if no client has been created for the cloud yet.
+     */
+    @CheckForNull
+    public static ResponseCache getResponseCache(String cloudName) {
+        return responseCaches.get(cloudName);
+    }
+
+    private static ResponseCache findOrCreateResponseCache(String cloudName) {
+        ResponseCache responseCache = responseCaches.get(cloudName);
+        if (responseCache == null) {
+            responseCache = new ResponseCache();
+            ResponseCache existing = responseCaches.putIfAbsent(cloudName, responseCache);
+            if (existing != null) {
+                responseCache = existing;
+            }
+        }
+        return responseCache;
+    }
+
+    /**
+     * Returns the cache of the blobs uploaded to the specified cloud, or null if no client has been created for the
+     * cloud yet.
+     */
+    @CheckForNull
+    public static BlobCache getBlobCache(String cloudName) {
+        return blobCaches.get(cloudName);
+    }
+
+    private static BlobCache findOrCreateBlobCache(String cloudName) {
+        BlobCache blobCache = blobCaches.get(cloudName);
+        if (blobCache == null) {
+            blobCache = new BlobCache();
+            BlobCache existing = blobCaches.putIfAbsent(cloudName, blobCache);
+            if (existing != null) {
+                blobCache = existing;
+            }
+        }
+        return blobCache;
+    }
+
+    /**
+     * Returns the metrics of the requests sent to the specified cloud, or null if no client has been created for the
+     * cloud yet.
+     */
+    @CheckForNull
+    public static ClientMetrics getClientMetrics(String cloudName) {
+        return clientMetrics.get(cloudName);
+    }
+
+    /**
+     * Returns the metrics of the requests sent to each cloud, keyed by the name of the cloud.
+     */
+    public static JSONObject getClientMetricsJson() {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, ClientMetrics> entry : new TreeMap<>(clientMetrics).entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    private static ClientMetrics findOrCreateClientMetrics(String cloudName) {
+        ClientMetrics metrics = clientMetrics.get(cloudName);
+        if (metrics == null) {
+            metrics = new ClientMetrics();
+            ClientMetrics existing = clientMetrics.putIfAbsent(cloudName, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the observed durations of the instance operations of the specified cloud, they are loaded from
+     * JENKINS_HOME the first time.
+     */
+    public static OperationDurations getOperationDurations(String cloudName) {
+        return findOrCreateOperationDurations(cloudName);
+    }
+
+    private static File getOperationDurationsFile(String cloudName) {
+        return new File(Jenkins.get().getRootDir(),
+                MessageFormat.format("elasticbox/operation-durations/{0}.json", Util.rawEncode(cloudName)));
+    }
+
+    private static OperationDurations findOrCreateOperationDurations(String cloudName) {
+        OperationDurations durations = operationDurations.get(cloudName);
+        if (durations == null) {
+            synchronized (operationDurations) {
+                durations = operationDurations.get(cloudName);
+                if (durations == null) {
+                    durations = new OperationDurations();
+                    try {
+                        durations.load(getOperationDurationsFile(cloudName));
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, MessageFormat.format(
+                                "Error loading the operation durations of ElasticBox cloud {0}", cloudName), ex);
+                    }
+                    operationDurations.put(cloudName, durations);
+                }
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Saves to JENKINS_HOME the operation durations that have been recorded since they were last saved.
+     */
+    public static void saveOperationDurations() {
+        for (Map.Entry<String, OperationDurations> entry : operationDurations.entrySet()) {
+            if (entry.getValue().isModified()) {
+                try {
+                    entry.getValue().save(getOperationDurationsFile(entry.getKey()));
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, MessageFormat.format(
+                            "Error saving the operation durations of ElasticBox cloud {0}", entry.getKey()), ex);
+                }
+            }
+        }
+    }
+
+    private static void deleteOperationDurations(String cloudName) {
+        File file = getOperationDurationsFile(cloudName);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning(MessageFormat.format("Cannot delete the operation durations file {0}", file));
+        }
+    }
+
+    /**
+     * Returns the poller of the instances that are waited for in the specified cloud, or null if no client has been
+     * created for the cloud yet.
+     */
+    @CheckForNull
+    public static InstancePoller getInstancePoller(String cloudName) {
+        return instancePollers.get(cloudName);
+    }
+
+    private static InstancePoller findOrCreateInstancePoller(final String cloudName) {
+        InstancePoller instancePoller = instancePollers.get(cloudName);
+        if (instancePoller == null) {
+            instancePoller = new InstancePoller(null) {
+                @Override
+                protected Client getClient() throws IOException {
+                    return findOrCreateClient(cloudName);
+                }
+            };
+            InstancePoller existing = instancePollers.putIfAbsent(cloudName, instancePoller);
+            if (existing != null) {
+                instancePoller = existing;
+            }
+        }
+        return instancePoller;
+    }
+
+    /**
+     * Returns the snapshot of the instances of the specified cloud, it is empty until it is refreshed the first time.
+     */
+    public static InstanceSnapshot getInstanceSnapshot(String cloudName) {
+        InstanceSnapshot instanceSnapshot = instanceSnapshots.get(cloudName);
+        if (instanceSnapshot == null) {
+            instanceSnapshot = new InstanceSnapshot();
+            InstanceSnapshot existing = instanceSnapshots.putIfAbsent(cloudName, instanceSnapshot);
+            if (existing != null) {
+                instanceSnapshot = existing;
+            }
+        }
+        return instanceSnapshot;
+    }
+
+    /**
+     * Returns the request limiter of the specified cloud, or null if no client has been created for the cloud yet.
+     */
+    @CheckForNull
+    public static RequestLimiter getRequestLimiter(String cloudName) {
+        return requestLimiters.get(cloudName);
+    }
+
+    private static RequestLimiter findOrCreateRequestLimiter(ElasticBoxCloud cloud) {
+        RequestLimiter.Settings settings = cloud.getRequestLimiterSettings();
+        RequestLimiter requestLimiter = requestLimiters.get(cloud.name);
+        if (requestLimiter == null) {
+            requestLimiter = new RequestLimiter(settings);
+            RequestLimiter existing = requestLimiters.putIfAbsent(cloud.name, requestLimiter);
+            if (existing != null) {
+                requestLimiter = existing;
+            }
+        }
+        if (!requestLimiter.getSettings().equals(settings)) {
+            requestLimiter.updateSettings(settings);
+        }
+        return requestLimiter;
+    }
+
     public static HttpProxy getJenkinsHttpProxyCfg() {
         HttpProxy httpProxy = null;
         ProxyConfiguration proxyConfiguration = Jenkins.get().proxy;
@@ -115,15 +402,42 @@ public class ClientCache {
     }
 
     public static void removeClient(ElasticBoxCloud cloud) {
-        clientCache.remove(cloud.name);
+        synchronized (clientCache) {
+            clientCache.remove(cloud.name);
+            retireConnectionPool(cloud.name);
+            responseCaches.remove(cloud.name);
+            requestLimiters.remove(cloud.name);
+            blobCaches.remove(cloud.name);
+            clientMetrics.remove(cloud.name);
+            // the endpoint or the credentials of the cloud may have changed
+            instanceSnapshots.remove(cloud.name);
+        }
     }
 
     private static final class CachedClient extends Client {
         private final String cloudName;
 
-        public CachedClient(ElasticBoxCloud cloud, HttpProxy httpProxy) throws IOException {
-            super(cloud.getEndpointUrl(), cloud.getToken(), httpProxy );
+        public CachedClient(ElasticBoxCloud cloud, ConnectionPool connectionPool) throws IOException {
+            super(cloud.getEndpointUrl(), cloud.getToken(), connectionPool);
             cloudName = cloud.name;
+            setResponseCache(findOrCreateResponseCache(cloudName));
+            setBlobCache(findOrCreateBlobCache(cloudName));
+            setMetrics(findOrCreateClientMetrics(cloudName));
+            setInstancePoller(findOrCreateInstancePoller(cloudName));
+            setOperationDurations(findOrCreateOperationDurations(cloudName));
+            setTokenManager(cloud.getTokenManager());
+            setRequestLimiter(findOrCreateRequestLimiter(cloud));
+        }
+
+        @Override
+        protected RequestLimiter.Priority getRequestPriority() {
+            RequestLimiter.Priority priority = RequestLimiter.getCurrentPriority();
+            if (priority == null) {
+                // requests sent while handling a web request are usually made to fill configuration forms
+                priority = Stapler.getCurrentRequest() != null
+                        ? RequestLimiter.Priority.LOW : RequestLimiter.Priority.NORMAL;
+            }
+            return priority;
         }
 
         private ElasticBoxCloud getElasticBoxCloud() {
@@ -14,6 +14,7 @@ package com.elasticbox.jenkins.util;
 
 import com.elasticbox.BoxStack;
 import com.elasticbox.Client;
+import com.elasticbox.InstanceSummary;
 import com.elasticbox.jenkins.AbstractSlaveConfiguration;
 import com.elasticbox.jenkins.ElasticBoxSlave;
 
@@ -69,11 +70,22 @@ public class SlaveInstance {
     }
 
     public static JSONArray createJenkinsVariables(Client client, ElasticBoxSlave slave) throws IOException {
+        return createJenkinsVariables(slave, getRequiredVariablesScope(client, slave.getBoxVersion()));
+    }
+
+    /**
+     * Gets the scope of the required variables from the first box of the runtime stack of the box version that has
+     * them.
+     *
+     * @return the scope of the required variables, or null if they are not in the scope of a child box
+     * @throws IOException if no box of the stack has the required variables
+     */
+    public static String getRequiredVariablesScope(Client client, String boxVersion) throws IOException {
         Map<String, JSONObject> requiredVariables = Collections.EMPTY_MAP;
 
         JSONArray boxStack = new BoxStack(
-                            slave.getBoxVersion(),
-                            client.getBoxStack(slave.getBoxVersion()),
+                            boxVersion,
+                            client.getBoxStack(boxVersion),
                             client
         ).toJsonArray();
 
@@ -88,20 +100,26 @@ public class SlaveInstance {
             throw new IOException(
                 MessageFormat.format(
                     "No box in the runtime stack of the box version {0} has the required variables {1}.",
-                    slave.getBoxVersion(),
+                    boxVersion,
                     StringUtils.join(REQUIRED_VARIABLES, ", ")));
         }
 
         JSONObject jenkinsUrlVariable = requiredVariables.get(JENKINS_URL_VARIABLE);
-        String jenkinsUrl = Jenkins.get().getRootUrl();
+        return jenkinsUrlVariable.containsKey("scope") ? jenkinsUrlVariable.getString("scope") : null;
+    }
 
+    /**
+     * Creates the required variables of the slave with the specified scope, see
+     * {@link #getRequiredVariablesScope(Client, String)}.
+     */
+    public static JSONArray createJenkinsVariables(ElasticBoxSlave slave, String scope) {
+        String jenkinsUrl = Jenkins.get().getRootUrl();
 
         JSONObject variable = new JSONObject();
         variable.put("name", JENKINS_URL_VARIABLE);
         variable.put("type", "Text");
         variable.put("value", jenkinsUrl);
 
-        String scope = jenkinsUrlVariable.containsKey("scope") ? jenkinsUrlVariable.getString("scope") : null;
         if (scope != null) {
             variable.put("scope", scope);
         }
@@ -138,7 +156,7 @@ public class SlaveInstance {
         return getRequiredVariables(boxJson).size() == REQUIRED_VARIABLES.size();
     }
 
-    public static Map<String, Integer> getSlaveConfigIdToInstanceCountMap(List<JSONObject> activeInstances) {
+    public static Map<String, Integer> getSlaveConfigIdToInstanceCountMap(List<InstanceSummary> activeInstances) {
         Map<String, String> slaveNameToConfigIdMap = new HashMap<String, String>();
         for (Node node : Jenkins.get().getNodes()) {
             if (node instanceof ElasticBoxSlave) {
@@ -150,8 +168,8 @@ public class SlaveInstance {
             }
         }
         Map<String, Integer> slaveConfigIdToInstanceCountMap = new HashMap<String, Integer>();
-        for (JSONObject instance : activeInstances) {
-            List<?> tags = new ArrayList(instance.getJSONArray("tags"));
+        for (InstanceSummary instance : activeInstances) {
+            List<?> tags = new ArrayList(instance.getTags());
             tags.retainAll(slaveNameToConfigIdMap.keySet());
             if (!tags.isEmpty()) {
                 String slaveName = (String) tags.get(0);
@@ -167,7 +185,7 @@ public class SlaveInstance {
     public static class InstanceCounter {
         private final Map<String, Integer> slaveConfigIdToInstanceCountMap;
 
-        public InstanceCounter(List<JSONObject> activeInstances) {
+        public InstanceCounter(List<InstanceSummary> activeInstances) {
             Map<String, AbstractSlaveConfiguration> instanceIdToSlaveConfigMap
                 = new HashMap<String, AbstractSlaveConfiguration>();
 
@@ -181,8 +199,8 @@ public class SlaveInstance {
                 }
             }
             slaveConfigIdToInstanceCountMap = new HashMap<String, Integer>();
-            for (JSONObject instance : activeInstances) {
-                AbstractSlaveConfiguration slaveConfig = instanceIdToSlaveConfigMap.get(instance.getString("id"));
+            for (InstanceSummary instance : activeInstances) {
+                AbstractSlaveConfiguration slaveConfig = instanceIdToSlaveConfigMap.get(instance.getId());
                 if (slaveConfig != null) {
                     Integer instanceCount = slaveConfigIdToInstanceCountMap.get(slaveConfig.getId());
                     slaveConfigIdToInstanceCountMap.put(
@@ -0,0 +1,189 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAsyncClient {
+    private HttpServer server;
+    private String endpointUrl;
+    private ConnectionPool connectionPool;
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger workspaceRequests = new AtomicInteger();
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, content.length);
+        OutputStream output = exchange.getResponseBody();
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/services/security/token", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "token-" + tokenRequests.incrementAndGet());
+            }
+        });
+        server.createContext("/services/workspaces", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                workspaceRequests.incrementAndGet();
+                if ("token-2".equals(exchange.getRequestHeaders().getFirst("ElasticBox-Token"))) {
+                    respond(exchange, 200, "[{\"id\": \"workspace\"}]");
+                } else {
+                    respond(exchange, 401, "{\"message\": \"Expired token\"}");
+                }
+            }
+        });
+        server.createContext("/services/boxes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 404, "{\"message\": \"Box not found\"}");
+            }
+        });
+        server.createContext("/services/instances", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("POST".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 400, "{\"message\": \"Invalid deployment request\"}");
+                    return;
+                }
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, "{\"id\": \"i-1\"}");
+            }
+        });
+        server.start();
+        endpointUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        connectionPool = new ConnectionPool(new ConnectionPool.Settings(), null);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.stop(0);
+        connectionPool.close();
+    }
+
+    private static Throwable getCause(Future<?> future) throws InterruptedException {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        } catch (TimeoutException ex) {
+            fail("The request did not complete");
+        }
+        fail("The request did not fail");
+        return null;
+    }
+
+    @Test
+    public void testRejectedTokenIsRenewed() throws Exception {
+        Client client = new Client(endpointUrl, "user", "password", null, connectionPool);
+
+        JSONArray workspaces = client.getAsyncClient().getWorkspaces().get(10, TimeUnit.SECONDS);
+        assertEquals(1, workspaces.size());
+        assertEquals("workspace", workspaces.getJSONObject(0).getString("id"));
+        assertEquals(2, tokenRequests.get());
+        assertEquals(2, workspaceRequests.get());
+
+        // the renewed token is shared with the blocking requests
+        assertEquals(1, client.getWorkspaces().size());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    public void testRejectedTokenWithoutCredentialsFails() throws Exception {
+        Client client = new Client(endpointUrl, "token-1", connectionPool);
+
+        Throwable error = getCause(client.getAsyncClient().getWorkspaces());
+        assertTrue(error instanceof ClientException);
+        assertEquals(401, ((ClientException) error).getStatusCode());
+        assertEquals(0, tokenRequests.get());
+    }
+
+    @Test
+    public void testErrorStatusIsClientException() throws Exception {
+        Client client = new Client(endpointUrl, "token-2", connectionPool);
+
+        Throwable error = getCause(client.getAsyncClient().getBox("missing"));
+        assertTrue(error instanceof ClientException);
+        assertEquals(404, ((ClientException) error).getStatusCode());
+        assertEquals("Box not found", error.getMessage());
+
+        error = getCause(client.getAsyncClient().doPost("/services/instances", new JSONObject(), false));
+        assertTrue(error instanceof ClientException);
+        assertEquals(400, ((ClientException) error).getStatusCode());
+        assertEquals("Invalid deployment request", error.getMessage());
+
+        // the requests are measured by the metrics of the client
+        assertEquals(2, client.getMetrics().getRequests());
+        for (ClientMetrics.OperationMetrics operationMetrics : client.getMetrics().getOperationMetrics()) {
+            int status = "getBox".equals(operationMetrics.getOperation()) ? 404 : 400;
+            assertEquals(Long.valueOf(1), operationMetrics.getStatusCodes().get(status));
+        }
+    }
+
+    @Test
+    public void testDeadlineOfCallerApplies() throws Exception {
+        Client client = new Client(endpointUrl, "token-2", connectionPool);
+
+        Deadline previousDeadline = Deadline.setCurrent(Deadline.after(300, TimeUnit.MILLISECONDS));
+        Future<JSONObject> instance;
+        try {
+            instance = client.getAsyncClient().getInstance("i-1");
+        } finally {
+            Deadline.restore(previousDeadline);
+        }
+        long startTime = System.currentTimeMillis();
+        Throwable error = getCause(instance);
+        assertTrue(String.valueOf(error), error instanceof InterruptedIOException);
+        assertTrue(System.currentTimeMillis() - startTime < 1500);
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestBlobCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(String directory, String content) throws IOException {
+        File file = new File(folder.newFolder(directory), "script.sh");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testContentKeyDependsOnContentAndName() throws IOException {
+        String key = BlobCache.getContentKey(createFile("a", "echo hello"), "text/plain");
+        assertEquals(key, BlobCache.getContentKey(createFile("b", "echo hello"), "text/plain"));
+        assertNotEquals(key, BlobCache.getContentKey(createFile("c", "echo world"), "text/plain"));
+        assertNotEquals(key, BlobCache.getContentKey(createFile("d", "echo hello"), "text/x-shellscript"));
+
+        File renamed = new File(folder.getRoot(), "other.sh");
+        Files.write(renamed.toPath(), "echo hello".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(key, BlobCache.getContentKey(renamed, "text/plain"));
+    }
+
+    @Test
+    public void testEntriesAreBoundedAndExpire() throws InterruptedException {
+        BlobCache cache = new BlobCache(2, 60000);
+        cache.put("1", "/services/blobs/download/1");
+        cache.put("2", "/services/blobs/download/2");
+        assertEquals("/services/blobs/download/1", cache.get("1"));
+        cache.put("3", "/services/blobs/download/3");
+        assertEquals(2, cache.getEntryCount());
+        assertNull(cache.get("2"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.removeBlob("/services/blobs/download/1");
+        assertNull(cache.get("1"));
+
+        cache = new BlobCache(2, 0);
+        cache.put("1", "/services/blobs/download/1");
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+}
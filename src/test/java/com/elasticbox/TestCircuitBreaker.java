@@ -0,0 +1,94 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.google.common.base.Ticker;
+
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestCircuitBreaker {
+
+    private static class ManualTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("https://elasticbox.com", 3, 50, new ManualTicker());
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        circuitBreaker.acquirePermission();
+
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.isOpen());
+        try {
+            circuitBreaker.acquirePermission();
+            fail("Requests are allowed while the circuit is open");
+        } catch (ClientException ex) {
+            assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, ex.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testSingleTrialRequestWhenHalfOpen() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("https://elasticbox.com", 1, 20000, ticker);
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.isOpen());
+        ticker.advance(19999);
+        assertTrue(circuitBreaker.isOpen());
+        ticker.advance(1);
+        assertFalse(circuitBreaker.isOpen());
+
+        circuitBreaker.acquirePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        try {
+            circuitBreaker.acquirePermission();
+            fail("A second trial request is allowed");
+        } catch (ClientException ex) {
+            assertTrue(circuitBreaker.isOpen());
+        }
+
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        ticker.advance(20000);
+        circuitBreaker.acquirePermission();
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+}
@@ -0,0 +1,304 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestClient {
+
+    private static ConnectionPool connectionPool;
+
+    private static class StubClient extends Client {
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        StubClient() {
+            super("https://elasticbox.com", "token", connectionPool);
+        }
+
+        @Override
+        protected HttpResponse execute(HttpRequestBase request) throws IOException {
+            requests.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+            response.setEntity(new StringEntity("{\"id\": \"i-1\", \"state\": \"processing\"}",
+                    ContentType.APPLICATION_JSON));
+            return response;
+        }
+    }
+
+    private static class BatchStubClient extends Client {
+        private final AtomicInteger requests = new AtomicInteger();
+
+        BatchStubClient() {
+            super("https://elasticbox.com", "token", connectionPool);
+        }
+
+        @Override
+        protected HttpResponse execute(HttpRequestBase request) throws IOException {
+            requests.incrementAndGet();
+            String path = request.getURI().getPath();
+            String query = request.getURI().getQuery();
+            JSONArray instances = new JSONArray();
+            if (path.endsWith("/services/workspaces")) {
+                instances.add(JSONObject.fromObject("{\"id\": \"w1\"}"));
+                instances.add(JSONObject.fromObject("{\"id\": \"w2\"}"));
+                query = "ids=";
+            }
+            String workspace = path.matches(".*/workspaces/[^/]+/instances") ? path.split("/")[3] : null;
+            for (String id : query.substring("ids=".length()).split(",")) {
+                if (!id.isEmpty() && !id.startsWith("missing")
+                        && (!id.startsWith("w") || id.startsWith(workspace + '-'))) {
+                    JSONObject instance = new JSONObject();
+                    instance.put("id", id);
+                    instance.put("state", "done");
+                    instances.add(instance);
+                }
+            }
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+            response.setEntity(new StringEntity(instances.toString(), ContentType.APPLICATION_JSON));
+            return response;
+        }
+    }
+
+    @BeforeClass
+    public static void createConnectionPool() {
+        connectionPool = new ConnectionPool(new ConnectionPool.Settings(), null);
+    }
+
+    @AfterClass
+    public static void closeConnectionPool() throws IOException {
+        connectionPool.close();
+    }
+
+    @Test
+    public void testConcurrentIdenticalGetsAreCoalesced() throws Exception {
+        final StubClient client = new StubClient();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<JSONObject>> instances = new ArrayList<Future<JSONObject>>();
+            for (int i = 0; i < 4; i++) {
+                instances.add(executor.submit(new Callable<JSONObject>() {
+                    @Override
+                    public JSONObject call() throws Exception {
+                        return client.getInstance("i-1");
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            client.release.countDown();
+
+            JSONObject first = instances.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<JSONObject> instance : instances) {
+                assertEquals("processing", instance.get(5, TimeUnit.SECONDS).getString("state"));
+            }
+            assertNotSame(first, instances.get(1).get());
+            assertEquals(1, client.requests.get());
+            assertEquals(3, client.getCoalescedGets());
+
+            assertEquals("processing", client.getInstanceSummary("i-1").getState());
+            assertEquals(2, client.requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCoalescedGetWaitsWithinItsDeadline() throws Exception {
+        final StubClient client = new StubClient();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<JSONObject> instance = executor.submit(new Callable<JSONObject>() {
+                @Override
+                public JSONObject call() throws Exception {
+                    return client.getInstance("i-1");
+                }
+            });
+            Thread.sleep(200);
+
+            long startTime = System.currentTimeMillis();
+            Deadline previousDeadline = Deadline.setCurrent(Deadline.after(200, TimeUnit.MILLISECONDS));
+            try {
+                client.getInstance("i-1");
+                fail("The coalesced request did not time out");
+            } catch (InterruptedIOException ex) {
+                assertTrue(System.currentTimeMillis() - startTime < 2000);
+            } finally {
+                Deadline.restore(previousDeadline);
+            }
+            assertEquals(1, client.getCoalescedGets());
+
+            client.release.countDown();
+            assertEquals("processing", instance.get(5, TimeUnit.SECONDS).getString("state"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchUrlsAreWithinMaxLength() throws IOException {
+        String baseUrl = "https://elasticbox.com/services/workspaces/operations/instances?ids=";
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            ids.add("i-" + i);
+        }
+        List<String> batchUrls = Client.getBatchUrls(baseUrl, ids);
+        int count = 0;
+        for (String batchUrl : batchUrls) {
+            assertTrue(batchUrl.length() <= Client.MAX_URL_LENGTH);
+            count += batchUrl.substring(baseUrl.length()).split(",").length;
+        }
+        assertEquals(2000, count);
+        assertTrue(batchUrls.size() > 1);
+        assertTrue(Client.getBatchUrls(baseUrl, new ArrayList<String>()).isEmpty());
+    }
+
+    @Test
+    public void testFetchInstancesReportsMissingIds() throws IOException {
+        BatchStubClient client = new BatchStubClient();
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 1700; i++) {
+            ids.add("i-" + i);
+        }
+        ids.add("missing-1");
+        ids.add("i-5");
+
+        MultiGetResult<InstanceSummary> result = client.fetchInstanceSummaries("operations", ids);
+        assertEquals(1700, result.getFound().size());
+        assertEquals("i-0", result.getFound().get(0).getId());
+        assertEquals(Collections.singleton("missing-1"), result.getMissingIds());
+        assertEquals(3, client.requests.get());
+
+        assertEquals(1700, client.getInstances("operations", ids).size());
+    }
+
+    @Test
+    public void testInstancesAreFetchedFromKnownWorkspaces() throws IOException {
+        BatchStubClient client = new BatchStubClient();
+        List<String> ids = Arrays.asList("w2-1", "w2-2");
+        assertEquals(2, client.getInstances(ids).size());
+        assertEquals(3, client.requests.get());
+        assertEquals("w2", client.getInstanceLocations().getWorkspace("w2-1"));
+
+        assertEquals(2, client.getInstanceSummaries(ids).size());
+        assertEquals(4, client.requests.get());
+
+        assertEquals(2, client.getInstances(Arrays.asList("w2-1", "w1-1", "missing-1")).size());
+        assertEquals("w1", client.getInstanceLocations().getWorkspace("w1-1"));
+    }
+
+    private static IProgressMonitor createMonitor(String instanceId, final AtomicInteger checks) {
+        return new AbstractProgressMonitor("https://elasticbox.com/services/instances/" + instanceId) {
+            @Override
+            protected JSONObject getResource() throws IOException {
+                throw new IOException("The poller must get the instance");
+            }
+
+            @Override
+            public boolean isDone(JSONObject instance) {
+                // done on the second poll
+                return checks.incrementAndGet() > 1 && "done".equals(instance.getString("state"));
+            }
+        };
+    }
+
+    @Test
+    public void testInstancePollerWakesUpWaiters() throws Exception {
+        BatchStubClient client = new BatchStubClient();
+        final InstancePoller poller = new InstancePoller(client, 10);
+        final AtomicInteger checks = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Void>> waits = new ArrayList<Future<Void>>();
+            for (final String instanceId : Arrays.asList("w1-1", "w2-1")) {
+                waits.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        poller.waitForDone(createMonitor(instanceId, checks), 1);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> wait : waits) {
+                wait.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, poller.getWatchedInstances());
+
+        try {
+            poller.waitForDone(createMonitor("missing-1", checks), 1);
+            fail("The instance does not exist");
+        } catch (IProgressMonitor.IncompleteException ex) {
+            assertTrue(ex.getMessage().endsWith("/services/instances/missing-1 cannot be found"));
+        }
+    }
+
+    @Test
+    public void testInstancePollerCompletesFutures() throws Exception {
+        InstancePoller poller = new InstancePoller(new BatchStubClient(), 10);
+        AtomicInteger checks = new AtomicInteger();
+        CompletableFuture<Void> done = poller.whenDone(createMonitor("w1-1", checks), 1);
+        CompletableFuture<Void> missing = poller.whenDone(createMonitor("missing-1", checks), 1);
+        CompletableFuture<Void> canceled = poller.whenDone(createMonitor("w2-1", checks), 1);
+        canceled.cancel(false);
+
+        done.get(10, TimeUnit.SECONDS);
+        try {
+            missing.get(10, TimeUnit.SECONDS);
+            fail("The instance does not exist");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IProgressMonitor.IncompleteException);
+        }
+        assertEquals(0, poller.getWatchedInstances());
+    }
+
+}
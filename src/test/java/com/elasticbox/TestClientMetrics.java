@@ -0,0 +1,74 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONObject;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestClientMetrics {
+
+    private static final String URL = "https://elasticbox.com/services";
+
+    @Test
+    public void testOperations() {
+        assertEquals("getInstances", ClientMetrics.getOperation("GET", "/services/workspaces/eb-1/instances"));
+        assertEquals("getBoxStack", ClientMetrics.getOperation("GET", "/services/boxes/b-1/stack"));
+        assertEquals("deploy", ClientMetrics.getOperation("POST", "/services/instances"));
+        assertEquals("terminate", ClientMetrics.getOperation("DELETE", "/services/instances/i-1"));
+        assertEquals("poweron", ClientMetrics.getOperation("PUT", "/services/instances/i-1/poweron"));
+        assertEquals("/services/unknown", ClientMetrics.getOperation("GET", "/services/unknown"));
+
+        ClientMetrics metrics = new ClientMetrics();
+        assertSame(metrics.getOperationMetrics(new HttpGet(URL + "/instances/i-1")),
+                metrics.getOperationMetrics(new HttpGet(URL + "/instances/i-2?ids=1")));
+        assertEquals("terminate", metrics.getOperationMetrics(
+                new HttpDelete(URL + "/instances/i-1?operation=terminate")).getOperation());
+    }
+
+    @Test
+    public void testRequestMetrics() {
+        ClientMetrics metrics = new ClientMetrics();
+        ClientMetrics.OperationMetrics operationMetrics = metrics.getOperationMetrics(
+                new HttpPut(URL + "/instances/i-1"));
+        for (int i = 0; i < 100; i++) {
+            operationMetrics.requestStarted();
+        }
+        assertEquals(100, metrics.getInFlight());
+        for (int i = 0; i < 98; i++) {
+            operationMetrics.requestCompleted(20, 200);
+        }
+        operationMetrics.requestCompleted(400, 503);
+        operationMetrics.requestCompleted(70000, -1);
+
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(100, metrics.getRequests());
+        assertEquals(1, metrics.getErrors());
+        assertEquals(25, operationMetrics.getLatencyPercentile(0.5));
+        assertEquals(500, operationMetrics.getLatencyPercentile(0.99));
+        assertEquals(70000, operationMetrics.getLatencyPercentile(1));
+        assertEquals(70000, operationMetrics.getMaxLatency());
+
+        JSONObject json = metrics.toJson().getJSONArray("operations").getJSONObject(0);
+        assertEquals("updateInstance", json.getString("operation"));
+        assertEquals(98, json.getJSONObject("statusCodes").getInt("200"));
+        assertEquals(1, json.getJSONObject("latency").getJSONObject("buckets").getInt("+Inf"));
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestConnectionPool {
+
+    @Test
+    public void testProxyChangeRequiresNewPool() throws Exception {
+        Client.HttpProxy proxy = new Client.HttpProxy("proxy.elasticbox.com", 3128);
+        ConnectionPool.Settings settings = new ConnectionPool.Settings(10, 50, 60, 30);
+        ConnectionPool connectionPool = new ConnectionPool(settings, proxy);
+        try {
+            assertTrue(connectionPool.isCompatibleWith(settings, new Client.HttpProxy("proxy.elasticbox.com", 3128)));
+            assertTrue(connectionPool.isCompatibleWith(new ConnectionPool.Settings(20, 100, 60, 30), proxy));
+
+            assertFalse(connectionPool.isCompatibleWith(settings, new Client.HttpProxy("proxy.elasticbox.com", 8080)));
+            assertFalse(connectionPool.isCompatibleWith(settings, null));
+            assertFalse(connectionPool.isCompatibleWith(new ConnectionPool.Settings(10, 50, 120, 30), proxy));
+        } finally {
+            connectionPool.close();
+        }
+
+        ConnectionPool directPool = new ConnectionPool(settings, null);
+        try {
+            assertTrue(directPool.isCompatibleWith(settings, null));
+            assertFalse(directPool.isCompatibleWith(settings, proxy));
+        } finally {
+            directPool.close();
+        }
+    }
+
+    @Test
+    public void testRetiredPoolIsKeptForItsClients() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/services/workspaces", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] content = "[{\"id\": \"ws-1\"}]".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, content.length);
+                OutputStream output = exchange.getResponseBody();
+                try {
+                    output.write(content);
+                } finally {
+                    output.close();
+                }
+            }
+        });
+        server.start();
+        try {
+            ConnectionPool connectionPool = new ConnectionPool(new ConnectionPool.Settings(), null);
+            Client client = new Client("http://127.0.0.1:" + server.getAddress().getPort(), "token", connectionPool);
+            assertEquals(1, client.getWorkspaces().size());
+
+            // the client obtained before the pool was retired keeps working after the retirement delay
+            connectionPool.retire(100);
+            Thread.sleep(500);
+            assertFalse(connectionPool.isClosed());
+            assertEquals(1, client.getWorkspaces().size());
+
+            // the pool is closed once its last client is released
+            client = null;
+            for (int i = 0; i < 100 && !connectionPool.isClosed(); i++) {
+                System.gc();
+                Thread.sleep(100);
+            }
+            assertTrue(connectionPool.isClosed());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+}
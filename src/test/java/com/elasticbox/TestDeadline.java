@@ -0,0 +1,125 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestDeadline {
+
+    @Test
+    public void testDeadlineIsNotExtended() {
+        Deadline outer = Deadline.after(1, TimeUnit.MINUTES);
+        assertNull(Deadline.setCurrent(outer));
+        try {
+            Deadline previous = Deadline.setCurrent(Deadline.after(1, TimeUnit.HOURS));
+            assertSame(outer, previous);
+            assertSame(outer, Deadline.getCurrent());
+            Deadline.restore(previous);
+
+            previous = Deadline.setCurrent(null);
+            assertSame(outer, Deadline.getCurrent());
+            Deadline.restore(previous);
+
+            Deadline inner = Deadline.after(1, TimeUnit.SECONDS);
+            previous = Deadline.setCurrent(inner);
+            assertSame(inner, Deadline.getCurrent());
+            Deadline.restore(previous);
+            assertSame(outer, Deadline.getCurrent());
+        } finally {
+            Deadline.restore(null);
+        }
+        assertNull(Deadline.getCurrent());
+    }
+
+    @Test
+    public void testExpiredDeadline() throws InterruptedIOException {
+        Deadline deadline = Deadline.after(1, TimeUnit.MINUTES);
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.getRemaining(TimeUnit.SECONDS) > 50);
+        deadline.check("send request");
+
+        deadline = Deadline.after(0, TimeUnit.MILLISECONDS);
+        assertTrue(deadline.isExpired());
+        try {
+            deadline.check("send request");
+            fail("The deadline is expired");
+        } catch (InterruptedIOException ex) {
+            assertTrue(ex.getMessage().contains("send request"));
+        }
+    }
+
+    @Test
+    public void testDeadlineBoundsReadingOfResponse() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/services/instances", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // the body arrives slowly enough for each read to complete within the socket timeout
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream output = exchange.getResponseBody();
+                try {
+                    output.write("{\"id\": \"i-1\", \"tags\": [".getBytes(StandardCharsets.UTF_8));
+                    for (int i = 0; i < 30; i++) {
+                        output.write("\"t\", ".getBytes(StandardCharsets.UTF_8));
+                        output.flush();
+                        Thread.sleep(100);
+                    }
+                    output.write("\"t\"]}".getBytes(StandardCharsets.UTF_8));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException ex) {
+                    // the client aborted the request
+                } finally {
+                    output.close();
+                }
+            }
+        });
+        server.start();
+        ConnectionPool connectionPool = new ConnectionPool(new ConnectionPool.Settings(), null);
+        Deadline previousDeadline = Deadline.setCurrent(Deadline.after(500, TimeUnit.MILLISECONDS));
+        try {
+            Client client = new Client("http://127.0.0.1:" + server.getAddress().getPort(), "token", connectionPool);
+            long startTime = System.currentTimeMillis();
+            try {
+                client.getInstance("i-1");
+                fail("The response was read after the deadline");
+            } catch (IOException ex) {
+                assertTrue(System.currentTimeMillis() - startTime < 2000);
+            }
+        } finally {
+            Deadline.restore(previousDeadline);
+            connectionPool.close();
+            server.stop(0);
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestInstanceNotifications {
+    private static final String SECRET = "notification-secret";
+
+    private static JSONObject createMinimalInstance(String id, String state) {
+        JSONObject instance = new JSONObject();
+        instance.put("id", id);
+        instance.put("state", state);
+        return instance;
+    }
+
+    private static JSONObject createInstance(String id, String state) {
+        JSONObject instance = createMinimalInstance(id, state);
+        instance.put("updated", "2016-01-01 10:00:00." + System.nanoTime());
+        JSONObject operation = new JSONObject();
+        operation.put("event", "deploy");
+        instance.put("operation", operation);
+        return instance;
+    }
+
+    private static IProgressMonitor createMonitor(String id) {
+        return new AbstractProgressMonitor("https://elasticbox.com/services/instances/" + id) {
+            @Override
+            protected JSONObject getResource() throws IOException {
+                throw new IOException("The monitor must not get the instance");
+            }
+
+            @Override
+            public boolean isDone(JSONObject instance) {
+                return "done".equals(instance.getString("state"));
+            }
+        };
+    }
+
+    /**
+     * Stub of the sender in ElasticBox, it delivers the signed notification as the web hook of the plugin does.
+     */
+    private static boolean send(InstancePoller poller, String secret, JSONObject instance) throws IOException {
+        byte[] payload = instance.toString().getBytes(StandardCharsets.UTF_8);
+        String timestamp = String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        String signature = InstanceNotifications.sign(secret, timestamp, payload);
+        if (!InstanceNotifications.isRecent(timestamp, System.currentTimeMillis())
+                || !InstanceNotifications.isValid(SECRET, timestamp, payload, signature)) {
+            return false;
+        }
+        boolean watched = false;
+        for (JSONObject notifiedInstance : InstanceNotifications.parse(payload)) {
+            watched |= poller.instanceChanged(notifiedInstance);
+        }
+        return watched;
+    }
+
+    @Test
+    public void testSignature() {
+        byte[] payload = createInstance("i-1", "done").toString().getBytes(StandardCharsets.UTF_8);
+        String signature = InstanceNotifications.sign(SECRET, "1500000000", payload);
+        assertTrue(signature.startsWith("sha256="));
+        assertTrue(InstanceNotifications.isValid(SECRET, "1500000000", payload, signature));
+        assertTrue(InstanceNotifications.isValid(SECRET, "1500000000", payload,
+                signature.toUpperCase().replace("SHA", "sha")));
+        assertFalse(InstanceNotifications.isValid("other", "1500000000", payload, signature));
+        assertFalse(InstanceNotifications.isValid(SECRET, "1500000001", payload, signature));
+        assertFalse(InstanceNotifications.isValid(SECRET, null, payload, signature));
+        assertFalse(InstanceNotifications.isValid(SECRET, "1500000000", "{}".getBytes(StandardCharsets.UTF_8),
+                signature));
+        assertFalse(InstanceNotifications.isValid(SECRET, "1500000000", payload, null));
+        assertFalse(InstanceNotifications.isValid(null, "1500000000", payload, signature));
+    }
+
+    @Test
+    public void testTimestamp() {
+        long now = TimeUnit.SECONDS.toMillis(1500000000);
+        assertTrue(InstanceNotifications.isRecent("1500000000", now));
+        assertTrue(InstanceNotifications.isRecent("1500000000", now + InstanceNotifications.MAX_AGE));
+        assertTrue(InstanceNotifications.isRecent("1500000000", now - InstanceNotifications.MAX_AGE));
+        assertFalse(InstanceNotifications.isRecent("1500000000", now + InstanceNotifications.MAX_AGE + 1));
+        assertFalse(InstanceNotifications.isRecent("1500000000", now - InstanceNotifications.MAX_AGE - 1));
+        assertFalse(InstanceNotifications.isRecent("invalid", now));
+        assertFalse(InstanceNotifications.isRecent(null, now));
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        assertEquals(1, InstanceNotifications.parse(
+                createInstance("i-1", "done").toString().getBytes(StandardCharsets.UTF_8)).size());
+
+        JSONArray instances = new JSONArray();
+        instances.add(createInstance("i-1", "done"));
+        instances.add(createInstance("i-2", "processing"));
+        instances.add(JSONObject.fromObject("{\"id\": \"i-3\"}"));
+        instances.add(createMinimalInstance("i-4", "done"));
+        assertEquals(2, InstanceNotifications.parse(instances.toString().getBytes(StandardCharsets.UTF_8)).size());
+    }
+
+    @Test
+    public void testNotificationCompletesMonitor() throws IOException {
+        InstancePoller poller = new InstancePoller(null) {
+            @Override
+            protected Client getClient() throws IOException {
+                throw new IOException("The instances must not be polled");
+            }
+        };
+        CompletableFuture<Void> done = poller.whenDone(createMonitor("i-1"), 1);
+
+        assertFalse(send(poller, SECRET, createInstance("i-2", "done")));
+        assertFalse(send(poller, "other", createInstance("i-1", "done")));
+        assertTrue(send(poller, SECRET, createInstance("i-1", "processing")));
+        assertFalse(done.isDone());
+        assertTrue(send(poller, SECRET, createInstance("i-1", "done")));
+        assertTrue(done.isDone());
+        assertEquals(0, poller.getWatchedInstances());
+    }
+
+    @Test
+    public void testMinimalNotificationDoesNotFailMonitor() throws IOException {
+        InstancePoller poller = new InstancePoller(null) {
+            @Override
+            protected Client getClient() throws IOException {
+                throw new IOException("The instances must not be polled");
+            }
+        };
+        Client client = new Client("https://elasticbox.com", "token", (Client.HttpProxy) null);
+        IProgressMonitor monitor = client.getDeployProgressMonitor("https://elasticbox.com/services/instances/i-1");
+        CompletableFuture<Void> done = poller.whenDone(monitor, 1);
+
+        assertFalse(send(poller, SECRET, createMinimalInstance("i-1", "done")));
+        assertFalse(done.isDone());
+        assertTrue(send(poller, SECRET, createInstance("i-1", "done")));
+        assertTrue(done.isDone());
+        assertFalse(done.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testNotificationDelaysOnlyPollsOfNotifiedInstance() throws Exception {
+        final ConcurrentHashMap<String, AtomicInteger> polls = new ConcurrentHashMap<String, AtomicInteger>();
+        polls.put("i-1", new AtomicInteger());
+        polls.put("i-2", new AtomicInteger());
+        Client client = new Client("https://elasticbox.com", "token", (Client.HttpProxy) null) {
+            @Override
+            public JSONArray getInstances(List<String> instanceIDs) {
+                JSONArray instances = new JSONArray();
+                for (String id : instanceIDs) {
+                    polls.get(id).incrementAndGet();
+                    instances.add(createInstance(id, "processing"));
+                }
+                return instances;
+            }
+        };
+        InstancePoller poller = new InstancePoller(client, 100);
+        CompletableFuture<Void> done1 = poller.whenDone(createMonitor("i-1"), 1);
+        CompletableFuture<Void> done2 = poller.whenDone(createMonitor("i-2"), 1);
+        try {
+            assertFalse(send(poller, SECRET, createInstance("i-3", "processing")));
+            assertTrue(send(poller, SECRET, createInstance("i-2", "processing")));
+            // let a poll that started before the notifications finish
+            Thread.sleep(500);
+            int instance1Polls = polls.get("i-1").get();
+            int instance2Polls = polls.get("i-2").get();
+
+            Thread.sleep(3000);
+            assertTrue(polls.get("i-1").get() - instance1Polls >= 2);
+            assertEquals(instance2Polls, polls.get("i-2").get());
+        } finally {
+            done1.cancel(false);
+            done2.cancel(false);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestInstanceSnapshot {
+
+    private static class StubClient extends Client {
+        private final Map<String, List<InstanceSummary>> workspaces = new HashMap<String, List<InstanceSummary>>();
+
+        StubClient() {
+            super("https://elasticbox.com", "token", (HttpProxy) null);
+        }
+
+        @Override
+        public void visitInstanceSummaries(String workspaceId, InstanceSummary.Visitor visitor) throws IOException {
+            List<InstanceSummary> instances = workspaces.get(workspaceId);
+            if (instances == null) {
+                throw new IOException("Cannot list the instances of " + workspaceId);
+            }
+            for (InstanceSummary instance : instances) {
+                visitor.visit(instance);
+            }
+        }
+    }
+
+    private static InstanceSummary instance(String id, String state, String updated) {
+        return new InstanceSummary(id, id, state, "deploy", Collections.singletonList("slave-" + id), updated, "w1");
+    }
+
+    @Test
+    public void testRefreshKeepsUnchangedInstances() throws IOException {
+        StubClient client = new StubClient();
+        client.workspaces.put("w1", Arrays.asList(instance("i-1", "processing", "2016-01-01 10:00:00"),
+                instance("i-2", "done", "2016-01-01 10:00:00")));
+        InstanceSnapshot snapshot = new InstanceSnapshot();
+        assertEquals(0, snapshot.getRefreshTime());
+        assertEquals(2, snapshot.refresh(client, Collections.singleton("w1")));
+        assertTrue(snapshot.isFresh(60000, Collections.singleton("w1")));
+        assertFalse(snapshot.isFresh(60000, Arrays.asList("w1", "w2")));
+        long version = snapshot.getVersion();
+        InstanceSummary instance2 = snapshot.getInstance("i-2");
+
+        client.workspaces.put("w1", Arrays.asList(instance("i-1", "done", "2016-01-01 10:05:00"),
+                instance("i-2", "done", "2016-01-01 10:00:00")));
+        assertEquals(1, snapshot.refresh(client, Collections.singleton("w1")));
+        assertEquals("done", snapshot.getInstance("i-1").getState());
+        assertSame(instance2, snapshot.getInstance("i-2"));
+        assertTrue(snapshot.getVersion() > version);
+
+        version = snapshot.getVersion();
+        assertEquals(0, snapshot.refresh(client, Collections.singleton("w1")));
+        assertEquals(version, snapshot.getVersion());
+
+        client.workspaces.put("w1", Collections.singletonList(instance("i-2", "done", "2016-01-01 10:00:00")));
+        assertEquals(1, snapshot.refresh(client, Collections.singleton("w1")));
+        assertNull(snapshot.getInstance("i-1"));
+        assertEquals(1, snapshot.getInstances().size());
+    }
+
+    @Test
+    public void testFailedWorkspaceIsKept() throws IOException {
+        StubClient client = new StubClient();
+        client.workspaces.put("w1", Collections.singletonList(instance("i-1", "done", "2016-01-01 10:00:00")));
+        client.workspaces.put("w2", Collections.singletonList(instance("i-2", "done", "2016-01-01 10:00:00")));
+        InstanceSnapshot snapshot = new InstanceSnapshot();
+        snapshot.refresh(client, Arrays.asList("w1", "w2"));
+        long refreshTime = snapshot.getRefreshTime();
+
+        client.workspaces.remove("w2");
+        client.workspaces.put("w1", Collections.<InstanceSummary>emptyList());
+        try {
+            snapshot.refresh(client, Arrays.asList("w1", "w2"));
+            fail("The error listing the instances of w2 must be thrown");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertNull(snapshot.getInstance("i-1"));
+        assertEquals("done", snapshot.getInstance("i-2").getState());
+        assertEquals(refreshTime, snapshot.getRefreshTime());
+    }
+
+    @Test
+    public void testUpdateBetweenRefreshes() throws IOException {
+        StubClient client = new StubClient();
+        client.workspaces.put("w1", Collections.singletonList(instance("i-1", "processing", "2016-01-01 10:00:00")));
+        InstanceSnapshot snapshot = new InstanceSnapshot();
+        snapshot.refresh(client, Collections.singleton("w1"));
+
+        JSONObject notification = new JSONObject();
+        notification.put("id", "i-1");
+        notification.put("state", "done");
+        notification.put("updated", "2016-01-01 10:05:00");
+        assertTrue(snapshot.update(notification));
+        InstanceSummary instance = snapshot.getInstance("i-1");
+        assertEquals("done", instance.getState());
+        assertEquals(Collections.singletonList("slave-i-1"), instance.getTags());
+
+        // an older listing does not override a newer notification
+        assertEquals(0, snapshot.refresh(client, Collections.singleton("w1")));
+        assertEquals("done", snapshot.getInstance("i-1").getState());
+
+        assertTrue(snapshot.update(JSONObject.fromObject(instance("i-3", "processing", null).toJson())));
+        assertEquals("processing", snapshot.getInstance("i-3").getState());
+        assertFalse(snapshot.update("w2", instance("i-4", "processing", null)));
+
+        assertTrue(snapshot.remove("i-3"));
+        assertNull(snapshot.getInstance("i-3"));
+        assertFalse(snapshot.remove("i-3"));
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestInstanceSummary {
+
+    private static final String INSTANCES = "[{\"boxes\": [{\"id\": \"b-1\", \"variables\": [{\"name\": \"id\"}]}], "
+            + "\"id\": \"i-1\", \"name\": \"Slave 1\", \"state\": \"done\", \"owner\": \"operations\", "
+            + "\"operation\": {\"event\": \"terminate\", \"created\": \"2016-01-01\"}, \"tags\": [\"slave-1\", \"t\"], "
+            + "\"service\": {\"id\": \"eb-1\", \"machines\": [{\"state\": \"done\"}]}, "
+            + "\"box\": \"bv-1\", \"policy_box\": {\"id\": \"p-1\", \"variables\": [{\"name\": \"size\"}]}, "
+            + "\"updated\": \"2016-01-01 10:00:00.000\"}, "
+            + "{\"id\": \"i-2\", \"state\": \"processing\", \"operation\": \"deploy\", \"tags\": []}]";
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<InstanceSummary> parseArray(String json) throws IOException {
+        final List<InstanceSummary> instances = new ArrayList<InstanceSummary>();
+        InstanceSummary.parseArray(stream(json), new InstanceSummary.Visitor() {
+            @Override
+            public boolean visit(InstanceSummary instance) {
+                instances.add(instance);
+                return true;
+            }
+        });
+        return instances;
+    }
+
+    @Test
+    public void testParseArraySkipsOtherFields() throws IOException {
+        List<InstanceSummary> instances = parseArray(INSTANCES);
+
+        assertEquals(2, instances.size());
+        InstanceSummary instance = instances.get(0);
+        assertEquals("i-1", instance.getId());
+        assertEquals("Slave 1", instance.getName());
+        assertEquals(Client.InstanceState.DONE, instance.getState());
+        assertEquals(Client.InstanceOperation.TERMINATE, instance.getOperation());
+        assertEquals(Arrays.asList("slave-1", "t"), instance.getTags());
+        assertEquals("2016-01-01 10:00:00.000", instance.getUpdated());
+        assertEquals("operations", instance.getOwner());
+        assertEquals("bv-1", instance.getBox());
+        assertEquals("p-1", instance.getPolicyBox());
+
+        // old instances have the event as operation
+        assertEquals(Client.InstanceOperation.DEPLOY, instances.get(1).getOperation());
+    }
+
+    @Test
+    public void testParseMatchesFromJson() throws IOException {
+        JSONObject instanceJson = JSONObject.fromObject(INSTANCES.substring(1, INSTANCES.indexOf("}, {\"id\"") + 1));
+
+        assertEquals(InstanceSummary.fromJson(instanceJson), InstanceSummary.parse(stream(instanceJson.toString())));
+        assertEquals(InstanceSummary.fromJson(instanceJson), InstanceSummary.fromJson(
+                InstanceSummary.fromJson(instanceJson).toJson()));
+    }
+
+    @Test
+    public void testDurationKeyOfSummary() throws IOException {
+        InstanceSummary instance = parseArray(INSTANCES).get(0);
+
+        assertEquals(OperationDurations.getKey(Client.InstanceOperation.TERMINATE, "bv-1", "p-1"),
+                OperationDurations.getKey(instance.toJson()));
+    }
+
+    @Test
+    public void testToJsonKeepsMissingUpdated() throws IOException {
+        InstanceSummary instance = parseArray(INSTANCES).get(1);
+        JSONObject instanceJson = instance.toJson();
+
+        assertEquals("", instanceJson.getString("updated"));
+        assertNull(InstanceSummary.fromJson(instanceJson).getUpdated());
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestJsonStreamParser {
+
+    private static final String INSTANCES = "[{\"id\": \"i-1\", \"state\": \"done\", \"tags\": [\"slave-1\", \"t\"], "
+            + "\"operation\": {\"event\": \"deploy\", \"workspace\": \"eb\"}, \"updated\": \"2016-01-01 10:00:00.000\", "
+            + "\"boxes\": [{\"id\": \"b-1\", \"variables\": [{\"name\": \"v\", \"value\": null}], \"size\": 12345678901, "
+            + "\"ratio\": 0.5, \"enabled\": true, \"nested\": [[1, 2], []]}]}, "
+            + "{\"id\": \"i-2\", \"state\": \"processing\", \"tags\": [], \"boxes\": []}, "
+            + "{\"id\": \"i-3\", \"state\": \"unavailable\", \"tags\": [\"slave-3\"], \"boxes\": []}]";
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParseArrayMatchesJsonLib() throws IOException {
+        final JSONArray instances = new JSONArray();
+        JsonStreamParser.parseArray(stream(INSTANCES), new JsonArrayVisitor() {
+            @Override
+            public boolean visit(JSONObject element) {
+                instances.element(element);
+                return true;
+            }
+        });
+
+        assertEquals(JSONArray.fromObject(INSTANCES), instances);
+        assertEquals("b-1", instances.getJSONObject(0).getJSONArray("boxes").getJSONObject(0).getString("id"));
+    }
+
+    @Test
+    public void testParseArrayStopsWhenVisitorIsDone() throws IOException {
+        final JSONArray instances = new JSONArray();
+        JsonStreamParser.parseArray(stream(INSTANCES), new JsonArrayVisitor() {
+            @Override
+            public boolean visit(JSONObject element) {
+                instances.element(element);
+                return instances.size() < 2;
+            }
+        });
+
+        assertEquals(2, instances.size());
+        assertEquals("i-2", instances.getJSONObject(1).getString("id"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseArrayRejectsObject() throws IOException {
+        JsonStreamParser.parseArray(stream("{\"id\": \"i-1\"}"), new JsonArrayVisitor() {
+            @Override
+            public boolean visit(JSONObject element) {
+                return true;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestOperationDurations {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSlaveConfigurationFallback() {
+        OperationDurations durations = new OperationDurations(10, 100);
+        String key = OperationDurations.getKey("deploy", "box1", "policy1", "config1");
+        for (int i = 1; i <= 10; i++) {
+            durations.record(key, i * 1000);
+        }
+        assertEquals(5000, durations.getPercentile(key, 0.5));
+        assertEquals(9000, durations.getPercentile(key, 0.9));
+        assertEquals(10000, durations.getPercentile(key, 0.99));
+        // another slave configuration with the same box falls back to the box, then to the operation
+        assertEquals(5000, durations.getExpectedDuration(
+                OperationDurations.getKey("deploy", "box1", "policy1", "config2")));
+        assertEquals(5000, durations.getExpectedDuration(OperationDurations.getKey("deploy", "box2", null)));
+        assertEquals(-1, durations.getExpectedDuration(OperationDurations.getKey(OperationDurations.ONLINE_EVENT,
+                "box1", "policy1", "config1")));
+
+        List<OperationDurations.Statistics> statistics = durations.getStatistics();
+        assertEquals(3, statistics.size());
+        OperationDurations.Statistics slaveStatistics = null;
+        for (OperationDurations.Statistics keyStatistics : statistics) {
+            if (keyStatistics.getSlaveConfiguration() != null) {
+                slaveStatistics = keyStatistics;
+            }
+        }
+        assertEquals("box1", slaveStatistics.getBox());
+        assertEquals("policy1", slaveStatistics.getPolicy());
+        assertEquals("config1", slaveStatistics.getSlaveConfiguration());
+        assertEquals(10, slaveStatistics.getCount());
+        assertEquals(9000, slaveStatistics.getP90());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = new File(folder.getRoot(), "durations/cloud.json");
+        OperationDurations durations = new OperationDurations(3, 100);
+        String key = OperationDurations.getKey("deploy", "box1", null);
+        for (int i = 1; i <= 5; i++) {
+            durations.record(key, i * 1000);
+        }
+        assertTrue(durations.isModified());
+        durations.save(file);
+        assertFalse(durations.isModified());
+
+        OperationDurations loaded = new OperationDurations(3, 100);
+        loaded.load(file);
+        assertFalse(loaded.isModified());
+        assertEquals(4000, loaded.getExpectedDuration(key));
+        // the oldest loaded sample is replaced first
+        loaded.record(key, 1000);
+        assertEquals(4000, loaded.getPercentile(key, 0.5));
+        assertEquals(1000, loaded.getPercentile(key, 0.1));
+
+        OperationDurations missing = new OperationDurations();
+        missing.load(new File(folder.getRoot(), "missing.json"));
+        assertEquals(0, missing.getKeyCount());
+    }
+
+}
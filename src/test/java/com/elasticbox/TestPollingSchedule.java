@@ -0,0 +1,58 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPollingSchedule {
+
+    @Test
+    public void testDelayAroundExpectedDuration() {
+        long expected = 10 * 60 * 1000;
+        assertEquals(PollingSchedule.MAX_DELAY, PollingSchedule.getDelay(expected, 0));
+        assertEquals(PollingSchedule.MIN_DELAY, PollingSchedule.getDelay(expected, expected * 9 / 10 - 100));
+        assertEquals(expected / 100, PollingSchedule.getDelay(expected, expected));
+        assertEquals(PollingSchedule.MAX_DELAY, PollingSchedule.getDelay(expected, expected * 2));
+        assertEquals(PollingSchedule.MIN_DELAY, PollingSchedule.getDelay(-1, 0));
+        assertEquals(PollingSchedule.MAX_DELAY, PollingSchedule.getDelay(-1, 60 * 60 * 1000));
+    }
+
+    @Test
+    public void testOperationDurations() {
+        OperationDurations durations = new OperationDurations(5, 10);
+        String key = OperationDurations.getKey("deploy", "box1", null);
+        assertEquals(-1, durations.getExpectedDuration(key));
+        for (int i = 1; i <= 10; i++) {
+            durations.record(key, i * 1000);
+        }
+        // only the last 5 samples are kept
+        assertEquals(8000, durations.getExpectedDuration(key));
+        assertEquals(10000, durations.getPercentile(key, 0.99));
+
+        JSONObject instance = new JSONObject();
+        instance.put("box", "box2");
+        JSONObject operation = new JSONObject();
+        operation.put("event", "deploy");
+        instance.put("operation", operation);
+        // falls back to the durations of the same operation for any box
+        assertEquals(OperationDurations.getKey("deploy", "box2", null), OperationDurations.getKey(instance));
+        assertTrue(durations.getExpectedDuration(OperationDurations.getKey(instance)) > 0);
+    }
+
+}
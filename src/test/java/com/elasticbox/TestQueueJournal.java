@@ -0,0 +1,107 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import net.sf.json.JSONObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestQueueJournal {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static JSONObject data(String instanceUrl) {
+        JSONObject data = new JSONObject();
+        data.put("instanceUrl", instanceUrl);
+        return data;
+    }
+
+    @Test
+    public void testEntriesAreReplayedAfterRestart() throws Exception {
+        File file = new File(folder.getRoot(), "elasticbox/journal.log");
+        QueueJournal journal = new QueueJournal(file);
+        journal.open();
+        assertTrue(journal.add("submitted", "slave-1", data("https://elasticbox.com/services/instances/i-1")));
+        assertFalse(journal.add("submitted", "slave-1", data("https://elasticbox.com/services/instances/i-1")));
+        journal.add("submitted", "slave-2", data("https://elasticbox.com/services/instances/i-2"));
+        journal.add("terminated", "slave-3", new JSONObject());
+        assertTrue(journal.remove("submitted", "slave-1"));
+        assertFalse(journal.remove("submitted", "slave-1"));
+        assertEquals(4, journal.getRecordCount());
+        journal.close();
+
+        // a crash in the middle of a write leaves an incomplete record
+        Files.write(file.toPath(), "{\"queue\":\"terminated\",\"ke".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        QueueJournal replayed = new QueueJournal(file);
+        replayed.open();
+        assertEquals(2, replayed.size());
+        assertEquals(2, replayed.getRecordCount());
+        assertEquals(1, replayed.getEntries("submitted").size());
+        assertEquals("https://elasticbox.com/services/instances/i-2",
+                replayed.getEntries("submitted").get("slave-2").getString("instanceUrl"));
+        assertTrue(replayed.getEntries("terminated").containsKey("slave-3"));
+        assertTrue(replayed.getEntries("incoming").isEmpty());
+
+        replayed.add("incoming", "slave-4", new JSONObject());
+        replayed.close();
+        QueueJournal reopened = new QueueJournal(file);
+        reopened.open();
+        assertEquals(3, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void testSyncAndCompaction() throws Exception {
+        File file = new File(folder.getRoot(), "journal.log");
+        QueueJournal journal = new QueueJournal(file, 10);
+        journal.open();
+        for (int i = 0; i < 10; i++) {
+            journal.add("deleting", "i-" + i, new JSONObject());
+        }
+        Map<String, JSONObject> entries = new HashMap<String, JSONObject>();
+        entries.put("i-9", new JSONObject());
+        entries.put("i-10", new JSONObject());
+        journal.sync("deleting", entries);
+        assertEquals(2, journal.size());
+        assertEquals(20, journal.getRecordCount());
+
+        assertTrue(journal.compactIfNeeded());
+        assertEquals(2, journal.getRecordCount());
+        assertEquals(2, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+        assertFalse(journal.compactIfNeeded());
+        journal.close();
+
+        QueueJournal replayed = new QueueJournal(file);
+        replayed.open();
+        assertEquals(entries.keySet(), replayed.getEntries("deleting").keySet());
+        replayed.close();
+    }
+
+}
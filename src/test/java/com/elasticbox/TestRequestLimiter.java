@@ -0,0 +1,78 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRequestLimiter {
+
+    @Test
+    public void testLowPriorityRequestsUseShareOfLimit() throws Exception {
+        final RequestLimiter limiter = new RequestLimiter(new RequestLimiter.Settings(1000, 4));
+        limiter.acquire(RequestLimiter.Priority.LOW);
+        limiter.acquire(RequestLimiter.Priority.LOW);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread lowPriorityThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(RequestLimiter.Priority.LOW);
+                    acquired.countDown();
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        lowPriorityThread.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        limiter.acquire(RequestLimiter.Priority.HIGH);
+        limiter.acquire(RequestLimiter.Priority.HIGH);
+        assertEquals(4, limiter.getInFlight());
+
+        limiter.release(10, HttpStatus.SC_OK);
+        limiter.release(10, HttpStatus.SC_OK);
+        limiter.release(10, HttpStatus.SC_OK);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        lowPriorityThread.join();
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void testLimitsAdaptToCongestion() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(new RequestLimiter.Settings(100, 10));
+        limiter.acquire(RequestLimiter.Priority.NORMAL);
+        limiter.release(10, 429);
+        assertEquals(7, limiter.getConcurrencyLimit());
+        assertEquals(70, limiter.getRateLimit());
+        assertEquals(1, limiter.getCongestionEvents());
+
+        for (int i = 0; i < 200; i++) {
+            limiter.acquire(RequestLimiter.Priority.HIGH);
+            limiter.release(10, HttpStatus.SC_OK);
+        }
+        assertEquals(10, limiter.getConcurrencyLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+}
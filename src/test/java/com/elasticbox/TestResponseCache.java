@@ -0,0 +1,89 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestResponseCache {
+
+    private static final String URL = "https://elasticbox.com/services/boxes/b-1";
+
+    private static HttpResponse createResponse(int status, String body, String etag) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+        if (body != null) {
+            response.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        }
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        return response;
+    }
+
+    @Test
+    public void testNotModifiedResponseIsServedFromCache() throws IOException {
+        ResponseCache cache = new ResponseCache();
+        HttpGet request = new HttpGet(URL);
+        cache.prepare("token", request);
+        assertNull(request.getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+
+        HttpResponse response = cache.process("token", request, createResponse(HttpStatus.SC_OK, "{}", "\"v1\""));
+        assertEquals("{}", EntityUtils.toString(response.getEntity()));
+        assertEquals(1, cache.getEntryCount());
+
+        request = new HttpGet(URL);
+        cache.prepare("token", request);
+        assertEquals("\"v1\"", request.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        response = cache.process("token", request, createResponse(HttpStatus.SC_NOT_MODIFIED, null, null));
+        assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        assertEquals("{}", EntityUtils.toString(response.getEntity()));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEntriesAreScopedAndBounded() throws IOException {
+        ResponseCache cache = new ResponseCache(40);
+        cache.process("token", new HttpGet(URL), createResponse(HttpStatus.SC_OK, "0123456789", "\"v1\""));
+
+        HttpGet otherRequest = new HttpGet(URL);
+        cache.prepare("other-token", otherRequest);
+        assertNull(otherRequest.getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+
+        for (int i = 2; i <= 5; i++) {
+            cache.process("token", new HttpGet(URL + i), createResponse(HttpStatus.SC_OK, "0123456789", "\"v\""));
+        }
+        assertEquals(4, cache.getEntryCount());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(40, cache.getSize());
+
+        HttpGet request = new HttpGet(URL);
+        cache.prepare("token", request);
+        assertNull(request.getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+    }
+
+}
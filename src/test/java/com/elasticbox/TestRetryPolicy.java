@@ -0,0 +1,79 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRetryPolicy {
+
+    private static final String URL = "https://elasticbox.com/services/instances/i-1";
+
+    @Test
+    public void testRetryableRequests() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000);
+        HttpGet get = new HttpGet(URL);
+        HttpPost post = new HttpPost(URL);
+        assertTrue(policy.shouldRetry(get, 0, HttpStatus.SC_SERVICE_UNAVAILABLE));
+        assertTrue(policy.shouldRetry(get, 1, new IOException("Connection reset")));
+        assertFalse(policy.shouldRetry(get, 2, HttpStatus.SC_SERVICE_UNAVAILABLE));
+        assertFalse(policy.shouldRetry(get, 0, HttpStatus.SC_NOT_FOUND));
+        assertFalse(policy.shouldRetry(get, 0, new InterruptedIOException()));
+        assertTrue(policy.shouldRetry(get, 0, new SocketTimeoutException("Read timed out")));
+        assertFalse(policy.shouldRetry(get, 0, new ConnectionPoolTimeoutException()));
+        assertFalse(policy.shouldRetry(post, 0, new SocketTimeoutException("Read timed out")));
+        assertFalse(policy.shouldRetry(post, 0, HttpStatus.SC_SERVICE_UNAVAILABLE));
+        assertFalse(policy.shouldRetry(post, 0, new IOException("Connection reset")));
+        assertTrue(policy.shouldRetry(post, 0, 429));
+
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[0])));
+        assertFalse(policy.shouldRetry(post, 0, 429));
+    }
+
+    @Test
+    public void testDelay() {
+        RetryPolicy policy = new RetryPolicy(5, 100, 1000);
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long delay = policy.getDelay(attempt, null);
+            assertTrue(delay >= 0 && delay <= Math.min(1000, 100 << attempt));
+        }
+
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, null);
+        response.setHeader(HttpHeaders.RETRY_AFTER, "0");
+        assertEquals(0, policy.getDelay(3, response));
+        response.setHeader(HttpHeaders.RETRY_AFTER, "120");
+        assertEquals(1000, policy.getDelay(0, response));
+        response.setHeader(HttpHeaders.RETRY_AFTER, "Wed, 21 Oct 2015 07:28:00 GMT");
+        assertEquals(0, RetryPolicy.getRetryAfter(response));
+        response.setHeader(HttpHeaders.RETRY_AFTER, "soon");
+        assertEquals(-1, RetryPolicy.getRetryAfter(response));
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTerminationPipeline {
+
+    private static class StubPipeline extends TerminationPipeline<String> {
+        private final AtomicInteger actions = new AtomicInteger();
+        private volatile CountDownLatch release;
+        private volatile boolean failing;
+
+        StubPipeline(long minRetryDelay) {
+            super("TestTerminationPipeline", 2, minRetryDelay, 60000);
+        }
+
+        @Override
+        protected String getKey(String item) {
+            return item;
+        }
+
+        @Override
+        protected State advance(String item, State state) throws IOException {
+            actions.incrementAndGet();
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                throw new IOException("Cannot terminate " + item);
+            }
+            return State.values()[state.ordinal() + 1];
+        }
+
+        void awaitActions(int count) throws InterruptedException {
+            long timeout = System.currentTimeMillis() + 5000;
+            while (actions.get() < count && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static void awaitState(StubPipeline pipeline, String item, TerminationPipeline.State state)
+            throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (pipeline.getState(item) != state && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testOneActionInFlightPerItem() throws Exception {
+        StubPipeline pipeline = new StubPipeline(10);
+        pipeline.release = new CountDownLatch(1);
+        assertTrue(pipeline.add("slave-1"));
+        assertFalse(pipeline.add("slave-1"));
+
+        assertEquals(1, pipeline.process());
+        assertEquals(0, pipeline.process());
+        assertEquals(0, pipeline.process());
+        pipeline.release.countDown();
+        awaitState(pipeline, "slave-1", TerminationPipeline.State.TERMINATING);
+        assertEquals(1, pipeline.actions.get());
+    }
+
+    @Test
+    public void testItemMovesThroughStatesUntilRemoved() throws Exception {
+        StubPipeline pipeline = new StubPipeline(10);
+        pipeline.add("slave-1");
+        pipeline.add("slave-2");
+        Map<TerminationPipeline.State, Integer> counts = pipeline.getStateCounts(null);
+        assertEquals(2, counts.get(TerminationPipeline.State.TERMINATE_REQUESTED).intValue());
+        assertEquals(0, counts.get(TerminationPipeline.State.TERMINATING).intValue());
+
+        for (TerminationPipeline.State state : new TerminationPipeline.State[] {
+            TerminationPipeline.State.TERMINATING, TerminationPipeline.State.TERMINATED,
+            TerminationPipeline.State.DELETED, null }) {
+
+            pipeline.process();
+            awaitState(pipeline, "slave-1", state);
+            awaitState(pipeline, "slave-2", state);
+            assertEquals(state, pipeline.getState("slave-1"));
+        }
+        assertTrue(pipeline.isEmpty());
+        assertEquals(2, pipeline.getRemovedCount());
+        assertEquals(8, pipeline.actions.get());
+    }
+
+    @Test
+    public void testFailedActionIsRetriedAfterBackoff() throws Exception {
+        StubPipeline pipeline = new StubPipeline(60000);
+        pipeline.failing = true;
+        pipeline.add("slave-1");
+        assertEquals(1, pipeline.process());
+        pipeline.awaitActions(1);
+        assertEquals(1, pipeline.actions.get());
+        assertEquals(TerminationPipeline.State.TERMINATE_REQUESTED, pipeline.getState("slave-1"));
+        assertEquals(0, pipeline.process());
+
+        assertEquals(60000, pipeline.getRetryDelay(1));
+        assertEquals(60000, pipeline.getRetryDelay(5));
+        StubPipeline fastPipeline = new StubPipeline(1000);
+        assertEquals(1000, fastPipeline.getRetryDelay(1));
+        assertEquals(4000, fastPipeline.getRetryDelay(3));
+        assertEquals(60000, fastPipeline.getRetryDelay(30));
+        assertNull(fastPipeline.getState("slave-1"));
+    }
+
+}
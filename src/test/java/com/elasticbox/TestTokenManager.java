@@ -0,0 +1,109 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2014 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+
+package com.elasticbox;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestTokenManager {
+
+    private static class CountingTokenSource implements TokenManager.TokenSource {
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final CountDownLatch release;
+
+        CountingTokenSource(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public String fetchToken() throws IOException {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            return "token-" + fetches.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingTokenSource source = new CountingTokenSource(release);
+        final TokenManager tokenManager = new TokenManager(source);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> tokens = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                tokens.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return tokenManager.getToken();
+                    }
+                }));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> token : tokens) {
+                assertEquals("token-1", token.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, source.fetches.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOnlyRejectedTokenIsDiscarded() throws IOException {
+        CountDownLatch release = new CountDownLatch(0);
+        CountingTokenSource source = new CountingTokenSource(release);
+        TokenManager tokenManager = new TokenManager(source);
+        assertEquals("token-1", tokenManager.getToken());
+
+        tokenManager.invalidate("token-0");
+        assertEquals("token-1", tokenManager.getToken());
+
+        tokenManager.invalidate("token-1");
+        assertNull(tokenManager.peekToken());
+        assertEquals("token-2", tokenManager.getToken());
+        tokenManager.invalidate("token-1");
+        assertEquals("token-2", tokenManager.getToken());
+        assertEquals(2, source.fetches.get());
+    }
+
+    @Test
+    public void testExpirationOfWebToken() {
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                "{\"sub\": \"operations\", \"exp\": 1700000000}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1700000000000L, TokenManager.getExpirationTime("eyJhbGciOiJIUzI1NiJ9." + payload + ".c2ln"));
+        assertEquals(0, TokenManager.getExpirationTime("6a3e8c5f-1b2d-4e6f-8a9b-0c1d2e3f4a5b"));
+        assertEquals(0, TokenManager.getExpirationTime("a.b.c"));
+    }
+
+}
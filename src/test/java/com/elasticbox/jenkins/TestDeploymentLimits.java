@@ -0,0 +1,117 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import org.junit.Test;
+
+import static com.elasticbox.jenkins.DeploymentLimits.Admission.DEFERRED;
+import static com.elasticbox.jenkins.DeploymentLimits.Admission.DISCARDED;
+import static com.elasticbox.jenkins.DeploymentLimits.Admission.STARTED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestDeploymentLimits {
+
+    @Test
+    public void testCloudWithoutBudgetIsDeferred() {
+        DeploymentLimits limits = new DeploymentLimits(10, 4);
+        assertNull(limits.getBudget("cloud"));
+        assertEquals(DEFERRED, limits.admit("cloud"));
+
+        limits.setBudget("cloud", 2, 0);
+        assertEquals(STARTED, limits.admit("cloud"));
+
+        limits.clearBudgets();
+        assertEquals(DEFERRED, limits.admit("cloud"));
+        assertEquals(1, limits.getDeployments("cloud"));
+    }
+
+    @Test
+    public void testConcurrencyLimitsDeferRequests() {
+        DeploymentLimits limits = new DeploymentLimits(3, 2);
+        limits.setBudget("cloud-1", 10, 0);
+        limits.setBudget("cloud-2", 10, 0);
+
+        assertEquals(STARTED, limits.admit("cloud-1"));
+        assertEquals(STARTED, limits.admit("cloud-1"));
+        // the cloud limit is hit, the other cloud can still deploy
+        assertEquals(DEFERRED, limits.admit("cloud-1"));
+        assertEquals(STARTED, limits.admit("cloud-2"));
+        // the global limit is hit
+        assertEquals(DEFERRED, limits.admit("cloud-2"));
+        assertEquals(3, limits.getDeployments());
+
+        // the deferred requests did not spend the budget
+        assertEquals(8, limits.getBudget("cloud-1").intValue());
+        assertEquals(9, limits.getBudget("cloud-2").intValue());
+
+        limits.completed("cloud-1");
+        assertEquals(STARTED, limits.admit("cloud-2"));
+        assertEquals(DEFERRED, limits.admit("cloud-1"));
+        limits.completed("cloud-2");
+        assertEquals(STARTED, limits.admit("cloud-1"));
+    }
+
+    @Test
+    public void testCompletionDoesNotRefundBudget() {
+        DeploymentLimits limits = new DeploymentLimits(10, 2);
+        limits.setBudget("cloud", 3, 0);
+
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(DEFERRED, limits.admit("cloud"));
+
+        // the completed deployments free their slots, their instances still count
+        limits.completed("cloud");
+        limits.completed("cloud");
+        assertEquals(0, limits.getDeployments("cloud"));
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(0, limits.getBudget("cloud").intValue());
+        assertEquals(DISCARDED, limits.admit("cloud"));
+        assertEquals(1, limits.getDeployments());
+    }
+
+    @Test
+    public void testBudgetCountsRunningDeployments() {
+        DeploymentLimits limits = new DeploymentLimits(10, 4);
+        limits.setBudget("cloud", 5, 1);
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(STARTED, limits.admit("cloud"));
+
+        // one deployment completed and its instance was submitted, two are still running
+        limits.completed("cloud");
+        limits.setBudget("cloud", 5, 2);
+        assertEquals(1, limits.getBudget("cloud").intValue());
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(DISCARDED, limits.admit("cloud"));
+
+        // the max number of instances is raised, the discarded request would now be started
+        limits.setBudget("cloud", 10, 2);
+        assertEquals(5, limits.getBudget("cloud").intValue());
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(4, limits.getDeployments("cloud"));
+        assertEquals(DEFERRED, limits.admit("cloud"));
+    }
+
+    @Test
+    public void testCompletionOfUnknownCloudIsIgnored() {
+        DeploymentLimits limits = new DeploymentLimits(1, 1);
+        limits.setBudget("cloud", 5, 0);
+        limits.completed("other");
+        assertEquals(0, limits.getDeployments());
+        assertEquals(STARTED, limits.admit("cloud"));
+        assertEquals(DEFERRED, limits.admit("cloud"));
+    }
+
+}
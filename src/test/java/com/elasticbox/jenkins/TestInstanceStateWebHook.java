@@ -0,0 +1,226 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.Client;
+import com.elasticbox.InstanceNotifications;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.jenkins.util.ClientCache;
+
+import net.sf.json.JSONObject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestInstanceStateWebHook {
+    private static final String SIGNATURE = "sha256=valid-";
+
+    private static final AtomicInteger notificationCount = new AtomicInteger();
+
+    private String cloudName;
+    private ElasticBoxCloud cloud;
+
+    private final InstanceStateWebHook webHook = new InstanceStateWebHook() {
+
+        @Override
+        ElasticBoxCloud getSigningCloud(byte[] payload, String timestamp, String signature) {
+            return signature.startsWith(SIGNATURE) ? cloud : null;
+        }
+
+    };
+
+    private static class PayloadInputStream extends ServletInputStream {
+        private final ByteArrayInputStream input;
+
+        PayloadInputStream(byte[] payload) {
+            input = new ByteArrayInputStream(payload);
+        }
+
+        @Override
+        public int read() {
+            return input.read();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return input.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+    }
+
+    @Before
+    public void listInstance() throws IOException {
+        cloudName = "elasticbox-" + UUID.randomUUID().toString();
+        cloud = Mockito.mock(ElasticBoxCloud.class);
+        Whitebox.setInternalState(cloud, "name", cloudName);
+
+        final InstanceSummary instance = new InstanceSummary("i-1", "slave-1", Client.InstanceState.PROCESSING,
+                Client.InstanceOperation.DEPLOY, Collections.<String>emptyList(), "2019-01-01 00:00:00", "workspace");
+        Client listingClient = Mockito.mock(Client.class);
+        Mockito.doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((InstanceSummary.Visitor) invocation.getArguments()[1]).visit(instance);
+                return null;
+            }
+
+        }).when(listingClient).visitInstanceSummaries(Mockito.eq("workspace"),
+                Mockito.any(InstanceSummary.Visitor.class));
+        ClientCache.getInstanceSnapshot(cloudName).refresh(listingClient, Collections.singleton("workspace"));
+    }
+
+    private static String currentTimestamp() {
+        return String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+    }
+
+    private static String newSignature() {
+        return SIGNATURE + notificationCount.incrementAndGet();
+    }
+
+    private StaplerResponse post(byte[] payload, int contentLength, String timestamp, String signature)
+            throws IOException {
+
+        StaplerRequest req = Mockito.mock(StaplerRequest.class);
+        when(req.getInputStream()).thenReturn(new PayloadInputStream(payload));
+        when(req.getContentLength()).thenReturn(contentLength);
+        when(req.getHeader(InstanceNotifications.TIMESTAMP_HEADER)).thenReturn(timestamp);
+        when(req.getHeader(InstanceNotifications.SIGNATURE_HEADER)).thenReturn(signature);
+        StaplerResponse rsp = Mockito.mock(StaplerResponse.class);
+        webHook.doIndex(req, rsp);
+        return rsp;
+    }
+
+    private StaplerResponse post(JSONObject instance, String timestamp, String signature) throws IOException {
+        byte[] payload = instance.toString().getBytes(StandardCharsets.UTF_8);
+        return post(payload, payload.length, timestamp, signature);
+    }
+
+    private StaplerResponse post(JSONObject instance, String signature) throws IOException {
+        return post(instance, currentTimestamp(), signature);
+    }
+
+    private static JSONObject createInstance(String state, String updated) {
+        JSONObject operation = new JSONObject();
+        operation.put("event", Client.InstanceOperation.DEPLOY);
+        JSONObject instance = new JSONObject();
+        instance.put("id", "i-1");
+        instance.put("state", state);
+        instance.put("updated", updated);
+        instance.put("operation", operation);
+        instance.put("owner", "workspace");
+        return instance;
+    }
+
+    private String getSnapshotState() {
+        return ClientCache.getInstanceSnapshot(cloudName).getInstance("i-1").getState();
+    }
+
+    @Test
+    public void testMinimalNotificationIsIgnored() throws IOException {
+        JSONObject minimal = new JSONObject();
+        minimal.put("id", "i-1");
+        minimal.put("state", Client.InstanceState.DONE);
+
+        StaplerResponse rsp = post(minimal, newSignature());
+        verify(rsp).setStatus(HttpServletResponse.SC_OK);
+        assertEquals(Client.InstanceState.PROCESSING, getSnapshotState());
+
+        rsp = post(createInstance(Client.InstanceState.DONE, "2019-01-01 00:05:00"), newSignature());
+        verify(rsp).setStatus(HttpServletResponse.SC_OK);
+        assertEquals(Client.InstanceState.DONE, getSnapshotState());
+    }
+
+    @Test
+    public void testInvalidSignatureIsRejected() throws IOException {
+        StaplerResponse rsp = post(createInstance(Client.InstanceState.DONE, "2019-01-01 00:05:00"),
+                "sha256=other");
+        verify(rsp).sendError(HttpServletResponse.SC_FORBIDDEN);
+        verify(rsp, never()).setStatus(HttpServletResponse.SC_OK);
+        assertEquals(Client.InstanceState.PROCESSING, getSnapshotState());
+    }
+
+    @Test
+    public void testStaleNotificationIsRejected() throws IOException {
+        long sentTime = System.currentTimeMillis() - InstanceNotifications.MAX_AGE - TimeUnit.MINUTES.toMillis(1);
+        StaplerResponse rsp = post(createInstance(Client.InstanceState.DONE, "2019-01-01 00:05:00"),
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(sentTime)), newSignature());
+        verify(rsp).sendError(HttpServletResponse.SC_FORBIDDEN);
+        assertEquals(Client.InstanceState.PROCESSING, getSnapshotState());
+
+        rsp = post(createInstance(Client.InstanceState.DONE, "2019-01-01 00:05:00"), null, newSignature());
+        verify(rsp).sendError(HttpServletResponse.SC_FORBIDDEN);
+        assertEquals(Client.InstanceState.PROCESSING, getSnapshotState());
+    }
+
+    @Test
+    public void testReplayedNotificationIsRejected() throws IOException {
+        String signature = newSignature();
+        StaplerResponse rsp = post(createInstance(Client.InstanceState.UNAVAILABLE, "2019-01-01 00:05:00"),
+                signature);
+        verify(rsp).setStatus(HttpServletResponse.SC_OK);
+        assertEquals(Client.InstanceState.UNAVAILABLE, getSnapshotState());
+
+        ClientCache.getInstanceSnapshot(cloudName).update(
+                createInstance(Client.InstanceState.DONE, "2019-01-01 00:10:00"));
+        rsp = post(createInstance(Client.InstanceState.UNAVAILABLE, "2019-01-01 00:05:00"), signature);
+        verify(rsp).sendError(HttpServletResponse.SC_FORBIDDEN);
+        assertEquals(Client.InstanceState.DONE, getSnapshotState());
+    }
+
+    @Test
+    public void testLargePayloadIsRejected() throws IOException {
+        byte[] payload = new byte[InstanceStateWebHook.MAX_PAYLOAD_SIZE + 1];
+        Arrays.fill(payload, (byte) ' ');
+
+        StaplerResponse rsp = post(payload, payload.length, currentTimestamp(), newSignature());
+        verify(rsp).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+
+        // chunked request without content length
+        rsp = post(payload, -1, currentTimestamp(), newSignature());
+        verify(rsp).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(rsp, never()).setStatus(HttpServletResponse.SC_OK);
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * ElasticBox Confidential
+ * Copyright (c) 2015 All Right Reserved, ElasticBox Inc.
+ *
+ * NOTICE:  All information contained herein is, and remains the property
+ * of ElasticBox. The intellectual and technical concepts contained herein are
+ * proprietary and may be covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law. Dissemination of this
+ * information or reproduction of this material is strictly forbidden unless prior
+ * written permission is obtained from ElasticBox.
+ */
+
+package com.elasticbox.jenkins;
+
+import com.elasticbox.Client;
+import com.elasticbox.ClientException;
+import com.elasticbox.InstanceSummary;
+import com.elasticbox.TerminationPipeline.State;
+import com.elasticbox.jenkins.util.ClientCache;
+
+import org.apache.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.reflect.Whitebox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestSlaveTerminationPipeline {
+    private static final String INSTANCE_ID = "i-test";
+
+    private final List<ElasticBoxSlave> removedSlaves = new ArrayList<ElasticBoxSlave>();
+
+    private final SlaveTerminationPipeline pipeline = new SlaveTerminationPipeline() {
+
+        @Override
+        void removeSlave(ElasticBoxSlave slave) {
+            removedSlaves.add(slave);
+        }
+
+    };
+
+    private String cloudName;
+    private Client client;
+    private ElasticBoxSlave slave;
+
+    @Before
+    public void createSlave() throws IOException {
+        cloudName = "elasticbox-" + UUID.randomUUID().toString();
+        client = Mockito.mock(Client.class);
+        ElasticBoxCloud cloud = Mockito.mock(ElasticBoxCloud.class);
+        Whitebox.setInternalState(cloud, "name", cloudName);
+        when(cloud.getClient()).thenReturn(client);
+
+        slave = Mockito.mock(ElasticBoxSlave.class);
+        when(slave.getCloud()).thenReturn(cloud);
+        when(slave.getInstanceUrl()).thenReturn("https://elasticbox.com/services/instances/" + INSTANCE_ID);
+        when(slave.getInstanceId()).thenReturn(INSTANCE_ID);
+        when(slave.isRemovableFromCloud()).thenReturn(true);
+    }
+
+    private static InstanceSummary instance(String state, String operation) {
+        return new InstanceSummary(INSTANCE_ID, "slave-test", state, operation, Collections.<String>emptyList(),
+                "2019-01-01 00:00:00." + System.nanoTime(), "workspace");
+    }
+
+    private void list(final InstanceSummary instance) throws IOException {
+        Client listingClient = Mockito.mock(Client.class);
+        Mockito.doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((InstanceSummary.Visitor) invocation.getArguments()[1]).visit(instance);
+                return null;
+            }
+
+        }).when(listingClient).visitInstanceSummaries(Mockito.eq("workspace"),
+                Mockito.any(InstanceSummary.Visitor.class));
+        ClientCache.getInstanceSnapshot(cloudName).refresh(listingClient, Collections.singleton("workspace"));
+    }
+
+    @Test
+    public void testRunningInstanceIsTerminatedAfterFetchingItsState() throws Exception {
+        list(instance(Client.InstanceState.DONE, Client.InstanceOperation.DEPLOY));
+        when(slave.getInstanceSummary()).thenReturn(instance(Client.InstanceState.DONE,
+                Client.InstanceOperation.DEPLOY));
+
+        assertEquals(State.TERMINATING, pipeline.advance(slave, State.TERMINATE_REQUESTED));
+        verify(slave).getInstanceSummary();
+        verify(slave).terminate();
+    }
+
+    @Test
+    public void testListingThatPredatesTheTerminationIsNotTrusted() throws Exception {
+        list(instance(Client.InstanceState.DONE, Client.InstanceOperation.DEPLOY));
+        when(slave.getInstanceSummary()).thenReturn(instance(Client.InstanceState.PROCESSING,
+                Client.InstanceOperation.TERMINATE));
+
+        assertEquals(State.TERMINATING, pipeline.advance(slave, State.TERMINATE_REQUESTED));
+        verify(slave, never()).terminate();
+    }
+
+    @Test
+    public void testProcessingInstanceWaits() throws Exception {
+        list(instance(Client.InstanceState.PROCESSING, Client.InstanceOperation.DEPLOY));
+
+        assertEquals(State.TERMINATE_REQUESTED, pipeline.advance(slave, State.TERMINATE_REQUESTED));
+        verify(slave, never()).getInstanceSummary();
+        verify(slave, never()).terminate();
+    }
+
+    @Test
+    public void testUnavailableInstanceIsForceTerminated() throws Exception {
+        list(instance(Client.InstanceState.UNAVAILABLE, Client.InstanceOperation.DEPLOY));
+
+        assertEquals(State.TERMINATING, pipeline.advance(slave, State.TERMINATE_REQUESTED));
+        verify(client).forceTerminate(INSTANCE_ID);
+    }
+
+    @Test
+    public void testTerminatedInstanceIsDeletedAndSlaveRemoved() throws Exception {
+        list(instance(Client.InstanceState.DONE, Client.InstanceOperation.TERMINATE));
+
+        assertEquals(State.DELETED, pipeline.advance(slave, State.TERMINATING));
+        verify(slave).delete();
+        assertTrue(removedSlaves.isEmpty());
+
+        assertEquals(State.REMOVED, pipeline.advance(slave, State.DELETED));
+        assertEquals(Collections.singletonList(slave), removedSlaves);
+    }
+
+    @Test
+    public void testInstanceThatCannotBeDeletedIsKept() throws Exception {
+        list(instance(Client.InstanceState.DONE, Client.InstanceOperation.TERMINATE));
+        Mockito.doThrow(new ClientException("Conflict", HttpStatus.SC_CONFLICT)).when(slave).delete();
+        assertEquals(State.TERMINATED, pipeline.advance(slave, State.TERMINATING));
+
+        when(slave.isRemovableFromCloud()).thenReturn(false);
+        assertEquals(State.TERMINATED, pipeline.advance(slave, State.TERMINATING));
+        verify(slave).delete();
+    }
+
+    @Test
+    public void testMissingInstanceIsDeleted() throws Exception {
+        when(slave.getInstanceSummary()).thenThrow(new ClientException("Not found", HttpStatus.SC_NOT_FOUND));
+
+        assertEquals(State.DELETED, pipeline.advance(slave, State.TERMINATING));
+        verify(slave, never()).terminate();
+    }
+
+    @Test
+    public void testSlaveOfRemovedCloudIsRemoved() throws Exception {
+        when(slave.getCloud()).thenThrow(new IOException("Cannot find any ElasticBox cloud"));
+
+        assertEquals(State.REMOVED, pipeline.advance(slave, State.TERMINATE_REQUESTED));
+        assertEquals(Collections.singletonList(slave), removedSlaves);
+        verify(slave, never()).terminate();
+    }
+
+}
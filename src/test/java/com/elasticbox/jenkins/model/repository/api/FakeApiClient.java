@@ -1,6 +1,7 @@
 package com.elasticbox.jenkins.model.repository.api;
 
 import com.elasticbox.ApiClient;
+import com.elasticbox.InstanceSummary;
 import com.elasticbox.jenkins.UnitTestingUtils;
 import net.sf.json.JSON;
 import net.sf.json.JSONArray;
@@ -44,6 +45,19 @@ public class FakeApiClient implements ApiClient {
         return null;
     }
 
+    @Override
+    public InstanceSummary getInstanceSummary(String instanceId) throws IOException {
+        //TODO Implement for testing
+        return null;
+    }
+
+    @Override
+    public List<InstanceSummary> getInstanceSummaries(String workspaceId, List<String> instanceIDs)
+            throws IOException {
+        //TODO Implement for testing
+        return null;
+    }
+
     @Override
     public <T extends JSON> T doPost(String url, JSONObject resource, boolean isArray) throws IOException {
         //TODO